@@ -23,6 +23,8 @@ import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
+import ca.gobits.dht.util.TimingWheel.Timeout;
+
 import com.google.common.primitives.UnsignedBytes;
 
 /**
@@ -32,7 +34,7 @@ import com.google.common.primitives.UnsignedBytes;
 public class DHTBucket {
 
     /** Maximum number of nodes allow. */
-    private static final int MAX_NODE_COUNT = 8;
+    public static final int MAX_NODE_COUNT = 8;
 
     /** Start of range. */
     private byte[] min;
@@ -46,6 +48,9 @@ public class DHTBucket {
     /** Property to indicate how "fresh" the contents are. */
     private Date lastChanged;
 
+    /** Next scheduled refresh of the bucket. */
+    private Timeout<DHTBucket> refresh;
+
     /**
      * Comparator used to determine whether byte[] are between
      * rangeStart/rangeEnd.
@@ -192,4 +197,19 @@ public class DHTBucket {
     public void setLastChanged(final Date date) {
         this.lastChanged = date;
     }
+
+    /**
+     * @return Timeout<DHTBucket>
+     */
+    public Timeout<DHTBucket> getRefresh() {
+        return this.refresh;
+    }
+
+    /**
+     * Sets the next scheduled refresh of the bucket.
+     * @param timeout  Timeout<DHTBucket>
+     */
+    public void setRefresh(final Timeout<DHTBucket> timeout) {
+        this.refresh = timeout;
+    }
 }
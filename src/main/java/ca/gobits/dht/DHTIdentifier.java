@@ -16,22 +16,31 @@
 
 package ca.gobits.dht;
 
-import static ca.gobits.dht.util.DHTConversion.BYTE_TO_INT;
+import static ca.gobits.dht.util.DHTConversion.fitToSize;
+import static ca.gobits.dht.util.DHTConversion.toBigInteger;
 
+import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-
-import org.springframework.security.crypto.keygen.BytesKeyGenerator;
-import org.springframework.security.crypto.keygen.KeyGenerators;
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Calculates DHT Node Identifier.
+ *
+ * The host's own identifier comes from a SecureRandom, identifiers that
+ * are only used as lookup targets come from the thread's own PRNG so bucket
+ * refreshes neither block on nor contend for the secure source.
  */
 public final class DHTIdentifier {
 
     /** Length Node ID. */
     public static final int NODE_ID_LENGTH = 20;
 
+    /** Source of node identifiers that must not be predictable. */
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
     /**
      * private constructor.
      */
@@ -39,46 +48,69 @@ public final class DHTIdentifier {
     }
 
     /**
-     * Generates default NodeId.
+     * Generates a NodeId from a SecureRandom, for the host's identifier.
      * @return byte[]
      */
     public static byte[] getRandomNodeId() {
-        BytesKeyGenerator generator = KeyGenerators.secureRandom();
-        byte[] key = generator.generateKey();
-        return sha1(key);
+        byte[] nodeId = new byte[NODE_ID_LENGTH];
+        SECURE_RANDOM.nextBytes(nodeId);
+        return nodeId;
     }
 
     /**
-     * Generates random NodId between MIN / MAX.
+     * Generates a NodeId from the thread's PRNG, for lookup targets.
+     * @return byte[]
+     */
+    public static byte[] getFastRandomNodeId() {
+        byte[] nodeId = new byte[NODE_ID_LENGTH];
+        ThreadLocalRandom.current().nextBytes(nodeId);
+        return nodeId;
+    }
+
+    /**
+     * Generates random NodId between MIN / MAX, inclusive, every NodeId in
+     * the range is equally likely.
      * @param min minimum NodeId value
      * @param max maximum NodeId value
      * @return byte[]
      */
     public static byte[] getRandomNodeId(final byte[] min, final byte[] max) {
+        return getRandomNodeId(min, max, ThreadLocalRandom.current());
+    }
+
+    /**
+     * Generates random NodId between MIN / MAX, inclusive, every NodeId in
+     * the range is equally likely.
+     * @param min minimum NodeId value
+     * @param max maximum NodeId value
+     * @param random  source of randomness
+     * @return byte[]
+     */
+    public static byte[] getRandomNodeId(final byte[] min, final byte[] max,
+            final Random random) {
 
         if (min.length != max.length) {
             throw new IllegalArgumentException(
                     "parameter lengths do not match.");
         }
 
-        byte[] result = new byte[min.length];
-        for (int i = 0; i < min.length; i++) {
-            result[i] = (byte) random(min[i] & BYTE_TO_INT,
-                    max[i] & BYTE_TO_INT);
+        BigInteger low = toBigInteger(min);
+        BigInteger span = toBigInteger(max).subtract(low);
+
+        if (span.signum() < 0) {
+            throw new IllegalArgumentException("min is greater than max.");
         }
 
-        return result;
-    }
+        // draw just enough bits to cover the span and retry when the draw
+        // is past it, on average less than two draws are needed
+        int bits = span.bitLength();
+        BigInteger offset;
 
+        do {
+            offset = new BigInteger(bits, random);
+        } while (offset.compareTo(span) > 0);
 
-    /**
-     * Generate Random Number in range.
-     * @param min minumum value
-     * @param max maximum value
-     * @return int
-     */
-    private static int random(final int min, final int max) {
-        return min + (int) (Math.random() * ((max - min) + 1));
+        return fitToSize(low.add(offset).toByteArray(), min.length);
     }
 
     /**
@@ -16,13 +16,19 @@
 
 package ca.gobits.dht;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
+import ca.gobits.dht.util.ScrapeFilter;
+
 /**
  * DHTInfoHash - holder of information about a InfoHash record.
  *
@@ -32,8 +38,29 @@ public class DHTInfoHash {
     /** InfoHash identifier. */
     private byte[] infoHash;
 
-    /** Collection of Peers that "announced" to the InfoHash. */
-    private Set<DHTPeer> peers;
+    /** Length of IPv4 "Compact IP-address/port info". */
+    private static final int COMPACT_IPV4_LENGTH = 6;
+
+    /** No compact peers. */
+    private static final byte[][] EMPTY = new byte[0][];
+
+    /**
+     * Collection of Peers that "announced" to the InfoHash, concurrent as
+     * handler threads read it while peers are added and expired.
+     */
+    private volatile ConcurrentMap<DHTPeer, DHTPeer> peers;
+
+    /** Compact IPv4 peers, replaced on every change. */
+    private volatile byte[][] compactPeers4 = EMPTY;
+
+    /** Compact IPv6 peers, replaced on every change. */
+    private volatile byte[][] compactPeers6 = EMPTY;
+
+    /** BEP 33 seeds filter, replaced on every change. */
+    private volatile byte[] seedFilter = new byte[ScrapeFilter.SIZE];
+
+    /** BEP 33 peers filter, replaced on every change. */
+    private volatile byte[] peerFilter = new byte[ScrapeFilter.SIZE];
 
     /**
      * constructor.
@@ -63,7 +90,7 @@ public class DHTInfoHash {
      * @return Set<DHTPeer>
      */
     public Set<DHTPeer> getPeers() {
-        return this.peers;
+        return this.peers != null ? this.peers.keySet() : null;
     }
 
     /**
@@ -71,20 +98,269 @@ public class DHTInfoHash {
      * @param set  Set<DHTPeer>
      */
     public void setPeers(final Set<DHTPeer> set) {
-        this.peers = set;
+
+        if (set != null) {
+            ConcurrentMap<DHTPeer, DHTPeer> map =
+                    new ConcurrentHashMap<DHTPeer, DHTPeer>(set.size());
+            for (DHTPeer peer : set) {
+                map.put(peer, peer);
+            }
+            this.peers = map;
+        } else {
+            this.peers = null;
+        }
+
+        this.compactPeers4 = EMPTY;
+        this.compactPeers6 = EMPTY;
+
+        if (this.peers != null) {
+            for (DHTPeer peer : this.peers.keySet()) {
+                addCompactPeer(peer);
+            }
+        }
+
+        rebuildScrapeFilters();
+    }
+
+    /**
+     * BEP 33 "BFsd" filter, the returned array must not be modified.
+     * @return byte[]
+     */
+    public byte[] getSeedFilter() {
+        return this.seedFilter;
+    }
+
+    /**
+     * BEP 33 "BFpe" filter, the returned array must not be modified.
+     * @return byte[]
+     */
+    public byte[] getPeerFilter() {
+        return this.peerFilter;
+    }
+
+    /**
+     * Updates whether a peer is a seed.
+     * @param peer  DHTPeer
+     * @param seed  whether peer is a seed
+     */
+    public void updateSeed(final DHTPeer peer, final boolean seed) {
+
+        if (peer.isSeed() != seed) {
+            peer.setSeed(seed);
+            rebuildScrapeFilters();
+        }
+    }
+
+    /**
+     * Adds a peer to the scrape filters.
+     * @param peer  DHTPeer
+     */
+    private void addScrapePeer(final DHTPeer peer) {
+
+        int indexes = peer.getScrapeIndexes();
+
+        if (indexes >= 0) {
+            byte[] filter = Arrays.copyOf(peer.isSeed() ? this.seedFilter
+                    : this.peerFilter, ScrapeFilter.SIZE);
+            ScrapeFilter.add(filter, indexes);
+
+            if (peer.isSeed()) {
+                this.seedFilter = filter;
+            } else {
+                this.peerFilter = filter;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the scrape filters from the current peers, bits cannot be
+     * removed from a Bloom filter.
+     */
+    private void rebuildScrapeFilters() {
+
+        byte[] seeds = new byte[ScrapeFilter.SIZE];
+        byte[] leechers = new byte[ScrapeFilter.SIZE];
+
+        if (this.peers != null) {
+            for (DHTPeer peer : this.peers.keySet()) {
+
+                int indexes = peer.getScrapeIndexes();
+
+                if (indexes >= 0) {
+                    ScrapeFilter.add(peer.isSeed() ? seeds : leechers,
+                            indexes);
+                }
+            }
+        }
+
+        this.seedFilter = seeds;
+        this.peerFilter = leechers;
     }
 
     /**
-     * Adds a peer.
+     * Compact IPv4 peers, the returned array must not be modified.
+     * @return byte[][]
+     */
+    public byte[][] getCompactPeers4() {
+        return this.compactPeers4;
+    }
+
+    /**
+     * Compact IPv6 peers, the returned array must not be modified.
+     * @return byte[][]
+     */
+    public byte[][] getCompactPeers6() {
+        return this.compactPeers6;
+    }
+
+    /**
+     * "Compact IP-address/port info" of all peers, IPv4 peers first.
+     * @return List<byte[]>
+     */
+    public List<byte[]> getCompactPeers() {
+        byte[][] peers4 = this.compactPeers4;
+        byte[][] peers6 = this.compactPeers6;
+
+        List<byte[]> list = new ArrayList<byte[]>(peers4.length
+                + peers6.length);
+        list.addAll(Arrays.asList(peers4));
+        list.addAll(Arrays.asList(peers6));
+        return list;
+    }
+
+    /**
+     * Adds the compact form of a peer to the cache.
+     * @param peer  DHTPeer
+     */
+    private void addCompactPeer(final DHTPeer peer) {
+
+        byte[] compact = peer.getCompactAddress();
+
+        if (compact != null) {
+            if (compact.length == COMPACT_IPV4_LENGTH) {
+                this.compactPeers4 = append(this.compactPeers4, compact);
+            } else {
+                this.compactPeers6 = append(this.compactPeers6, compact);
+            }
+        }
+    }
+
+    /**
+     * Removes the compact form of a peer from the cache.
+     * @param peer  DHTPeer
+     */
+    private void removeCompactPeer(final DHTPeer peer) {
+
+        byte[] compact = peer.getCompactAddress();
+
+        if (compact != null) {
+            if (compact.length == COMPACT_IPV4_LENGTH) {
+                this.compactPeers4 = remove(this.compactPeers4, compact);
+            } else {
+                this.compactPeers6 = remove(this.compactPeers6, compact);
+            }
+        }
+    }
+
+    /**
+     * @param array  byte[][]
+     * @param compact  byte[]
+     * @return byte[][]  copy of array with compact appended
+     */
+    private static byte[][] append(final byte[][] array,
+            final byte[] compact) {
+        byte[][] copy = Arrays.copyOf(array, array.length + 1);
+        copy[array.length] = compact;
+        return copy;
+    }
+
+    /**
+     * @param array  byte[][]
+     * @param compact  byte[]
+     * @return byte[][]  copy of array without compact
+     */
+    private static byte[][] remove(final byte[][] array,
+            final byte[] compact) {
+
+        for (int i = 0; i < array.length; i++) {
+
+            if (array[i] == compact) {
+                byte[][] copy = Arrays.copyOf(array, array.length - 1);
+                if (i < copy.length) {
+                    copy[i] = array[array.length - 1];
+                }
+                return copy;
+            }
+        }
+
+        return array;
+    }
+
+    /**
+     * Adds a peer, if the peer already exists the existing peer is
+     * returned.
+     * @param addr  IP Address of peer
+     * @param port   listening port of peer
+     * @return DHTPeer
+     */
+    public DHTPeer addPeer(final byte[] addr, final int port) {
+        return addPeer(addr, port, false);
+    }
+
+    /**
+     * Adds a peer, if the peer already exists the existing peer is
+     * returned unchanged.
      * @param addr  IP Address of peer
      * @param port   listening port of peer
+     * @param seed  whether a new peer is a seed
+     * @return DHTPeer
      */
-    public void addPeer(final byte[] addr, final int port) {
+    public DHTPeer addPeer(final byte[] addr, final int port,
+            final boolean seed) {
         if (this.peers == null) {
-            this.peers = new HashSet<DHTPeer>();
+            this.peers = new ConcurrentHashMap<DHTPeer, DHTPeer>();
+        }
+
+        DHTPeer peer = new DHTPeer(addr, port);
+        DHTPeer existing = this.peers.get(peer);
+
+        if (existing == null) {
+            peer.setSeed(seed);
+            this.peers.put(peer, peer);
+            addCompactPeer(peer);
+            addScrapePeer(peer);
+            existing = peer;
+        }
+
+        return existing;
+    }
+
+    /**
+     * Finds a peer.
+     * @param addr  IP Address of peer
+     * @param port   listening port of peer
+     * @return DHTPeer or null
+     */
+    public DHTPeer findPeer(final byte[] addr, final int port) {
+        return this.peers != null ? this.peers.get(new DHTPeer(addr, port))
+                : null;
+    }
+
+    /**
+     * Removes a peer.
+     * @param peer  DHTPeer
+     * @return boolean  whether peer was removed
+     */
+    public boolean removePeer(final DHTPeer peer) {
+
+        DHTPeer removed = this.peers != null ? this.peers.remove(peer) : null;
+
+        if (removed != null) {
+            removeCompactPeer(removed);
+            rebuildScrapeFilters();
         }
 
-        this.peers.add(new DHTPeer(addr, port));
+        return removed != null;
     }
 
     @Override
@@ -0,0 +1,58 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.dht;
+
+/**
+ * Chooses which InfoHash is evicted when the peer store is full.
+ *
+ * All methods except recordAccess are called while holding the
+ * lock of the DHTInfoHashRoutingTable, recordAccess is called from
+ * lookups without any lock held.
+ */
+public interface DHTInfoHashEvictionPolicy {
+
+    /**
+     * Records a new InfoHash was added to the peer store.
+     * @param infoHash  DHTInfoHash
+     */
+    void recordAdd(DHTInfoHash infoHash);
+
+    /**
+     * Records a peer announced to an existing InfoHash.
+     * @param infoHash  DHTInfoHash
+     */
+    void recordAnnounce(DHTInfoHash infoHash);
+
+    /**
+     * Records peers of an InfoHash were looked up.
+     * @param infoHash  DHTInfoHash
+     */
+    void recordAccess(DHTInfoHash infoHash);
+
+    /**
+     * Records an InfoHash was removed from the peer store.
+     * @param infoHash  DHTInfoHash
+     */
+    void recordRemove(DHTInfoHash infoHash);
+
+    /**
+     * Selects the InfoHash to evict, this may be an InfoHash that has
+     * just been added, in which case the new entry should be rejected.
+     * @return DHTInfoHash or null if there is nothing to evict
+     */
+    DHTInfoHash selectVictim();
+}
@@ -0,0 +1,66 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.dht;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Evicts the InfoHash that has gone the longest without an announce.
+ *
+ */
+public final class DHTInfoHashLRUEvictionPolicy implements
+        DHTInfoHashEvictionPolicy {
+
+    /** Initial capacity of the access ordered maps. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Load factor of the access ordered maps. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** InfoHashes ordered from least to most recently announced. */
+    private final Map<DHTInfoHash, DHTInfoHash> order =
+            new LinkedHashMap<DHTInfoHash, DHTInfoHash>(
+                    INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+    @Override
+    public void recordAdd(final DHTInfoHash infoHash) {
+        this.order.put(infoHash, infoHash);
+    }
+
+    @Override
+    public void recordAnnounce(final DHTInfoHash infoHash) {
+        this.order.get(infoHash);
+    }
+
+    @Override
+    public void recordAccess(final DHTInfoHash infoHash) {
+        // recency is only tracked by announces
+    }
+
+    @Override
+    public void recordRemove(final DHTInfoHash infoHash) {
+        this.order.remove(infoHash);
+    }
+
+    @Override
+    public DHTInfoHash selectVictim() {
+        Iterator<DHTInfoHash> itr = this.order.keySet().iterator();
+        return itr.hasNext() ? itr.next() : null;
+    }
+}
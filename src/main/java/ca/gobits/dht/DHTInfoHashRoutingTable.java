@@ -38,10 +38,49 @@ public interface DHTInfoHashRoutingTable {
     void addPeer(final byte[] infoHash, final byte[] address,
             final int port);
 
+    /**
+     * adds Peer to an info_hash.
+     * @param infoHash  info_hash
+     * @param address peer address
+     * @param port  peer port
+     * @param seed  whether the peer is a seed
+     */
+    void addPeer(final byte[] infoHash, final byte[] address,
+            final int port, final boolean seed);
+
     /**
      * Finds an Info Hash.
      * @param infoHash  info_hash
      * @return DHTInfoHash
      */
     DHTInfoHash findInfoHash(final byte[] infoHash);
+
+    /**
+     * Removes peers that have not announced within the peer expiry,
+     * InfoHashes left without peers are removed.
+     * @return int  number of peers removed
+     */
+    int expirePeers();
+
+    /**
+     * Random sample of the stored info_hashes (BEP 51), the sample is
+     * cached and replaced once the sample interval has passed.
+     * @return byte[]  concatenated 20 byte info_hashes
+     */
+    byte[] sampleInfoHashes();
+
+    /**
+     * @return int  seconds between sample_infohashes requests
+     */
+    int getSampleIntervalInSeconds();
+
+    /**
+     * @return int  number of InfoHashes
+     */
+    int getInfoHashCount();
+
+    /**
+     * @return int  number of peers across all InfoHashes
+     */
+    int getPeerCount();
 }
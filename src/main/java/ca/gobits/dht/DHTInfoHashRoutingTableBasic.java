@@ -16,13 +16,23 @@
 
 package ca.gobits.dht;
 
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 
 import ca.gobits.dht.comparator.DHTInfoHashComparator;
 import ca.gobits.dht.util.ConcurrentSortedList;
+import ca.gobits.dht.util.EventRecorder;
+import ca.gobits.dht.util.EventRecorder.EventType;
+import ca.gobits.dht.util.Events;
+import ca.gobits.dht.util.TimingWheel;
 
 /**
  * Default implemenation of the DHTPeerRoutingTable.
@@ -38,75 +48,403 @@ public final class DHTInfoHashRoutingTableBasic implements
     /** Default Maximum number of peers. */
     private static final int DEFAULT_PEER_MAX = 16;
 
+    /** Default number of minutes a peer is kept without announcing. */
+    private static final int DEFAULT_PEER_EXPIRY_IN_MINUTES = 30;
+
+    /** Length of a tick of the peer expiry wheel. */
+    private static final long PEER_EXPIRY_TICK_IN_MILLIS = 1000;
+
+    /** Number of millis in a minute. */
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
+
+    /** Default maximum number of InfoHashes in a sample. */
+    private static final int DEFAULT_SAMPLE_MAX = 20;
+
+    /** Default seconds between sample_infohashes requests. */
+    private static final int DEFAULT_SAMPLE_INTERVAL_IN_SECONDS = 21600;
+
+    /** Number of millis in a second. */
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    /** Default maximum number of peers across all InfoHashes. */
+    private static final int DEFAULT_PEER_CAPACITY = 1000000;
+
     /** list of peers. */
     private final ConcurrentSortedList<DHTInfoHash> infoHashes;
 
+    /** Schedules the expiry of announced peers. */
+    private final TimingWheel<DHTPeer> peerExpiry;
+
     /** Maxmimum number of peers allow. */
     private int peerMax = DEFAULT_PEER_MAX;
 
+    /** Number of minutes a peer is kept without announcing. */
+    private int peerExpiryInMinutes = DEFAULT_PEER_EXPIRY_IN_MINUTES;
+
+    /** Maximum number of peers across all InfoHashes. */
+    private int peerCapacity = DEFAULT_PEER_CAPACITY;
+
+    /** Number of peers across all InfoHashes. */
+    private int peerCount;
+
+    /** Chooses InfoHashes to evict when peer capacity is reached. */
+    private volatile DHTInfoHashEvictionPolicy evictionPolicy;
+
+    /** Maximum number of InfoHashes in a sample. */
+    private int sampleMax = DEFAULT_SAMPLE_MAX;
+
+    /** Seconds between sample_infohashes requests. */
+    private int sampleIntervalInSeconds = DEFAULT_SAMPLE_INTERVAL_IN_SECONDS;
+
+    /** Cached sample of InfoHashes. */
+    private volatile byte[] sample;
+
+    /** Time in millis the cached sample is replaced. */
+    private volatile long sampleExpires;
+
+    /** Number of InfoHashes evicted. */
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /** Number of lookups that found peers. */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /** Number of lookups that found no peers. */
+    private final AtomicLong missCount = new AtomicLong();
+
     /**
      * constructor.
      */
     public DHTInfoHashRoutingTableBasic() {
         this.infoHashes = new ConcurrentSortedList<DHTInfoHash>(
                 DHTInfoHashComparator.getInstance(), false);
+        this.peerExpiry = new TimingWheel<DHTPeer>(PEER_EXPIRY_TICK_IN_MILLIS);
+        this.evictionPolicy = new DHTInfoHashTinyLFUEvictionPolicy(
+                DEFAULT_PEER_CAPACITY);
     }
 
     @Override
     public Collection<DHTPeer> findPeers(final byte[] infoHash) {
 
-        Collection<DHTPeer> peers = null;
-
-        LOGGER.debug("findPeers: looking for peers for "
-                + Arrays.toString(infoHash));
-
-        DHTInfoHash peer = this.infoHashes.get(new DHTInfoHash(infoHash));
-
-        if (peer != null) {
-
-            peers = peer.getPeers();
-            LOGGER.debug("found " + peers.size() + " peers");
-
-        } else {
-            LOGGER.info("found 0 peers");
-        }
-
-        return peers;
+        DHTInfoHash peer = findInfoHash(infoHash);
+        return peer != null ? peer.getPeers() : null;
     }
 
     @Override
     public void addPeer(final byte[] infoHashId, final byte[] address,
             final int port) {
+        addPeer(infoHashId, address, port, false);
+    }
+
+    @Override
+    public void addPeer(final byte[] infoHashId, final byte[] address,
+            final int port, final boolean seed) {
+        addPeer(infoHashId, address, port, seed, System.currentTimeMillis());
+    }
+
+    /**
+     * adds Peer to an info_hash.
+     * @param infoHashId  info_hash
+     * @param address peer address
+     * @param port  peer port
+     * @param now  time in millis of the announce
+     */
+    public void addPeer(final byte[] infoHashId, final byte[] address,
+            final int port, final long now) {
+        addPeer(infoHashId, address, port, false, now);
+    }
+
+    /**
+     * adds Peer to an info_hash.
+     * @param infoHashId  info_hash
+     * @param address peer address
+     * @param port  peer port
+     * @param seed  whether the peer is a seed
+     * @param now  time in millis of the announce
+     */
+    public synchronized void addPeer(final byte[] infoHashId,
+            final byte[] address, final int port, final boolean seed,
+            final long now) {
 
-        // TODO ping peers every so often..
         LOGGER.debug("addPeer: " + Arrays.toString(infoHashId) + " "
                 + java.util.Arrays.toString(address) + " port " + port);
 
-        DHTInfoHash infoHash = new DHTInfoHash(infoHashId);
+        expirePeers(now);
+
         DHTInfoHash result = this.infoHashes.get(
                 new DHTInfoHash(infoHashId));
 
         if (result == null) {
             LOGGER.debug("InfoHash " + Arrays.toString(infoHashId)
                     + " not found..... adding to list");
-            result = infoHash;
+            result = new DHTInfoHash(infoHashId);
             this.infoHashes.add(result);
+            this.evictionPolicy.recordAdd(result);
+        } else {
+            this.evictionPolicy.recordAnnounce(result);
         }
 
         LOGGER.debug("adding peer " + java.util.Arrays.toString(address)
                 + " port " + port + " to info hash "
                 + Arrays.toString(infoHashId));
 
-        if (result.getPeerCount() < (this.peerMax - 1)) {
-            result.addPeer(address, port);
+        DHTPeer peer = result.findPeer(address, port);
+
+        if (peer == null) {
+
+            if (result.getPeerCount() >= (this.peerMax - 1)) {
+                LOGGER.debug("maximum number of peers reached.");
+            } else if (makeRoom(result)) {
+                peer = result.addPeer(address, port, seed);
+                peer.setInfoHash(result);
+                this.peerCount++;
+            }
+
+        } else {
+            result.updateSeed(peer, seed);
+        }
+
+        if (peer != null) {
+            schedulePeerExpiry(peer, now);
+        }
+    }
+
+    /**
+     * Evicts InfoHashes until there is room for another peer.
+     * If the eviction policy selects the InfoHash the peer is being
+     * added to, the peer is rejected instead.
+     * @param candidate  InfoHash the peer is being added to
+     * @return boolean  whether there is room for the peer
+     */
+    private boolean makeRoom(final DHTInfoHash candidate) {
+
+        boolean room = true;
+
+        while (room && this.peerCount >= this.peerCapacity) {
+
+            DHTInfoHash victim = this.evictionPolicy.selectVictim();
+
+            if (victim == null || victim == candidate) {
+                room = false;
+            } else {
+                evict(victim);
+            }
+        }
+
+        if (!room) {
+            LOGGER.debug("peer capacity reached, rejecting peer for "
+                    + Arrays.toString(candidate.getInfoHash()));
+
+            if (candidate.getPeerCount() == 0) {
+                removeInfoHash(candidate);
+            }
+        }
+
+        return room;
+    }
+
+    /**
+     * Evicts an InfoHash and all of its peers.
+     * @param infoHash  DHTInfoHash
+     */
+    private void evict(final DHTInfoHash infoHash) {
+
+        LOGGER.debug("evicting info hash "
+                + Arrays.toString(infoHash.getInfoHash()));
+
+        EventRecorder recorder = Events.getRecorder();
+        Object event = recorder.begin(EventType.PEER_EVICTION);
+        int peers = infoHash.getPeerCount();
+
+        if (infoHash.getPeers() != null) {
+            for (DHTPeer peer : infoHash.getPeers()) {
+                if (peer.getExpiry() != null) {
+                    this.peerExpiry.cancel(peer.getExpiry());
+                }
+            }
+        }
+
+        this.peerCount -= peers;
+        removeInfoHash(infoHash);
+        this.evictionCount.incrementAndGet();
+
+        recorder.commitPeerEviction(event, peers);
+    }
+
+    /**
+     * Removes an InfoHash from the table and the eviction policy.
+     * @param infoHash  DHTInfoHash
+     */
+    private void removeInfoHash(final DHTInfoHash infoHash) {
+        this.infoHashes.remove(infoHash);
+        this.evictionPolicy.recordRemove(infoHash);
+    }
+
+    /**
+     * Schedules the peer to expire after the peer expiry,
+     * moving any existing expiry.
+     * @param peer  DHTPeer
+     * @param now  time in millis of the announce
+     */
+    private void schedulePeerExpiry(final DHTPeer peer, final long now) {
+
+        long deadline = now + this.peerExpiryInMinutes * MILLIS_PER_MINUTE;
+        peer.setAnnounced(now);
+
+        if (peer.getExpiry() == null) {
+            peer.setExpiry(this.peerExpiry.schedule(peer, deadline));
         } else {
-            LOGGER.debug("maximum number of peers reached.");
+            this.peerExpiry.reschedule(peer.getExpiry(), deadline);
         }
     }
 
+    @Override
+    public int expirePeers() {
+        return expirePeers(System.currentTimeMillis());
+    }
+
+    /**
+     * Removes peers that have not announced within the peer expiry,
+     * InfoHashes left without peers are removed.
+     * @param now  current time in millis
+     * @return int  number of peers removed
+     */
+    public synchronized int expirePeers(final long now) {
+
+        List<DHTPeer> expired = new ArrayList<DHTPeer>();
+        int count = this.peerExpiry.advance(now, expired);
+
+        for (DHTPeer peer : expired) {
+
+            DHTInfoHash infoHash = peer.getInfoHash();
+            if (infoHash.removePeer(peer)) {
+                this.peerCount--;
+            }
+
+            if (infoHash.getPeerCount() == 0) {
+                removeInfoHash(infoHash);
+            }
+        }
+
+        if (count > 0) {
+            LOGGER.debug("expired " + count + " peers");
+        }
+
+        return count;
+    }
+
     @Override
     public DHTInfoHash findInfoHash(final byte[] infoHash) {
-        return this.infoHashes.get(new DHTInfoHash(infoHash));
+
+        LOGGER.debug("findInfoHash: looking for peers for "
+                + Arrays.toString(infoHash));
+
+        DHTInfoHash peer = this.infoHashes.get(new DHTInfoHash(infoHash));
+
+        if (peer != null) {
+            this.evictionPolicy.recordAccess(peer);
+        }
+
+        if (peer != null && peer.getPeerCount() > 0) {
+            this.hitCount.incrementAndGet();
+            LOGGER.debug("found " + peer.getPeerCount() + " peers");
+        } else {
+            this.missCount.incrementAndGet();
+            LOGGER.debug("found 0 peers");
+        }
+
+        return peer;
+    }
+
+    @Override
+    public byte[] sampleInfoHashes() {
+        return sampleInfoHashes(System.currentTimeMillis());
+    }
+
+    /**
+     * Random sample of the stored info_hashes, the sample is cached and
+     * replaced once the sample interval has passed.  An empty sample is
+     * not cached, so InfoHashes are advertised as soon as there are any.
+     * @param now  current time in millis
+     * @return byte[]  concatenated 20 byte info_hashes
+     */
+    public byte[] sampleInfoHashes(final long now) {
+
+        if (this.sample == null || now >= this.sampleExpires) {
+            refreshSample(now);
+        }
+
+        return this.sample;
+    }
+
+    /**
+     * Picks a new sample of distinct InfoHashes using Floyd's algorithm,
+     * reading only the sampled positions of the list.
+     * @param now  current time in millis
+     */
+    private synchronized void refreshSample(final long now) {
+
+        if (this.sample != null && now < this.sampleExpires) {
+            return;
+        }
+
+        Random random = ThreadLocalRandom.current();
+        int size = this.infoHashes.size();
+        int count = Math.min(this.sampleMax, size);
+        int[] indexes = new int[count];
+        int pos = 0;
+
+        for (int j = size - count; j < size; j++) {
+
+            int index = random.nextInt(j + 1);
+
+            for (int i = 0; i < pos; i++) {
+                if (indexes[i] == index) {
+                    index = j;
+                    break;
+                }
+            }
+
+            indexes[pos++] = index;
+        }
+
+        ByteArrayOutputStream bs = new ByteArrayOutputStream();
+
+        for (int index : indexes) {
+            byte[] infoHash = this.infoHashes.get(index).getInfoHash();
+            bs.write(infoHash, 0, infoHash.length);
+        }
+
+        this.sample = bs.toByteArray();
+        this.sampleExpires = count > 0 ? now + this.sampleIntervalInSeconds
+                * MILLIS_PER_SECOND : now;
+    }
+
+    @Override
+    public int getSampleIntervalInSeconds() {
+        return this.sampleIntervalInSeconds;
+    }
+
+    /**
+     * Sets the seconds between sample_infohashes requests.
+     * @param seconds  int
+     */
+    public void setSampleIntervalInSeconds(final int seconds) {
+        this.sampleIntervalInSeconds = seconds;
+    }
+
+    /**
+     * @return int  maximum number of InfoHashes in a sample
+     */
+    public int getSampleMax() {
+        return this.sampleMax;
+    }
+
+    /**
+     * Sets the maximum number of InfoHashes in a sample.
+     * @param max  int
+     */
+    public void setSampleMax(final int max) {
+        this.sampleMax = max;
     }
 
     /**
@@ -123,4 +461,92 @@ public final class DHTInfoHashRoutingTableBasic implements
     public void setPeerMax(final int max) {
         this.peerMax = max;
     }
+
+    /**
+     * @return int
+     */
+    public int getPeerExpiryInMinutes() {
+        return this.peerExpiryInMinutes;
+    }
+
+    /**
+     * Sets the number of minutes a peer is kept without announcing.
+     * @param minutes  int
+     */
+    public void setPeerExpiryInMinutes(final int minutes) {
+        this.peerExpiryInMinutes = minutes;
+    }
+
+    @Override
+    public int getInfoHashCount() {
+        return this.infoHashes.size();
+    }
+
+    /**
+     * @return int  maximum number of peers across all InfoHashes
+     */
+    public int getPeerCapacity() {
+        return this.peerCapacity;
+    }
+
+    /**
+     * Sets the maximum number of peers across all InfoHashes, a TinyLFU
+     * eviction policy is rebuilt so its sketch is sized for the capacity.
+     * @param capacity  int
+     */
+    public synchronized void setPeerCapacity(final int capacity) {
+
+        this.peerCapacity = capacity;
+
+        if (this.evictionPolicy instanceof DHTInfoHashTinyLFUEvictionPolicy) {
+            setEvictionPolicy(new DHTInfoHashTinyLFUEvictionPolicy(capacity));
+        }
+    }
+
+    /**
+     * @return DHTInfoHashEvictionPolicy
+     */
+    public DHTInfoHashEvictionPolicy getEvictionPolicy() {
+        return this.evictionPolicy;
+    }
+
+    /**
+     * Sets the eviction policy, existing InfoHashes are added to it.
+     * @param policy  DHTInfoHashEvictionPolicy
+     */
+    public synchronized void setEvictionPolicy(
+            final DHTInfoHashEvictionPolicy policy) {
+
+        for (DHTInfoHash infoHash : this.infoHashes) {
+            policy.recordAdd(infoHash);
+        }
+
+        this.evictionPolicy = policy;
+    }
+
+    @Override
+    public synchronized int getPeerCount() {
+        return this.peerCount;
+    }
+
+    /**
+     * @return long  number of InfoHashes evicted
+     */
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    /**
+     * @return long  number of lookups that found peers
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * @return long  number of lookups that found no peers
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
 }
@@ -0,0 +1,144 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.dht;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ca.gobits.dht.util.FrequencySketch;
+
+/**
+ * W-TinyLFU eviction of InfoHashes.
+ *
+ * New InfoHashes enter a small LRU window and then graduate into the main
+ * LRU region.  When room is needed the oldest entry of the window competes
+ * against the oldest entry of the main region and the one that has been
+ * announced to or looked up less often, according to a FrequencySketch,
+ * is evicted.  A burst of announces for random InfoHashes therefore cannot
+ * push popular torrents out of the peer store.
+ */
+public final class DHTInfoHashTinyLFUEvictionPolicy implements
+        DHTInfoHashEvictionPolicy {
+
+    /** Initial capacity of the access ordered maps. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Load factor of the access ordered maps. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** Percentage of entries kept in the window. */
+    private static final int WINDOW_PERCENT = 1;
+
+    /** Percent. */
+    private static final int PERCENT = 100;
+
+    /** Most recently added InfoHashes. */
+    private final Map<DHTInfoHash, DHTInfoHash> window =
+            new LinkedHashMap<DHTInfoHash, DHTInfoHash>(
+                    INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+    /** InfoHashes that have left the window. */
+    private final Map<DHTInfoHash, DHTInfoHash> main =
+            new LinkedHashMap<DHTInfoHash, DHTInfoHash>(
+                    INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+    /** Access frequency of InfoHashes. */
+    private final FrequencySketch sketch;
+
+    /**
+     * constructor.
+     * @param expectedEntries  expected maximum number of InfoHashes
+     */
+    public DHTInfoHashTinyLFUEvictionPolicy(final int expectedEntries) {
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    @Override
+    public void recordAdd(final DHTInfoHash infoHash) {
+
+        this.sketch.increment(hash(infoHash));
+        this.window.put(infoHash, infoHash);
+
+        int windowMax = Math.max(1, (this.window.size() + this.main.size())
+                * WINDOW_PERCENT / PERCENT);
+
+        while (this.window.size() > windowMax) {
+            DHTInfoHash eldest = first(this.window);
+            this.window.remove(eldest);
+            this.main.put(eldest, eldest);
+        }
+    }
+
+    @Override
+    public void recordAnnounce(final DHTInfoHash infoHash) {
+
+        this.sketch.increment(hash(infoHash));
+
+        if (this.window.get(infoHash) == null) {
+            this.main.get(infoHash);
+        }
+    }
+
+    @Override
+    public void recordAccess(final DHTInfoHash infoHash) {
+        this.sketch.increment(hash(infoHash));
+    }
+
+    @Override
+    public void recordRemove(final DHTInfoHash infoHash) {
+        if (this.window.remove(infoHash) == null) {
+            this.main.remove(infoHash);
+        }
+    }
+
+    @Override
+    public DHTInfoHash selectVictim() {
+
+        DHTInfoHash candidate = first(this.window);
+        DHTInfoHash victim = first(this.main);
+
+        if (candidate == null) {
+            return victim;
+        }
+
+        if (victim == null) {
+            return candidate;
+        }
+
+        return this.sketch.frequency(hash(candidate))
+                > this.sketch.frequency(hash(victim)) ? victim : candidate;
+    }
+
+    /**
+     * @param infoHash  DHTInfoHash
+     * @return int  hash of the InfoHash identifier
+     */
+    private int hash(final DHTInfoHash infoHash) {
+        return Arrays.hashCode(infoHash.getInfoHash());
+    }
+
+    /**
+     * @param map  Map
+     * @return DHTInfoHash  least recently used entry or null
+     */
+    private DHTInfoHash first(final Map<DHTInfoHash, DHTInfoHash> map) {
+        Iterator<DHTInfoHash> itr = map.keySet().iterator();
+        return itr.hasNext() ? itr.next() : null;
+    }
+}
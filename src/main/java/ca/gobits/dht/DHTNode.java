@@ -185,6 +185,20 @@ public class DHTNode implements Serializable {
         this.lowAddress = low;
     }
 
+    /**
+     * @return UnsignedLong  IPv4 address or first 64 bits of IPv6 address
+     */
+    public UnsignedLong getHighAddress() {
+        return this.highAddress;
+    }
+
+    /**
+     * @return UnsignedLong  last 64 bits of IPv6 address or null
+     */
+    public UnsignedLong getLowAddress() {
+        return this.lowAddress;
+    }
+
     /**
      * @return int
      */
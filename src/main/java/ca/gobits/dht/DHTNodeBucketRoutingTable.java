@@ -23,7 +23,9 @@ import static ca.gobits.dht.util.DHTConversion.fitToSize;
 import java.math.BigInteger;
 import java.net.Inet6Address;
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -34,8 +36,13 @@ import ca.gobits.dht.comparator.DHTNodeComparator;
 import ca.gobits.dht.factory.DHTNodeFactory;
 import ca.gobits.dht.util.ConcurrentSortedList;
 import ca.gobits.dht.util.DHTConversion;
+import ca.gobits.dht.util.EventRecorder;
+import ca.gobits.dht.util.EventRecorder.EventType;
+import ca.gobits.dht.util.Events;
 import ca.gobits.dht.util.SortedCollection;
 
+import com.google.common.primitives.UnsignedBytes;
+
 /**
  * Implementation of DHT Bucket Routing Table.
  *
@@ -49,7 +56,11 @@ public final class DHTNodeBucketRoutingTable implements DHTNodeRoutingTable {
             .getLogger(DHTNodeBucketRoutingTable.class);
 
     /** Maximum number of nodes Routing Table holds. */
-    private static final int MAX_NUMBER_OF_NODES = 1000000;
+    public static final int MAX_NUMBER_OF_NODES = 1000000;
+
+    /** Comparator used to compare node identifiers. */
+    private static final Comparator<byte[]> ID_COMPARATOR = UnsignedBytes
+            .lexicographicalComparator();
 
     /** IPv4 nodes. */
     private final SortedCollection<DHTNode> nodes;
@@ -66,17 +77,46 @@ public final class DHTNodeBucketRoutingTable implements DHTNodeRoutingTable {
     /** Node ID of Host. */
     private final byte[] id;
 
+    /** Maximum number of nodes this Routing Table holds. */
+    private final int maxNodeCount;
+
     /**
      * Is Routing Table in ServerMode. Maximizes number of nodes to store.
      */
     private boolean serverMode;
 
+    /** Limits on nodes per IP address and subnet, null for none. */
+    private DHTNodeDiversity diversity;
+
     /**
      * constructor.
      * @param nodeId  Host Identifier
      */
     public DHTNodeBucketRoutingTable(final byte[] nodeId) {
+        this(nodeId, new byte[NODE_ID_LENGTH], maxNodeId(),
+                MAX_NUMBER_OF_NODES);
+    }
+
+    /**
+     * @return byte[]  largest node identifier
+     */
+    private static byte[] maxNodeId() {
+        byte[] max = new byte[NODE_ID_LENGTH];
+        Arrays.fill(max, (byte) -1);
+        return max;
+    }
+
+    /**
+     * constructor for a Routing Table covering part of the ID space.
+     * @param nodeId  Host Identifier
+     * @param min  start of the ID range
+     * @param max  end of the ID range
+     * @param maxNodes  maximum number of nodes
+     */
+    public DHTNodeBucketRoutingTable(final byte[] nodeId, final byte[] min,
+            final byte[] max, final int maxNodes) {
         this.id = nodeId;
+        this.maxNodeCount = maxNodes;
         this.nodes = new ConcurrentSortedList<DHTNode>(
                 DHTNodeComparator.getInstance(), false);
         this.nodes6 = new ConcurrentSortedList<DHTNode>(
@@ -87,18 +127,15 @@ public final class DHTNodeBucketRoutingTable implements DHTNodeRoutingTable {
         this.buckets6 = new ConcurrentSortedList<DHTBucket>(
                 DHTBucketComparator.getInstance(), false);
 
-        addDefaultBuckets();
+        addDefaultBuckets(min, max);
     }
 
     /**
      * Add default buckets.
+     * @param min  start of the ID range
+     * @param max  end of the ID range
      */
-    private void addDefaultBuckets() {
-        byte[] min = new byte[] {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-                0, 0, 0, 0, 0 };
-        byte[] max = new byte[] {-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
-                -1, -1, -1, -1, -1, -1, -1, -1, -1 };
-
+    private void addDefaultBuckets(final byte[] min, final byte[] max) {
         this.buckets.add(new DHTBucket(min, max));
         this.buckets6.add(new DHTBucket(min, max));
     }
@@ -126,7 +163,7 @@ public final class DHTNodeBucketRoutingTable implements DHTNodeRoutingTable {
 
         DHTNode n = node;
 
-        if (this.nodes.size() < MAX_NUMBER_OF_NODES) {
+        if (this.nodes.size() < this.maxNodeCount) {
 
             boolean ipv6 = addr instanceof Inet6Address;
             DHTBucket bucket = findBucket(node.getInfoHash(), ipv6);
@@ -138,7 +175,7 @@ public final class DHTNodeBucketRoutingTable implements DHTNodeRoutingTable {
         } else {
 
             LOGGER.warn("MAXIMUM number of noded reached "
-                    + MAX_NUMBER_OF_NODES);
+                    + this.maxNodeCount);
 
             n = null;
         }
@@ -157,6 +194,16 @@ public final class DHTNodeBucketRoutingTable implements DHTNodeRoutingTable {
 
         if (!bucket.isFull()) {
 
+            if (this.diversity != null
+                    && !this.diversity.tryAdd(node, findNodes(bucket, ipv6))) {
+
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("too many nodes from address of " + node);
+                }
+
+                return;
+            }
+
             SortedCollection<DHTNode> nodeList = getNodes(ipv6);
             nodeList.add(node);
 
@@ -164,11 +211,17 @@ public final class DHTNodeBucketRoutingTable implements DHTNodeRoutingTable {
 
         } else if (this.serverMode || bucket.isInRange(this.id)) {
 
+            EventRecorder recorder = Events.getRecorder();
+            Object event = recorder.begin(EventType.BUCKET_SPLIT);
+
             DHTBucket nb = splitBucket(bucket, ipv6);
 
             SortedCollection<DHTBucket> bucketList = getBuckets(ipv6);
             bucketList.add(nb);
 
+            recorder.commitBucketSplit(event, ipv6, bucket.getNodeCount(),
+                    nb.getNodeCount());
+
             DHTBucket nextBucket = findBucket(node.getInfoHash(), ipv6);
             addNode(nextBucket, node, ipv6);
         }
@@ -236,6 +289,31 @@ public final class DHTNodeBucketRoutingTable implements DHTNodeRoutingTable {
         return r;
     }
 
+    @Override
+    public List<DHTNode> findNodes(final DHTBucket bucket,
+            final boolean ipv6) {
+
+        List<DHTNode> list = new ArrayList<DHTNode>(bucket.getNodeCount());
+        SortedCollection<DHTNode> nodeList = getNodes(ipv6);
+
+        // nodes are sorted by id so the bucket's nodes are next to each other
+        int i = Math.max(0, indexOf(bucket.getMin(), ipv6) - 1);
+
+        for (; i < nodeList.size(); i++) {
+
+            DHTNode node = nodeList.get(i);
+            byte[] infoHash = node.getInfoHash();
+
+            if (bucket.isInRange(infoHash)) {
+                list.add(node);
+            } else if (ID_COMPARATOR.compare(infoHash, bucket.getMax()) > 0) {
+                break;
+            }
+        }
+
+        return list;
+    }
+
     /**
      * Print debug information on adding a node. (LOGGER.isDebugEnabled())
      * @param node  DHTNode
@@ -262,10 +340,11 @@ public final class DHTNodeBucketRoutingTable implements DHTNodeRoutingTable {
 
         DHTNode nodeMatch = null;
         DHTNode node = DHTNodeFactory.create(nodeId, DHTNode.State.UNKNOWN);
-        int index = this.nodes.indexOf(node);
+        SortedCollection<DHTNode> nodeList = getNodes(ipv6);
+        int index = nodeList.indexOf(node);
 
-        if (index >= 0 && index < this.nodes.size()) {
-            DHTNode foundNode = this.nodes.get(index);
+        if (index >= 0 && index < nodeList.size()) {
+            DHTNode foundNode = nodeList.get(index);
             if (Arrays.equals(foundNode.getInfoHash(), nodeId)) {
                 nodeMatch = foundNode;
             }
@@ -335,7 +414,7 @@ public final class DHTNodeBucketRoutingTable implements DHTNodeRoutingTable {
         lowIndex = lowIndex < 0 ? 0 : lowIndex;
         hiIndex = hiIndex < size ? hiIndex : size;
 
-        return this.nodes.subList(lowIndex, hiIndex);
+        return nodeList.subList(lowIndex, hiIndex);
     }
 
     /**
@@ -384,8 +463,7 @@ public final class DHTNodeBucketRoutingTable implements DHTNodeRoutingTable {
      * @return int[]
      */
     private int[] maxDistance() {
-        byte[] nodeId = DHTIdentifier.getRandomNodeId();
-        int[] distance = new int[nodeId.length];
+        int[] distance = new int[NODE_ID_LENGTH];
         Arrays.fill(distance, BYTE_TO_INT);
         return distance;
     }
@@ -421,13 +499,26 @@ public final class DHTNodeBucketRoutingTable implements DHTNodeRoutingTable {
 
     @Override
     public int getMaxNodeCount() {
-        return MAX_NUMBER_OF_NODES;
+        return this.maxNodeCount;
     }
 
     @Override
     public void clear() {
         this.nodes.clear();
         this.nodes6.clear();
+
+        if (this.diversity != null) {
+            this.diversity.clear();
+        }
+    }
+
+    /**
+     * Sets the limits on nodes per IP address and subnet, the limits only
+     * apply to nodes added afterwards.
+     * @param limits  DHTNodeDiversity or null for none
+     */
+    public void setDiversity(final DHTNodeDiversity limits) {
+        this.diversity = limits;
     }
 
     /**
@@ -449,6 +540,11 @@ public final class DHTNodeBucketRoutingTable implements DHTNodeRoutingTable {
         return ipv6 ? getBuckets6() : getBuckets();
     }
 
+    @Override
+    public int getBucketCount(final boolean ipv6) {
+        return getBuckets(ipv6).size();
+    }
+
     /**
      * @return boolean
      */
@@ -468,10 +564,16 @@ public final class DHTNodeBucketRoutingTable implements DHTNodeRoutingTable {
     public boolean removeNode(final DHTNode node) {
 
         SortedCollection<DHTNode> nodeList = getNodes(node.isIpv6());
+        DHTNode existing = this.diversity != null
+                ? findExactNode(node.getInfoHash(), node.isIpv6()) : null;
         boolean result = nodeList.remove(node);
 
         if (result) {
 
+            if (existing != null) {
+                this.diversity.remove(existing);
+            }
+
             DHTBucket bucket = findBucket(node.getInfoHash(), node.isIpv6());
             bucket.decrementCount();
         }
@@ -0,0 +1,233 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht;
+
+import java.util.List;
+
+import ca.gobits.dht.util.LongIntHashMap;
+
+import com.google.common.primitives.UnsignedLong;
+
+/**
+ * Limits how many nodes of one IP address and of one subnet, /24 for IPv4
+ * and /64 for IPv6, a routing table and each of its buckets hold, so a
+ * single host or network cannot fill whole ranges of the table.
+ *
+ * Table wide counts are kept in LongIntHashMaps keyed by address, bucket
+ * counts are found by looking at the bucket's nodes, of which there are at
+ * most DHTBucket.MAX_NODE_COUNT.  A limit of 0 disables it.
+ */
+public final class DHTNodeDiversity {
+
+    /** Bits of an IPv4 address outside its /24 subnet. */
+    private static final int IPV4_HOST_BITS = 8;
+
+    /** Multiplier folding an IPv6 address into a long. */
+    private static final long FOLD = 0x9e3779b97f4a7c15L;
+
+    /** Maximum nodes of an IP address in the table. */
+    private final int maxPerIp;
+
+    /** Maximum nodes of a subnet in the table. */
+    private final int maxPerSubnet;
+
+    /** Maximum nodes of an IP address in a bucket. */
+    private final int maxPerIpInBucket;
+
+    /** Maximum nodes of a subnet in a bucket. */
+    private final int maxPerSubnetInBucket;
+
+    /** Number of IPv4 nodes by IP address. */
+    private final LongIntHashMap ips = new LongIntHashMap();
+
+    /** Number of IPv4 nodes by subnet. */
+    private final LongIntHashMap subnets = new LongIntHashMap();
+
+    /** Number of IPv6 nodes by IP address. */
+    private final LongIntHashMap ips6 = new LongIntHashMap();
+
+    /** Number of IPv6 nodes by subnet. */
+    private final LongIntHashMap subnets6 = new LongIntHashMap();
+
+    /**
+     * constructor.
+     * @param perIp  maximum nodes of an IP address in the table
+     * @param perSubnet  maximum nodes of a subnet in the table
+     * @param perIpInBucket  maximum nodes of an IP address in a bucket
+     * @param perSubnetInBucket  maximum nodes of a subnet in a bucket
+     */
+    public DHTNodeDiversity(final int perIp, final int perSubnet,
+            final int perIpInBucket, final int perSubnetInBucket) {
+        this.maxPerIp = perIp;
+        this.maxPerSubnet = perSubnet;
+        this.maxPerIpInBucket = perIpInBucket;
+        this.maxPerSubnetInBucket = perSubnetInBucket;
+    }
+
+    /**
+     * Counts a node that is about to be added to a bucket, unless that
+     * would exceed a limit.
+     * @param node  node to add
+     * @param bucketNodes  nodes already in the bucket
+     * @return boolean  whether node may be added
+     */
+    public synchronized boolean tryAdd(final DHTNode node,
+            final List<DHTNode> bucketNodes) {
+
+        if (node.getHighAddress() == null) {
+            return true;
+        }
+
+        long ip = ipKey(node);
+        long subnet = subnetKey(node);
+        boolean ipv6 = node.isIpv6();
+
+        boolean allowed = isBelow(getIps(ipv6).get(ip), this.maxPerIp)
+                && isBelow(getSubnets(ipv6).get(subnet), this.maxPerSubnet)
+                && isBucketBelow(bucketNodes, ip, subnet);
+
+        if (allowed) {
+            getIps(ipv6).increment(ip);
+            getSubnets(ipv6).increment(subnet);
+        }
+
+        return allowed;
+    }
+
+    /**
+     * Stops counting a node that was removed.
+     * @param node  removed node
+     */
+    public synchronized void remove(final DHTNode node) {
+
+        if (node.getHighAddress() != null) {
+            boolean ipv6 = node.isIpv6();
+            getIps(ipv6).decrement(ipKey(node));
+            getSubnets(ipv6).decrement(subnetKey(node));
+        }
+    }
+
+    /**
+     * Stops counting all nodes.
+     */
+    public synchronized void clear() {
+        this.ips.clear();
+        this.subnets.clear();
+        this.ips6.clear();
+        this.subnets6.clear();
+    }
+
+    /**
+     * @param node  node
+     * @return int  number of counted nodes with the node's IP address
+     */
+    public synchronized int getIpCount(final DHTNode node) {
+        return getIps(node.isIpv6()).get(ipKey(node));
+    }
+
+    /**
+     * @param node  node
+     * @return int  number of counted nodes in the node's subnet
+     */
+    public synchronized int getSubnetCount(final DHTNode node) {
+        return getSubnets(node.isIpv6()).get(subnetKey(node));
+    }
+
+    /**
+     * @param bucketNodes  nodes in the bucket
+     * @param ip  IP address key of the new node
+     * @param subnet  subnet key of the new node
+     * @return boolean  whether the bucket is below its limits
+     */
+    private boolean isBucketBelow(final List<DHTNode> bucketNodes,
+            final long ip, final long subnet) {
+
+        if (this.maxPerIpInBucket <= 0 && this.maxPerSubnetInBucket <= 0) {
+            return true;
+        }
+
+        int ipCount = 0;
+        int subnetCount = 0;
+
+        for (DHTNode n : bucketNodes) {
+
+            if (n.getHighAddress() != null) {
+
+                if (ipKey(n) == ip) {
+                    ipCount++;
+                }
+
+                if (subnetKey(n) == subnet) {
+                    subnetCount++;
+                }
+            }
+        }
+
+        return isBelow(ipCount, this.maxPerIpInBucket)
+                && isBelow(subnetCount, this.maxPerSubnetInBucket);
+    }
+
+    /**
+     * @param count  current count
+     * @param max  limit, 0 for none
+     * @return boolean  whether one more is allowed
+     */
+    private static boolean isBelow(final int count, final int max) {
+        return max <= 0 || count < max;
+    }
+
+    /**
+     * Key of a node's IP address, IPv6 addresses are folded into 64 bits.
+     * @param node  node
+     * @return long
+     */
+    private static long ipKey(final DHTNode node) {
+
+        long high = node.getHighAddress().longValue();
+        UnsignedLong low = node.getLowAddress();
+
+        return low != null ? high * FOLD ^ low.longValue() : high;
+    }
+
+    /**
+     * Key of a node's subnet, the IPv4 /24 or the IPv6 /64.
+     * @param node  node
+     * @return long
+     */
+    private static long subnetKey(final DHTNode node) {
+
+        long high = node.getHighAddress().longValue();
+        return node.isIpv6() ? high : high >>> IPV4_HOST_BITS;
+    }
+
+    /**
+     * @param ipv6  whether ipv6
+     * @return LongIntHashMap  counts by IP address
+     */
+    private LongIntHashMap getIps(final boolean ipv6) {
+        return ipv6 ? this.ips6 : this.ips;
+    }
+
+    /**
+     * @param ipv6  whether ipv6
+     * @return LongIntHashMap  counts by subnet
+     */
+    private LongIntHashMap getSubnets(final boolean ipv6) {
+        return ipv6 ? this.subnets6 : this.subnets;
+    }
+}
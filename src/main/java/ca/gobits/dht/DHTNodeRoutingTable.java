@@ -81,6 +81,14 @@ public interface DHTNodeRoutingTable {
      */
     DHTBucket findBucket(final byte[] nodeId, final boolean ipv6);
 
+    /**
+     * Finds the nodes that are in the range of a bucket.
+     * @param bucket  bucket to find nodes for
+     * @param ipv6  whether ipv6 request
+     * @return List<DHTNode>
+     */
+    List<DHTNode> findNodes(DHTBucket bucket, boolean ipv6);
+
     /**
      * @param ipv6  whether search ipv6 node list
      * @return int  number of nodes in IPv6 list.
@@ -102,4 +110,10 @@ public interface DHTNodeRoutingTable {
      * @return SortedCollection<DHTBucket>
      */
     SortedCollection<DHTBucket> getBuckets(final boolean ipv6);
+
+    /**
+     * @param ipv6 whether ipv6 request
+     * @return int  number of buckets
+     */
+    int getBucketCount(final boolean ipv6);
 }
@@ -0,0 +1,291 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht;
+
+import static ca.gobits.dht.DHTIdentifier.NODE_ID_LENGTH;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import ca.gobits.dht.DHTNode.State;
+import ca.gobits.dht.comparator.DHTBucketComparator;
+import ca.gobits.dht.comparator.DHTNodeDistanceComparator;
+import ca.gobits.dht.util.ConcurrentSortedList;
+import ca.gobits.dht.util.SortedCollection;
+
+/**
+ * Routing Table partitioned into shards by the leading bits of the node
+ * identifier.
+ *
+ * Every shard is a DHTNodeBucketRoutingTable covering its own part of the
+ * ID space, so each shard can be updated by its own writer.  Searches for
+ * the closest nodes visit the shards in order of their XOR distance to the
+ * target and merge the results.
+ */
+public final class DHTNodeShardedRoutingTable implements DHTNodeRoutingTable {
+
+    /** Maximum number of bits used to pick a shard. */
+    public static final int MAX_SHARD_BITS = 8;
+
+    /** Number of bits in a byte. */
+    private static final int BITS_PER_BYTE = 8;
+
+    /** Mask of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Shards in order of ID range. */
+    private final DHTNodeBucketRoutingTable[] shards;
+
+    /** Number of leading bits used to pick a shard. */
+    private final int shardBits;
+
+    /**
+     * constructor.
+     * @param nodeId  Host Identifier
+     * @param shardCount  number of shards, a power of two
+     */
+    public DHTNodeShardedRoutingTable(final byte[] nodeId,
+            final int shardCount) {
+
+        this.shardBits = getShardBits(shardCount);
+        this.shards = new DHTNodeBucketRoutingTable[shardCount];
+
+        int maxNodes = DHTNodeBucketRoutingTable.MAX_NUMBER_OF_NODES
+                / shardCount;
+
+        for (int i = 0; i < shardCount; i++) {
+
+            byte[] min = new byte[NODE_ID_LENGTH];
+            byte[] max = new byte[NODE_ID_LENGTH];
+            Arrays.fill(max, (byte) -1);
+
+            int prefix = i << (BITS_PER_BYTE - this.shardBits);
+            int suffix = BYTE_MASK >>> this.shardBits;
+            min[0] = (byte) prefix;
+            max[0] = (byte) (prefix | suffix);
+
+            this.shards[i] = new DHTNodeBucketRoutingTable(nodeId, min, max,
+                    maxNodes);
+        }
+    }
+
+    /**
+     * Number of leading bits needed to pick one of shardCount shards.
+     * @param shardCount  number of shards
+     * @return int
+     */
+    public static int getShardBits(final int shardCount) {
+
+        if (!isValidShardCount(shardCount)) {
+            throw new IllegalArgumentException("invalid shard count "
+                    + shardCount);
+        }
+
+        return Integer.numberOfTrailingZeros(shardCount);
+    }
+
+    /**
+     * @param shardCount  number of shards
+     * @return boolean  whether shardCount is a power of two no larger than
+     *                  2 ^ MAX_SHARD_BITS
+     */
+    public static boolean isValidShardCount(final int shardCount) {
+        return shardCount > 0 && Integer.bitCount(shardCount) == 1
+                && shardCount <= 1 << MAX_SHARD_BITS;
+    }
+
+    /**
+     * Finds the shard a node identifier belongs to.  The identifier is not
+     * checked, identifiers received from the network are validated before
+     * they reach the routing table.
+     * @param nodeId  node identifier
+     * @param shardBits  number of leading bits used to pick a shard
+     * @return int  index of shard
+     */
+    public static int getShardIndex(final byte[] nodeId,
+            final int shardBits) {
+        return (nodeId[0] & BYTE_MASK) >>> (BITS_PER_BYTE - shardBits);
+    }
+
+    /**
+     * @param nodeId  node identifier
+     * @return DHTNodeBucketRoutingTable  shard node identifier belongs to
+     */
+    private DHTNodeBucketRoutingTable getShard(final byte[] nodeId) {
+        return this.shards[getShardIndex(nodeId, this.shardBits)];
+    }
+
+    @Override
+    public DHTNode addNode(final byte[] infoHash, final InetAddress addr,
+            final int port, final State state) {
+        return getShard(infoHash).addNode(infoHash, addr, port, state);
+    }
+
+    @Override
+    public DHTNode findExactNode(final byte[] nodeId, final boolean ipv6) {
+        return getShard(nodeId).findExactNode(nodeId, ipv6);
+    }
+
+    @Override
+    public List<DHTNode> findClosestNodes(final byte[] nodeId,
+            final boolean ipv6) {
+        return findClosestNodes(nodeId, DEFAULT_SEARCH_COUNT, ipv6);
+    }
+
+    /**
+     * Every node in a shard is closer to the target than any node in a
+     * shard whose index is further from the target's shard index by XOR,
+     * so shards are visited in that order until enough nodes are found.
+     */
+    @Override
+    public List<DHTNode> findClosestNodes(final byte[] nodeId,
+            final int max, final boolean ipv6) {
+
+        List<DHTNode> list = new ArrayList<DHTNode>();
+        int index = getShardIndex(nodeId, this.shardBits);
+
+        for (int i = 0; i < this.shards.length && list.size() < max; i++) {
+
+            DHTNodeBucketRoutingTable shard = this.shards[index ^ i];
+
+            if (shard.getTotalNodeCount(ipv6) > 0) {
+                list.addAll(shard.findClosestNodes(nodeId, max - list.size(),
+                        ipv6));
+            }
+        }
+
+        Collections.sort(list, new DHTNodeDistanceComparator(nodeId));
+
+        return list.size() > max ? list.subList(0, max) : list;
+    }
+
+    @Override
+    public boolean removeNode(final DHTNode node) {
+        return getShard(node.getInfoHash()).removeNode(node);
+    }
+
+    @Override
+    public DHTBucket findBucket(final byte[] nodeId, final boolean ipv6) {
+        return getShard(nodeId).findBucket(nodeId, ipv6);
+    }
+
+    @Override
+    public List<DHTNode> findNodes(final DHTBucket bucket,
+            final boolean ipv6) {
+        return getShard(bucket.getMin()).findNodes(bucket, ipv6);
+    }
+
+    @Override
+    public int getTotalNodeCount(final boolean ipv6) {
+
+        int count = 0;
+
+        for (DHTNodeBucketRoutingTable shard : this.shards) {
+            count += shard.getTotalNodeCount(ipv6);
+        }
+
+        return count;
+    }
+
+    @Override
+    public int getMaxNodeCount() {
+
+        int count = 0;
+
+        for (DHTNodeBucketRoutingTable shard : this.shards) {
+            count += shard.getMaxNodeCount();
+        }
+
+        return count;
+    }
+
+    @Override
+    public void clear() {
+
+        for (DHTNodeBucketRoutingTable shard : this.shards) {
+            shard.clear();
+        }
+    }
+
+    /**
+     * Buckets of all shards, the list is a copy so buckets added later
+     * are not in it.  Use getBucketCount() to check for new buckets.
+     */
+    @Override
+    public SortedCollection<DHTBucket> getBuckets(final boolean ipv6) {
+
+        SortedCollection<DHTBucket> list = new ConcurrentSortedList<DHTBucket>(
+                DHTBucketComparator.getInstance(), false);
+
+        for (DHTNodeBucketRoutingTable shard : this.shards) {
+
+            SortedCollection<DHTBucket> buckets = shard.getBuckets(ipv6);
+
+            for (int i = 0; i < buckets.size(); i++) {
+                list.add(buckets.get(i));
+            }
+        }
+
+        return list;
+    }
+
+    @Override
+    public int getBucketCount(final boolean ipv6) {
+
+        int count = 0;
+
+        for (DHTNodeBucketRoutingTable shard : this.shards) {
+            count += shard.getBucketCount(ipv6);
+        }
+
+        return count;
+    }
+
+    /**
+     * Sets ServerMode on every shard.
+     * @param useServerMode whether in server mode
+     */
+    public void setServerMode(final boolean useServerMode) {
+
+        for (DHTNodeBucketRoutingTable shard : this.shards) {
+            shard.setServerMode(useServerMode);
+        }
+    }
+
+    /**
+     * Sets the limits on nodes per IP address and subnet, the shards share
+     * them so table wide limits cover the whole ID space.
+     * @param limits  DHTNodeDiversity or null for none
+     */
+    public void setDiversity(final DHTNodeDiversity limits) {
+
+        for (DHTNodeBucketRoutingTable shard : this.shards) {
+            shard.setDiversity(limits);
+        }
+    }
+
+    /**
+     * @return int  number of shards
+     */
+    public int getShardCount() {
+        return this.shards.length;
+    }
+}
@@ -20,12 +20,15 @@ import static ca.gobits.dht.util.DHTConversion.toInetAddress;
 import static ca.gobits.dht.util.DHTConversion.toInetAddressAsString;
 
 import java.net.InetAddress;
+import java.util.Arrays;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 import ca.gobits.dht.util.DHTConversion;
+import ca.gobits.dht.util.ScrapeFilter;
+import ca.gobits.dht.util.TimingWheel.Timeout;
 
 import com.google.common.primitives.UnsignedLong;
 
@@ -45,6 +48,24 @@ public final class DHTPeer {
     /** Listening port. */
     private int port;
 
+    /** Time in millis the peer last announced. */
+    private long announced;
+
+    /** InfoHash the peer announced to. */
+    private DHTInfoHash infoHash;
+
+    /** Expiry of the announce. */
+    private Timeout<DHTPeer> expiry;
+
+    /** "Compact IP-address/port info" of the peer. */
+    private byte[] compactAddress;
+
+    /** Whether the peer announced as a seed. */
+    private boolean seed;
+
+    /** Packed BEP 33 scrape filter indexes or -1. */
+    private int scrapeIndexes = -1;
+
     /**
      * default constructor.
      */
@@ -64,6 +85,7 @@ public final class DHTPeer {
         this.lowAddress = address.length > 1 ? address[1] : null;
 
         this.port = lport;
+        this.compactAddress = DHTConversion.compactAddress(addr, lport);
     }
 
     @Override
@@ -118,11 +140,104 @@ public final class DHTPeer {
         }
     }
 
+    /**
+     * "Compact IP-address/port info" of the peer, encoded once when the
+     * peer is created.
+     * @return byte[]  6 bytes for IPv4, 18 bytes for IPv6 or null
+     */
+    public byte[] getCompactAddress() {
+
+        if (this.compactAddress == null) {
+            InetAddress addr = getAddress();
+            if (addr != null) {
+                this.compactAddress = DHTConversion.compactAddress(addr,
+                        this.port);
+            }
+        }
+
+        return this.compactAddress;
+    }
+
     /**
      * @return int
      */
     public int getPort() {
         return this.port;
     }
-}
 
+    /**
+     * @return long  time in millis the peer last announced
+     */
+    public long getAnnounced() {
+        return this.announced;
+    }
+
+    /**
+     * Sets the time the peer last announced.
+     * @param time  time in millis
+     */
+    public void setAnnounced(final long time) {
+        this.announced = time;
+    }
+
+    /**
+     * @return DHTInfoHash
+     */
+    public DHTInfoHash getInfoHash() {
+        return this.infoHash;
+    }
+
+    /**
+     * Sets the InfoHash the peer announced to.
+     * @param hash  DHTInfoHash
+     */
+    public void setInfoHash(final DHTInfoHash hash) {
+        this.infoHash = hash;
+    }
+
+    /**
+     * @return Timeout<DHTPeer>
+     */
+    public Timeout<DHTPeer> getExpiry() {
+        return this.expiry;
+    }
+
+    /**
+     * Sets the expiry of the announce.
+     * @param timeout  Timeout<DHTPeer>
+     */
+    public void setExpiry(final Timeout<DHTPeer> timeout) {
+        this.expiry = timeout;
+    }
+
+    /**
+     * @return boolean  whether the peer announced as a seed
+     */
+    public boolean isSeed() {
+        return this.seed;
+    }
+
+    /**
+     * Sets whether the peer announced as a seed.
+     * @param isSeed  boolean
+     */
+    public void setSeed(final boolean isSeed) {
+        this.seed = isSeed;
+    }
+
+    /**
+     * BEP 33 scrape filter indexes, calculated once.
+     * @return int  packed indexes or -1 if address is unknown
+     */
+    public int getScrapeIndexes() {
+
+        byte[] compact = getCompactAddress();
+
+        if (this.scrapeIndexes < 0 && compact != null) {
+            this.scrapeIndexes = ScrapeFilter.indexes(
+                    Arrays.copyOf(compact, compact.length - 2));
+        }
+
+        return this.scrapeIndexes;
+    }
+}
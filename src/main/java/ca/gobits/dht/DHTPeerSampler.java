@@ -0,0 +1,94 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.dht;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Picks a uniformly random subset of compact peers that fits within a
+ * byte budget of a bencoded get_peers "values" list.
+ *
+ */
+public final class DHTPeerSampler {
+
+    /** Base of decimal length prefix. */
+    private static final int DECIMAL = 10;
+
+    /**
+     * private constructor.
+     */
+    private DHTPeerSampler() {
+    }
+
+    /**
+     * Adds a random sample of peers to values using selection sampling,
+     * so the peers array is never copied.  All peers in the array must be
+     * of the same length.
+     * @param peers  compact peers, all of the same length
+     * @param budget  maximum number of bencoded bytes to add
+     * @param random  Random
+     * @param values  list the sampled peers are added to
+     * @return int  number of peers added
+     */
+    public static int sample(final byte[][] peers, final int budget,
+            final Random random, final List<byte[]> values) {
+
+        int n = peers.length;
+
+        if (n == 0 || budget <= 0) {
+            return 0;
+        }
+
+        int k = Math.min(n, budget / bencodedLength(peers[0].length));
+
+        if (k == n) {
+
+            for (byte[] peer : peers) {
+                values.add(peer);
+            }
+
+        } else {
+
+            int remaining = k;
+
+            for (int i = 0; remaining > 0 && i < n; i++) {
+
+                if (random.nextInt(n - i) < remaining) {
+                    values.add(peers[i]);
+                    remaining--;
+                }
+            }
+        }
+
+        return k;
+    }
+
+    /**
+     * @param length  length of a byte string
+     * @return int  length of the byte string once bencoded
+     */
+    static int bencodedLength(final int length) {
+
+        int digits = 1;
+        for (int i = length; i >= DECIMAL; i /= DECIMAL) {
+            digits++;
+        }
+
+        return digits + 1 + length;
+    }
+}
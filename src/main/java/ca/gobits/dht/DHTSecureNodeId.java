@@ -0,0 +1,270 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht;
+
+import static ca.gobits.dht.DHTIdentifier.NODE_ID_LENGTH;
+
+/**
+ * Secure Node Identifiers (BEP 42).
+ *
+ * The first 21 bits of a secure node identifier are the CRC32C of the
+ * node's masked IP address and 3 random bits, which are kept in the last
+ * byte of the identifier, so a node can only pick from a handful of
+ * identifiers for each IP address it owns.
+ *
+ * Verification does not allocate, it runs for every node offered to the
+ * routing table.
+ */
+public final class DHTSecureNodeId {
+
+    /** Length of an IPv4 address. */
+    private static final int IPV4_LENGTH = 4;
+
+    /** Length of an IPv6 address. */
+    private static final int IPV6_LENGTH = 16;
+
+    /** Masks of IPv4 address bytes. */
+    private static final int[] IPV4_MASK = {0x03, 0x0f, 0x3f, 0xff };
+
+    /** Masks of the first 8 IPv6 address bytes, the rest is not used. */
+    private static final int[] IPV6_MASK = {0x01, 0x03, 0x07, 0x0f, 0x1f,
+        0x3f, 0x7f, 0xff };
+
+    /** Mask of the random bits. */
+    private static final int RANDOM_MASK = 0x07;
+
+    /** Shift of the random bits into the first address byte. */
+    private static final int RANDOM_SHIFT = 5;
+
+    /** Mask of the CRC bits in the third identifier byte. */
+    private static final int PREFIX_MASK = 0xf8;
+
+    /** Mask of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Bits in a byte. */
+    private static final int BYTE_BITS = 8;
+
+    /** Bits in two bytes. */
+    private static final int SHORT_BITS = 16;
+
+    /** Bits in three bytes. */
+    private static final int THREE_BYTE_BITS = 24;
+
+    /** Reversed CRC32C (Castagnoli) polynomial. */
+    private static final int CRC32C_POLYNOMIAL = 0x82f63b78;
+
+    /** Number of entries in the CRC table. */
+    private static final int CRC_TABLE_SIZE = 256;
+
+    /** CRC32C lookup table, one entry per byte value. */
+    private static final int[] CRC32C_TABLE = new int[CRC_TABLE_SIZE];
+
+    /** 10.0.0.0/8. */
+    private static final int PRIVATE_A = 10;
+
+    /** 172.16.0.0/12. */
+    private static final int PRIVATE_B = 172;
+
+    /** Second byte of 172.16.0.0/12. */
+    private static final int PRIVATE_B_SECOND = 0x10;
+
+    /** Mask of second byte of 172.16.0.0/12. */
+    private static final int PRIVATE_B_MASK = 0xf0;
+
+    /** 192.168.0.0/16. */
+    private static final int PRIVATE_C = 192;
+
+    /** Second byte of 192.168.0.0/16. */
+    private static final int PRIVATE_C_SECOND = 168;
+
+    /** 169.254.0.0/16. */
+    private static final int LINK_LOCAL = 169;
+
+    /** Second byte of 169.254.0.0/16. */
+    private static final int LINK_LOCAL_SECOND = 254;
+
+    /** 127.0.0.0/8. */
+    private static final int LOOPBACK = 127;
+
+    /** fc00::/7 first byte. */
+    private static final int UNIQUE_LOCAL6 = 0xfc;
+
+    /** Mask of fc00::/7 first byte. */
+    private static final int UNIQUE_LOCAL6_MASK = 0xfe;
+
+    /** fe80::/10 first byte. */
+    private static final int LINK_LOCAL6 = 0xfe;
+
+    /** fe80::/10 second byte. */
+    private static final int LINK_LOCAL6_SECOND = 0x80;
+
+    /** Mask of fe80::/10 second byte. */
+    private static final int LINK_LOCAL6_MASK = 0xc0;
+
+    static {
+        for (int i = 0; i < CRC_TABLE_SIZE; i++) {
+
+            int crc = i;
+
+            for (int j = 0; j < BYTE_BITS; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ CRC32C_POLYNOMIAL
+                        : crc >>> 1;
+            }
+
+            CRC32C_TABLE[i] = crc;
+        }
+    }
+
+    /**
+     * private constructor.
+     */
+    private DHTSecureNodeId() {
+    }
+
+    /**
+     * Creates a secure Node Identifier for an IP address.
+     * @param ip  IPv4 or IPv6 address
+     * @param random  node identifier length random bytes
+     * @return byte[]
+     */
+    public static byte[] getNodeId(final byte[] ip, final byte[] random) {
+
+        if (random.length != NODE_ID_LENGTH) {
+            throw new IllegalArgumentException("invalid random length "
+                    + random.length);
+        }
+
+        byte[] nodeId = random.clone();
+        int r = nodeId[NODE_ID_LENGTH - 1];
+        int crc = crc32c(ip, r);
+
+        nodeId[0] = (byte) (crc >>> THREE_BYTE_BITS);
+        nodeId[1] = (byte) (crc >>> SHORT_BITS);
+        nodeId[2] = (byte) (((crc >>> BYTE_BITS) & PREFIX_MASK)
+                | (nodeId[2] & RANDOM_MASK));
+
+        return nodeId;
+    }
+
+    /**
+     * Whether the Node Identifier matches the IP address, nodes on local
+     * networks are always valid.
+     * @param nodeId  node identifier
+     * @param ip  IPv4 or IPv6 address
+     * @return boolean
+     */
+    public static boolean isValid(final byte[] nodeId, final byte[] ip) {
+
+        if (isExempt(ip)) {
+            return true;
+        }
+
+        if (nodeId.length != NODE_ID_LENGTH) {
+            return false;
+        }
+
+        int crc = crc32c(ip, nodeId[NODE_ID_LENGTH - 1]);
+
+        return nodeId[0] == (byte) (crc >>> THREE_BYTE_BITS)
+                && nodeId[1] == (byte) (crc >>> SHORT_BITS)
+                && (nodeId[2] & PREFIX_MASK)
+                    == ((crc >>> BYTE_BITS) & PREFIX_MASK);
+    }
+
+    /**
+     * Whether the IP address is on a local network, which BEP 42 does not
+     * apply to.
+     * @param ip  IPv4 or IPv6 address
+     * @return boolean
+     */
+    public static boolean isExempt(final byte[] ip) {
+
+        int b0 = ip[0] & BYTE_MASK;
+        int b1 = ip[1] & BYTE_MASK;
+        boolean exempt;
+
+        if (ip.length == IPV4_LENGTH) {
+
+            exempt = b0 == PRIVATE_A || b0 == LOOPBACK
+                    || (b0 == PRIVATE_B
+                        && (b1 & PRIVATE_B_MASK) == PRIVATE_B_SECOND)
+                    || (b0 == PRIVATE_C && b1 == PRIVATE_C_SECOND)
+                    || (b0 == LINK_LOCAL && b1 == LINK_LOCAL_SECOND);
+
+        } else {
+
+            exempt = (b0 & UNIQUE_LOCAL6_MASK) == UNIQUE_LOCAL6
+                    || (b0 == LINK_LOCAL6
+                        && (b1 & LINK_LOCAL6_MASK) == LINK_LOCAL6_SECOND)
+                    || isLoopback6(ip);
+        }
+
+        return exempt;
+    }
+
+    /**
+     * @param ip  IPv6 address
+     * @return boolean  whether ip is ::1
+     */
+    private static boolean isLoopback6(final byte[] ip) {
+
+        for (int i = 0; i < ip.length - 1; i++) {
+            if (ip[i] != 0) {
+                return false;
+            }
+        }
+
+        return ip[ip.length - 1] == 1;
+    }
+
+    /**
+     * CRC32C of the masked IP address with the random bits.
+     * @param ip  IPv4 or IPv6 address
+     * @param r  random byte, the lowest 3 bits are used
+     * @return int
+     */
+    private static int crc32c(final byte[] ip, final int r) {
+
+        int[] mask;
+
+        if (ip.length == IPV4_LENGTH) {
+            mask = IPV4_MASK;
+        } else if (ip.length == IPV6_LENGTH) {
+            mask = IPV6_MASK;
+        } else {
+            throw new IllegalArgumentException("invalid address length "
+                    + ip.length);
+        }
+
+        int crc = -1;
+
+        for (int i = 0; i < mask.length; i++) {
+
+            int b = ip[i] & mask[i];
+
+            if (i == 0) {
+                b |= (r & RANDOM_MASK) << RANDOM_SHIFT;
+            }
+
+            crc = CRC32C_TABLE[(crc ^ b) & BYTE_MASK] ^ (crc >>> BYTE_BITS);
+        }
+
+        return ~crc;
+    }
+}
@@ -0,0 +1,61 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.comparator;
+
+import static ca.gobits.dht.util.DHTConversion.BYTE_TO_INT;
+
+import java.util.Comparator;
+
+import ca.gobits.dht.DHTNode;
+
+/**
+ * DHTNode Comparator that sorts by XOR distance to a target.
+ *
+ */
+public final class DHTNodeDistanceComparator implements Comparator<DHTNode> {
+
+    /** Target distances are measured to. */
+    private final byte[] target;
+
+    /**
+     * constructor.
+     * @param targetId  target distances are measured to
+     */
+    public DHTNodeDistanceComparator(final byte[] targetId) {
+        this.target = targetId;
+    }
+
+    @Override
+    public int compare(final DHTNode o1, final DHTNode o2) {
+
+        byte[] b1 = o1.getInfoHash();
+        byte[] b2 = o2.getInfoHash();
+
+        for (int i = 0; i < this.target.length; i++) {
+
+            int d1 = (b1[i] ^ this.target[i]) & BYTE_TO_INT;
+            int d2 = (b2[i] ^ this.target[i]) & BYTE_TO_INT;
+
+            if (d1 != d2) {
+                return d1 < d2 ? -1 : 1;
+            }
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,63 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.comparator;
+
+import java.util.Comparator;
+import java.util.Date;
+
+import ca.gobits.dht.DHTNode;
+
+/**
+ * DHTNode Comparator which orders nodes from the least recently seen
+ * to the most recently seen.
+ *
+ */
+public final class DHTNodeLastUpdatedComparator implements
+        Comparator<DHTNode> {
+
+    /** static comparator instance. */
+    private static DHTNodeLastUpdatedComparator comparator =
+            new DHTNodeLastUpdatedComparator();
+
+    /**
+     * @return Comparator<DHTNode>
+     */
+    public static Comparator<DHTNode> getInstance() {
+        return comparator;
+    }
+
+    /**
+     * private constructor.
+     */
+    private DHTNodeLastUpdatedComparator() {
+    }
+
+    @Override
+    public int compare(final DHTNode o1, final DHTNode o2) {
+        return Long.compare(getTime(o1), getTime(o2));
+    }
+
+    /**
+     * @param node  DHTNode
+     * @return long  time node was last seen or 0 if never seen
+     */
+    private long getTime(final DHTNode node) {
+        Date date = node.getLastUpdated();
+        return date != null ? date.getTime() : 0;
+    }
+}
@@ -0,0 +1,242 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import ca.gobits.dht.server.queue.DHTQueue;
+import ca.gobits.dht.util.PrefixTrie;
+
+import com.google.common.net.InetAddresses;
+
+/**
+ * Banned IPv4 and IPv6 addresses and CIDR blocks.
+ *
+ * The list is read from a file with one address or block per line, like
+ * "192.0.2.0/24" or "2001:db8::/32", and '#' starting a comment.  It is
+ * kept in a PrefixTrie for each address family and replaced as a whole, so
+ * lookups never wait on a reload.  As a DHTQueue it reloads the file when
+ * it has changed.
+ */
+public class DHTBanList implements DHTQueue, InitializingBean {
+
+    /** DHTBanList Logger. */
+    private static final Logger LOGGER = Logger.getLogger(DHTBanList.class);
+
+    /** Bits in an IPv4 address. */
+    private static final int IPV4_BITS = 32;
+
+    /** Bits in an IPv6 address. */
+    private static final int IPV6_BITS = 128;
+
+    /** Bits in a byte. */
+    private static final int BYTE_BITS = 8;
+
+    /** Reference to DHTServerConfig. */
+    @Autowired
+    private DHTServerConfig config;
+
+    /** Banned IPv4 blocks. */
+    private volatile PrefixTrie banned = new PrefixTrie(IPV4_BITS);
+
+    /** Banned IPv6 blocks. */
+    private volatile PrefixTrie banned6 = new PrefixTrie(IPV6_BITS);
+
+    /** File the list is read from. */
+    private File file;
+
+    /** Last modified time of the file when it was read. */
+    private volatile long lastModified;
+
+    /** Number of lookups of banned addresses. */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * default constructor.
+     */
+    public DHTBanList() {
+    }
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+
+        String name = this.config.getBanList();
+
+        if (name != null) {
+            this.file = new File(name);
+            reload();
+        }
+    }
+
+    /**
+     * Whether an address is banned.
+     * @param addr  InetAddress
+     * @return boolean
+     */
+    public boolean isBanned(final InetAddress addr) {
+
+        if (addr == null) {
+            return false;
+        }
+
+        byte[] bytes = addr.getAddress();
+        PrefixTrie trie = bytes.length * BYTE_BITS == IPV4_BITS ? this.banned
+                : this.banned6;
+
+        boolean result = trie.size() > 0 && trie.contains(bytes);
+
+        if (result) {
+            this.hits.incrementAndGet();
+        }
+
+        return result;
+    }
+
+    /**
+     * Reloads the file if it has changed since it was read, while the file
+     * is missing the current list is kept.
+     * @return int  1 if the file was reloaded
+     */
+    @Override
+    public int processQueue() {
+
+        int count = 0;
+
+        if (this.file != null && this.file.exists()
+                && this.file.lastModified() != this.lastModified) {
+
+            try {
+                reload();
+                count = 1;
+            } catch (IOException e) {
+                LOGGER.warn("unable to read ban list " + this.file, e);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Reads the file and replaces the list.
+     * @throws IOException  IOException
+     */
+    public synchronized void reload() throws IOException {
+
+        long modified = this.file.lastModified();
+        Reader reader = new InputStreamReader(new FileInputStream(this.file),
+                Charset.forName("UTF-8"));
+
+        try {
+            load(reader);
+        } finally {
+            reader.close();
+        }
+
+        this.lastModified = modified;
+    }
+
+    /**
+     * Reads a list and replaces the current one, lines that are not an
+     * address or block are skipped.
+     * @param reader  list of addresses and blocks
+     * @throws IOException  IOException
+     */
+    public void load(final Reader reader) throws IOException {
+
+        PrefixTrie trie = new PrefixTrie(IPV4_BITS);
+        PrefixTrie trie6 = new PrefixTrie(IPV6_BITS);
+        BufferedReader br = new BufferedReader(reader);
+        String line;
+
+        while ((line = br.readLine()) != null) {
+
+            int comment = line.indexOf('#');
+            String entry = (comment >= 0 ? line.substring(0, comment) : line)
+                    .trim();
+
+            if (!entry.isEmpty() && !add(trie, trie6, entry)) {
+                LOGGER.warn("skipping invalid ban list entry " + entry);
+            }
+        }
+
+        this.banned = trie;
+        this.banned6 = trie6;
+
+        LOGGER.info("banned " + trie.size() + " IPv4 and " + trie6.size()
+                + " IPv6 blocks");
+    }
+
+    /**
+     * Adds an address or block to the trie of its family.
+     * @param trie  IPv4 blocks
+     * @param trie6  IPv6 blocks
+     * @param entry  address or block
+     * @return boolean  whether entry is valid
+     */
+    private boolean add(final PrefixTrie trie, final PrefixTrie trie6,
+            final String entry) {
+
+        int slash = entry.indexOf('/');
+        String address = slash >= 0 ? entry.substring(0, slash) : entry;
+
+        try {
+
+            // only literals, a host name is never looked up
+            byte[] bytes = InetAddresses.forString(address).getAddress();
+            int width = bytes.length * BYTE_BITS;
+            int prefix = slash >= 0 ? Integer.parseInt(entry
+                    .substring(slash + 1)) : width;
+
+            if (prefix < 0 || prefix > width) {
+                return false;
+            }
+
+            (width == IPV4_BITS ? trie : trie6).add(bytes, prefix);
+            return true;
+
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return int  number of banned IPv4 and IPv6 blocks
+     */
+    public int size() {
+        return this.banned.size() + this.banned6.size();
+    }
+
+    /**
+     * @return long  number of lookups of banned addresses
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+}
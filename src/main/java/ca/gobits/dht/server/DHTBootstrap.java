@@ -0,0 +1,341 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.server;
+
+import java.net.DatagramSocket;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import ca.gobits.dht.DHTBucket;
+import ca.gobits.dht.DHTIdentifier;
+import ca.gobits.dht.DHTNodeRoutingTable;
+import ca.gobits.dht.server.queue.DHTFindNodeQueue;
+import ca.gobits.dht.server.queue.DHTLookup;
+import ca.gobits.dht.server.queue.DHTLookupQueue;
+import ca.gobits.dht.util.SortedCollection;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Fills the routing table on startup.
+ *
+ * The bootstrap nodes are asked for nodes close to the local Node ID, once
+ * the routing table has any nodes rounds of parallel lookups are run for
+ * the local Node ID and for a random target in the range of every bucket.
+ * Rounds are repeated until the routing table holds enough nodes or its
+ * buckets are mostly full.
+ */
+public class DHTBootstrap implements Runnable {
+
+    /** DHTBootstrap Logger. */
+    private static final Logger LOGGER = Logger.getLogger(DHTBootstrap.class);
+
+    /** Default number of nodes the routing table is ready at. */
+    private static final int DEFAULT_TARGET_NODE_COUNT = 256;
+
+    /** Default fraction of bucket capacity the routing table is ready at. */
+    private static final double DEFAULT_TARGET_FILL_RATIO = 0.75;
+
+    /** Minimum number of buckets before the fill ratio is used. */
+    private static final int MIN_FILL_RATIO_BUCKETS = 8;
+
+    /** Millis between checks of the routing table. */
+    private static final long TICK_IN_MILLIS = 250;
+
+    /** Millis between asking the bootstrap nodes while the table is empty. */
+    private static final long RESEED_IN_MILLIS = 2000;
+
+    /** Default millis to give up after. */
+    private static final long DEFAULT_TIMEOUT_IN_MILLIS = 5 * 60 * 1000;
+
+    /** Reference to DHTServerConfig. */
+    @Autowired
+    private DHTServerConfig config;
+
+    /** Reference to DHTNodeRoutingTable. */
+    @Autowired
+    private DHTNodeRoutingTable routingTable;
+
+    /** Reference to DHTFindNodeQueue. */
+    @Autowired
+    private DHTFindNodeQueue findNodeQueue;
+
+    /** Reference to DHTLookupQueue. */
+    @Autowired
+    private DHTLookupQueue lookupQueue;
+
+    /** Reference to DatagramSocket. */
+    @Autowired
+    private DatagramSocket socket;
+
+    /** Scheduler the bootstrap runs on. */
+    @Autowired
+    private ThreadPoolTaskScheduler queueTaskScheduler;
+
+    /** Completed with the millis it took to become ready. */
+    private final SettableFuture<Long> ready = SettableFuture.create();
+
+    /** Number of lookups of the current round still running. */
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /** Number of nodes the routing table is ready at. */
+    private int targetNodeCount = DEFAULT_TARGET_NODE_COUNT;
+
+    /** Fraction of bucket capacity the routing table is ready at. */
+    private double targetFillRatio = DEFAULT_TARGET_FILL_RATIO;
+
+    /** Millis to give up after. */
+    private long timeoutInMillis = DEFAULT_TIMEOUT_IN_MILLIS;
+
+    /** Resolved bootstrap nodes. */
+    private List<InetSocketAddress> seeds;
+
+    /** Time in millis the bootstrap started. */
+    private long started;
+
+    /** Time in millis the bootstrap nodes were last asked. */
+    private long lastSeeded;
+
+    /** Number of lookup rounds run. */
+    private int rounds;
+
+    /** Scheduled run of the bootstrap. */
+    private ScheduledFuture<?> task;
+
+    /**
+     * Starts the bootstrap in the background.
+     * @return ListenableFuture<Long>  millis it took to become ready
+     */
+    public synchronized ListenableFuture<Long> start() {
+
+        this.started = System.currentTimeMillis();
+        this.lastSeeded = this.started - RESEED_IN_MILLIS;
+        this.task = this.queueTaskScheduler.scheduleWithFixedDelay(this,
+                TICK_IN_MILLIS);
+
+        return this.ready;
+    }
+
+    @Override
+    public void run() {
+        run(System.currentTimeMillis());
+    }
+
+    /**
+     * Checks the routing table and starts the next round of lookups.
+     * @param now  current time in millis
+     */
+    public synchronized void run(final long now) {
+
+        if (this.ready.isDone()) {
+            stop();
+            return;
+        }
+
+        if (this.seeds == null) {
+            this.seeds = resolve();
+        }
+
+        boolean ipv6 = this.socket.getLocalAddress() instanceof Inet6Address;
+        int count = this.routingTable.getTotalNodeCount(ipv6);
+
+        if (isReady(count, ipv6)) {
+
+            long timeToReady = now - this.started;
+            LOGGER.info("bootstrap ready in " + timeToReady + " ms with "
+                    + count + " nodes after " + this.rounds + " rounds");
+
+            this.ready.set(Long.valueOf(timeToReady));
+            stop();
+
+        } else if (now - this.started >= this.timeoutInMillis) {
+
+            LOGGER.warn("bootstrap gave up after " + this.rounds
+                    + " rounds with " + count + " nodes");
+
+            this.ready.setException(new TimeoutException(
+                    "bootstrap not ready"));
+            stop();
+
+        } else if (count == 0) {
+
+            if (now - this.lastSeeded >= RESEED_IN_MILLIS) {
+                seed();
+                this.lastSeeded = now;
+            }
+
+        } else if (this.outstanding.get() == 0) {
+            startRound(ipv6);
+        }
+    }
+
+    /**
+     * @param count  number of nodes in the routing table
+     * @param ipv6  whether to check the IPv6 routing table
+     * @return boolean  whether the routing table holds enough nodes
+     */
+    private boolean isReady(final int count, final boolean ipv6) {
+
+        int buckets = this.routingTable.getBucketCount(ipv6);
+        double fillRatio = buckets > 0 ? (double) count
+                / (buckets * DHTBucket.MAX_NODE_COUNT) : 0;
+
+        return count >= this.targetNodeCount
+                || (buckets >= MIN_FILL_RATIO_BUCKETS
+                        && fillRatio >= this.targetFillRatio);
+    }
+
+    /**
+     * Resolves the bootstrap nodes.
+     * @return List<InetSocketAddress>
+     */
+    private List<InetSocketAddress> resolve() {
+
+        List<InetSocketAddress> list = new ArrayList<InetSocketAddress>();
+        String[] nodes = this.config.getBootstrapNodes();
+
+        if (nodes != null) {
+
+            for (String node : nodes) {
+
+                try {
+
+                    String[] addrPort = node.split(":");
+                    InetAddress addr = InetAddress.getByName(addrPort[0]);
+                    int port = Integer.parseInt(addrPort[1]);
+                    list.add(new InetSocketAddress(addr, port));
+
+                } catch (Exception e) {
+                    LOGGER.warn("unable to bootstrap " + node + ".", e);
+                }
+            }
+        }
+
+        return list;
+    }
+
+    /**
+     * Asks the bootstrap nodes for nodes close to the local Node ID.
+     */
+    private void seed() {
+
+        for (InetSocketAddress seed : this.seeds) {
+
+            LOGGER.info("bootstrapping server with " + seed);
+            this.findNodeQueue.findNodes(seed.getAddress(), seed.getPort(),
+                    this.config.getNodeId());
+        }
+    }
+
+    /**
+     * Starts lookups for the local Node ID and a random target in the range
+     * of every bucket.
+     * @param ipv6  whether to use the IPv6 routing table
+     */
+    private void startRound(final boolean ipv6) {
+
+        this.rounds++;
+        lookup(this.config.getNodeId());
+
+        SortedCollection<DHTBucket> buckets = this.routingTable
+                .getBuckets(ipv6);
+        int size = buckets.size();
+
+        for (int i = 0; i < size; i++) {
+            DHTBucket bucket = buckets.get(i);
+            lookup(DHTIdentifier.getRandomNodeId(bucket.getMin(),
+                    bucket.getMax()));
+        }
+    }
+
+    /**
+     * Starts a lookup that is counted against the current round.
+     * @param target  Node ID to look up
+     */
+    private void lookup(final byte[] target) {
+
+        this.outstanding.incrementAndGet();
+        ListenableFuture<DHTLookup> future = this.lookupQueue.findNode(target);
+
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                DHTBootstrap.this.outstanding.decrementAndGet();
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * Stops running the bootstrap.
+     */
+    private void stop() {
+        if (this.task != null) {
+            this.task.cancel(false);
+        }
+    }
+
+    /**
+     * @return ListenableFuture<Long>  millis it took to become ready
+     */
+    public ListenableFuture<Long> getReady() {
+        return this.ready;
+    }
+
+    /**
+     * @return int  number of lookup rounds run
+     */
+    public synchronized int getRounds() {
+        return this.rounds;
+    }
+
+    /**
+     * Sets the number of nodes the routing table is ready at.
+     * @param count  number of nodes
+     */
+    public void setTargetNodeCount(final int count) {
+        this.targetNodeCount = count;
+    }
+
+    /**
+     * Sets the fraction of bucket capacity the routing table is ready at.
+     * @param ratio  fraction between 0 and 1
+     */
+    public void setTargetFillRatio(final double ratio) {
+        this.targetFillRatio = ratio;
+    }
+
+    /**
+     * Sets the millis to give up after.
+     * @param timeout  millis
+     */
+    public void setTimeoutInMillis(final long timeout) {
+        this.timeoutInMillis = timeout;
+    }
+}
@@ -25,22 +25,32 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
+import ca.gobits.dht.DHTInfoHashLRUEvictionPolicy;
 import ca.gobits.dht.DHTInfoHashRoutingTable;
 import ca.gobits.dht.DHTInfoHashRoutingTableBasic;
 import ca.gobits.dht.DHTNodeBucketRoutingTable;
+import ca.gobits.dht.DHTNodeDiversity;
 import ca.gobits.dht.DHTNodeRoutingTable;
+import ca.gobits.dht.DHTNodeShardedRoutingTable;
+import ca.gobits.dht.server.DHTServerConfig.EvictionPolicy;
 import ca.gobits.dht.server.queue.DHTBucketStatusQueue;
 import ca.gobits.dht.server.queue.DHTBucketStatusQueueImpl;
 import ca.gobits.dht.server.queue.DHTFindNodeQueue;
 import ca.gobits.dht.server.queue.DHTFindNodeQueueImpl;
-import ca.gobits.dht.server.queue.DHTNodeStatusQueue;
-import ca.gobits.dht.server.queue.DHTNodeStatusQueueImpl;
+import ca.gobits.dht.server.queue.DHTLookupQueue;
+import ca.gobits.dht.server.queue.DHTLookupQueueImpl;
+import ca.gobits.dht.server.queue.DHTPacer;
+import ca.gobits.dht.server.queue.DHTPacerImpl;
 import ca.gobits.dht.server.queue.DHTPingQueue;
 import ca.gobits.dht.server.queue.DHTPingQueueImpl;
+import ca.gobits.dht.server.queue.DHTQueueScheduler;
 import ca.gobits.dht.server.queue.DHTTokenQueue;
 import ca.gobits.dht.server.queue.DHTTokenQueueImpl;
-import ca.gobits.dht.server.scheduling.DHTRoutingTableThreadExecutor;
+import ca.gobits.dht.server.queue.DHTTransactionQueue;
+import ca.gobits.dht.server.queue.DHTTransactionQueueImpl;
+import ca.gobits.dht.server.scheduling.DHTRoutingTableUpdateRing;
 
 /**
  * DHT Configuration class.
@@ -68,7 +78,24 @@ public class DHTConfiguration {
      */
     @Bean
     public DHTNodeRoutingTable routingTable() {
-        return new DHTNodeBucketRoutingTable(this.config.getNodeId());
+
+        int shards = this.config.getShards();
+        DHTNodeDiversity diversity = new DHTNodeDiversity(
+                this.config.getNodesPerIp(), this.config.getNodesPerSubnet(),
+                this.config.getNodesPerIpInBucket(),
+                this.config.getNodesPerSubnetInBucket());
+
+        if (shards > 1) {
+            DHTNodeShardedRoutingTable rt = new DHTNodeShardedRoutingTable(
+                    this.config.getNodeId(), shards);
+            rt.setDiversity(diversity);
+            return rt;
+        }
+
+        DHTNodeBucketRoutingTable rt = new DHTNodeBucketRoutingTable(
+                this.config.getNodeId());
+        rt.setDiversity(diversity);
+        return rt;
     }
 
     /**
@@ -76,7 +103,16 @@ public class DHTConfiguration {
      */
     @Bean
     public DHTInfoHashRoutingTable infoHashRoutingTable() {
-        return new DHTInfoHashRoutingTableBasic();
+
+        DHTInfoHashRoutingTableBasic rt = new DHTInfoHashRoutingTableBasic();
+        rt.setPeerExpiryInMinutes(this.config.getPeerTtlInMinutes());
+        rt.setPeerCapacity(this.config.getPeerCapacity());
+
+        if (this.config.getEvictionPolicy() == EvictionPolicy.LRU) {
+            rt.setEvictionPolicy(new DHTInfoHashLRUEvictionPolicy());
+        }
+
+        return rt;
     }
 
     /**
@@ -87,6 +123,14 @@ public class DHTConfiguration {
         return new DHTTokenQueueImpl();
     }
 
+    /**
+     * @return DHTTransactionQueue
+     */
+    @Bean
+    public DHTTransactionQueue transactionQueue() {
+        return new DHTTransactionQueueImpl();
+    }
+
     /**
      * @return DHTServer
      */
@@ -95,6 +139,14 @@ public class DHTConfiguration {
         return new DHTServer();
     }
 
+    /**
+     * @return DHTBootstrap
+     */
+    @Bean
+    public DHTBootstrap dhtBootstrap() {
+        return new DHTBootstrap();
+    }
+
     /**
      * @return ThreadPoolTaskExecutor
      */
@@ -124,6 +176,14 @@ public class DHTConfiguration {
         return new DatagramSocket(this.config.getPort());
     }
 
+    /**
+     * @return DHTPacer
+     */
+    @Bean
+    public DHTPacer pacer() {
+        return new DHTPacerImpl();
+    }
+
     /**
      * @return DHTPingQueue
      */
@@ -141,11 +201,11 @@ public class DHTConfiguration {
     }
 
     /**
-     * @return DHTNodeStatusQueue
+     * @return DHTLookupQueue
      */
     @Bean
-    public DHTNodeStatusQueue nodeStatusQueue() {
-        return new DHTNodeStatusQueueImpl();
+    public DHTLookupQueue lookupQueue() {
+        return new DHTLookupQueueImpl();
     }
 
     /**
@@ -157,11 +217,55 @@ public class DHTConfiguration {
     }
 
     /**
-     * @return DHTRoutingTableThreadExecutor
+     * DHTQueueScheduler sizes the pool, one thread for each queue.
+     * @return ThreadPoolTaskScheduler
+     */
+    @Bean
+    public ThreadPoolTaskScheduler queueTaskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix("dht-queue-");
+        return scheduler;
+    }
+
+    /**
+     * @return DHTQueueScheduler
+     */
+    @Bean
+    public DHTQueueScheduler queueScheduler() {
+        return new DHTQueueScheduler();
+    }
+
+    /**
+     * @return DHTRoutingTableUpdateRing
+     */
+    @Bean
+    public DHTRoutingTableUpdateRing routingTableUpdateRing() {
+        return new DHTRoutingTableUpdateRing(
+                DHTRoutingTableUpdateRing.DEFAULT_CAPACITY,
+                this.config.getShards());
+    }
+
+    /**
+     * @return DHTMetrics
+     */
+    @Bean
+    public DHTMetrics metrics() {
+        return new DHTMetrics();
+    }
+
+    /**
+     * @return DHTPacketLog
+     */
+    @Bean
+    public DHTPacketLog packetLog() {
+        return new DHTPacketLog();
+    }
+
+    /**
+     * @return DHTBanList
      */
     @Bean
-    public DHTRoutingTableThreadExecutor routingTableThreadExecutor() {
-        DHTRoutingTableThreadExecutor rte = new DHTRoutingTableThreadExecutor();
-        return rte;
+    public DHTBanList banList() {
+        return new DHTBanList();
     }
 }
@@ -0,0 +1,448 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import ca.gobits.dht.DHTInfoHashRoutingTable;
+import ca.gobits.dht.DHTNodeRoutingTable;
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
+import ca.gobits.dht.server.queue.DHTPacer;
+import ca.gobits.dht.server.queue.DHTQueue;
+import ca.gobits.dht.server.queue.DHTQueueAbstract;
+import ca.gobits.dht.server.queue.DHTQueueScheduler;
+import ca.gobits.dht.server.queue.DHTQueueTask;
+import ca.gobits.dht.server.queue.DHTTransactionQueue;
+import ca.gobits.dht.server.scheduling.DHTRoutingTableUpdateRing;
+import ca.gobits.dht.util.LatencyHistogram;
+import ca.gobits.dht.util.StripedCounter;
+
+/**
+ * Counters, latencies and sizes of the running server.
+ *
+ * Packets and bytes are counted by direction, message class and query
+ * type, along with the packets that are dropped and the time the handler
+ * spends on each query type.  Recording goes to StripedCounters and
+ * LatencyHistograms, so it is cheap and never allocates.  Queue depths and
+ * table sizes are read when the metrics are.  The metrics are published
+ * through JMX and, as a DHTQueue, written to the log every few seconds
+ * when configured.
+ */
+public class DHTMetrics implements DHTMetricsMXBean, DHTQueue,
+        InitializingBean, DisposableBean {
+
+    /** DHTMetrics Logger. */
+    private static final Logger LOGGER = Logger.getLogger(DHTMetrics.class);
+
+    /** JMX name of the metrics. */
+    public static final String OBJECT_NAME = "ca.gobits.dht:type=DHTMetrics";
+
+    /**
+     * Direction and class of a message.
+     */
+    public enum Traffic {
+        /** query received. */
+        QUERY_IN,
+        /** response received. */
+        RESPONSE_IN,
+        /** error received. */
+        ERROR_IN,
+        /** query sent. */
+        QUERY_OUT,
+        /** response sent. */
+        RESPONSE_OUT,
+        /** error sent. */
+        ERROR_OUT
+    }
+
+    /**
+     * Reason a packet was dropped.
+     */
+    public enum Drop {
+        /** received from a banned address. */
+        BANNED,
+        /** rejected because the handler threads were busy. */
+        REJECTED,
+        /** received packet was not a valid message. */
+        INVALID,
+        /** response did not match an outstanding query. */
+        UNSOLICITED,
+        /** query dropped because too many were waiting to be sent. */
+        PACED,
+        /** node update dropped because the routing table ring was full. */
+        RING_FULL,
+        /** handler failed with an exception. */
+        FAILED
+    }
+
+    /** Percentiles reported for each latency. */
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999 };
+
+    /** Names of the reported percentiles. */
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99",
+        "p999" };
+
+    /** Query types. */
+    private static final DHTQueryType[] TYPES = DHTQueryType.values();
+
+    /** Slot of messages whose query type is unknown. */
+    private static final int UNKNOWN = TYPES.length;
+
+    /** Number of query type slots. */
+    private static final int TYPE_SLOTS = TYPES.length + 1;
+
+    /** Number of counters for the traffic, packets and bytes. */
+    private static final int TRAFFIC_COUNTERS = Traffic.values().length
+            * TYPE_SLOTS * 2;
+
+    /** Number of millis in a second. */
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    /** Traffic and drop counters. */
+    private final StripedCounter counters = new StripedCounter(
+            TRAFFIC_COUNTERS + Drop.values().length);
+
+    /** Handler latency in micros by query type. */
+    private final LatencyHistogram[] latencies =
+            new LatencyHistogram[TYPE_SLOTS];
+
+    /** Reference to DHTServerConfig. */
+    @Autowired
+    private DHTServerConfig config;
+
+    /** Reference to DHTNodeRoutingTable. */
+    @Autowired
+    private DHTNodeRoutingTable routingTable;
+
+    /** Reference to DHTInfoHashRoutingTable. */
+    @Autowired
+    private DHTInfoHashRoutingTable infoHashRoutingTable;
+
+    /** Reference to DHTRoutingTableUpdateRing. */
+    @Autowired
+    private DHTRoutingTableUpdateRing rtUpdateRing;
+
+    /** Reference to DHTQueueScheduler. */
+    @Autowired
+    private DHTQueueScheduler queueScheduler;
+
+    /** Reference to DHTPacer. */
+    @Autowired
+    private DHTPacer pacer;
+
+    /** Reference to DHTTransactionQueue. */
+    @Autowired
+    private DHTTransactionQueue transactionQueue;
+
+    /** Reference to the socket Thread Pool. */
+    @Autowired
+    private ThreadPoolTaskExecutor socketThreadPool;
+
+    /** Name the metrics are registered with in JMX. */
+    private ObjectName objectName;
+
+    /** Time in millis the metrics were last logged. */
+    private long lastLogged;
+
+    /**
+     * constructor.
+     */
+    public DHTMetrics() {
+        for (int i = 0; i < TYPE_SLOTS; i++) {
+            this.latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+
+        this.lastLogged = System.currentTimeMillis();
+
+        try {
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+
+            server.registerMBean(this, name);
+            this.objectName = name;
+
+        } catch (JMException e) {
+            LOGGER.warn("unable to register metrics with JMX", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+
+        if (this.objectName != null) {
+
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                        this.objectName);
+            } catch (JMException e) {
+                LOGGER.debug("unable to unregister metrics", e);
+            }
+
+            this.objectName = null;
+        }
+    }
+
+    /**
+     * Counts a packet.
+     * @param traffic  direction and class of the packet
+     * @param type  query type or null if unknown
+     * @param bytes  length of the packet
+     */
+    public void packet(final Traffic traffic, final DHTQueryType type,
+            final int bytes) {
+
+        int slot = trafficSlot(traffic, type);
+        this.counters.increment(slot);
+        this.counters.add(slot + 1, bytes);
+    }
+
+    /**
+     * Counts a dropped packet.
+     * @param drop  reason the packet was dropped
+     */
+    public void drop(final Drop drop) {
+        this.counters.increment(TRAFFIC_COUNTERS + drop.ordinal());
+    }
+
+    /**
+     * Records how long the handler took.
+     * @param type  query type or null if unknown
+     * @param nanos  handler time in nanos
+     */
+    public void latency(final DHTQueryType type, final long nanos) {
+        this.latencies[typeSlot(type)].record(TimeUnit.NANOSECONDS
+                .toMicros(nanos));
+    }
+
+    /**
+     * @param traffic  direction and class of the packets
+     * @param type  query type or null if unknown
+     * @return long  number of packets
+     */
+    public long getPackets(final Traffic traffic, final DHTQueryType type) {
+        return this.counters.get(trafficSlot(traffic, type));
+    }
+
+    /**
+     * @param traffic  direction and class of the packets
+     * @param type  query type or null if unknown
+     * @return long  number of bytes
+     */
+    public long getBytes(final Traffic traffic, final DHTQueryType type) {
+        return this.counters.get(trafficSlot(traffic, type) + 1);
+    }
+
+    /**
+     * @param drop  reason packets were dropped
+     * @return long  number of dropped packets
+     */
+    public long getDrops(final Drop drop) {
+        return this.counters.get(TRAFFIC_COUNTERS + drop.ordinal());
+    }
+
+    /**
+     * @param type  query type or null if unknown
+     * @return LatencyHistogram  handler latency in micros
+     */
+    public LatencyHistogram getLatency(final DHTQueryType type) {
+        return this.latencies[typeSlot(type)];
+    }
+
+    @Override
+    public Map<String, Long> getMetrics() {
+
+        SortedMap<String, Long> map = new TreeMap<String, Long>();
+
+        for (Traffic traffic : Traffic.values()) {
+            for (int i = 0; i < TYPE_SLOTS; i++) {
+
+                int slot = ((traffic.ordinal() * TYPE_SLOTS) + i) * 2;
+                long packets = this.counters.get(slot);
+
+                if (packets > 0) {
+                    String name = traffic.name().toLowerCase(Locale.ENGLISH)
+                            + "." + typeName(i);
+                    map.put("packets." + name, Long.valueOf(packets));
+                    map.put("bytes." + name,
+                            Long.valueOf(this.counters.get(slot + 1)));
+                }
+            }
+        }
+
+        for (Drop drop : Drop.values()) {
+            map.put("drops." + drop.name().toLowerCase(Locale.ENGLISH),
+                    Long.valueOf(getDrops(drop)));
+        }
+
+        for (int i = 0; i < TYPE_SLOTS; i++) {
+
+            LatencyHistogram h = this.latencies[i];
+            long count = h.getCount();
+
+            if (count > 0) {
+
+                String name = "latency." + typeName(i) + ".";
+                map.put(name + "count", Long.valueOf(count));
+                map.put(name + "mean", Long.valueOf(h.getMean()));
+                map.put(name + "max", Long.valueOf(h.getMax()));
+
+                for (int j = 0; j < PERCENTILES.length; j++) {
+                    map.put(name + PERCENTILE_NAMES[j],
+                            Long.valueOf(h.getPercentile(PERCENTILES[j])));
+                }
+            }
+        }
+
+        addGauges(map);
+
+        return map;
+    }
+
+    /**
+     * Adds queue depths and table sizes.
+     * @param map  metrics
+     */
+    private void addGauges(final Map<String, Long> map) {
+
+        map.put("nodes.ipv4", Long.valueOf(
+                this.routingTable.getTotalNodeCount(false)));
+        map.put("nodes.ipv6", Long.valueOf(
+                this.routingTable.getTotalNodeCount(true)));
+        map.put("infohashes", Long.valueOf(
+                this.infoHashRoutingTable.getInfoHashCount()));
+        map.put("peers", Long.valueOf(
+                this.infoHashRoutingTable.getPeerCount()));
+
+        for (DHTQueueTask task : this.queueScheduler.getTasks()) {
+
+            DHTQueue queue = task.getQueue();
+
+            if (queue instanceof DHTQueueAbstract) {
+                map.put("queue." + task.getName() + ".depth", Long.valueOf(
+                        ((DHTQueueAbstract<?>) queue).size()));
+            }
+
+            map.put("queue." + task.getName() + ".delay",
+                    Long.valueOf(task.getDelayInMillis()));
+        }
+
+        map.put("queue.pacer.depth", Long.valueOf(this.pacer.size()));
+        map.put("queue.transaction.depth",
+                Long.valueOf(this.transactionQueue.size()));
+        map.put("queue.routingtable.depth",
+                Long.valueOf(this.rtUpdateRing.size()));
+        map.put("routingtable.rejected",
+                Long.valueOf(this.rtUpdateRing.getRejected()));
+        map.put("routingtable.collapsed",
+                Long.valueOf(this.rtUpdateRing.getCollapsed()));
+        map.put("routingtable.unverified",
+                Long.valueOf(this.rtUpdateRing.getUnverified()));
+
+        ThreadPoolExecutor executor = this.socketThreadPool
+                .getThreadPoolExecutor();
+        map.put("queue.socket.depth",
+                Long.valueOf(executor.getQueue().size()));
+        map.put("queue.socket.active",
+                Long.valueOf(executor.getActiveCount()));
+    }
+
+    @Override
+    public String dump() {
+
+        StringBuilder sb = new StringBuilder();
+
+        for (Map.Entry<String, Long> e : getMetrics().entrySet()) {
+            sb.append(e.getKey()).append(' ').append(e.getValue())
+                    .append('\n');
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Writes the metrics to the log when they are due.
+     * @return int  1 if the metrics were logged, otherwise 0
+     */
+    @Override
+    public int processQueue() {
+
+        int result = 0;
+        long interval = this.config.getMetricsInSeconds() * MILLIS_PER_SECOND;
+        long now = System.currentTimeMillis();
+
+        if (interval > 0 && now - this.lastLogged >= interval) {
+            this.lastLogged = now;
+            LOGGER.info("metrics\n" + dump());
+            result = 1;
+        }
+
+        return result;
+    }
+
+    /**
+     * @param traffic  direction and class of the packets
+     * @param type  query type or null if unknown
+     * @return int  counter of the packets, the bytes are in the next one
+     */
+    private static int trafficSlot(final Traffic traffic,
+            final DHTQueryType type) {
+        return ((traffic.ordinal() * TYPE_SLOTS) + typeSlot(type)) * 2;
+    }
+
+    /**
+     * @param type  query type or null if unknown
+     * @return int  slot of the query type
+     */
+    private static int typeSlot(final DHTQueryType type) {
+        return type != null ? type.ordinal() : UNKNOWN;
+    }
+
+    /**
+     * @param slot  slot of a query type
+     * @return String  name of the query type
+     */
+    private static String typeName(final int slot) {
+        return slot < UNKNOWN ? TYPES[slot].name().toLowerCase(Locale.ENGLISH)
+                : "unknown";
+    }
+}
@@ -14,19 +14,24 @@
 // limitations under the License.
 //
 
-package ca.gobits.dht.server.queue;
 
-import ca.gobits.dht.DHTNode;
+package ca.gobits.dht.server;
+
+import java.util.Map;
 
 /**
- * DHT Node Status Queue.
+ * JMX view of the DHTMetrics.
  *
  */
-public interface DHTNodeStatusQueue extends DHTQueue {
+public interface DHTMetricsMXBean {
+
+    /**
+     * @return Map<String, Long>  every counter, latency and gauge by name
+     */
+    Map<String, Long> getMetrics();
 
     /**
-     * Adds object to process queue.
-     * @param node DHTNode
+     * @return String  every metric on its own line as "name value"
      */
-    void addToQueue(DHTNode node);
+    String dump();
 }
@@ -0,0 +1,300 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.server;
+
+import java.net.InetAddress;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
+import ca.gobits.dht.server.queue.DHTQueue;
+
+/**
+ * Asynchronous log of the packets the server receives and sends.
+ *
+ * Packet threads only copy the fields of an event into a slot of a
+ * bounded lock-free ring buffer, and the addresses are formatted and
+ * written to log4j later when the queue is processed on the scheduler.
+ * Each type of event is sampled, only 1 in n events is kept, and events
+ * are dropped and counted when the ring buffer is full, so the cost to a
+ * packet thread does not grow with the packet rate or wait on an appender.
+ *
+ * Every event is one line of "event type address:port value @millis".
+ */
+public class DHTPacketLog implements DHTQueue, InitializingBean {
+
+    /** DHTPacketLog Logger. */
+    private static final Logger LOGGER = Logger.getLogger(DHTPacketLog.class);
+
+    /** Default number of slots in the ring buffer. */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /** Maximum number of events written in one pass. */
+    private static final int MAX_BATCH = 1024;
+
+    /**
+     * Types of event.
+     */
+    public enum Event {
+        /** valid query received, value is its length. */
+        QUERY_IN,
+        /** valid response received, value is its length. */
+        RESPONSE_IN,
+        /** invalid query or response received, value is its length. */
+        INVALID_IN,
+        /** query sent, value is its length. */
+        QUERY_OUT,
+        /** nodes in a response added to discovery, value is the count. */
+        DISCOVERY
+    }
+
+    /** Event types. */
+    private static final Event[] EVENTS = Event.values();
+
+    /** Reference to DHTServerConfig. */
+    @Autowired
+    private DHTServerConfig config;
+
+    /** Mask to find the slot of a sequence. */
+    private final int mask;
+
+    /**
+     * Sequence of each slot, a slot can be written when its sequence
+     * equals the tail and read when it is one past the head.
+     */
+    private final AtomicLongArray sequences;
+
+    /** Next sequence to write. */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** Next sequence to read. */
+    private long head;
+
+    /** Event of each slot. */
+    private final Event[] events;
+
+    /** Query type of each slot. */
+    private final DHTQueryType[] types;
+
+    /** Address of each slot. */
+    private final InetAddress[] addresses;
+
+    /** Port of each slot. */
+    private final int[] ports;
+
+    /** Value of each slot. */
+    private final int[] values;
+
+    /** Time in millis of each slot. */
+    private final long[] times;
+
+    /** 1 in n events of each type are logged, 0 for none. */
+    private final int[] sampling = new int[EVENTS.length];
+
+    /** Number of events dropped because the ring buffer was full. */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** Number of dropped events already reported. */
+    private long reported;
+
+    /**
+     * constructor.
+     */
+    public DHTPacketLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * constructor.
+     * @param capacity  number of slots, a power of 2
+     */
+    public DHTPacketLog(final int capacity) {
+
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of 2");
+        }
+
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        this.events = new Event[capacity];
+        this.types = new DHTQueryType[capacity];
+        this.addresses = new InetAddress[capacity];
+        this.ports = new int[capacity];
+        this.values = new int[capacity];
+        this.times = new long[capacity];
+
+        for (int i = 0; i < capacity; i++) {
+            this.sequences.set(i, i);
+        }
+
+        for (Event event : EVENTS) {
+            this.sampling[event.ordinal()] = 1;
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        for (Event event : EVENTS) {
+            setSampling(event, this.config.getLogSampling(event));
+        }
+    }
+
+    /**
+     * Logs an event if it is sampled.
+     * @param event  type of event
+     * @param type  query type or null if unknown
+     * @param addr  address the packet came from or went to
+     * @param port  port the packet came from or went to
+     * @param value  length of the packet or count
+     * @return boolean  whether the event was added to the ring buffer
+     */
+    public boolean log(final Event event, final DHTQueryType type,
+            final InetAddress addr, final int port, final int value) {
+
+        int n = this.sampling[event.ordinal()];
+
+        if (n <= 0 || (n > 1 && ThreadLocalRandom.current().nextInt(n) != 0)
+                || !LOGGER.isInfoEnabled()) {
+            return false;
+        }
+
+        while (true) {
+
+            long pos = this.tail.get();
+            int slot = (int) pos & this.mask;
+            long seq = this.sequences.get(slot);
+
+            if (seq < pos) {
+                this.dropped.incrementAndGet();
+                return false;
+            }
+
+            if (seq == pos && this.tail.compareAndSet(pos, pos + 1)) {
+
+                this.events[slot] = event;
+                this.types[slot] = type;
+                this.addresses[slot] = addr;
+                this.ports[slot] = port;
+                this.values[slot] = value;
+                this.times[slot] = System.currentTimeMillis();
+
+                this.sequences.lazySet(slot, pos + 1);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Writes waiting events to the log.
+     * @return int  number of events written
+     */
+    @Override
+    public synchronized int processQueue() {
+
+        int count = 0;
+        StringBuilder sb = new StringBuilder();
+
+        while (count < MAX_BATCH) {
+
+            int slot = (int) this.head & this.mask;
+
+            if (this.sequences.get(slot) != this.head + 1) {
+                break;
+            }
+
+            sb.setLength(0);
+            format(sb, slot);
+
+            this.addresses[slot] = null;
+            this.sequences.lazySet(slot, this.head + this.mask + 1);
+            this.head++;
+            count++;
+
+            LOGGER.info(sb.toString());
+        }
+
+        long drops = this.dropped.get();
+
+        if (drops > this.reported) {
+            LOGGER.warn("dropped " + (drops - this.reported)
+                    + " packet log events");
+            this.reported = drops;
+        }
+
+        return count;
+    }
+
+    /**
+     * Formats the event in a slot.
+     * @param sb  StringBuilder
+     * @param slot  slot
+     */
+    private void format(final StringBuilder sb, final int slot) {
+
+        DHTQueryType type = this.types[slot];
+        InetAddress addr = this.addresses[slot];
+
+        sb.append(this.events[slot].name().toLowerCase(Locale.ENGLISH))
+                .append(' ')
+                .append(type != null ? type.name().toLowerCase(Locale.ENGLISH)
+                        : "-")
+                .append(' ')
+                .append(addr != null ? addr.getHostAddress() : "-")
+                .append(':').append(this.ports[slot])
+                .append(' ').append(this.values[slot])
+                .append(" @").append(this.times[slot]);
+    }
+
+    /**
+     * Sets how many events of a type are logged.
+     * @param event  type of event
+     * @param n  1 in n events are logged, 0 for none
+     */
+    public void setSampling(final Event event, final int n) {
+        this.sampling[event.ordinal()] = n;
+    }
+
+    /**
+     * @param event  type of event
+     * @return int  1 in n events are logged, 0 for none
+     */
+    public int getSampling(final Event event) {
+        return this.sampling[event.ordinal()];
+    }
+
+    /**
+     * @return int  number of events waiting to be written
+     */
+    public synchronized int size() {
+        return (int) (this.tail.get() - this.head);
+    }
+
+    /**
+     * @return long  number of events dropped because the ring buffer
+     *               was full
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+}
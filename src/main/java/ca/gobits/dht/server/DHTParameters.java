@@ -41,7 +41,9 @@ public class DHTParameters {
         /** "get_peers" query. */
         GET_PEERS,
         /** "announce_peer" query. */
-        ANNOUNCE_PEER;
+        ANNOUNCE_PEER,
+        /** "sample_infohashes" query (BEP 51). */
+        SAMPLE_INFOHASHES;
     };
 
     /** DHTParameter Map. */
@@ -125,6 +127,14 @@ public class DHTParameters {
         return getValueAsString("t");
     }
 
+    /**
+     * "t" parameter as sent.
+     * @return byte[]
+     */
+    public byte[] getTransactionId() {
+        return (byte[]) this.request.get("t");
+    }
+
     /**
      * "q" parameter.
      * @return String
@@ -182,6 +192,24 @@ public class DHTParameters {
         return (byte[]) getArguments().get("info_hash");
     }
 
+    /**
+     * "seed" parameter (BEP 33).
+     * @return boolean
+     */
+    public boolean isSeed() {
+        Long seed = (Long) getArguments().get("seed");
+        return seed != null && seed.longValue() != 0;
+    }
+
+    /**
+     * "scrape" parameter (BEP 33).
+     * @return boolean
+     */
+    public boolean isScrape() {
+        Long scrape = (Long) getArguments().get("scrape");
+        return scrape != null && scrape.longValue() != 0;
+    }
+
     /**
      * "token" parameter.
      * @return byte[]
@@ -207,11 +235,20 @@ public class DHTParameters {
     }
 
     /**
-     * "nodes6" parameter.
+     * "values" parameter, peers in "Compact IP/Port" format.
+     * @return List<byte[]>
+     */
+    @SuppressWarnings("unchecked")
+    public List<byte[]> getValues() {
+        return (List<byte[]>) getResponses().get("values");
+    }
+
+    /**
+     * "token" parameter of a response.
      * @return byte[]
      */
-    public byte[] getValues() {
-        return (byte[]) getResponses().get("values");
+    public byte[] getResponseToken() {
+        return (byte[]) getResponses().get("token");
     }
 
     /**
@@ -18,33 +18,42 @@ package ca.gobits.dht.server;
 
 import static ca.gobits.dht.util.DHTConversion.compactAddress;
 import static ca.gobits.dht.util.DHTConversion.toByteArrayFromDHTNode;
-import static ca.gobits.dht.util.DHTConversion.toByteArrayFromDHTPeer;
 import static ca.gobits.dht.util.DHTConversion.toDHTNode;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.util.CollectionUtils;
 
+import ca.gobits.dht.DHTIdentifier;
+import ca.gobits.dht.DHTInfoHash;
 import ca.gobits.dht.DHTInfoHashRoutingTable;
 import ca.gobits.dht.DHTNode;
 import ca.gobits.dht.DHTNodeRoutingTable;
-import ca.gobits.dht.DHTPeer;
+import ca.gobits.dht.DHTPeerSampler;
 import ca.gobits.dht.bencoding.BDecoder;
 import ca.gobits.dht.bencoding.BEncoder;
+import ca.gobits.dht.server.DHTMetrics.Drop;
+import ca.gobits.dht.server.DHTMetrics.Traffic;
+import ca.gobits.dht.server.DHTPacketLog.Event;
 import ca.gobits.dht.server.DHTParameters.DHTQueryType;
 import ca.gobits.dht.server.queue.DHTPingQueue;
 import ca.gobits.dht.server.queue.DHTTokenQueue;
-import ca.gobits.dht.server.scheduling.DHTRoutingTableThreadExecutor;
+import ca.gobits.dht.server.queue.DHTTransaction;
+import ca.gobits.dht.server.queue.DHTTransactionQueue;
+import ca.gobits.dht.server.scheduling.DHTRoutingTableUpdateRing;
+import ca.gobits.dht.util.EventRecorder;
+import ca.gobits.dht.util.EventRecorder.EventType;
+import ca.gobits.dht.util.Events;
 
 /**
  * DHTProtocolHandler implementation of the BitTorrent protocol.
@@ -52,9 +61,6 @@ import ca.gobits.dht.server.scheduling.DHTRoutingTableThreadExecutor;
  */
 public class DHTProtocolHandler {
 
-    /** Length of Get_Peers token. */
-    private static final int GET_PEERS_TOKEN_LENGTH = 10;
-
     /** DHTProtocolHandler Logger. */
     private static final Logger LOGGER = Logger
             .getLogger(DHTProtocolHandler.class);
@@ -71,6 +77,10 @@ public class DHTProtocolHandler {
     @Autowired
     private DHTTokenQueue tokenTable;
 
+    /** DHT Transaction Queue. */
+    @Autowired
+    private DHTTransactionQueue transactionQueue;
+
     /** DHTServerConfig. */
     @Autowired
     private DHTServerConfig config;
@@ -83,9 +93,17 @@ public class DHTProtocolHandler {
 //    @Autowired
 //    private DHTNodeStatusQueue statusQueue;
 
-    /** DHTRoutingTableExecutor instance. */
+    /** DHTRoutingTableUpdateRing instance. */
+    @Autowired
+    private DHTRoutingTableUpdateRing rtUpdateRing;
+
+    /** DHTMetrics instance. */
     @Autowired
-    private DHTRoutingTableThreadExecutor rtExecutor;
+    private DHTMetrics metrics;
+
+    /** DHTPacketLog instance. */
+    @Autowired
+    private DHTPacketLog packetLog;
 
     /**
      * Read DatagramPacket.
@@ -95,7 +113,12 @@ public class DHTProtocolHandler {
      */
     public byte[] handle(final DatagramPacket packet) {
 
+        EventRecorder recorder = Events.getRecorder();
+        Object event = recorder.begin(EventType.PACKET);
+        long start = System.nanoTime();
         byte[] bytes = null;
+        Traffic reply = Traffic.ERROR_OUT;
+        DHTQueryType type = null;
 
         InetAddress addr = packet.getAddress();
         Map<String, Object> response = new HashMap<String, Object>();
@@ -115,9 +138,13 @@ public class DHTProtocolHandler {
 
                     if (valid) {
 
-                        LOGGER.info("received valid query from "
-                            + addr.getHostAddress() + ":" + packet.getPort());
+                        type = params.getQueryType();
+                        this.packetLog.log(Event.QUERY_IN, type, addr,
+                                packet.getPort(), packet.getLength());
+                        this.metrics.packet(Traffic.QUERY_IN, type,
+                                packet.getLength());
                         bytes = queryRequestHandler(packet, params);
+                        reply = Traffic.RESPONSE_OUT;
                     }
 
                 } else {
@@ -125,9 +152,6 @@ public class DHTProtocolHandler {
                     valid = isValidResponse(params);
 
                     if (valid) {
-
-                        LOGGER.info("received valid response from "
-                            + addr.getHostAddress() + ":" + packet.getPort());
                         queryResponseHandler(packet, params);
                     }
                 }
@@ -135,19 +159,29 @@ public class DHTProtocolHandler {
 
             if (!valid) {
 
+                this.metrics.drop(Drop.INVALID);
                 bytes = handleInvalidParameters(response, params);
-
-                LOGGER.info("received INVALID request/response from "
-                        + addr.getHostAddress() + ":" + packet.getPort());
+                this.packetLog.log(Event.INVALID_IN, null, addr,
+                        packet.getPort(), packet.getLength());
             }
 
         } catch (Exception e) {
 
             LOGGER.fatal(e, e);
+            this.metrics.drop(Drop.FAILED);
             addServerError(response);
             bytes = bencode(response);
+            reply = Traffic.ERROR_OUT;
+        }
+
+        if (bytes != null) {
+            this.metrics.packet(reply, type, bytes.length);
+            this.metrics.latency(type, System.nanoTime() - start);
         }
 
+        recorder.commitPacket(event, type != null ? type.name() : null,
+                packet.getLength(), bytes != null ? bytes.length : 0);
+
         return bytes;
     }
 
@@ -221,6 +255,28 @@ public class DHTProtocolHandler {
     private void queryResponseHandler(final DatagramPacket packet,
             final DHTParameters params) {
 
+        DHTTransaction transaction = this.transactionQueue.match(
+                params.getTransactionId(), packet.getAddress(),
+                packet.getPort());
+
+        if (transaction == null) {
+            this.metrics.drop(Drop.UNSOLICITED);
+            LOGGER.debug("dropping unsolicited response from "
+                    + packet.getAddress().getHostAddress() + ":"
+                    + packet.getPort());
+            return;
+        }
+
+        this.metrics.packet("e".equals(params.getY()) ? Traffic.ERROR_IN
+                : Traffic.RESPONSE_IN, transaction.getQueryType(),
+                packet.getLength());
+        this.packetLog.log(Event.RESPONSE_IN, transaction.getQueryType(),
+                packet.getAddress(), packet.getPort(), packet.getLength());
+
+        if (transaction.getListener() != null) {
+            transaction.getListener().responded(transaction, params);
+        }
+
         boolean addIfMissing = false;
         byte[] id = params.getId();
         boolean ipv6 = params.isIpv6();
@@ -232,25 +288,51 @@ public class DHTProtocolHandler {
             // find_nodes ipv4
             if (params.getNodes() != null) {
                 Collection<DHTNode> nodes = toDHTNode(params.getNodes(), false);
-                LOGGER.info("adding " + nodes.size() + " to discovery");
+                this.packetLog.log(Event.DISCOVERY, transaction.getQueryType(),
+                        packet.getAddress(), packet.getPort(), nodes.size());
                 addToDiscovery(nodes);
             }
 
             // find_nodes ipv6
             if (params.getNodes6() != null) {
                 Collection<DHTNode> nodes = toDHTNode(params.getNodes6(), true);
-                LOGGER.info("adding " + nodes.size() + " to discovery");
+                this.packetLog.log(Event.DISCOVERY, transaction.getQueryType(),
+                        packet.getAddress(), packet.getPort(), nodes.size());
                 addToDiscovery(nodes);
             }
 
         }
 
-        this.rtExecutor.updateNodeStatus(id,
-                packet.getAddress(), packet.getPort(), ipv6, addIfMissing);
+        updateNodeStatus(id, packet, ipv6, addIfMissing);
+    }
+
+    /**
+     * Publishes a node's status to the routing table, counting the update
+     * as dropped when the ring is full.  Node IDs that are missing or not
+     * NODE_ID_LENGTH bytes are skipped, the message is still answered.
+     *
+     * @param nodeId node's identifier
+     * @param packet DatagramPacket received from the node
+     * @param ipv6 whether ipv6 request
+     * @param addIfMissing Add Node if missing
+     */
+    private void updateNodeStatus(final byte[] nodeId,
+            final DatagramPacket packet, final boolean ipv6,
+            final boolean addIfMissing) {
+
+        if (!isValidId(nodeId)) {
+            LOGGER.debug("invalid node id from "
+                    + packet.getAddress().getHostAddress() + ":"
+                    + packet.getPort());
+        } else if (!this.rtUpdateRing.updateNodeStatus(nodeId,
+                packet.getAddress(), packet.getPort(), ipv6, addIfMissing)) {
+            this.metrics.drop(Drop.RING_FULL);
+        }
     }
 
     /**
-     * Adds nodes to be discovery list.
+     * Adds nodes to be discovery list, nodes that are already GOOD in the
+     * routing table are skipped.
      *
      * @param nodes Collection of DHTNodes
      */
@@ -258,6 +340,13 @@ public class DHTProtocolHandler {
 
         for (DHTNode node : nodes) {
 
+            DHTNode existing = this.routingTable.findExactNode(
+                    node.getInfoHash(), node.isIpv6());
+
+            if (existing != null && existing.getState() == DHTNode.State.GOOD) {
+                continue;
+            }
+
             int port = node.getPort();
 
             InetAddress address = node.getAddress();
@@ -287,10 +376,13 @@ public class DHTProtocolHandler {
         response.put("t", params.getT());
         response.put("ip", compactAddress(addr.getAddress(), port));
 
-        this.rtExecutor.updateNodeStatus(params.getId(),
-                packet.getAddress(), packet.getPort(), params.isIpv6(), false);
+        updateNodeStatus(params.getId(), packet, params.isIpv6(), false);
+
+        if (!isValidTarget(params)) {
+
+            addInvalidArguementsErrorResponse(response);
 
-        if (DHTQueryType.PING == qt) {
+        } else if (DHTQueryType.PING == qt) {
 
             addPingResponse(response);
 
@@ -305,11 +397,45 @@ public class DHTProtocolHandler {
         } else if (DHTQueryType.ANNOUNCE_PEER == qt) {
 
             addAnnouncePeerResponse(params, response, packet);
+
+        } else if (DHTQueryType.SAMPLE_INFOHASHES == qt) {
+
+            addSampleInfoHashesResponse(params, response);
         }
 
         return bencode(response);
     }
 
+    /**
+     * Is the node ID or info hash a query looks up in the routing tables
+     * valid.
+     * @param params DHTParameters
+     * @return boolean
+     */
+    private boolean isValidTarget(final DHTParameters params) {
+
+        DHTQueryType qt = params.getQueryType();
+        boolean valid = true;
+
+        if (DHTQueryType.FIND_NODE == qt
+                || DHTQueryType.SAMPLE_INFOHASHES == qt) {
+            valid = isValidId(params.getTarget());
+        } else if (DHTQueryType.GET_PEERS == qt) {
+            valid = isValidId(params.getInfoHash());
+        }
+
+        return valid;
+    }
+
+    /**
+     * Is a node ID or info hash received NODE_ID_LENGTH bytes.
+     * @param id  node ID or info hash
+     * @return boolean
+     */
+    private boolean isValidId(final byte[] id) {
+        return id != null && id.length == DHTIdentifier.NODE_ID_LENGTH;
+    }
+
     /**
      * BEncodes response.
      *
@@ -328,25 +454,22 @@ public class DHTProtocolHandler {
      * @param params DHTParameters
      * @param response Map<String, Object>
      * @param packet DatagramPacket
-     * @throws UnknownHostException
-     *             UnknownHostException
      */
     private void addAnnouncePeerResponse(final DHTParameters params,
-            final Map<String, Object> response, final DatagramPacket packet)
-            throws UnknownHostException {
+            final Map<String, Object> response, final DatagramPacket packet) {
 
         int port = isImpliedPort(params) ? packet.getPort() : params
                 .getPort().intValue();
 
-        if (this.tokenTable.valid(packet.getAddress(), port,
-                params.getToken())) {
+        if (this.tokenTable.valid(packet.getAddress(), params.getToken())) {
 
             byte[] infoHash = params.getInfoHash();
 
             InetAddress addr = packet.getAddress();
             byte[] address = addr.getAddress();
 
-            this.peerRoutingTable.addPeer(infoHash, address, port);
+            this.peerRoutingTable.addPeer(infoHash, address, port,
+                    params.isSeed());
 
             Map<String, Object> rp = new HashMap<String, Object>();
             rp.put("id", params.getInfoHash());
@@ -392,12 +515,24 @@ public class DHTProtocolHandler {
 
         byte[] infoHash = params.getInfoHash();
 
-        Collection<DHTPeer> peers = this.peerRoutingTable.findPeers(infoHash);
+        DHTInfoHash peers = this.peerRoutingTable.findInfoHash(infoHash);
 
-        if (!CollectionUtils.isEmpty(peers)) {
+        if (peers != null && peers.getPeerCount() > 0 && params.isScrape()) {
 
-            List<byte[]> bytes = toByteArrayFromDHTPeer(peers);
-            responseParameter.put("values", bytes);
+            responseParameter.put("BFsd", peers.getSeedFilter());
+            responseParameter.put("BFpe", peers.getPeerFilter());
+
+        } else if (peers != null && peers.getPeerCount() > 0) {
+
+            List<byte[]> values = new ArrayList<byte[]>();
+            Random random = ThreadLocalRandom.current();
+
+            DHTPeerSampler.sample(peers.getCompactPeers4(),
+                    this.config.getValues4Bytes(), random, values);
+            DHTPeerSampler.sample(peers.getCompactPeers6(),
+                    this.config.getValues6Bytes(), random, values);
+
+            responseParameter.put("values", values);
 
         } else {
 
@@ -420,7 +555,8 @@ public class DHTProtocolHandler {
             }
         }
 
-        responseParameter.put("token", generateToken());
+        responseParameter.put("token",
+                this.tokenTable.generateToken(packet.getAddress()));
         responseParameter.put("id", params.getId());
 
         response.put("r", responseParameter);
@@ -470,6 +606,34 @@ public class DHTProtocolHandler {
         responseParameter.put(isIPv6 ? "nodes6" : "nodes", transformNodes);
     }
 
+    /**
+     * Add "sample_infohashes" data to response (BEP 51).
+     *
+     * @param params DHTParameters
+     * @param response Map<String, Object>
+     * @throws IOException IOException
+     */
+    private void addSampleInfoHashesResponse(final DHTParameters params,
+            final Map<String, Object> response) throws IOException {
+
+        boolean isIPv6 = params.isIpv6();
+        Map<String, Object> responseParameter = new HashMap<String, Object>();
+        response.put("r", responseParameter);
+        responseParameter.put("id", this.config.getNodeId());
+
+        responseParameter.put("interval", Integer.valueOf(
+                this.peerRoutingTable.getSampleIntervalInSeconds()));
+        responseParameter.put("num", Integer.valueOf(
+                this.peerRoutingTable.getInfoHashCount()));
+        responseParameter.put("samples",
+                this.peerRoutingTable.sampleInfoHashes());
+
+        List<DHTNode> nodes = findClosestNodes(params.getTarget(), isIPv6);
+
+        byte[] transformNodes = toByteArrayFromDHTNode(nodes, isIPv6);
+        responseParameter.put(isIPv6 ? "nodes6" : "nodes", transformNodes);
+    }
+
     /**
      * Add "ping" data to response.
      *
@@ -534,17 +698,4 @@ public class DHTProtocolHandler {
                 .decode(bytes);
         return map;
     }
-
-    /**
-     * Token returned to a get_peers request. This is to prevent malicious hosts
-     * from signing up other hosts
-     *
-     * @return byte[]
-     */
-    private byte[] generateToken() {
-        byte[] bytes = new byte[GET_PEERS_TOKEN_LENGTH];
-        Random random = new Random();
-        random.nextBytes(bytes);
-        return bytes;
-    }
 }
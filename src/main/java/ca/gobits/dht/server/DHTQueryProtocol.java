@@ -41,6 +41,28 @@ public final class DHTQueryProtocol {
      */
     public static byte[] pingQuery(final String transactionId,
             final byte[] id) {
+        return pingQuery((Object) transactionId, id);
+    }
+
+    /**
+     * Generates a Ping Request.
+     * @param transactionId   TransactionId
+     * @param id   idd
+     * @return byte[]
+     */
+    public static byte[] pingQuery(final byte[] transactionId,
+            final byte[] id) {
+        return pingQuery((Object) transactionId, id);
+    }
+
+    /**
+     * Generates a Ping Request.
+     * @param transactionId   TransactionId
+     * @param id   idd
+     * @return byte[]
+     */
+    private static byte[] pingQuery(final Object transactionId,
+            final byte[] id) {
         Map<Object, Object> r = request(transactionId, "ping");
 
         Map<Object, Object> a = new HashMap<Object, Object>();
@@ -63,6 +85,35 @@ public final class DHTQueryProtocol {
     public static byte[] findNodeQuery(final String transactionId,
             final byte[] id, final byte[] target,
             final List<byte[]> want) {
+        return findNodeQuery((Object) transactionId, id, target, want);
+    }
+
+    /**
+     * Creates a find request.
+     * @param transactionId   TransactionId
+     * @param id  id identifier
+     * @param target  target identifier
+     * @param want  what type of response objects you want
+     *  "n4" for IPv4 or "n6" for IPv6.
+     * @return Map<String, Object>
+     */
+    public static byte[] findNodeQuery(final byte[] transactionId,
+            final byte[] id, final byte[] target,
+            final List<byte[]> want) {
+        return findNodeQuery((Object) transactionId, id, target, want);
+    }
+
+    /**
+     * Creates a find request.
+     * @param transactionId   TransactionId
+     * @param id  id identifier
+     * @param target  target identifier
+     * @param want  what type of response objects you want
+     * @return Map<String, Object>
+     */
+    private static byte[] findNodeQuery(final Object transactionId,
+            final byte[] id, final byte[] target,
+            final List<byte[]> want) {
 
         Map<Object, Object> r = request(transactionId, "find_node");
 
@@ -92,6 +143,35 @@ public final class DHTQueryProtocol {
     public static byte[] getPeersQuery(final String transactionId,
             final byte[] id, final byte[] infohash,
             final List<byte[]> want) {
+        return getPeersQuery((Object) transactionId, id, infohash, want);
+    }
+
+    /**
+     * Creates a "get_peers" request.
+     * @param transactionId   TransactionId
+     * @param id  id identifier
+     * @param infohash  infohash identifier
+     * @param want  what type of response objects you want
+     *  "n4" for IPv4 or "n6" for IPv6.
+     * @return Map<String, Object>
+     */
+    public static byte[] getPeersQuery(final byte[] transactionId,
+            final byte[] id, final byte[] infohash,
+            final List<byte[]> want) {
+        return getPeersQuery((Object) transactionId, id, infohash, want);
+    }
+
+    /**
+     * Creates a "get_peers" request.
+     * @param transactionId   TransactionId
+     * @param id  id identifier
+     * @param infohash  infohash identifier
+     * @param want  what type of response objects you want
+     * @return Map<String, Object>
+     */
+    private static byte[] getPeersQuery(final Object transactionId,
+            final byte[] id, final byte[] infohash,
+            final List<byte[]> want) {
 
         Map<Object, Object> r = request(transactionId, "get_peers");
 
@@ -111,11 +191,11 @@ public final class DHTQueryProtocol {
 
     /**
      * Create Request Map.
-     * @param transactionId TransactinId
+     * @param transactionId TransactinId, String or byte[]
      * @param request  request type
      * @return Map<Object, Object>
      */
-    private static Map<Object, Object> request(final String transactionId,
+    private static Map<Object, Object> request(final Object transactionId,
             final String request) {
         Map<Object, Object> map = new HashMap<Object, Object>();
         map.put("t", transactionId);
@@ -18,16 +18,16 @@ package ca.gobits.dht.server;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
-import java.net.InetAddress;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
-import ca.gobits.dht.server.queue.DHTFindNodeQueue;
-
+import ca.gobits.dht.util.Events;
+import ca.gobits.dht.util.JdkFlightRecorder;
 
 /**
  * DHTServer implementation.
@@ -55,9 +55,17 @@ public class DHTServer {
     @Autowired
     private DatagramSocket serverSocket;
 
-    /** DHTFindNodeQueue Handler. */
+    /** DHTBootstrap. */
+    @Autowired
+    private DHTBootstrap bootstrap;
+
+    /** DHTBanList. */
+    @Autowired
+    private DHTBanList banList;
+
+    /** DHTMetrics. */
     @Autowired
-    private DHTFindNodeQueue findNodeQueue;
+    private DHTMetrics metrics;
 
     /** DHTServer Config. */
     @Autowired
@@ -76,6 +84,7 @@ public class DHTServer {
     public void start() throws Exception {
 
         setLoggingLevels();
+        setEventRecorder();
 
         LOGGER.info("starting cthulhu on " + this.serverSocket.getLocalPort()
                 + " with ID "
@@ -107,8 +116,12 @@ public class DHTServer {
 
             this.serverSocket.receive(receivePacket);
 
-            this.socketThreadPool.execute(new DHTProtocolRunnable(
-                this.serverSocket, this.dhtHandler, receivePacket));
+            // banned sources are dropped before the packet is decoded
+            if (this.banList.isBanned(receivePacket.getAddress())) {
+                this.metrics.drop(DHTMetrics.Drop.BANNED);
+            } else {
+                dispatch(receivePacket);
+            }
 
             if (this.stop) {
                 break;
@@ -116,6 +129,21 @@ public class DHTServer {
         }
     }
 
+    /**
+     * Hands a packet to the protocol handler threads, the packet is dropped
+     * when they are all busy and their queue is full.
+     * @param receivePacket  received packet
+     */
+    private void dispatch(final DatagramPacket receivePacket) {
+
+        try {
+            this.socketThreadPool.execute(new DHTProtocolRunnable(
+                    this.serverSocket, this.dhtHandler, receivePacket));
+        } catch (TaskRejectedException e) {
+            this.metrics.drop(DHTMetrics.Drop.REJECTED);
+        }
+    }
+
     /**
      * Sets the DHTServer logging levels.
      */
@@ -127,34 +155,23 @@ public class DHTServer {
     }
 
     /**
-     * Bootstrap Server with nodes.
+     * Records events with JDK Flight Recorder when configured, the events
+     * are discarded otherwise.
      */
-    private void bootstrap() {
-
-        String[] nodes = this.config.getBootstrapNodes();
-
-        if (nodes != null) {
-
-            for (String node : nodes) {
-
-                LOGGER.info("bootstrapping server with " + node);
-
-                try {
-
-                    String[] addrPort = node.split(":");
-                    InetAddress addr = InetAddress.getByName(addrPort[0]);
-                    int port = Integer.valueOf(addrPort[1]).intValue();
-
-                    this.findNodeQueue.findNodesWithDelay(addr, port,
-                            this.config.getNodeId());
-
-                } catch (Exception e) {
-                    LOGGER.warn("unable to bootstrap " + node + ".", e);
-                }
-            }
+    private void setEventRecorder() {
+        if (this.config.isFlightRecorder()) {
+            Events.setRecorder(JdkFlightRecorder.create());
         }
     }
 
+    /**
+     * Bootstrap Server with nodes, the routing table is filled in the
+     * background while packets are received.
+     */
+    private void bootstrap() {
+        this.bootstrap.start();
+    }
+
     /**
      * Gracefully shutdown server.
      */
@@ -16,6 +16,12 @@
 
 package ca.gobits.dht.server;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
 import org.apache.commons.cli.BasicParser;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -26,6 +32,9 @@ import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
 import ca.gobits.dht.DHTIdentifier;
+import ca.gobits.dht.DHTNodeShardedRoutingTable;
+import ca.gobits.dht.DHTSecureNodeId;
+import ca.gobits.dht.server.DHTPacketLog.Event;
 
 /**
  * DHTServer Configuration.
@@ -44,18 +53,165 @@ public class DHTServerConfig {
         .addOption("nodes", true,
                 "comma-separated list of bootstrap nodes format \"host:port\"")
         .addOption("p", true, "bind to port")
+        .addOption("pps", true, "maximum queued packets sent per second")
+        .addOption("bps", true, "maximum queued bytes sent per second")
+        .addOption("ip", true,
+                "external IP address the secure node identifier is made for")
+        .addOption("secureid", true,
+                "unverified node identifiers: off, prefer or enforce")
+        .addOption("ipnodes", true,
+                "maximum nodes of one IP address in the routing table")
+        .addOption("subnetnodes", true,
+                "maximum nodes of one /24 or /64 in the routing table")
+        .addOption("bucketipnodes", true,
+                "maximum nodes of one IP address in a bucket")
+        .addOption("bucketsubnetnodes", true,
+                "maximum nodes of one /24 or /64 in a bucket")
+        .addOption("banlist", true,
+                "file of banned IP addresses and CIDR blocks, one per line")
+        .addOption("jfr", false,
+                "record events with JDK Flight Recorder, Java 11 or later")
+        .addOption("metrics", true,
+                "seconds between writing metrics to the log, 0 for never")
+        .addOption("logsample", true,
+                "log 1 in n packet events, eg query_in=100,query_out=0")
+        .addOption("coalesce", true,
+                "millis repeated status updates of a node are coalesced")
+        .addOption("peercapacity", true,
+                "maximum announced peers kept across all InfoHashes")
+        .addOption("peerttl", true,
+                "minutes an announced peer is kept without announcing again")
+        .addOption("eviction", true,
+                "InfoHashes evicted at peer capacity: lru or tinylfu")
         .addOption("salt", true, "DHT Node Identifier salt")
+        .addOption("shards", true,
+                "number of routing table shards, a power of two up to 256")
+        .addOption("values4", true,
+                "maximum bytes of IPv4 peers in a get_peers reply")
+        .addOption("values6", true,
+                "maximum bytes of IPv6 peers in a get_peers reply")
         .addOption("verbose", false, "be extra verbose");
 
     /** Default Port. */
     public static final int DEFAULT_PORT = 6881;
 
+    /** Default maximum bytes of IPv4 peers in a get_peers reply. */
+    public static final int DEFAULT_VALUES4_BYTES = 400;
+
+    /** Default maximum bytes of IPv6 peers in a get_peers reply. */
+    public static final int DEFAULT_VALUES6_BYTES = 420;
+
+    /** Default maximum queued packets sent per second. */
+    public static final int DEFAULT_PACKETS_PER_SECOND = 1000;
+
+    /** Default maximum queued bytes sent per second. */
+    public static final int DEFAULT_BYTES_PER_SECOND = 128 * 1024;
+
+    /** Default millis repeated status updates of a node are coalesced. */
+    public static final int DEFAULT_COALESCE_MILLIS = 1000;
+
+    /** Default maximum announced peers across all InfoHashes. */
+    public static final int DEFAULT_PEER_CAPACITY = 1000000;
+
+    /** Default minutes an announced peer is kept without announcing. */
+    public static final int DEFAULT_PEER_TTL_IN_MINUTES = 30;
+
+    /**
+     * How the InfoHash to evict is chosen when the peer capacity is reached.
+     */
+    public enum EvictionPolicy {
+        /** least recently announced or looked up. */
+        LRU,
+        /** least frequently used, recent history kept in a sketch. */
+        TINYLFU
+    }
+
+    /**
+     * How node identifiers that do not match their IP address (BEP 42)
+     * are treated.
+     */
+    public enum SecureNodeIdPolicy {
+        /** identifiers are not verified. */
+        OFF,
+        /** unverified nodes only fill the first half of a bucket. */
+        PREFER,
+        /** unverified nodes are not added. */
+        ENFORCE
+    }
+
+    /** Default maximum nodes of one IP address in the routing table. */
+    public static final int DEFAULT_NODES_PER_IP = 2;
+
+    /** Default maximum nodes of one subnet in the routing table. */
+    public static final int DEFAULT_NODES_PER_SUBNET = 16;
+
+    /** Default maximum nodes of one IP address in a bucket. */
+    public static final int DEFAULT_NODES_PER_IP_IN_BUCKET = 1;
+
+    /** Default maximum nodes of one subnet in a bucket. */
+    public static final int DEFAULT_NODES_PER_SUBNET_IN_BUCKET = 2;
+
     /** DHT Server Port. */
     private int port = DEFAULT_PORT;
 
+    /** Maximum queued packets sent per second. */
+    private int packetsPerSecond = DEFAULT_PACKETS_PER_SECOND;
+
+    /** Maximum queued bytes sent per second. */
+    private int bytesPerSecond = DEFAULT_BYTES_PER_SECOND;
+
+    /** Millis repeated status updates of a node are coalesced. */
+    private int coalesceMillis = DEFAULT_COALESCE_MILLIS;
+
+    /** Number of routing table shards. */
+    private int shards = 1;
+
+    /** Seconds between writing metrics to the log. */
+    private int metricsInSeconds;
+
+    /** 1 in n packet events logged, by event. */
+    private final Map<Event, Integer> logSampling =
+            new EnumMap<Event, Integer>(Event.class);
+
+    /** Whether events are recorded with JDK Flight Recorder. */
+    private boolean flightRecorder;
+
+    /** Maximum nodes of one IP address in the routing table. */
+    private int nodesPerIp = DEFAULT_NODES_PER_IP;
+
+    /** Maximum nodes of one subnet in the routing table. */
+    private int nodesPerSubnet = DEFAULT_NODES_PER_SUBNET;
+
+    /** Maximum nodes of one IP address in a bucket. */
+    private int nodesPerIpInBucket = DEFAULT_NODES_PER_IP_IN_BUCKET;
+
+    /** Maximum nodes of one subnet in a bucket. */
+    private int nodesPerSubnetInBucket = DEFAULT_NODES_PER_SUBNET_IN_BUCKET;
+
+    /** Maximum bytes of IPv4 peers in a get_peers reply. */
+    private int values4Bytes = DEFAULT_VALUES4_BYTES;
+
+    /** Maximum bytes of IPv6 peers in a get_peers reply. */
+    private int values6Bytes = DEFAULT_VALUES6_BYTES;
+
+    /** Maximum announced peers across all InfoHashes. */
+    private int peerCapacity = DEFAULT_PEER_CAPACITY;
+
+    /** Minutes an announced peer is kept without announcing. */
+    private int peerTtlInMinutes = DEFAULT_PEER_TTL_IN_MINUTES;
+
+    /** How the InfoHash to evict is chosen. */
+    private EvictionPolicy evictionPolicy = EvictionPolicy.TINYLFU;
+
     /** Default NodeId. */
     private byte[] nodeId = DHTIdentifier.getRandomNodeId();
 
+    /** How unverified node identifiers are treated. */
+    private SecureNodeIdPolicy secureNodeIdPolicy = SecureNodeIdPolicy.PREFER;
+
+    /** File of banned addresses. */
+    private String banList;
+
     /** Is Display Help. */
     private boolean showHelp;
 
@@ -97,8 +253,9 @@ public class DHTServerConfig {
     /**
      * Parses the CommandLine options that are set.
      * @param cmd  CommandLine
+     * @throws UnknownHostException  if the external IP address is invalid
      */
-    private void parse(final CommandLine cmd) {
+    private void parse(final CommandLine cmd) throws UnknownHostException {
 
         if (cmd.hasOption("?")) {
             this.showHelp = true;
@@ -116,6 +273,70 @@ public class DHTServerConfig {
                 this.nodeId = DHTIdentifier.sha1(salt.getBytes());
             }
 
+            if (cmd.hasOption("ip")) {
+
+                // the salted or random identifier supplies the random bits
+                InetAddress ip = InetAddress.getByName(cmd
+                        .getOptionValue("ip"));
+                this.nodeId = DHTSecureNodeId.getNodeId(ip.getAddress(),
+                        this.nodeId);
+            }
+
+            if (cmd.hasOption("secureid")) {
+                String policy = cmd.getOptionValue("secureid");
+                this.secureNodeIdPolicy = SecureNodeIdPolicy.valueOf(policy
+                        .toUpperCase(Locale.ENGLISH));
+            }
+
+            if (cmd.hasOption("values4")) {
+                this.values4Bytes = Integer.parseInt(cmd
+                        .getOptionValue("values4"));
+            }
+
+            if (cmd.hasOption("values6")) {
+                this.values6Bytes = Integer.parseInt(cmd
+                        .getOptionValue("values6"));
+            }
+
+            if (cmd.hasOption("pps")) {
+                this.packetsPerSecond = Integer.parseInt(cmd
+                        .getOptionValue("pps"));
+            }
+
+            if (cmd.hasOption("bps")) {
+                this.bytesPerSecond = Integer.parseInt(cmd
+                        .getOptionValue("bps"));
+            }
+
+            if (cmd.hasOption("coalesce")) {
+                this.coalesceMillis = Integer.parseInt(cmd
+                        .getOptionValue("coalesce"));
+            }
+
+            if (cmd.hasOption("banlist")) {
+                this.banList = cmd.getOptionValue("banlist");
+            }
+
+            if (cmd.hasOption("metrics")) {
+                this.metricsInSeconds = Integer.parseInt(cmd
+                        .getOptionValue("metrics"));
+            }
+
+            if (cmd.hasOption("logsample")) {
+                parseLogSampling(cmd.getOptionValue("logsample"));
+            }
+
+            if (cmd.hasOption("jfr")) {
+                this.flightRecorder = true;
+            }
+
+            if (cmd.hasOption("shards")) {
+                this.shards = Integer.parseInt(cmd.getOptionValue("shards"));
+            }
+
+            parseDiversity(cmd);
+            parsePeers(cmd);
+
             if (cmd.hasOption("nodes")) {
                 String value = cmd.getOptionValue("nodes");
                 this.bootstrapNodes = value.split(",");
@@ -137,13 +358,92 @@ public class DHTServerConfig {
         }
     }
 
+    /**
+     * Parses the sampling of packet events, a list of event=n.
+     * @param value  option value
+     */
+    private void parseLogSampling(final String value) {
+
+        for (String s : value.split(",")) {
+
+            String[] pair = s.split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("invalid logsample " + s);
+            }
+
+            Event event = Event.valueOf(pair[0].trim()
+                    .toUpperCase(Locale.ENGLISH));
+            int n = Integer.parseInt(pair[1].trim());
+
+            if (n < 0) {
+                throw new IllegalArgumentException("invalid logsample " + s);
+            }
+
+            this.logSampling.put(event, Integer.valueOf(n));
+        }
+    }
+
+    /**
+     * Parses the capacity, expiry and eviction of announced peers.
+     * @param cmd  CommandLine
+     */
+    private void parsePeers(final CommandLine cmd) {
+
+        if (cmd.hasOption("peercapacity")) {
+            this.peerCapacity = Integer.parseInt(cmd
+                    .getOptionValue("peercapacity"));
+        }
+
+        if (cmd.hasOption("peerttl")) {
+            this.peerTtlInMinutes = Integer.parseInt(cmd
+                    .getOptionValue("peerttl"));
+        }
+
+        if (cmd.hasOption("eviction")) {
+            this.evictionPolicy = EvictionPolicy.valueOf(cmd
+                    .getOptionValue("eviction").toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    /**
+     * Parses the limits on nodes per IP address and subnet.
+     * @param cmd  CommandLine
+     */
+    private void parseDiversity(final CommandLine cmd) {
+
+        if (cmd.hasOption("ipnodes")) {
+            this.nodesPerIp = Integer.parseInt(cmd.getOptionValue("ipnodes"));
+        }
+
+        if (cmd.hasOption("subnetnodes")) {
+            this.nodesPerSubnet = Integer.parseInt(cmd
+                    .getOptionValue("subnetnodes"));
+        }
+
+        if (cmd.hasOption("bucketipnodes")) {
+            this.nodesPerIpInBucket = Integer.parseInt(cmd
+                    .getOptionValue("bucketipnodes"));
+        }
+
+        if (cmd.hasOption("bucketsubnetnodes")) {
+            this.nodesPerSubnetInBucket = Integer.parseInt(cmd
+                    .getOptionValue("bucketsubnetnodes"));
+        }
+    }
+
     /**
      * Validates parameters passed in are valid.
      * @return boolean
      */
     private boolean isValid() {
 
-        boolean valid = true;
+        boolean valid = this.packetsPerSecond > 0 && this.bytesPerSecond > 0
+                && this.coalesceMillis >= 0 && this.metricsInSeconds >= 0
+                && DHTNodeShardedRoutingTable.isValidShardCount(this.shards)
+                && this.nodesPerIp >= 0 && this.nodesPerSubnet >= 0
+                && this.nodesPerIpInBucket >= 0
+                && this.nodesPerSubnetInBucket >= 0
+                && this.peerCapacity > 0 && this.peerTtlInMinutes > 0;
 
         if (this.bootstrapNodes != null) {
 
@@ -175,6 +475,111 @@ public class DHTServerConfig {
         return this.port;
     }
 
+    /**
+     * @return int  maximum bytes of IPv4 peers in a get_peers reply
+     */
+    public int getValues4Bytes() {
+        return this.values4Bytes;
+    }
+
+    /**
+     * @return int  maximum bytes of IPv6 peers in a get_peers reply
+     */
+    public int getValues6Bytes() {
+        return this.values6Bytes;
+    }
+
+    /**
+     * @return int  maximum queued packets sent per second
+     */
+    public int getPacketsPerSecond() {
+        return this.packetsPerSecond;
+    }
+
+    /**
+     * @return int  maximum queued bytes sent per second
+     */
+    public int getBytesPerSecond() {
+        return this.bytesPerSecond;
+    }
+
+    /**
+     * @return int  millis repeated status updates of a node are coalesced,
+     *              0 disables coalescing
+     */
+    public int getCoalesceMillis() {
+        return this.coalesceMillis;
+    }
+
+    /**
+     * @return String  file of banned addresses or null
+     */
+    public String getBanList() {
+        return this.banList;
+    }
+
+    /**
+     * @return int  seconds between writing metrics to the log,
+     *              0 for never
+     */
+    public int getMetricsInSeconds() {
+        return this.metricsInSeconds;
+    }
+
+    /**
+     * @param event  type of packet event
+     * @return int  1 in n events are logged, 0 for none
+     */
+    public int getLogSampling(final Event event) {
+        Integer n = this.logSampling.get(event);
+        return n != null ? n.intValue() : 1;
+    }
+
+    /**
+     * @return boolean  whether events are recorded with JDK Flight Recorder
+     */
+    public boolean isFlightRecorder() {
+        return this.flightRecorder;
+    }
+
+    /**
+     * @return int  number of routing table shards
+     */
+    public int getShards() {
+        return this.shards;
+    }
+
+    /**
+     * @return int  maximum nodes of one IP address in the routing table,
+     *              0 for no limit
+     */
+    public int getNodesPerIp() {
+        return this.nodesPerIp;
+    }
+
+    /**
+     * @return int  maximum nodes of one subnet in the routing table,
+     *              0 for no limit
+     */
+    public int getNodesPerSubnet() {
+        return this.nodesPerSubnet;
+    }
+
+    /**
+     * @return int  maximum nodes of one IP address in a bucket, 0 for no
+     *              limit
+     */
+    public int getNodesPerIpInBucket() {
+        return this.nodesPerIpInBucket;
+    }
+
+    /**
+     * @return int  maximum nodes of one subnet in a bucket, 0 for no limit
+     */
+    public int getNodesPerSubnetInBucket() {
+        return this.nodesPerSubnetInBucket;
+    }
+
     /**
      * @return boolean
      */
@@ -189,6 +594,34 @@ public class DHTServerConfig {
         return this.nodeId;
     }
 
+    /**
+     * @return int  maximum announced peers across all InfoHashes
+     */
+    public int getPeerCapacity() {
+        return this.peerCapacity;
+    }
+
+    /**
+     * @return int  minutes an announced peer is kept without announcing
+     */
+    public int getPeerTtlInMinutes() {
+        return this.peerTtlInMinutes;
+    }
+
+    /**
+     * @return EvictionPolicy
+     */
+    public EvictionPolicy getEvictionPolicy() {
+        return this.evictionPolicy;
+    }
+
+    /**
+     * @return SecureNodeIdPolicy
+     */
+    public SecureNodeIdPolicy getSecureNodeIdPolicy() {
+        return this.secureNodeIdPolicy;
+    }
+
     /**
      * @return String[]
      */
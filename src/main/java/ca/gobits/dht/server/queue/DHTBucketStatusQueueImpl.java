@@ -14,27 +14,55 @@
 // limitations under the License.
 //
 
+
 package ca.gobits.dht.server.queue;
 
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
+import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import ca.gobits.dht.DHTBucket;
 import ca.gobits.dht.DHTIdentifier;
 import ca.gobits.dht.DHTNode;
+import ca.gobits.dht.DHTNode.State;
 import ca.gobits.dht.DHTNodeRoutingTable;
-import ca.gobits.dht.util.DateHelper;
+import ca.gobits.dht.comparator.DHTNodeLastUpdatedComparator;
+import ca.gobits.dht.server.scheduling.DHTRoutingTableUpdateRing;
+import ca.gobits.dht.util.SortedCollection;
+import ca.gobits.dht.util.TimingWheel;
 
 /**
  * Implementation of a DHTBucketStatusQueue.
  *
+ * Every bucket is scheduled on a TimingWheel by its own last changed time,
+ * so only buckets that have gone 15 minutes without a change are looked at.
+ * A bucket that is due is refreshed by pinging its least recently seen
+ * nodes that have not been heard from within the window and by performing
+ * a find_node on a random ID in its range.  Nodes that fail to respond
+ * twice are removed.
  */
 public class DHTBucketStatusQueueImpl implements DHTBucketStatusQueue {
 
-    /** Number of minutes until Bucket expires. */
-    private static final int BUCKET_EXPIRY_IN_MINUTES = 15;
+    /** DHTBucketStatusQueue Logger. */
+    private static final Logger LOGGER = Logger
+            .getLogger(DHTBucketStatusQueue.class);
+
+    /** Millis a bucket or node stays fresh without being seen. */
+    private static final long REFRESH_IN_MILLIS = 15 * 60 * 1000;
+
+    /** Millis until a bucket with unanswered pings is checked again. */
+    private static final long RECHECK_IN_MILLIS = 60 * 1000;
+
+    /** Maximum number of nodes checked per bucket refresh. */
+    private static final int MAX_NODES_PER_REFRESH = 2;
+
+    /** Length of a TimingWheel tick in millis. */
+    private static final long TICK_IN_MILLIS = 1000;
 
     /** Reference to Node Routing Table. */
     @Autowired
@@ -44,38 +72,196 @@ public class DHTBucketStatusQueueImpl implements DHTBucketStatusQueue {
     @Autowired
     private DHTFindNodeQueue findNodeQueue;
 
+    /** Reference to DHTPingQueue. */
+    @Autowired
+    private DHTPingQueue pingQueue;
+
+    /** Reference to DHTRoutingTableUpdateRing. */
+    @Autowired
+    private DHTRoutingTableUpdateRing rtUpdateRing;
+
+    /** Refresh schedule of IPv4 buckets. */
+    private final TimingWheel<DHTBucket> queue = new TimingWheel<DHTBucket>(
+            TICK_IN_MILLIS);
+
+    /** Refresh schedule of IPv6 buckets. */
+    private final TimingWheel<DHTBucket> queue6 = new TimingWheel<DHTBucket>(
+            TICK_IN_MILLIS);
+
+    /** Number of IPv4 / IPv6 buckets that have been scheduled. */
+    private final int[] bucketCounts = new int[2];
+
     @Override
-    public void processQueue() {
+    public int processQueue() {
+        return processQueue(System.currentTimeMillis());
+    }
 
-        processBuckets(false);
-        processBuckets(true);
+    /**
+     * Processes the buckets that are due at time now.
+     * @param now  current time in millis
+     * @return int  number of buckets refreshed
+     */
+    public int processQueue(final long now) {
+        return processBuckets(false, now) + processBuckets(true, now);
     }
 
     /**
-     * Buckets that have not been changed in 15 minutes should be
-     * "refreshed." This is done by picking a random ID in the range of the
-     * bucket and performing a find_nodes search on it.
+     * Buckets that have not been changed in 15 minutes are "refreshed",
+     * buckets that changed since they were scheduled are moved to their
+     * new deadline.
      *
      * @param ipv6 whether IPv6
+     * @param now  current time in millis
+     * @return int  number of buckets refreshed
+     */
+    private int processBuckets(final boolean ipv6, final long now) {
+
+        scheduleNewBuckets(ipv6, now);
+
+        TimingWheel<DHTBucket> wheel = getQueue(ipv6);
+        List<DHTBucket> due = new ArrayList<DHTBucket>();
+        wheel.advance(now, due);
+
+        int count = 0;
+
+        for (DHTBucket bucket : due) {
+
+            long lastChanged = getLastChanged(bucket);
+            long deadline = lastChanged + REFRESH_IN_MILLIS;
+
+            if (deadline <= now) {
+
+                boolean pending = refresh(bucket, ipv6, now);
+                deadline = now
+                        + (pending ? RECHECK_IN_MILLIS : REFRESH_IN_MILLIS);
+                count++;
+            }
+
+            reschedule(bucket, ipv6, deadline);
+        }
+
+        LOGGER.debug("processing bucketstatus queue: " + count
+                + " out of " + wheel.size());
+
+        return count;
+    }
+
+    /**
+     * Refreshes a bucket.
+     * @param bucket  DHTBucket
+     * @param ipv6  whether IPv6
+     * @param now  current time in millis
+     * @return boolean  whether nodes in the bucket are waiting on a ping
      */
-    private void processBuckets(final boolean ipv6) {
+    private boolean refresh(final DHTBucket bucket, final boolean ipv6,
+            final long now) {
 
-        for (DHTBucket bucket : this.rt.getBuckets(ipv6)) {
+        List<DHTNode> nodes = this.rt.findNodes(bucket, ipv6);
+        Collections.sort(nodes, DHTNodeLastUpdatedComparator.getInstance());
 
-            if (isExpired(bucket)) {
+        boolean pending = false;
+        int checked = 0;
 
-                byte[] randomId = DHTIdentifier.getRandomNodeId(
-                        bucket.getMin(), bucket.getMax());
+        for (DHTNode node : nodes) {
 
-                List<DHTNode> nodes = this.rt.findClosestNodes(randomId, ipv6);
+            if (!isStale(node, now)) {
+                break;
+            }
 
-                for (DHTNode node : nodes) {
+            if (checked < MAX_NODES_PER_REFRESH) {
+                pending |= checkNode(node);
+                checked++;
+            } else {
+                pending = true;
+                break;
+            }
+        }
 
-                    this.findNodeQueue.findNodes(node.getAddress(),
-                        node.getPort(), randomId);
-                }
+        byte[] target = DHTIdentifier.getRandomNodeId(bucket.getMin(),
+                bucket.getMax());
+
+        if (!nodes.isEmpty()) {
+            findNodes(nodes.get(nodes.size() - 1), target);
+        } else {
+            for (DHTNode node : this.rt.findClosestNodes(target, 1, ipv6)) {
+                findNodes(node, target);
             }
         }
+
+        return pending;
+    }
+
+    /**
+     * Pings a node that has not been seen in the window, GOOD nodes become
+     * QUESTIONABLE, QUESTIONABLE nodes become UNKNOWN and UNKNOWN nodes are
+     * removed from the routing table.
+     * @param node  DHTNode
+     * @return boolean  whether the node was pinged
+     */
+    private boolean checkNode(final DHTNode node) {
+
+        boolean pinged = true;
+        InetAddress addr = node.getAddress();
+        State state = addr != null ? node.getState() : State.UNKNOWN;
+
+        if (State.GOOD.equals(state)) {
+
+            node.setState(State.QUESTIONABLE);
+            this.pingQueue.ping(addr, node.getPort());
+
+        } else if (State.QUESTIONABLE.equals(state)) {
+
+            node.setState(State.UNKNOWN);
+            this.pingQueue.ping(addr, node.getPort());
+
+        } else {
+
+            this.rtUpdateRing.removeNode(node);
+            pinged = false;
+        }
+
+        return pinged;
+    }
+
+    /**
+     * Sends a find_node to a node.
+     * @param node  DHTNode
+     * @param target  node id to find
+     */
+    private void findNodes(final DHTNode node, final byte[] target) {
+
+        InetAddress addr = node.getAddress();
+
+        if (addr != null) {
+            this.findNodeQueue.findNodes(addr, node.getPort(), target);
+        }
+    }
+
+    /**
+     * Schedules buckets created by splits that have not been scheduled yet.
+     * @param ipv6  whether IPv6
+     * @param now  current time in millis
+     */
+    private void scheduleNewBuckets(final boolean ipv6, final long now) {
+
+        int index = ipv6 ? 1 : 0;
+        int size = this.rt.getBucketCount(ipv6);
+
+        if (size != this.bucketCounts[index]) {
+
+            SortedCollection<DHTBucket> buckets = this.rt.getBuckets(ipv6);
+
+            for (int i = 0; i < buckets.size(); i++) {
+
+                DHTBucket bucket = buckets.get(i);
+                Date lastChanged = bucket.getLastChanged();
+                long time = lastChanged != null ? lastChanged.getTime() : now;
+
+                schedule(bucket, ipv6, time + REFRESH_IN_MILLIS);
+            }
+
+            this.bucketCounts[index] = size;
+        }
     }
 
     @Override
@@ -83,16 +269,64 @@ public class DHTBucketStatusQueueImpl implements DHTBucketStatusQueue {
             final boolean ipv6) {
 
         DHTBucket bucket = this.rt.findBucket(nodeId, ipv6);
-        bucket.setLastChanged(new Date());
+        Date now = new Date();
+        bucket.setLastChanged(now);
+
+        schedule(bucket, ipv6, now.getTime() + REFRESH_IN_MILLIS);
+    }
+
+    /**
+     * Schedules a bucket that is not scheduled yet, buckets that are
+     * already scheduled pick up their new last changed time when they
+     * are due.
+     * @param bucket  DHTBucket
+     * @param ipv6  whether IPv6
+     * @param deadline  time in millis the bucket is due
+     */
+    private synchronized void schedule(final DHTBucket bucket,
+            final boolean ipv6, final long deadline) {
+
+        if (bucket.getRefresh() == null) {
+            bucket.setRefresh(getQueue(ipv6).schedule(bucket, deadline));
+        }
+    }
+
+    /**
+     * Moves a scheduled bucket to a new deadline.
+     * @param bucket  DHTBucket
+     * @param ipv6  whether IPv6
+     * @param deadline  time in millis the bucket is due
+     */
+    private synchronized void reschedule(final DHTBucket bucket,
+            final boolean ipv6, final long deadline) {
+        getQueue(ipv6).reschedule(bucket.getRefresh(), deadline);
+    }
+
+    /**
+     * @param node  DHTNode
+     * @param now  current time in millis
+     * @return boolean  whether node has not been seen in the window
+     */
+    private boolean isStale(final DHTNode node, final long now) {
+        Date lastUpdated = node.getLastUpdated();
+        return lastUpdated == null
+                || now - lastUpdated.getTime() >= REFRESH_IN_MILLIS;
     }
 
     /**
-     * Is Bucket Expired.
      * @param bucket  DHTBucket
-     * @return boolean
+     * @return long  time bucket last changed or 0 if it never changed
+     */
+    private long getLastChanged(final DHTBucket bucket) {
+        Date lastChanged = bucket.getLastChanged();
+        return lastChanged != null ? lastChanged.getTime() : 0;
+    }
+
+    /**
+     * @param ipv6  whether IPv6
+     * @return TimingWheel<DHTBucket>
      */
-    private boolean isExpired(final DHTBucket bucket) {
-        return DateHelper.isPastDateInMinutes(new Date(),
-                bucket.getLastChanged(), BUCKET_EXPIRY_IN_MINUTES);
+    public TimingWheel<DHTBucket> getQueue(final boolean ipv6) {
+        return ipv6 ? this.queue6 : this.queue;
     }
 }
@@ -20,15 +20,13 @@ import static ca.gobits.dht.DHTIdentifier.NODE_ID_LENGTH;
 import static ca.gobits.dht.util.DHTConversion.compactAddress;
 import static ca.gobits.dht.util.DHTConversion.compactAddressPort;
 
-import java.net.Inet6Address;
 import java.net.InetAddress;
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
 import ca.gobits.dht.server.DHTQueryProtocol;
 import ca.gobits.dht.server.DHTServerConfig;
 
@@ -58,26 +56,20 @@ public class DHTFindNodeQueueImpl extends DHTQueueAbstract<byte[]>
             System.arraycopy(target, 0, payload, addrPayload.length,
                     target.length);
 
-            DelayObject<byte[]> obj = new DelayObject<byte[]>(payload,
-                    getDelayInMillis());
-
-            getQueue().offer(obj);
+            if (markRecent(DHTQueryType.FIND_NODE, payload)) {
+                schedule(payload);
+            }
         }
     }
 
     @Override
-    public void processQueue() {
-        Collection<DelayObject<byte[]>> objs =
-                new ArrayList<DelayObject<byte[]>>();
-
-        getQueue().drainTo(objs);
+    public int processQueue() {
+        List<byte[]> objs = poll();
 
-        LOGGER.info("processing findnode queue: " + objs.size()
+        LOGGER.debug("processing findnode queue: " + objs.size()
                 + " out of " + size());
 
-        for (DelayObject<byte[]> obj : objs) {
-
-            byte[] payload = obj.getPayload();
+        for (byte[] payload : objs) {
             byte[] baddr = new byte[payload.length
                     - NODE_ID_LENGTH];
             byte[] target = new byte[NODE_ID_LENGTH];
@@ -87,40 +79,45 @@ public class DHTFindNodeQueueImpl extends DHTQueueAbstract<byte[]>
 
             InetAddress addr = compactAddress(baddr);
             int port = compactAddressPort(baddr);
-            findNodes(addr, port, target);
+
+            if (!send(addr, port, target)) {
+                unmarkRecent(DHTQueryType.FIND_NODE, payload);
+            }
         }
+
+        return objs.size();
     }
 
     @Override
     public void findNodes(final InetAddress addr, final int port,
             final byte[] target) {
+        send(addr, port, target);
+    }
 
-        if (addr != null) {
+    /**
+     * Sends a find_node query.
+     * @param addr  InetAddress
+     * @param port  port
+     * @param target  node id to find
+     * @return boolean  whether the query was sent or queued
+     */
+    private boolean send(final InetAddress addr, final int port,
+            final byte[] target) {
+
+        boolean sent = false;
+        byte[] transactionId = addr != null ? getTransactionId(addr, port,
+                DHTQueryType.FIND_NODE) : null;
+
+        if (transactionId != null) {
             List<byte[]> want = getWant();
             byte[] nodeId = this.config.getNodeId();
-            byte[] msg = DHTQueryProtocol.findNodeQuery(getTransactionId(),
+            byte[] msg = DHTQueryProtocol.findNodeQuery(transactionId,
                     nodeId, target, want);
 
-            LOGGER.info("sending 'find_node' to " + addr.getHostAddress() + ":"
-                    + port);
-
-            sendToSocket(addr, port, msg);
-        }
-    }
-
-    /**
-     * @return List<byte[]>  wants the local server supports.
-     */
-    private List<byte[]> getWant() {
-
-        List<byte[]> want = new ArrayList<byte[]>();
-        InetAddress addr = getSocket().getLocalAddress();
-        if (addr instanceof Inet6Address) {
-            want.add("n6".getBytes());
-        } else {
-            want.add("n4".getBytes());
+            sent = sendToSocket(DHTQueryType.FIND_NODE, addr, port,
+                    transactionId, msg);
         }
 
-        return want;
+        return sent;
     }
 }
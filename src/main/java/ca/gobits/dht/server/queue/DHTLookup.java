@@ -0,0 +1,436 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.server.queue;
+
+import static ca.gobits.dht.util.DHTConversion.compactAddress;
+import static ca.gobits.dht.util.DHTConversion.compactAddressPort;
+import static ca.gobits.dht.util.DHTConversion.toDHTNode;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+import ca.gobits.dht.DHTNode;
+import ca.gobits.dht.DHTPeer;
+import ca.gobits.dht.comparator.DHTNodeDistanceComparator;
+import ca.gobits.dht.server.DHTParameters;
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
+import ca.gobits.dht.util.TimingWheel.Timeout;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * DHTLookup - an iterative Kademlia 'find_node' or 'get_peers' lookup.
+ *
+ * The lookup keeps a shortlist of nodes ordered by XOR distance to the
+ * target and keeps up to alpha queries in flight to the closest nodes it
+ * has not asked yet.  It completes once the k closest nodes that have not
+ * failed have all answered.
+ */
+public final class DHTLookup implements DHTTransactionListener {
+
+    /** DHTLookup Logger. */
+    private static final Logger LOGGER = Logger.getLogger(DHTLookup.class);
+
+    /** Number of queries kept in flight. */
+    public static final int ALPHA = 3;
+
+    /** Number of closest nodes the lookup converges on. */
+    public static final int K = 8;
+
+    /** Maximum number of nodes kept on the shortlist. */
+    private static final int MAX_CANDIDATES = K * 8;
+
+    /** Maximum number of peers collected. */
+    private static final int MAX_PEERS = 1024;
+
+    /** State of a node on the shortlist. */
+    private enum Status {
+        /** Not asked yet. */
+        NEW,
+        /** Query in flight. */
+        WAITING,
+        /** Answered. */
+        RESPONDED,
+        /** Timed out or could not be asked. */
+        FAILED
+    }
+
+    /** Queue the lookup sends its queries through. */
+    private final DHTLookupQueueImpl queue;
+
+    /** Type of query. */
+    private final DHTQueryType queryType;
+
+    /** Node ID or Info Hash being looked up. */
+    private final byte[] target;
+
+    /** Local Node ID, never added to the shortlist. */
+    private final byte[] nodeId;
+
+    /** Whether the lookup runs over IPv6. */
+    private final boolean ipv6;
+
+    /** Nodes ordered by distance to the target. */
+    private final TreeMap<DHTNode, Status> shortlist;
+
+    /** Nodes with a query in flight. */
+    private final List<DHTNode> waiting = new ArrayList<DHTNode>(ALPHA);
+
+    /** Token returned by each node that answered a 'get_peers'. */
+    private final Map<DHTNode, byte[]> tokens;
+
+    /** Peers collected from 'get_peers' responses. */
+    private final Set<DHTPeer> peers = new LinkedHashSet<DHTPeer>();
+
+    /** Completed with the lookup once it finishes. */
+    private final SettableFuture<DHTLookup> future = SettableFuture.create();
+
+    /** Deadline of the lookup. */
+    private Timeout<DHTLookup> timeout;
+
+    /** Number of queries sent. */
+    private int queryCount;
+
+    /**
+     * constructor.
+     * @param lookupQueue  queue the lookup sends its queries through
+     * @param type  FIND_NODE or GET_PEERS
+     * @param targetId  Node ID or Info Hash being looked up
+     * @param localId  local Node ID
+     * @param isIPv6  whether the lookup runs over IPv6
+     */
+    DHTLookup(final DHTLookupQueueImpl lookupQueue, final DHTQueryType type,
+            final byte[] targetId, final byte[] localId,
+            final boolean isIPv6) {
+
+        this.queue = lookupQueue;
+        this.queryType = type;
+        this.target = targetId;
+        this.nodeId = localId;
+        this.ipv6 = isIPv6;
+
+        DHTNodeDistanceComparator comparator =
+                new DHTNodeDistanceComparator(targetId);
+        this.shortlist = new TreeMap<DHTNode, Status>(comparator);
+        this.tokens = new TreeMap<DHTNode, byte[]>(comparator);
+    }
+
+    /**
+     * Starts the lookup from the nodes closest to the target.
+     * @param nodes  nodes from the routing table
+     */
+    synchronized void start(final Collection<DHTNode> nodes) {
+
+        for (DHTNode node : nodes) {
+            addCandidate(node);
+        }
+
+        step();
+    }
+
+    @Override
+    public synchronized void responded(final DHTTransaction transaction,
+            final DHTParameters params) {
+
+        DHTNode node = removeWaiting(transaction);
+
+        if (node == null || isDone()) {
+            return;
+        }
+
+        this.shortlist.put(node, Status.RESPONDED);
+
+        if (params.getResponseToken() != null) {
+            this.tokens.put(node, params.getResponseToken());
+        }
+
+        addCandidates(this.ipv6 ? params.getNodes6() : params.getNodes());
+        addPeers(params.getValues());
+
+        step();
+    }
+
+    @Override
+    public synchronized void timedOut(final DHTTransaction transaction) {
+
+        DHTNode node = removeWaiting(transaction);
+
+        if (node != null && !isDone()) {
+            this.shortlist.put(node, Status.FAILED);
+            step();
+        }
+    }
+
+    /**
+     * Finishes the lookup with what it has found so far.
+     */
+    synchronized void expire() {
+        LOGGER.debug("lookup timed out after " + this.queryCount
+                + " queries");
+        complete();
+    }
+
+    /**
+     * Sends queries to the closest nodes that have not been asked, the
+     * lookup completes once there is nothing left to wait for.
+     */
+    private void step() {
+
+        if (isDone()) {
+            return;
+        }
+
+        int closest = 0;
+        Iterator<Map.Entry<DHTNode, Status>> it = this.shortlist.entrySet()
+                .iterator();
+
+        while (it.hasNext() && closest < K && this.waiting.size() < ALPHA) {
+
+            Map.Entry<DHTNode, Status> e = it.next();
+
+            if (e.getValue() == Status.NEW) {
+
+                DHTNode node = e.getKey();
+
+                if (this.queue.send(this, node)) {
+                    e.setValue(Status.WAITING);
+                    this.waiting.add(node);
+                    this.queryCount++;
+                } else {
+                    e.setValue(Status.FAILED);
+                }
+            }
+
+            if (e.getValue() != Status.FAILED) {
+                closest++;
+            }
+        }
+
+        if (this.waiting.isEmpty()) {
+            complete();
+        }
+    }
+
+    /**
+     * Completes the future.
+     */
+    private void complete() {
+
+        if (!isDone()) {
+            this.queue.finished(this);
+            this.future.set(this);
+        }
+    }
+
+    /**
+     * @param transaction  DHTTransaction
+     * @return DHTNode  node the transaction was sent to or null
+     */
+    private DHTNode removeWaiting(final DHTTransaction transaction) {
+
+        Iterator<DHTNode> it = this.waiting.iterator();
+
+        while (it.hasNext()) {
+
+            DHTNode node = it.next();
+
+            if (node.getPort() == transaction.getPort()
+                    && node.getAddress().equals(transaction.getAddress())) {
+                it.remove();
+                return node;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Adds nodes in "compact node info" format to the shortlist.
+     * @param bytes  nodes or null
+     */
+    private void addCandidates(final byte[] bytes) {
+
+        if (bytes != null) {
+
+            try {
+
+                for (DHTNode node : toDHTNode(bytes, this.ipv6)) {
+                    addCandidate(node);
+                }
+
+            } catch (IllegalArgumentException e) {
+                LOGGER.debug("invalid nodes in lookup response");
+            }
+        }
+    }
+
+    /**
+     * Adds a node to the shortlist, the farthest node without a query in
+     * flight is dropped when the shortlist is full.
+     * @param node  DHTNode
+     */
+    private void addCandidate(final DHTNode node) {
+
+        if (node.getAddress() == null
+                || Arrays.equals(node.getInfoHash(), this.nodeId)
+                || this.shortlist.containsKey(node)) {
+            return;
+        }
+
+        this.shortlist.put(node, Status.NEW);
+
+        if (this.shortlist.size() > MAX_CANDIDATES) {
+
+            Iterator<Status> it = this.shortlist.descendingMap().values()
+                    .iterator();
+
+            while (it.hasNext()) {
+                if (it.next() != Status.WAITING) {
+                    it.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds peers in "Compact IP/Port" format.
+     * @param values  peers or null
+     */
+    private void addPeers(final List<byte[]> values) {
+
+        if (values != null) {
+
+            for (byte[] value : values) {
+
+                InetAddress addr = compactAddress(value);
+
+                if (addr != null && this.peers.size() < MAX_PEERS) {
+                    this.peers.add(new DHTPeer(addr.getAddress(),
+                            compactAddressPort(value)));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return boolean  whether the lookup has finished
+     */
+    public boolean isDone() {
+        return this.future.isDone();
+    }
+
+    /**
+     * @return ListenableFuture<DHTLookup>  completed when the lookup ends
+     */
+    public ListenableFuture<DHTLookup> getFuture() {
+        return this.future;
+    }
+
+    /**
+     * @return DHTQueryType
+     */
+    public DHTQueryType getQueryType() {
+        return this.queryType;
+    }
+
+    /**
+     * @return byte[]
+     */
+    public byte[] getTarget() {
+        return this.target;
+    }
+
+    /**
+     * @return boolean
+     */
+    public boolean isIpv6() {
+        return this.ipv6;
+    }
+
+    /**
+     * @return int  number of queries sent
+     */
+    public synchronized int getQueryCount() {
+        return this.queryCount;
+    }
+
+    /**
+     * @return List<DHTNode>  the K closest nodes that answered
+     */
+    public synchronized List<DHTNode> getClosestNodes() {
+
+        List<DHTNode> nodes = new ArrayList<DHTNode>(K);
+
+        for (Map.Entry<DHTNode, Status> e : this.shortlist.entrySet()) {
+
+            if (nodes.size() >= K) {
+                break;
+            }
+
+            if (e.getValue() == Status.RESPONDED) {
+                nodes.add(e.getKey());
+            }
+        }
+
+        return nodes;
+    }
+
+    /**
+     * @param node  node that answered a 'get_peers'
+     * @return byte[]  token to announce to the node with or null
+     */
+    public synchronized byte[] getToken(final DHTNode node) {
+        return this.tokens.get(node);
+    }
+
+    /**
+     * @return List<DHTPeer>  peers collected from 'get_peers' responses
+     */
+    public synchronized List<DHTPeer> getPeers() {
+        return Collections.unmodifiableList(new ArrayList<DHTPeer>(
+                this.peers));
+    }
+
+    /**
+     * @return Timeout<DHTLookup>
+     */
+    Timeout<DHTLookup> getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Sets the deadline of the lookup.
+     * @param t  Timeout<DHTLookup>
+     */
+    void setTimeout(final Timeout<DHTLookup> t) {
+        this.timeout = t;
+    }
+}
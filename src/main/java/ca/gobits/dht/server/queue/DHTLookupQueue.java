@@ -0,0 +1,43 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.server.queue;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * DHT Lookup Queue - iterative 'find_node' and 'get_peers' lookups.
+ *
+ * Lookups run asynchronously, the returned future is completed with the
+ * finished DHTLookup once it converges on the target or times out.
+ */
+public interface DHTLookupQueue extends DHTQueue {
+
+    /**
+     * Looks up the nodes closest to a target.
+     * @param target  Node ID to find
+     * @return ListenableFuture<DHTLookup>
+     */
+    ListenableFuture<DHTLookup> findNode(byte[] target);
+
+    /**
+     * Looks up the peers of an Info Hash.
+     * @param infoHash  Info Hash to find peers for
+     * @return ListenableFuture<DHTLookup>
+     */
+    ListenableFuture<DHTLookup> getPeers(byte[] infoHash);
+}
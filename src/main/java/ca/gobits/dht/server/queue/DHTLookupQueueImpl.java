@@ -0,0 +1,160 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.server.queue;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import ca.gobits.dht.DHTNode;
+import ca.gobits.dht.DHTNodeRoutingTable;
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
+import ca.gobits.dht.server.DHTQueryProtocol;
+import ca.gobits.dht.server.DHTServerConfig;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Implementation of DHTLookupQueue.
+ *
+ * Lookups are driven by the responses and timeouts of their queries, the
+ * queue only holds the deadline of each lookup so a lookup that stalls is
+ * finished with what it has found.
+ */
+public class DHTLookupQueueImpl extends DHTQueueAbstract<DHTLookup>
+        implements DHTLookupQueue {
+
+    /** DHTLookupQueue Logger. */
+    private static final Logger LOGGER = Logger
+            .getLogger(DHTLookupQueue.class);
+
+    /** Default millis a lookup may run for. */
+    private static final long DEFAULT_LOOKUP_TIMEOUT_IN_MILLIS = 60000;
+
+    /** Reference to DHTServerConfig. */
+    @Autowired
+    private DHTServerConfig config;
+
+    /** Reference to DHTNodeRoutingTable. */
+    @Autowired
+    private DHTNodeRoutingTable routingTable;
+
+    /**
+     * constructor.
+     */
+    public DHTLookupQueueImpl() {
+        setDelayInMillis(DEFAULT_LOOKUP_TIMEOUT_IN_MILLIS);
+    }
+
+    @Override
+    public ListenableFuture<DHTLookup> findNode(final byte[] target) {
+        return lookup(DHTQueryType.FIND_NODE, target);
+    }
+
+    @Override
+    public ListenableFuture<DHTLookup> getPeers(final byte[] infoHash) {
+        return lookup(DHTQueryType.GET_PEERS, infoHash);
+    }
+
+    /**
+     * Starts a lookup from the closest nodes in the routing table.
+     * @param type  FIND_NODE or GET_PEERS
+     * @param target  Node ID or Info Hash
+     * @return ListenableFuture<DHTLookup>
+     */
+    private ListenableFuture<DHTLookup> lookup(final DHTQueryType type,
+            final byte[] target) {
+
+        InetAddress local = getSocket().getLocalAddress();
+        boolean ipv6 = local instanceof Inet6Address;
+
+        DHTLookup lookup = new DHTLookup(this, type, target,
+                this.config.getNodeId(), ipv6);
+        lookup.setTimeout(schedule(lookup));
+
+        List<DHTNode> nodes = this.routingTable.findClosestNodes(target,
+                DHTLookup.K, ipv6);
+        lookup.start(nodes);
+
+        return lookup.getFuture();
+    }
+
+    /**
+     * Sends a lookup query to a node.
+     * @param lookup  DHTLookup
+     * @param node  node to query
+     * @return boolean  whether the query was sent
+     */
+    boolean send(final DHTLookup lookup, final DHTNode node) {
+
+        InetAddress addr = node.getAddress();
+        int port = node.getPort();
+        DHTQueryType type = lookup.getQueryType();
+
+        byte[] transactionId = getTransactionId(addr, port, type, lookup);
+
+        if (transactionId == null) {
+            return false;
+        }
+
+        byte[] msg;
+        byte[] nodeId = this.config.getNodeId();
+        List<byte[]> want = getWant();
+
+        if (type == DHTQueryType.GET_PEERS) {
+            msg = DHTQueryProtocol.getPeersQuery(transactionId, nodeId,
+                    lookup.getTarget(), want);
+        } else {
+            msg = DHTQueryProtocol.findNodeQuery(transactionId, nodeId,
+                    lookup.getTarget(), want);
+        }
+
+        return sendToSocket(type, addr, port, transactionId, msg);
+    }
+
+    /**
+     * Removes a finished lookup.
+     * @param lookup  DHTLookup
+     */
+    void finished(final DHTLookup lookup) {
+
+        if (lookup.getTimeout() != null) {
+            cancel(lookup.getTimeout());
+        }
+    }
+
+    @Override
+    public int processQueue() {
+
+        List<DHTLookup> expired = poll();
+
+        for (DHTLookup lookup : expired) {
+            lookup.expire();
+        }
+
+        if (!expired.isEmpty()) {
+            LOGGER.debug("expired " + expired.size() + " lookups out of "
+                    + (size() + expired.size()));
+        }
+
+        return expired.size();
+    }
+}
@@ -0,0 +1,51 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.dht.server.queue;
+
+import java.net.InetAddress;
+
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
+
+/**
+ * DHTPacer - paces queued queries to stay within the outbound budget.
+ *
+ * Queries are sent at no more than the configured packets and bytes per
+ * second, no faster than the minimum spacing to any one destination and
+ * with the types of query taking turns.  Queries that cannot be sent yet
+ * wait until processQueue.
+ */
+public interface DHTPacer extends DHTQueue {
+
+    /**
+     * Sends a query now or once the budget allows, the query's transaction
+     * is marked sent when it is written to the socket.
+     * @param type  type of query
+     * @param addr  address to send to
+     * @param port  port to send to
+     * @param transactionId  transaction id of the query
+     * @param msg  query
+     * @return boolean  whether the query was sent or queued, false if
+     *  it was dropped because too many queries are waiting
+     */
+    boolean send(DHTQueryType type, InetAddress addr, int port,
+            byte[] transactionId, byte[] msg);
+
+    /**
+     * @return int  number of waiting queries
+     */
+    int size();
+}
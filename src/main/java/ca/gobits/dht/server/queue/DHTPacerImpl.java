@@ -0,0 +1,411 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.dht.server.queue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import ca.gobits.dht.server.DHTMetrics;
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
+import ca.gobits.dht.server.DHTServerConfig;
+import ca.gobits.dht.util.TokenBucket;
+
+/**
+ * Implementation of DHTPacer.
+ *
+ * Waiting queries are kept in a queue for each type of query which are
+ * served round robin.  A query whose destination was sent to less than
+ * the minimum spacing ago is passed over for the next query of its type.
+ */
+public final class DHTPacerImpl implements DHTPacer {
+
+    /** DHTPacer Logger. */
+    private static final Logger LOGGER = Logger.getLogger(DHTPacerImpl.class);
+
+    /** Default minimum millis between queries to one destination. */
+    private static final long DEFAULT_SPACING_IN_MILLIS = 1000;
+
+    /** Bursts allowed per second, the size of a burst is rate / bursts. */
+    private static final int BURSTS_PER_SECOND = 10;
+
+    /** Largest query, a burst always allows at least one. */
+    private static final int MAX_PACKET_BYTES = 1500;
+
+    /** Seconds of queries at the packet rate allowed to wait. */
+    private static final int MAX_PENDING_SECONDS = 2;
+
+    /** Maximum queries passed over on one turn of a type. */
+    private static final int MAX_DEFERRED_SCAN = 8;
+
+    /** Maximum destinations remembered for spacing. */
+    private static final int MAX_DESTINATIONS = 1 << 16;
+
+    /** Types of query in the order they take turns. */
+    private static final DHTQueryType[] TYPES = DHTQueryType.values();
+
+    /** Reference to DatagramSocket. */
+    @Autowired
+    private DatagramSocket socket;
+
+    /** Reference to DHTServerConfig. */
+    @Autowired
+    private DHTServerConfig config;
+
+    /** Reference to DHTMetrics. */
+    @Autowired
+    private DHTMetrics metrics;
+
+    /** Reference to DHTTransactionQueue. */
+    @Autowired
+    private DHTTransactionQueue transactions;
+
+    /** Waiting queries for each type. */
+    private final Map<DHTQueryType, Deque<PacedQuery>> pending =
+            new EnumMap<DHTQueryType, Deque<PacedQuery>>(DHTQueryType.class);
+
+    /** Time in millis of the last query to each destination, oldest first. */
+    private final LinkedHashMap<InetSocketAddress, Long> lastSent =
+            new LinkedHashMap<InetSocketAddress, Long>();
+
+    /** Packets per second budget. */
+    private TokenBucket packets;
+
+    /** Bytes per second budget. */
+    private TokenBucket bytes;
+
+    /** Type that takes the next turn. */
+    private int next;
+
+    /** Number of waiting queries. */
+    private int size;
+
+    /** Minimum millis between queries to one destination. */
+    private long spacingInMillis = DEFAULT_SPACING_IN_MILLIS;
+
+    /** Number of queries sent. */
+    private long sentCount;
+
+    /** Number of queries dropped. */
+    private long droppedCount;
+
+    /**
+     * constructor.
+     */
+    public DHTPacerImpl() {
+        for (DHTQueryType type : TYPES) {
+            this.pending.put(type, new ArrayDeque<PacedQuery>());
+        }
+    }
+
+    @Override
+    public boolean send(final DHTQueryType type, final InetAddress addr,
+            final int port, final byte[] transactionId, final byte[] msg) {
+        return send(type, addr, port, transactionId, msg,
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Sends a query now or once the budget allows.
+     * @param type  type of query
+     * @param addr  address to send to
+     * @param port  port to send to
+     * @param transactionId  transaction id of the query
+     * @param msg  query
+     * @param now  current time in millis
+     * @return boolean  whether the query was sent or queued
+     */
+    public synchronized boolean send(final DHTQueryType type,
+            final InetAddress addr, final int port, final byte[] transactionId,
+            final byte[] msg, final long now) {
+
+        PacedQuery query = new PacedQuery(type,
+                new InetSocketAddress(addr, port), transactionId, msg);
+
+        boolean accepted = true;
+
+        if (this.size == 0 && isReady(query, now) && take(query, now)) {
+
+            transmit(query, now);
+
+        } else if (this.size < getMaxPending()) {
+
+            this.pending.get(type).addLast(query);
+            this.size++;
+
+        } else {
+
+            this.droppedCount++;
+            this.metrics.drop(DHTMetrics.Drop.PACED);
+            accepted = false;
+            LOGGER.debug("pacer full, dropping query to " + query.destination);
+        }
+
+        return accepted;
+    }
+
+    @Override
+    public int processQueue() {
+        return processQueue(System.currentTimeMillis());
+    }
+
+    /**
+     * Sends waiting queries until the budget runs out.
+     * @param now  current time in millis
+     * @return int  number of queries sent
+     */
+    public synchronized int processQueue(final long now) {
+
+        int count = 0;
+        boolean sent = true;
+
+        while (sent && this.size > 0) {
+
+            sent = false;
+
+            for (int i = 0; i < TYPES.length; i++) {
+
+                Deque<PacedQuery> queue = this.pending.get(
+                        TYPES[(this.next + i) % TYPES.length]);
+                PacedQuery query = pollReady(queue, now);
+
+                if (query != null) {
+
+                    if (!take(query, now)) {
+                        queue.addFirst(query);
+                        this.next = (this.next + i) % TYPES.length;
+                        return count;
+                    }
+
+                    this.size--;
+                    transmit(query, now);
+                    count++;
+                    sent = true;
+                }
+            }
+
+            this.next = (this.next + 1) % TYPES.length;
+        }
+
+        return count;
+    }
+
+    /**
+     * Removes the first query in a queue whose destination is ready,
+     * queries passed over move to the back of the queue.
+     * @param queue  queue
+     * @param now  current time in millis
+     * @return PacedQuery  or null if none is ready
+     */
+    private PacedQuery pollReady(final Deque<PacedQuery> queue,
+            final long now) {
+
+        PacedQuery ready = null;
+        int scan = Math.min(queue.size(), MAX_DEFERRED_SCAN);
+
+        for (int i = 0; i < scan && ready == null; i++) {
+
+            PacedQuery query = queue.pollFirst();
+
+            if (isReady(query, now)) {
+                ready = query;
+            } else {
+                queue.addLast(query);
+            }
+        }
+
+        return ready;
+    }
+
+    /**
+     * @param query  query
+     * @param now  current time in millis
+     * @return boolean  whether the destination was not sent to recently
+     */
+    private boolean isReady(final PacedQuery query, final long now) {
+        Long last = this.lastSent.get(query.destination);
+        return last == null || now - last.longValue() >= this.spacingInMillis;
+    }
+
+    /**
+     * Takes the packet and bytes budget of a query.
+     * @param query  query
+     * @param now  current time in millis
+     * @return boolean  whether the budget allowed the query
+     */
+    private boolean take(final PacedQuery query, final long now) {
+
+        updateRates(now);
+
+        boolean allowed = this.packets.available(now) >= 1
+                && this.bytes.available(now) >= query.msg.length;
+
+        if (allowed) {
+            this.packets.tryTake(1, now);
+            this.bytes.tryTake(query.msg.length, now);
+        }
+
+        return allowed;
+    }
+
+    /**
+     * Sends a query to the socket and records when its destination was
+     * sent to, the transaction is stamped first so a fast response
+     * always finds it sent.
+     * @param query  query
+     * @param now  current time in millis
+     */
+    private void transmit(final PacedQuery query, final long now) {
+
+        this.transactions.sent(query.transactionId, now);
+
+        try {
+            DatagramPacket packet = new DatagramPacket(query.msg,
+                    query.msg.length, query.destination);
+            this.socket.send(packet);
+            this.sentCount++;
+            this.metrics.packet(DHTMetrics.Traffic.QUERY_OUT, query.type,
+                    query.msg.length);
+        } catch (Exception e) {
+            LOGGER.trace(e.getMessage(), e);
+        }
+
+        this.lastSent.remove(query.destination);
+        this.lastSent.put(query.destination, Long.valueOf(now));
+
+        Iterator<Long> itr = this.lastSent.values().iterator();
+        while (itr.hasNext()) {
+
+            long last = itr.next().longValue();
+
+            if (now - last < this.spacingInMillis
+                    && this.lastSent.size() <= MAX_DESTINATIONS) {
+                break;
+            }
+
+            itr.remove();
+        }
+    }
+
+    /**
+     * Updates the budgets from the DHTServerConfig.
+     * @param now  current time in millis
+     */
+    private void updateRates(final long now) {
+
+        int pps = this.config.getPacketsPerSecond();
+        int bps = this.config.getBytesPerSecond();
+
+        double packetBurst = Math.max(1, pps / BURSTS_PER_SECOND);
+        double byteBurst = Math.max(MAX_PACKET_BYTES, bps / BURSTS_PER_SECOND);
+
+        if (this.packets == null) {
+            this.packets = new TokenBucket(pps, packetBurst, now);
+            this.bytes = new TokenBucket(bps, byteBurst, now);
+        } else if (this.packets.getRate() != pps
+                || this.bytes.getRate() != bps) {
+            this.packets.setRate(pps, packetBurst);
+            this.bytes.setRate(bps, byteBurst);
+        }
+    }
+
+    /**
+     * @return int  maximum number of waiting queries
+     */
+    private int getMaxPending() {
+        return Math.max(1, this.config.getPacketsPerSecond()
+                * MAX_PENDING_SECONDS);
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * @return long  number of queries sent
+     */
+    public synchronized long getSentCount() {
+        return this.sentCount;
+    }
+
+    /**
+     * @return long  number of queries dropped
+     */
+    public synchronized long getDroppedCount() {
+        return this.droppedCount;
+    }
+
+    /**
+     * @return long  minimum millis between queries to one destination
+     */
+    public synchronized long getSpacingInMillis() {
+        return this.spacingInMillis;
+    }
+
+    /**
+     * Sets the minimum millis between queries to one destination.
+     * @param spacing  millis
+     */
+    public synchronized void setSpacingInMillis(final long spacing) {
+        this.spacingInMillis = spacing;
+    }
+
+    /**
+     * Query waiting to be sent.
+     */
+    private static final class PacedQuery {
+
+        /** Type of query. */
+        private final DHTQueryType type;
+
+        /** Destination. */
+        private final InetSocketAddress destination;
+
+        /** Transaction id of the query. */
+        private final byte[] transactionId;
+
+        /** Query. */
+        private final byte[] msg;
+
+        /**
+         * constructor.
+         * @param queryType  type of query
+         * @param dest  destination
+         * @param id  transaction id of the query
+         * @param query  query
+         */
+        private PacedQuery(final DHTQueryType queryType,
+                final InetSocketAddress dest, final byte[] id,
+                final byte[] query) {
+            this.type = queryType;
+            this.destination = dest;
+            this.transactionId = id;
+            this.msg = query;
+        }
+    }
+}
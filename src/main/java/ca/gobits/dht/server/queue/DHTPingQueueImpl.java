@@ -20,12 +20,12 @@ import static ca.gobits.dht.util.DHTConversion.compactAddress;
 import static ca.gobits.dht.util.DHTConversion.compactAddressPort;
 
 import java.net.InetAddress;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.List;
 
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
 import ca.gobits.dht.server.DHTQueryProtocol;
 import ca.gobits.dht.server.DHTServerConfig;
 
@@ -48,41 +48,61 @@ public class DHTPingQueueImpl extends DHTQueueAbstract<byte[]>
     public void pingWithDelay(final InetAddress addr, final int port) {
 
         if (addr != null) {
+
             byte[] payload = compactAddress(addr.getAddress(), port);
-            DelayObject<byte[]> obj = new DelayObject<byte[]>(payload,
-                    getDelayInMillis());
 
-            getQueue().offer(obj);
+            if (markRecent(DHTQueryType.PING, payload)) {
+                schedule(payload);
+            }
         }
     }
 
     @Override
-    public void processQueue() {
-
-        Collection<DelayObject<byte[]>> objs =
-                new ArrayList<DelayObject<byte[]>>();
+    public int processQueue() {
 
-        getQueue().drainTo(objs);
+        List<byte[]> objs = poll();
 
-        LOGGER.info("processing ping queue: " + objs.size()
+        LOGGER.debug("processing ping queue: " + objs.size()
                 + " out of " + size());
 
-        for (DelayObject<byte[]> obj : objs) {
+        for (byte[] obj : objs) {
+
+            InetAddress addr = compactAddress(obj);
+            int port = compactAddressPort(obj);
 
-            InetAddress addr = compactAddress(obj.getPayload());
-            int port = compactAddressPort(obj.getPayload());
-            ping(addr, port);
+            if (!send(addr, port)) {
+                unmarkRecent(DHTQueryType.PING, obj);
+            }
         }
+
+        return objs.size();
     }
 
     @Override
     public void ping(final InetAddress addr, final int port) {
+        send(addr, port);
+    }
 
-        byte[] msg = DHTQueryProtocol.pingQuery(getTransactionId(),
-                this.config.getNodeId());
+    /**
+     * Sends a ping.
+     * @param addr  InetAddress
+     * @param port  port
+     * @return boolean  whether the ping was sent or queued
+     */
+    private boolean send(final InetAddress addr, final int port) {
 
-        LOGGER.info("sending 'ping' to " + addr.getHostAddress() + ":" + port);
+        boolean sent = false;
+        byte[] transactionId = getTransactionId(addr, port, DHTQueryType.PING);
+
+        if (transactionId != null) {
+
+            byte[] msg = DHTQueryProtocol.pingQuery(transactionId,
+                    this.config.getNodeId());
+
+            sent = sendToSocket(DHTQueryType.PING, addr, port, transactionId,
+                    msg);
+        }
 
-        sendToSocket(addr, port, msg);
+        return sent;
     }
 }
@@ -24,6 +24,7 @@ public interface DHTQueue {
 
     /**
      * Processes the queue.
+     * @return int  number of requests processed
      */
-    void processQueue();
+    int processQueue();
 }
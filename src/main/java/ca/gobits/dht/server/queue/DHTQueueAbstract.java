@@ -16,19 +16,33 @@
 
 package ca.gobits.dht.server.queue;
 
-import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.net.Inet6Address;
 import java.net.InetAddress;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.DelayQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import ca.gobits.dht.server.DHTPacketLog;
+import ca.gobits.dht.server.DHTPacketLog.Event;
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
+import ca.gobits.dht.util.DecayingBloomFilter;
+import ca.gobits.dht.util.TimingWheel;
+import ca.gobits.dht.util.TimingWheel.Timeout;
+
 /**
  * Abstract class for the implementation of sending
  * delayed DHT Requests.
- * @param <T> type of DelayObject<T>
+ *
+ * Requests are held on a TimingWheel so scheduling and cancelling a
+ * request is O(1) no matter how many requests are waiting.
+ * @param <T> type of payload
  */
 public abstract class DHTQueueAbstract<T> {
 
@@ -36,13 +50,33 @@ public abstract class DHTQueueAbstract<T> {
     private static final Logger LOGGER = Logger
             .getLogger(DHTQueueAbstract.class);
 
+    /** Length of a tick of the queue in millis. */
+    private static final long TICK_IN_MILLIS = 1;
+
+    /** Expected number of recent requests in a generation. */
+    private static final int RECENT_EXPECTED_INSERTIONS = 65536;
+
+    /** False positive probability of recent requests. */
+    private static final double RECENT_FPP = 0.001;
+
+    /** Length of a generation of recent requests in millis. */
+    private static final long RECENT_GENERATION_IN_MILLIS = 5 * 60 * 1000;
+
     /** Reference to DatagramSocket. */
     @Autowired
     private DatagramSocket socket;
 
-    /** Reference to DHTTokenTable. */
+    /** Reference to DHTPacer. */
+    @Autowired
+    private DHTPacer pacer;
+
+    /** Reference to DHTPacketLog. */
     @Autowired
-    private DHTTokenQueue tokens;
+    private DHTPacketLog packetLog;
+
+    /** Reference to DHTTransactionQueue. */
+    @Autowired
+    private DHTTransactionQueue transactions;
 
     /**
      * Delay in Millis for adding nodes to queue.
@@ -50,26 +84,45 @@ public abstract class DHTQueueAbstract<T> {
     private long delayInMillis = 0;
 
     /** Queue of requests. */
-    private final BlockingQueue<DelayObject<T>> queue =
-            new DelayQueue<DelayObject<T>>();
+    private final TimingWheel<T> queue = new TimingWheel<T>(TICK_IN_MILLIS);
+
+    /** Requests that are pending or were recently sent. */
+    private final DecayingBloomFilter recent = new DecayingBloomFilter(
+            RECENT_EXPECTED_INSERTIONS, RECENT_FPP,
+            RECENT_GENERATION_IN_MILLIS, System.currentTimeMillis());
 
     /**
-     * Sends Request to Socket.
+     * Recent requests that were not sent, keys cannot be removed from the
+     * Bloom Filter so the next request for them is let through once.
+     */
+    private final Set<ByteBuffer> unsent = Collections
+            .newSetFromMap(new ConcurrentHashMap<ByteBuffer, Boolean>());
+
+    /**
+     * Sends Request to Socket through the DHTPacer, the transaction is
+     * cancelled if the DHTPacer drops the request.
+     * @param type  type of query
      * @param addr  InetAddress
      * @param port  port
+     * @param transactionId  transaction id of the request
      * @param msg  byte[]
+     * @return boolean  whether the request was sent or queued
      */
-    protected void sendToSocket(final InetAddress addr, final int port,
+    protected boolean sendToSocket(final DHTQueryType type,
+            final InetAddress addr, final int port, final byte[] transactionId,
             final byte[] msg) {
 
-        DatagramPacket packet = new DatagramPacket(msg, msg.length,
-                addr, port);
+        boolean sent = this.pacer.send(type, addr, port, transactionId, msg);
 
-        try {
-            this.socket.send(packet);
-        } catch (Exception e) {
-            LOGGER.trace(e.getMessage(), e);
+        if (sent) {
+            this.packetLog.log(Event.QUERY_OUT, type, addr, port, msg.length);
+        } else {
+            this.transactions.cancel(transactionId);
+            LOGGER.debug("dropped '" + type + "' to " + addr.getHostAddress()
+                    + ":" + port);
         }
+
+        return sent;
     }
 
     /**
@@ -89,9 +142,93 @@ public abstract class DHTQueueAbstract<T> {
     }
 
     /**
-     * @return BlockingQueue<DelayObject<byte[]>>
+     * Adds a request to be sent after getDelayInMillis().
+     * @param payload  request
+     * @return Timeout<T>
+     */
+    protected Timeout<T> schedule(final T payload) {
+        return this.queue.schedule(payload, System.currentTimeMillis()
+                + this.delayInMillis);
+    }
+
+    /**
+     * Records a request as pending, a request of the same type to the
+     * same destination that is pending or was sent in the last few
+     * minutes is a duplicate.
+     * @param type  type of query
+     * @param key  compact address and port of the destination and any
+     *             other fields that identify the request
+     * @return boolean  true if the request is not a duplicate
+     */
+    protected boolean markRecent(final DHTQueryType type, final byte[] key) {
+
+        byte[] typedKey = typedKey(type, key);
+
+        return this.recent.put(typedKey, System.currentTimeMillis())
+                || this.unsent.remove(ByteBuffer.wrap(typedKey));
+    }
+
+    /**
+     * Records that a request marked recent was not sent, so the next
+     * request of the same type to the same destination is not a duplicate.
+     * @param type  type of query
+     * @param key  key the request was marked recent with
+     */
+    protected void unmarkRecent(final DHTQueryType type, final byte[] key) {
+
+        if (this.unsent.size() < RECENT_EXPECTED_INSERTIONS) {
+            this.unsent.add(ByteBuffer.wrap(typedKey(type, key)));
+        }
+    }
+
+    /**
+     * @param type  type of query
+     * @param key  key of the request
+     * @return byte[]  key prefixed with the type of query
      */
-    public BlockingQueue<DelayObject<T>> getQueue() {
+    private static byte[] typedKey(final DHTQueryType type,
+            final byte[] key) {
+
+        byte[] typedKey = new byte[key.length + 1];
+        typedKey[0] = (byte) type.ordinal();
+        System.arraycopy(key, 0, typedKey, 1, key.length);
+
+        return typedKey;
+    }
+
+    /**
+     * Moves a request to be sent after getDelayInMillis(), the request is
+     * added again if it has already been sent or cancelled.
+     * @param timeout  Timeout<T>
+     */
+    protected void reschedule(final Timeout<T> timeout) {
+        this.queue.reschedule(timeout, System.currentTimeMillis()
+                + this.delayInMillis);
+    }
+
+    /**
+     * Cancels a request.
+     * @param timeout  Timeout<T>
+     * @return boolean  whether request was waiting to be sent
+     */
+    protected boolean cancel(final Timeout<T> timeout) {
+        return this.queue.cancel(timeout);
+    }
+
+    /**
+     * Removes the requests that are due.
+     * @return List<T>
+     */
+    protected List<T> poll() {
+        List<T> list = new ArrayList<T>();
+        this.queue.advance(System.currentTimeMillis(), list);
+        return list;
+    }
+
+    /**
+     * @return TimingWheel<T>
+     */
+    public TimingWheel<T> getQueue() {
         return this.queue;
     }
 
@@ -111,10 +248,43 @@ public abstract class DHTQueueAbstract<T> {
     }
 
     /**
-     * Gets Transaction ID.
-     * @return String
+     * Registers an outgoing query and gets its Transaction ID.
+     * @param addr  address the query is sent to
+     * @param port  port the query is sent to
+     * @param type  type of query
+     * @return byte[]  or null if no transaction ids are available
+     */
+    public byte[] getTransactionId(final InetAddress addr, final int port,
+            final DHTQueryType type) {
+        return this.transactions.add(addr, port, type);
+    }
+
+    /**
+     * Registers an outgoing query whose outcome is passed to a listener.
+     * @param addr  address the query is sent to
+     * @param port  port the query is sent to
+     * @param type  type of query
+     * @param listener  told when the query is answered or times out
+     * @return byte[]  or null if no transaction ids are available
      */
-    public String getTransactionId() {
-        return this.tokens.getTransactionId();
+    public byte[] getTransactionId(final InetAddress addr, final int port,
+            final DHTQueryType type, final DHTTransactionListener listener) {
+        return this.transactions.add(addr, port, type, listener);
+    }
+
+    /**
+     * @return List<byte[]>  wants the local server supports.
+     */
+    protected List<byte[]> getWant() {
+
+        List<byte[]> want = new ArrayList<byte[]>();
+        InetAddress addr = getSocket().getLocalAddress();
+        if (addr instanceof Inet6Address) {
+            want.add("n6".getBytes());
+        } else {
+            want.add("n4".getBytes());
+        }
+
+        return want;
     }
 }
@@ -16,17 +16,65 @@
 
 package ca.gobits.dht.server.queue;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import ca.gobits.dht.DHTInfoHashRoutingTable;
+import ca.gobits.dht.server.DHTBanList;
+import ca.gobits.dht.server.DHTMetrics;
+import ca.gobits.dht.server.DHTPacketLog;
 
 /**
  * Processor for all DHT Queues.
  *
+ * Every queue runs as its own DHTQueueTask so a slow queue does not hold
+ * up the others, and each adapts how often it runs to the work it finds.
+ * The scheduler's pool is sized so each task has a thread of its own.
  */
-public class DHTQueueScheduler {
+public class DHTQueueScheduler implements SchedulingConfigurer {
+
+    /** Minimum millis between runs of the query queues. */
+    private static final long QUERY_QUEUE_MIN_DELAY_MILLIS = 50;
+
+    /** Maximum millis between runs of the query queues. */
+    private static final long QUERY_QUEUE_MAX_DELAY_MILLIS = 1000;
+
+    /** Minimum millis between runs of the pacer. */
+    private static final long PACER_MIN_DELAY_MILLIS = 10;
+
+    /** Maximum millis between runs of the pacer. */
+    private static final long PACER_MAX_DELAY_MILLIS = 250;
+
+    /** Minimum millis between writes of the packet log. */
+    private static final long PACKET_LOG_MIN_DELAY_MILLIS = 10;
+
+    /** Maximum millis between writes of the packet log. */
+    private static final long PACKET_LOG_MAX_DELAY_MILLIS = 500;
+
+    /** Minimum millis between runs of the transaction queue. */
+    private static final long TRANSACTION_QUEUE_MIN_DELAY_MILLIS = 100;
 
-    /** Schedule to process queue. */
-    private static final int PROCESS_QUEUE_SCHEDULE_MILLIS = 5000;
+    /** Minimum millis between runs of the bucket status queue. */
+    private static final long BUCKET_STATUS_QUEUE_MIN_DELAY_MILLIS = 1000;
+
+    /** Minimum millis between peer expiry runs. */
+    private static final long PEER_EXPIRY_MIN_DELAY_MILLIS = 1000;
+
+    /** Threads for tasks scheduled outside this class, the DHTBootstrap. */
+    private static final int OTHER_TASK_THREADS = 1;
+
+    /** Millis between runs of the housekeeping queues. */
+    private static final long PROCESS_QUEUE_SCHEDULE_MILLIS = 5000;
+
+    /** Reference to ThreadPoolTaskScheduler the queues run on. */
+    @Autowired
+    private ThreadPoolTaskScheduler queueTaskScheduler;
 
     /** Reference to DHTPingQueue. */
     @Autowired
@@ -36,9 +84,9 @@ public class DHTQueueScheduler {
     @Autowired
     private DHTFindNodeQueue findNodeQueue;
 
-    /** Reference to DHTNodeStatusQueue. */
+    /** Reference to DHTLookupQueue. */
     @Autowired
-    private DHTNodeStatusQueue nodeStatusQueue;
+    private DHTLookupQueue lookupQueue;
 
     /** Reference to DHTBucketStatusQueue. */
     @Autowired
@@ -48,23 +96,57 @@ public class DHTQueueScheduler {
     @Autowired
     private DHTTokenQueue tokenQueue;
 
-    /**
-     * Processes the queues on a FixedDelay schedule.
-     */
-    @Scheduled(fixedDelay = PROCESS_QUEUE_SCHEDULE_MILLIS)
-    public void process() {
+    /** Reference to DHTTransactionQueue. */
+    @Autowired
+    private DHTTransactionQueue transactionQueue;
 
-        this.tokenQueue.processQueue();
+    /** Reference to DHTPacer. */
+    @Autowired
+    private DHTPacer pacer;
 
-        this.pingQueue.processQueue();
+    /** Reference to DHTBanList. */
+    @Autowired
+    private DHTBanList banList;
+
+    /** Reference to DHTMetrics. */
+    @Autowired
+    private DHTMetrics metrics;
+
+    /** Reference to DHTPacketLog. */
+    @Autowired
+    private DHTPacketLog packetLog;
+
+    /** Reference to DHTInfoHashRoutingTable. */
+    @Autowired
+    private DHTInfoHashRoutingTable infoHashRoutingTable;
+
+    /** Scheduled queue tasks. */
+    private final List<DHTQueueTask> tasks = new ArrayList<DHTQueueTask>();
+
+    @Override
+    public void configureTasks(final ScheduledTaskRegistrar registrar) {
 
-        this.findNodeQueue.processQueue();
+        this.tasks.clear();
 
-        this.bucketStatusQueue.processQueue();
+        this.tasks.add(new DHTQueueTask("token", this.tokenQueue,
+                PROCESS_QUEUE_SCHEDULE_MILLIS, PROCESS_QUEUE_SCHEDULE_MILLIS));
 
-        this.nodeStatusQueue.processQueue();
+        this.tasks.add(new DHTQueueTask("transaction", this.transactionQueue,
+                TRANSACTION_QUEUE_MIN_DELAY_MILLIS,
+                QUERY_QUEUE_MAX_DELAY_MILLIS));
+
+        this.tasks.add(new DHTQueueTask("ping", this.pingQueue,
+                QUERY_QUEUE_MIN_DELAY_MILLIS, QUERY_QUEUE_MAX_DELAY_MILLIS));
+
+        this.tasks.add(new DHTQueueTask("findnode", this.findNodeQueue,
+                QUERY_QUEUE_MIN_DELAY_MILLIS, QUERY_QUEUE_MAX_DELAY_MILLIS));
+
+        this.tasks.add(new DHTQueueTask("lookup", this.lookupQueue,
+                QUERY_QUEUE_MIN_DELAY_MILLIS, QUERY_QUEUE_MAX_DELAY_MILLIS));
+
+        this.tasks.add(new DHTQueueTask("pacer", this.pacer,
+                PACER_MIN_DELAY_MILLIS, PACER_MAX_DELAY_MILLIS));
 
-        // TODO process DHTBuckets
         /*
          * When the bucket is full of good nodes, the new node is simply
          * discarded. If any nodes in the bucket are known to have become bad,
@@ -102,5 +184,40 @@ public class DHTQueueScheduler {
          * The routing table should be saved between invocations of the client
          * software.
          */
+        this.tasks.add(new DHTQueueTask("bucketstatus", this.bucketStatusQueue,
+                BUCKET_STATUS_QUEUE_MIN_DELAY_MILLIS,
+                PROCESS_QUEUE_SCHEDULE_MILLIS));
+
+        this.tasks.add(new DHTQueueTask("peerexpiry", new DHTQueue() {
+            @Override
+            public int processQueue() {
+                return DHTQueueScheduler.this.infoHashRoutingTable
+                        .expirePeers();
+            }
+        }, PEER_EXPIRY_MIN_DELAY_MILLIS, PROCESS_QUEUE_SCHEDULE_MILLIS));
+
+        this.tasks.add(new DHTQueueTask("banlist", this.banList,
+                PROCESS_QUEUE_SCHEDULE_MILLIS, PROCESS_QUEUE_SCHEDULE_MILLIS));
+
+        this.tasks.add(new DHTQueueTask("metrics", this.metrics,
+                PROCESS_QUEUE_SCHEDULE_MILLIS, PROCESS_QUEUE_SCHEDULE_MILLIS));
+
+        this.tasks.add(new DHTQueueTask("packetlog", this.packetLog,
+                PACKET_LOG_MIN_DELAY_MILLIS, PACKET_LOG_MAX_DELAY_MILLIS));
+
+        this.queueTaskScheduler.setPoolSize(this.tasks.size()
+                + OTHER_TASK_THREADS);
+        registrar.setScheduler(this.queueTaskScheduler);
+
+        for (DHTQueueTask task : this.tasks) {
+            registrar.addTriggerTask(task, task);
+        }
+    }
+
+    /**
+     * @return List<DHTQueueTask>
+     */
+    public List<DHTQueueTask> getTasks() {
+        return Collections.unmodifiableList(this.tasks);
     }
 }
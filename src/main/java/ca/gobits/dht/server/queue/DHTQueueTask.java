@@ -0,0 +1,173 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.dht.server.queue;
+
+import java.util.Date;
+
+import org.apache.log4j.Logger;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+
+import ca.gobits.dht.util.EventRecorder;
+import ca.gobits.dht.util.EventRecorder.EventType;
+import ca.gobits.dht.util.Events;
+
+/**
+ * DHTQueueTask - runs a DHTQueue on its own adaptive schedule.
+ *
+ * The delay between runs is picked from the rate requests have been
+ * processed at so each run handles about a batch of requests, spreading
+ * the queue's output out instead of sending it in bursts.  A queue with
+ * nothing to do backs off towards the maximum delay.
+ */
+public final class DHTQueueTask implements Runnable, Trigger {
+
+    /** DHTQueueTask Logger. */
+    private static final Logger LOGGER = Logger.getLogger(DHTQueueTask.class);
+
+    /** Number of requests to aim for in each run. */
+    private static final int TARGET_BATCH_SIZE = 16;
+
+    /** Weight of the latest run in the processing rate. */
+    private static final double RATE_WEIGHT = 0.25;
+
+    /** Number of millis in a second. */
+    private static final double MILLIS_PER_SECOND = 1000;
+
+    /** Name of the queue. */
+    private final String name;
+
+    /** Queue to run. */
+    private final DHTQueue queue;
+
+    /** Minimum millis between runs. */
+    private final long minDelayInMillis;
+
+    /** Maximum millis between runs. */
+    private final long maxDelayInMillis;
+
+    /** Current millis between runs. */
+    private volatile long delayInMillis;
+
+    /** Requests processed per second. */
+    private volatile double rate;
+
+    /** Time in millis of the last run. */
+    private long lastRun;
+
+    /**
+     * constructor.
+     * @param queueName  name of the queue
+     * @param dhtQueue  queue to run
+     * @param minDelay  minimum millis between runs
+     * @param maxDelay  maximum millis between runs
+     */
+    public DHTQueueTask(final String queueName, final DHTQueue dhtQueue,
+            final long minDelay, final long maxDelay) {
+
+        if (minDelay <= 0 || maxDelay < minDelay) {
+            throw new IllegalArgumentException("invalid queue delay");
+        }
+
+        this.name = queueName;
+        this.queue = dhtQueue;
+        this.minDelayInMillis = minDelay;
+        this.maxDelayInMillis = maxDelay;
+        this.delayInMillis = maxDelay;
+        this.lastRun = System.currentTimeMillis();
+    }
+
+    @Override
+    public void run() {
+
+        int count = 0;
+        EventRecorder recorder = Events.getRecorder();
+        Object event = recorder.begin(EventType.QUEUE);
+
+        try {
+            count = this.queue.processQueue();
+        } catch (RuntimeException e) {
+            LOGGER.warn("processing " + this.name + " queue failed", e);
+        }
+
+        recorder.commitQueue(event, this.name, count);
+
+        update(count, System.currentTimeMillis());
+    }
+
+    /**
+     * Updates the processing rate and the delay until the next run.
+     * @param count  number of requests processed by the last run
+     * @param now  current time in millis
+     */
+    public synchronized void update(final int count, final long now) {
+
+        long elapsed = Math.max(1, now - this.lastRun);
+        double current = count * MILLIS_PER_SECOND / elapsed;
+
+        this.lastRun = now;
+        this.rate += RATE_WEIGHT * (current - this.rate);
+
+        long delay;
+
+        if (count > 0) {
+            delay = (long) (TARGET_BATCH_SIZE * MILLIS_PER_SECOND / this.rate);
+        } else {
+            delay = this.delayInMillis * 2;
+        }
+
+        this.delayInMillis = Math.min(this.maxDelayInMillis,
+                Math.max(this.minDelayInMillis, delay));
+    }
+
+    @Override
+    public Date nextExecutionTime(final TriggerContext context) {
+
+        Date last = context.lastCompletionTime();
+        long from = last != null ? last.getTime() : System.currentTimeMillis();
+
+        return new Date(from + this.delayInMillis);
+    }
+
+    /**
+     * @return String
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return DHTQueue
+     */
+    public DHTQueue getQueue() {
+        return this.queue;
+    }
+
+    /**
+     * @return long  current millis between runs
+     */
+    public long getDelayInMillis() {
+        return this.delayInMillis;
+    }
+
+    /**
+     * @return double  requests processed per second
+     */
+    public double getRate() {
+        return this.rate;
+    }
+}
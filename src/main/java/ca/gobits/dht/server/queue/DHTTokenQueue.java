@@ -17,59 +17,26 @@
 package ca.gobits.dht.server.queue;
 
 import java.net.InetAddress;
-import java.net.UnknownHostException;
-
-import ca.gobits.dht.DHTToken;
 
 /**
- * DHTTokenTable - maintain a list of secrets / ip addresses.
+ * DHTTokenTable - generates and validates announce_peer tokens.
  */
 public interface DHTTokenQueue extends DHTQueue {
 
     /**
-     * Adds Address / Token to Token.
-     * @param addr  address
-     * @param port  port
-     * @param secret  secret
-     */
-    void add(InetAddress addr, int port, byte[] secret);
-
-    /**
-     * Gets a token.
+     * Generates the announce_peer token for an address, the token is
+     * derived from the address and the current secret.
      * @param addr  address
-     * @param port  port
-     * @param secret  secret
-     * @return DHTToken
+     * @return byte[]
      */
-    DHTToken get(InetAddress addr, int port, byte[] secret);
+    byte[] generateToken(InetAddress addr);
 
     /**
-     * Validates an addr and token combination exists.
+     * Validates a token was generated for an address with the current or
+     * previous secret.
      * @param addr  address
-     * @param port  port
-     * @param secret  secret
-     * @return boolean
-     * @throws UnknownHostException  UnknownHostException
-     */
-    boolean valid(InetAddress addr, int port, byte[] secret)
-            throws UnknownHostException;
-
-    /**
-     * Every message has a key "t" with a string value representing a
-     * transaction ID. This transaction ID is generated by the querying node and
-     * is echoed in the response, so responses may be correlated with multiple
-     * queries to the same node. The transaction ID should be encoded as a short
-     * string of binary numbers, typically 2 characters are enough as they cover
-     * 2^16 outstanding queries.
-     *
-     * @return String
-     */
-    String getTransactionId();
-
-    /**
-     * Whether TransactionId is valid or not.
-     * @param transactionId  transaction id
+     * @param token  token
      * @return boolean
      */
-    boolean isValidTransactionId(String transactionId);
+    boolean valid(InetAddress addr, byte[] token);
 }
@@ -17,208 +17,157 @@
 package ca.gobits.dht.server.queue;
 
 import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.util.ArrayList;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.util.Arrays;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.List;
-import java.util.Random;
 
 import org.apache.log4j.Logger;
 
-import ca.gobits.dht.DHTToken;
-import ca.gobits.dht.comparator.DHTTokenComparator;
-import ca.gobits.dht.util.ConcurrentSortedList;
-
 /**
- * Basic implementation of DHTTokenTable.
+ * Stateless implementation of DHTTokenTable.
+ *
+ * Tokens are the truncated SHA-1 of a secret followed by the requesting
+ * IP address.  The secret is replaced every few minutes and tokens made
+ * with the current or the previous secret are accepted, so no token is
+ * ever stored.
  */
 public final class DHTTokenQueueImpl implements DHTTokenQueue {
 
-    /** Used to build output as Hex. */
-    private static final char[] HEX_CHARS = {'0', '1', '2', '3', '4', '5',
-            '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+    /** Generator of secrets. */
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    /** Default minutes between secret rotations. */
+    private static final int DEFAULT_SECRET_ROTATION = 5;
+
+    /** Length of a secret. */
+    private static final int SECRET_LENGTH = 20;
 
-    /** Pseudorandom Numbers Generator. */
-    private static final Random RANDOM = new Random();
+    /** Length of a token. */
+    private static final int TOKEN_LENGTH = 8;
 
-    /** Default Token Expiry. */
-    private static final int DEFAULT_TOKEN_EXPIRY = 15;
+    /** Number of millis in a minute. */
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
 
-    /** How to Token stays valid. */
-    private int tokenExpiryInMinutes = DEFAULT_TOKEN_EXPIRY;
+    /** SHA-1 digest for each thread. */
+    private static final ThreadLocal<MessageDigest> SHA1 =
+            new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
 
     /** DHTTokenTableBasic Logger. */
     private static final Logger LOGGER = Logger
             .getLogger(DHTTokenQueueImpl.class);
 
-    /** List of Tokens. */
-    private final ConcurrentSortedList<DHTToken> tokens =
-            new ConcurrentSortedList<DHTToken>(
-                    DHTTokenComparator.getInstance(), false);
-
-    /** Date TransactionId was last updated. */
-    private Date transactionLastUpdated = null;
+    /** Minutes between secret rotations. */
+    private int secretRotationInMinutes = DEFAULT_SECRET_ROTATION;
 
-    /** Current Transaction Id. */
-    private String transactionId1;
+    /** Current secret followed by the previous secret. */
+    private volatile byte[][] secrets;
 
-    /** Last Transaction Id. */
-    private String transactionId2;
+    /** Time in millis the secret was last rotated. */
+    private volatile long secretRotated;
 
-    @Override
-    public void add(final InetAddress addr, final int port,
-            final byte[] secret) {
-
-        LOGGER.debug("add token: " + java.util.Arrays.toString(secret)
-                + " from "
-                + java.util.Arrays.toString(addr.getAddress())
-                + " port " + port);
-
-        DHTToken dhtToken = createToken(addr, port, secret);
-
-        this.tokens.add(dhtToken);
+    /**
+     * constructor.
+     */
+    public DHTTokenQueueImpl() {
+        byte[] secret = newSecret();
+        this.secrets = new byte[][] {secret, secret };
+        this.secretRotated = System.currentTimeMillis();
     }
 
     @Override
-    public DHTToken get(final InetAddress addr, final int port,
-            final byte[] secret) {
-        return this.tokens.get(createToken(addr, port, secret));
+    public byte[] generateToken(final InetAddress addr) {
+        return token(this.secrets[0], addr.getAddress());
     }
 
     @Override
-    public boolean valid(final InetAddress addr, final int port,
-            final byte[] secret) throws UnknownHostException {
+    public boolean valid(final InetAddress addr, final byte[] token) {
 
         boolean valid = false;
-        DHTToken token = this.tokens.get(createToken(addr, port, secret));
 
-        if (token != null) {
+        if (token != null && token.length == TOKEN_LENGTH) {
 
-            byte[] addr0 = token.getAddress().getAddress();
-            valid = isValid(token, new Date())
-                    && Arrays.equals(addr0, addr.getAddress())
-                    && token.getPort() == port;
+            byte[][] s = this.secrets;
+            byte[] address = addr.getAddress();
+
+            valid = MessageDigest.isEqual(token(s[0], address), token)
+                    || MessageDigest.isEqual(token(s[1], address), token);
         }
 
         return valid;
     }
 
     /**
-     * Checks whether DHTToken is valid.
-     * @param token  DHTToken
-     * @param now date
-     * @return boolean
+     * Calculates a token.
+     * @param secret  secret
+     * @param address  IP address
+     * @return byte[]
      */
-    private boolean isValid(final DHTToken token, final Date now) {
-        return isValid(token.getAddedDate(), now);
+    private byte[] token(final byte[] secret, final byte[] address) {
+
+        MessageDigest md = SHA1.get();
+        md.update(secret);
+        md.update(address);
+
+        return Arrays.copyOf(md.digest(), TOKEN_LENGTH);
     }
 
     /**
-     * Verify that now is before date + getTokenExpiryInMinutes().
-     * @param date  date
-     * @param now  now
-     * @return boolean
+     * Replaces the previous secret with the current secret and
+     * generates a new current secret.
+     * @param now  current time in millis
      */
-    private boolean isValid(final Date date, final Date now) {
-        Calendar c = Calendar.getInstance();
-        c.setTime(date);
-        c.add(Calendar.MINUTE, getTokenExpiryInMinutes());
-
-        return now.before(c.getTime());
+    public void rotateSecret(final long now) {
+        LOGGER.debug("rotating token secret");
+        this.secrets = new byte[][] {newSecret(), this.secrets[0] };
+        this.secretRotated = now;
     }
 
     /**
-     * Creates a token.
-     * @param addr  address
-     * @param port  port
-     * @param secret  secret
-     * @return DHTToken
+     * @return byte[]  new random secret
      */
-    private DHTToken createToken(final InetAddress addr, final int port,
-            final byte[] secret) {
-        DHTToken dhtToken = new DHTToken(secret, addr.getAddress(), port);
-        return dhtToken;
+    private static byte[] newSecret() {
+        byte[] secret = new byte[SECRET_LENGTH];
+        SECURE_RANDOM.nextBytes(secret);
+        return secret;
     }
 
     /**
      * @return int
      */
-    public int getTokenExpiryInMinutes() {
-        return this.tokenExpiryInMinutes;
+    public int getSecretRotationInMinutes() {
+        return this.secretRotationInMinutes;
     }
 
     /**
-     * Sets Token Expiry.
-     * @param timeout timeout in minutes
+     * Sets the minutes between secret rotations.
+     * @param minutes  int
      */
-    public void setTokenExpiryInMinutes(final int timeout) {
-        this.tokenExpiryInMinutes = timeout;
+    public void setSecretRotationInMinutes(final int minutes) {
+        this.secretRotationInMinutes = minutes;
     }
 
     @Override
-    public String getTransactionId() {
+    public int processQueue() {
 
-        if (this.transactionLastUpdated == null) {
-            this.transactionLastUpdated = new Date();
-        }
-
-        if (!isValid(this.transactionLastUpdated, new Date())) {
-            this.transactionId2 = this.transactionId1;
-            this.transactionId1 = null;
-        }
-
-        if (this.transactionId1 == null) {
-            this.transactionId1 = ""
-                    + HEX_CHARS[RANDOM.nextInt(HEX_CHARS.length)]
-                    + HEX_CHARS[RANDOM.nextInt(HEX_CHARS.length)];
-        }
+        int count = 0;
+        long now = System.currentTimeMillis();
 
-        if (this.transactionId2 == null) {
-            this.transactionId2 = this.transactionId1;
+        if (now - this.secretRotated
+                >= this.secretRotationInMinutes * MILLIS_PER_MINUTE) {
+            rotateSecret(now);
+            count++;
         }
 
-        return this.transactionId1;
-    }
-
-    @Override
-    public boolean isValidTransactionId(final String transactionId) {
-
-        boolean valid = false;
-
-        if (transactionId != null) {
-            valid = transactionId.equals(this.transactionId1)
-                    || transactionId.equals(this.transactionId2);
-        }
-
-        return valid;
-    }
-
-    @Override
-    public void processQueue() {
-
-        Date now = new Date();
-        LOGGER.debug("deleting expired tokens " + now);
-
-        List<DHTToken> removeTokens = new ArrayList<DHTToken>();
-
-        Object[] objs = this.tokens.toArray();
-
-        for (int i = 0; i < objs.length; i++) {
-
-            DHTToken token = (DHTToken) objs[i];
-            if (!isValid(token, now)) {
-                LOGGER.debug("removing expired token "
-                        + Arrays.toString(token.getInfoHash()) + " added "
-                        + token.getAddedDate() + " now " + now);
-
-                removeTokens.add(token);
-            }
-        }
-
-        if (!removeTokens.isEmpty()) {
-            this.tokens.removeAll(removeTokens);
-        }
+        return count;
     }
 }
@@ -0,0 +1,160 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.dht.server.queue;
+
+import java.net.InetAddress;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
+import ca.gobits.dht.util.TimingWheel.Timeout;
+
+/**
+ * DHTTransaction - an outgoing query waiting for its response.
+ *
+ */
+public final class DHTTransaction {
+
+    /** Transaction Id. */
+    private final int id;
+
+    /** Address the query was sent to. */
+    private final InetAddress address;
+
+    /** Port the query was sent to. */
+    private final int port;
+
+    /** Type of query. */
+    private final DHTQueryType queryType;
+
+    /** Time in millis the query was sent. */
+    private long sent;
+
+    /** Listener told what became of the query or null. */
+    private final DHTTransactionListener listener;
+
+    /** Timeout of the query. */
+    private Timeout<DHTTransaction> timeout;
+
+    /**
+     * constructor.
+     * @param transactionId  transaction id
+     * @param addr  address the query was sent to
+     * @param lport  port the query was sent to
+     * @param type  type of query
+     * @param sentTime  time in millis the query was sent
+     */
+    public DHTTransaction(final int transactionId, final InetAddress addr,
+            final int lport, final DHTQueryType type, final long sentTime) {
+        this(transactionId, addr, lport, type, sentTime, null);
+    }
+
+    /**
+     * constructor.
+     * @param transactionId  transaction id
+     * @param addr  address the query was sent to
+     * @param lport  port the query was sent to
+     * @param type  type of query
+     * @param sentTime  time in millis the query was sent
+     * @param transactionListener  listener or null
+     */
+    public DHTTransaction(final int transactionId, final InetAddress addr,
+            final int lport, final DHTQueryType type, final long sentTime,
+            final DHTTransactionListener transactionListener) {
+        this.id = transactionId;
+        this.address = addr;
+        this.port = lport;
+        this.queryType = type;
+        this.sent = sentTime;
+        this.listener = transactionListener;
+    }
+
+    @Override
+    public String toString() {
+        ToStringBuilder builder = new ToStringBuilder(this);
+        builder.append("id", this.id);
+        builder.append("address", this.address);
+        builder.append("port", this.port);
+        builder.append("queryType", this.queryType);
+        return builder.toString();
+    }
+
+    /**
+     * @return int
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * @return InetAddress
+     */
+    public InetAddress getAddress() {
+        return this.address;
+    }
+
+    /**
+     * @return int
+     */
+    public int getPort() {
+        return this.port;
+    }
+
+    /**
+     * @return DHTQueryType
+     */
+    public DHTQueryType getQueryType() {
+        return this.queryType;
+    }
+
+    /**
+     * @return long  time in millis the query was sent
+     */
+    public long getSent() {
+        return this.sent;
+    }
+
+    /**
+     * Sets the time the query was written to the socket.
+     * @param sentTime  time in millis
+     */
+    void setSent(final long sentTime) {
+        this.sent = sentTime;
+    }
+
+    /**
+     * @return DHTTransactionListener  or null
+     */
+    public DHTTransactionListener getListener() {
+        return this.listener;
+    }
+
+    /**
+     * @return Timeout<DHTTransaction>
+     */
+    Timeout<DHTTransaction> getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Sets the timeout of the query.
+     * @param t  Timeout<DHTTransaction>
+     */
+    void setTimeout(final Timeout<DHTTransaction> t) {
+        this.timeout = t;
+    }
+}
@@ -0,0 +1,40 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.server.queue;
+
+import ca.gobits.dht.server.DHTParameters;
+
+/**
+ * DHTTransactionListener - told what became of an outgoing query.
+ *
+ */
+public interface DHTTransactionListener {
+
+    /**
+     * The query was answered.
+     * @param transaction  query that was answered
+     * @param params  response
+     */
+    void responded(DHTTransaction transaction, DHTParameters params);
+
+    /**
+     * The query was not answered in time.
+     * @param transaction  query that timed out
+     */
+    void timedOut(DHTTransaction transaction);
+}
@@ -0,0 +1,81 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.dht.server.queue;
+
+import java.net.InetAddress;
+
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
+
+/**
+ * DHTTransactionQueue - outgoing queries waiting for a response.
+ *
+ * Every outgoing query is given its own 2 byte transaction id, responses
+ * are matched against the query they answer and queries that are not
+ * answered in time are expired by processQueue.
+ */
+public interface DHTTransactionQueue extends DHTQueue {
+
+    /**
+     * Registers an outgoing query.
+     * @param addr  address the query is sent to
+     * @param port  port the query is sent to
+     * @param type  type of query
+     * @return byte[]  transaction id or null if no ids are available
+     */
+    byte[] add(InetAddress addr, int port, DHTQueryType type);
+
+    /**
+     * Registers an outgoing query whose outcome is passed to a listener.
+     * @param addr  address the query is sent to
+     * @param port  port the query is sent to
+     * @param type  type of query
+     * @param listener  told when the query is answered or times out
+     * @return byte[]  transaction id or null if no ids are available
+     */
+    byte[] add(InetAddress addr, int port, DHTQueryType type,
+            DHTTransactionListener listener);
+
+    /**
+     * Records that a query was written to the socket, its round trip time
+     * and timeout start from now rather than from when it was registered.
+     * @param transactionId  transaction id returned by add
+     * @param now  time in millis the query was written
+     */
+    void sent(byte[] transactionId, long now);
+
+    /**
+     * Removes a query that was never sent, it is not counted as a timeout
+     * and its listener is not told.
+     * @param transactionId  transaction id returned by add
+     * @return boolean  whether the query was outstanding
+     */
+    boolean cancel(byte[] transactionId);
+
+    /**
+     * Matches a response to the query it answers, the query is removed.
+     * @param transactionId  "t" of the response
+     * @param addr  address the response came from
+     * @param port  port the response came from
+     * @return DHTTransaction  or null if the response is unsolicited
+     */
+    DHTTransaction match(byte[] transactionId, InetAddress addr, int port);
+
+    /**
+     * @return int  number of outstanding transactions
+     */
+    int size();
+}
@@ -0,0 +1,336 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.dht.server.queue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.log4j.Logger;
+
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
+import ca.gobits.dht.util.TimingWheel;
+
+/**
+ * Implementation of DHTTransactionQueue.
+ *
+ * Transactions are kept in an array indexed by their 16 bit id, ids are
+ * picked at random so responses cannot be forged by guessing the next id.
+ */
+public final class DHTTransactionQueueImpl implements DHTTransactionQueue {
+
+    /** DHTTransactionQueue Logger. */
+    private static final Logger LOGGER = Logger
+            .getLogger(DHTTransactionQueueImpl.class);
+
+    /** Length of a transaction id. */
+    private static final int TRANSACTION_ID_LENGTH = 2;
+
+    /** Number of transaction ids. */
+    private static final int MAX_TRANSACTIONS = 1 << 16;
+
+    /** Bits per byte. */
+    private static final int BITS_PER_BYTE = 8;
+
+    /** Mask of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Default millis to wait for a response. */
+    private static final long DEFAULT_TIMEOUT_IN_MILLIS = 10000;
+
+    /** Length of a tick of the timeout wheel. */
+    private static final long TIMEOUT_TICK_IN_MILLIS = 100;
+
+    /** Outstanding transactions by id. */
+    private final DHTTransaction[] transactions =
+            new DHTTransaction[MAX_TRANSACTIONS];
+
+    /** Schedules the timeout of transactions. */
+    private final TimingWheel<DHTTransaction> timeouts;
+
+    /** Millis to wait for a response. */
+    private long timeoutInMillis = DEFAULT_TIMEOUT_IN_MILLIS;
+
+    /** Number of outstanding transactions. */
+    private int size;
+
+    /** Number of responses matched to a query. */
+    private long responseCount;
+
+    /** Total round trip time of matched responses. */
+    private long roundTripTotalInMillis;
+
+    /** Number of queries that timed out. */
+    private long timeoutCount;
+
+    /** Number of responses that did not match a query. */
+    private long unsolicitedCount;
+
+    /**
+     * constructor.
+     */
+    public DHTTransactionQueueImpl() {
+        this(System.currentTimeMillis());
+    }
+
+    /**
+     * constructor.
+     * @param startInMillis  time the queue starts at
+     */
+    public DHTTransactionQueueImpl(final long startInMillis) {
+        this.timeouts = new TimingWheel<DHTTransaction>(
+                TIMEOUT_TICK_IN_MILLIS, startInMillis);
+    }
+
+    @Override
+    public byte[] add(final InetAddress addr, final int port,
+            final DHTQueryType type) {
+        return add(addr, port, type, null, System.currentTimeMillis());
+    }
+
+    @Override
+    public byte[] add(final InetAddress addr, final int port,
+            final DHTQueryType type, final DHTTransactionListener listener) {
+        return add(addr, port, type, listener, System.currentTimeMillis());
+    }
+
+    /**
+     * Registers an outgoing query.
+     * @param addr  address the query is sent to
+     * @param port  port the query is sent to
+     * @param type  type of query
+     * @param now  time in millis the query is sent
+     * @return byte[]  transaction id or null if no ids are available
+     */
+    public byte[] add(final InetAddress addr, final int port,
+            final DHTQueryType type, final long now) {
+        return add(addr, port, type, null, now);
+    }
+
+    /**
+     * Registers an outgoing query.
+     * @param addr  address the query is sent to
+     * @param port  port the query is sent to
+     * @param type  type of query
+     * @param listener  listener or null
+     * @param now  time in millis the query is sent
+     * @return byte[]  transaction id or null if no ids are available
+     */
+    public synchronized byte[] add(final InetAddress addr, final int port,
+            final DHTQueryType type, final DHTTransactionListener listener,
+            final long now) {
+
+        if (this.size >= MAX_TRANSACTIONS) {
+            LOGGER.debug("no transaction ids available");
+            return null;
+        }
+
+        int id = ThreadLocalRandom.current().nextInt(MAX_TRANSACTIONS);
+
+        while (this.transactions[id] != null) {
+            id = (id + 1) & (MAX_TRANSACTIONS - 1);
+        }
+
+        DHTTransaction transaction = new DHTTransaction(id, addr, port, type,
+                now, listener);
+        transaction.setTimeout(this.timeouts.schedule(transaction,
+                now + this.timeoutInMillis));
+
+        this.transactions[id] = transaction;
+        this.size++;
+
+        return new byte[] {(byte) (id >>> BITS_PER_BYTE), (byte) id };
+    }
+
+    @Override
+    public synchronized void sent(final byte[] transactionId,
+            final long now) {
+
+        int id = toId(transactionId);
+        DHTTransaction t = id >= 0 ? this.transactions[id] : null;
+
+        if (t != null) {
+            t.setSent(now);
+            this.timeouts.reschedule(t.getTimeout(),
+                    now + this.timeoutInMillis);
+        }
+    }
+
+    @Override
+    public synchronized boolean cancel(final byte[] transactionId) {
+
+        int id = toId(transactionId);
+        DHTTransaction t = id >= 0 ? this.transactions[id] : null;
+
+        if (t != null) {
+            this.transactions[id] = null;
+            this.size--;
+            this.timeouts.cancel(t.getTimeout());
+        }
+
+        return t != null;
+    }
+
+    @Override
+    public DHTTransaction match(final byte[] transactionId,
+            final InetAddress addr, final int port) {
+        return match(transactionId, addr, port, System.currentTimeMillis());
+    }
+
+    /**
+     * Matches a response to the query it answers, the query is removed.
+     * @param transactionId  "t" of the response
+     * @param addr  address the response came from
+     * @param port  port the response came from
+     * @param now  time in millis the response was received
+     * @return DHTTransaction  or null if the response is unsolicited
+     */
+    public synchronized DHTTransaction match(final byte[] transactionId,
+            final InetAddress addr, final int port, final long now) {
+
+        DHTTransaction transaction = null;
+        int id = toId(transactionId);
+
+        if (id >= 0) {
+
+            DHTTransaction t = this.transactions[id];
+
+            if (t != null && t.getPort() == port
+                    && t.getAddress().equals(addr)) {
+
+                transaction = t;
+                this.transactions[id] = null;
+                this.size--;
+                this.timeouts.cancel(t.getTimeout());
+                this.responseCount++;
+                this.roundTripTotalInMillis += now - t.getSent();
+            }
+        }
+
+        if (transaction == null) {
+            this.unsolicitedCount++;
+        }
+
+        return transaction;
+    }
+
+    /**
+     * @param transactionId  transaction id
+     * @return int  id or -1 if transactionId is not a valid id
+     */
+    private int toId(final byte[] transactionId) {
+
+        if (transactionId == null
+                || transactionId.length != TRANSACTION_ID_LENGTH) {
+            return -1;
+        }
+
+        return ((transactionId[0] & BYTE_MASK) << BITS_PER_BYTE)
+                | (transactionId[1] & BYTE_MASK);
+    }
+
+    @Override
+    public int processQueue() {
+        return processQueue(System.currentTimeMillis());
+    }
+
+    /**
+     * Expires queries that have not been answered in time, listeners are
+     * told after the queue is unlocked.
+     * @param now  current time in millis
+     * @return int  number of expired queries
+     */
+    public int processQueue(final long now) {
+
+        List<DHTTransaction> expired = new ArrayList<DHTTransaction>();
+        int count = 0;
+
+        synchronized (this) {
+
+            count = this.timeouts.advance(now, expired);
+
+            for (DHTTransaction t : expired) {
+                this.transactions[t.getId()] = null;
+            }
+
+            this.size -= count;
+            this.timeoutCount += count;
+        }
+
+        for (DHTTransaction t : expired) {
+            if (t.getListener() != null) {
+                t.getListener().timedOut(t);
+            }
+        }
+
+        if (count > 0) {
+            LOGGER.debug("expired " + count + " transactions");
+        }
+
+        return count;
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * @return long  number of responses matched to a query
+     */
+    public synchronized long getResponseCount() {
+        return this.responseCount;
+    }
+
+    /**
+     * @return long  average round trip time in millis of matched responses
+     */
+    public synchronized long getAverageRoundTripInMillis() {
+        return this.responseCount > 0 ? this.roundTripTotalInMillis
+                / this.responseCount : 0;
+    }
+
+    /**
+     * @return long  number of queries that timed out
+     */
+    public synchronized long getTimeoutCount() {
+        return this.timeoutCount;
+    }
+
+    /**
+     * @return long  number of responses that did not match a query
+     */
+    public synchronized long getUnsolicitedCount() {
+        return this.unsolicitedCount;
+    }
+
+    /**
+     * @return long  millis to wait for a response
+     */
+    public long getTimeoutInMillis() {
+        return this.timeoutInMillis;
+    }
+
+    /**
+     * Sets the millis to wait for a response.
+     * @param timeout  millis
+     */
+    public void setTimeoutInMillis(final long timeout) {
+        this.timeoutInMillis = timeout;
+    }
+}
@@ -0,0 +1,848 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.server.scheduling;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import ca.gobits.dht.DHTBucket;
+import ca.gobits.dht.DHTNode;
+import ca.gobits.dht.DHTNode.State;
+import ca.gobits.dht.DHTNodeRoutingTable;
+import ca.gobits.dht.DHTNodeShardedRoutingTable;
+import ca.gobits.dht.DHTSecureNodeId;
+import ca.gobits.dht.server.DHTBanList;
+import ca.gobits.dht.server.DHTServerConfig;
+import ca.gobits.dht.server.DHTServerConfig.SecureNodeIdPolicy;
+import ca.gobits.dht.server.queue.DHTBucketStatusQueue;
+
+/**
+ * DHTRoutingTableUpdateRing is the single writer of the DHTNodeRoutingTable.
+ *
+ * Updates are published into a preallocated ring of mutable events, so
+ * publishing does not allocate and memory is bounded by the size of the
+ * ring.  One consumer thread drains the ring in batches and applies them to
+ * the routing table, when the ring is full the update is rejected and the
+ * caller is told so it can back off.
+ *
+ * Repeated status updates of the same node within the coalesce window are
+ * collapsed into the first one, so a chatty node costs one routing table
+ * update per window instead of one per packet.
+ *
+ * Nodes whose identifier does not match their IP address (BEP 42) are
+ * added according to the SecureNodeIdPolicy, nodes on the DHTBanList are
+ * never added.
+ *
+ * With a sharded routing table there is one ring and consumer thread, a
+ * lane, per shard and updates are published to the lane of the shard the
+ * node belongs to, so every shard still has a single writer.
+ */
+public class DHTRoutingTableUpdateRing implements InitializingBean,
+        DisposableBean {
+
+    /** DHTRoutingTableUpdateRing Logger. */
+    private static final Logger LOGGER = Logger
+            .getLogger(DHTRoutingTableUpdateRing.class);
+
+    /** Default number of events in each lane's ring. */
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+
+    /** Maximum number of events applied in one batch. */
+    private static final int MAX_BATCH_SIZE = 256;
+
+    /** Number of nodes in a bucket unverified nodes may be added to. */
+    private static final int UNVERIFIED_NODES_PER_BUCKET =
+            DHTBucket.MAX_NODE_COUNT / 2;
+
+    /** Millis to wait for the consumer thread to stop. */
+    private static final long STOP_TIMEOUT_IN_MILLIS = 1000;
+
+    /** Reference to DHTServerConfig. */
+    @Autowired
+    private DHTServerConfig config;
+
+    /** Reference to DHTNodeRoutingTable. */
+    @Autowired
+    private DHTNodeRoutingTable rt;
+
+    /** Reference to DHTBanList. */
+    @Autowired
+    private DHTBanList banList;
+
+    /** Reference to DHTBucketStatusQueue. */
+    @Autowired
+    private DHTBucketStatusQueue bucketStatusQueue;
+
+    /** Lanes, one for each routing table shard. */
+    private final Lane[] lanes;
+
+    /** Number of leading node identifier bits used to pick a lane. */
+    private final int shardBits;
+
+    /** Whether the consumers are running. */
+    private volatile boolean running;
+
+    /** Number of updates rejected because the ring was full. */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /** Millis repeated status updates of a node are coalesced. */
+    private volatile long coalesceWindowInMillis =
+            DHTServerConfig.DEFAULT_COALESCE_MILLIS;
+
+    /** Latest status update of IPv4 nodes by node identifier. */
+    private final ConcurrentMap<ByteBuffer, Coalesced> coalesced =
+            new ConcurrentHashMap<ByteBuffer, Coalesced>();
+
+    /** Latest status update of IPv6 nodes by node identifier. */
+    private final ConcurrentMap<ByteBuffer, Coalesced> coalesced6 =
+            new ConcurrentHashMap<ByteBuffer, Coalesced>();
+
+    /** Number of status updates collapsed into an earlier update. */
+    private final AtomicLong collapsed = new AtomicLong();
+
+    /** How node identifiers that do not match their IP are treated. */
+    private volatile SecureNodeIdPolicy secureNodeIdPolicy =
+            SecureNodeIdPolicy.PREFER;
+
+    /** Number of nodes not added because their identifier is unverified. */
+    private final AtomicLong unverified = new AtomicLong();
+
+    /** Time in millis coalesced updates were last purged. */
+    private final AtomicLong lastPurge = new AtomicLong();
+
+    /**
+     * default constructor.
+     */
+    public DHTRoutingTableUpdateRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * constructor.
+     * @param capacity  number of events in the ring, rounded up to a
+     *                  power of two
+     */
+    public DHTRoutingTableUpdateRing(final int capacity) {
+        this(capacity, 1);
+    }
+
+    /**
+     * constructor.
+     * @param capacity  number of events in each lane's ring, rounded up to
+     *                  a power of two
+     * @param shards  number of routing table shards, a power of two
+     */
+    public DHTRoutingTableUpdateRing(final int capacity, final int shards) {
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size = size << 1;
+        }
+
+        this.shardBits = DHTNodeShardedRoutingTable.getShardBits(shards);
+        this.lanes = new Lane[shards];
+
+        for (int i = 0; i < shards; i++) {
+            this.lanes[i] = new Lane(size);
+        }
+    }
+
+    /**
+     * Update Node Status.
+     *
+     * @param nodeId node's identifier.
+     * @param addr  InetAddress
+     * @param port  int
+     * @param ipv6 whether ipv6 request
+     * @param addNodeIfMissing Add Node if missing
+     * @return boolean  false if the ring is full and the update was dropped
+     */
+    public boolean updateNodeStatus(final byte[] nodeId,
+            final InetAddress addr, final int port, final boolean ipv6,
+            final boolean addNodeIfMissing) {
+        return updateNodeStatus(nodeId, addr, port, ipv6, addNodeIfMissing,
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Update Node Status, collapsing it into an earlier update of the node
+     * within the coalesce window.  An update that adds a missing node wins
+     * over one that does not.
+     *
+     * @param nodeId node's identifier.
+     * @param addr  InetAddress
+     * @param port  int
+     * @param ipv6 whether ipv6 request
+     * @param addNodeIfMissing Add Node if missing
+     * @param now  current time in millis
+     * @return boolean  false if the ring is full and the update was dropped
+     */
+    public boolean updateNodeStatus(final byte[] nodeId,
+            final InetAddress addr, final int port, final boolean ipv6,
+            final boolean addNodeIfMissing, final long now) {
+
+        Type type = addNodeIfMissing ? Type.STATUS_ADD : Type.STATUS;
+        long window = this.coalesceWindowInMillis;
+
+        if (window <= 0) {
+            return publish(type, nodeId, addr, port, ipv6, null, null);
+        }
+
+        ConcurrentMap<ByteBuffer, Coalesced> map = getCoalesced(ipv6);
+        ByteBuffer key = ByteBuffer.wrap(nodeId);
+        Coalesced latest = map.get(key);
+
+        if (latest != null && latest.merge(addNodeIfMissing, now, window)) {
+            this.collapsed.incrementAndGet();
+            return true;
+        }
+
+        Coalesced c = new Coalesced(addNodeIfMissing, now);
+        map.put(key, c);
+
+        boolean published = publish(type, nodeId, addr, port, ipv6, null, c);
+
+        if (!published) {
+            map.remove(key, c);
+        }
+
+        return published;
+    }
+
+    /**
+     * Adds Node to Routing Table.
+     * @param nodeId node's identifier.
+     * @param addr  InetAddress
+     * @param port  int
+     * @param ipv6 whether ipv6 request
+     * @return boolean  false if the ring is full and the update was dropped
+     */
+    public boolean addNode(final byte[] nodeId, final InetAddress addr,
+            final int port, final boolean ipv6) {
+        return publish(Type.ADD, nodeId, addr, port, ipv6, null, null);
+    }
+
+    /**
+     * Removes Node from Routing Table.
+     * @param node DHTNode
+     * @return boolean  false if the ring is full and the update was dropped
+     */
+    public boolean removeNode(final DHTNode node) {
+        return publish(Type.REMOVE, node.getInfoHash(), null, 0,
+                node.isIpv6(), node, null);
+    }
+
+    /**
+     * Publishes an update into the lane of the node's shard.
+     * @param type  type of update
+     * @param nodeId node's identifier.
+     * @param addr  InetAddress
+     * @param port  int
+     * @param ipv6 whether ipv6 request
+     * @param node  DHTNode
+     * @param c  coalesced status update or null
+     * @return boolean  false if the ring is full and the update was dropped
+     */
+    private boolean publish(final Type type, final byte[] nodeId,
+            final InetAddress addr, final int port, final boolean ipv6,
+            final DHTNode node, final Coalesced c) {
+
+        Lane lane = this.lanes[DHTNodeShardedRoutingTable.getShardIndex(
+                nodeId, this.shardBits)];
+
+        return lane.publish(type, nodeId, addr, port, ipv6, node, c);
+    }
+
+    /**
+     * Applies the next batch of updates of every lane to the routing table.
+     * @return int  number of updates applied
+     */
+    public int drain() {
+
+        int count = 0;
+
+        for (Lane lane : this.lanes) {
+            count += lane.drain();
+        }
+
+        return count;
+    }
+
+    /**
+     * Removes coalesced updates whose window has passed.
+     * @param now  current time in millis
+     */
+    private void purge(final long now) {
+
+        long window = this.coalesceWindowInMillis;
+        long last = this.lastPurge.get();
+
+        if (now - last >= window && this.lastPurge.compareAndSet(last, now)) {
+            purge(this.coalesced, now, window);
+            purge(this.coalesced6, now, window);
+        }
+    }
+
+    /**
+     * Removes coalesced updates whose window has passed.
+     * @param map  coalesced updates
+     * @param now  current time in millis
+     * @param window  coalesce window in millis
+     */
+    private void purge(final ConcurrentMap<ByteBuffer, Coalesced> map,
+            final long now, final long window) {
+
+        Iterator<Coalesced> itr = map.values().iterator();
+
+        while (itr.hasNext()) {
+            if (itr.next().isExpired(now, window)) {
+                itr.remove();
+            }
+        }
+    }
+
+    /**
+     * Applies an update to the routing table.
+     * @param update  Update
+     * @param now  time of the batch
+     */
+    private void apply(final Update update, final Date now) {
+
+        switch (update.type) {
+
+        case STATUS:
+        case STATUS_ADD:
+
+            boolean addNodeIfMissing = update.coalesced != null
+                    ? update.coalesced.apply()
+                    : update.type == Type.STATUS_ADD;
+
+            DHTNode node = this.rt.findExactNode(update.nodeId, update.ipv6);
+
+            if (node != null) {
+
+                node.setState(State.GOOD);
+                node.setLastUpdated(now);
+
+                this.bucketStatusQueue.updateBucketLastChanged(update.nodeId,
+                        update.ipv6);
+
+            } else if (addNodeIfMissing) {
+                add(update);
+            }
+            break;
+
+        case ADD:
+            add(update);
+            break;
+
+        case REMOVE:
+            this.rt.removeNode(update.node);
+            break;
+
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Adds the update's node to the routing table.
+     * @param update  Update
+     */
+    private void add(final Update update) {
+
+        if (this.banList.isBanned(update.address)) {
+            return;
+        }
+
+        if (!isAdmitted(update)) {
+            this.unverified.incrementAndGet();
+            return;
+        }
+
+        this.rt.addNode(update.nodeId, update.address, update.port,
+                State.GOOD);
+
+        this.bucketStatusQueue.updateBucketLastChanged(update.nodeId,
+                update.ipv6);
+    }
+
+    /**
+     * Whether the update's node may be added under the secure node
+     * identifier policy, unverified nodes are refused or, when verified
+     * nodes are preferred, kept out of the second half of a bucket.
+     * @param update  Update
+     * @return boolean
+     */
+    private boolean isAdmitted(final Update update) {
+
+        SecureNodeIdPolicy policy = this.secureNodeIdPolicy;
+
+        if (policy == SecureNodeIdPolicy.OFF || update.address == null
+                || DHTSecureNodeId.isValid(update.nodeId,
+                        update.address.getAddress())) {
+            return true;
+        }
+
+        boolean admitted = false;
+
+        if (policy == SecureNodeIdPolicy.PREFER) {
+            DHTBucket bucket = this.rt.findBucket(update.nodeId, update.ipv6);
+            admitted = bucket == null
+                    || bucket.getNodeCount() < UNVERIFIED_NODES_PER_BUCKET;
+        }
+
+        return admitted;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+
+        setCoalesceWindowInMillis(this.config.getCoalesceMillis());
+        setSecureNodeIdPolicy(this.config.getSecureNodeIdPolicy());
+
+        this.running = true;
+
+        for (int i = 0; i < this.lanes.length; i++) {
+            this.lanes[i].start("dht-routing-table-" + i);
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+
+        this.running = false;
+
+        for (Lane lane : this.lanes) {
+            lane.stop();
+        }
+    }
+
+    /**
+     * @return int  number of updates waiting to be applied
+     */
+    public int size() {
+
+        int size = 0;
+
+        for (Lane lane : this.lanes) {
+            size += lane.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * @return int  number of events the rings of all lanes hold
+     */
+    public int getCapacity() {
+        return this.lanes.length * this.lanes[0].ring.length;
+    }
+
+    /**
+     * @return int  number of lanes
+     */
+    public int getLaneCount() {
+        return this.lanes.length;
+    }
+
+    /**
+     * @return long  number of updates dropped because the ring was full
+     */
+    public long getRejected() {
+        return this.rejected.get();
+    }
+
+    /**
+     * @return long  number of status updates collapsed into an earlier
+     *               update
+     */
+    public long getCollapsed() {
+        return this.collapsed.get();
+    }
+
+    /**
+     * @return long  number of nodes not added because their identifier
+     *               does not match their IP address
+     */
+    public long getUnverified() {
+        return this.unverified.get();
+    }
+
+    /**
+     * @param policy  how unverified node identifiers are treated
+     */
+    public void setSecureNodeIdPolicy(final SecureNodeIdPolicy policy) {
+        this.secureNodeIdPolicy = policy;
+    }
+
+    /**
+     * Sets the coalesce window, 0 disables coalescing.
+     * @param millis  millis repeated status updates of a node are coalesced
+     */
+    public void setCoalesceWindowInMillis(final long millis) {
+        this.coalesceWindowInMillis = millis;
+    }
+
+    /**
+     * @param ipv6  whether ipv6
+     * @return ConcurrentMap<ByteBuffer, Coalesced>
+     */
+    private ConcurrentMap<ByteBuffer, Coalesced> getCoalesced(
+            final boolean ipv6) {
+        return ipv6 ? this.coalesced6 : this.coalesced;
+    }
+
+    /**
+     * Ring of events with its own consumer thread.
+     */
+    private final class Lane implements Runnable {
+
+        /** Ring of events. */
+        private final Update[] ring;
+
+        /** Mask to find an event's slot in the ring. */
+        private final int mask;
+
+        /** Lock held by publishers and used to wake the consumer. */
+        private final Object lock = new Object();
+
+        /** Sequence of the next event to publish. */
+        private volatile long tail;
+
+        /** Sequence of the next event to consume. */
+        private volatile long head;
+
+        /** Whether the consumer is waiting for events. */
+        private boolean waiting;
+
+        /** Consumer thread. */
+        private Thread consumer;
+
+        /**
+         * constructor.
+         * @param size  number of events in the ring, a power of two
+         */
+        private Lane(final int size) {
+
+            this.ring = new Update[size];
+            this.mask = size - 1;
+
+            for (int i = 0; i < size; i++) {
+                this.ring[i] = new Update();
+            }
+        }
+
+        /**
+         * Publishes an update into the ring.
+         * @param type  type of update
+         * @param nodeId node's identifier.
+         * @param addr  InetAddress
+         * @param port  int
+         * @param ipv6 whether ipv6 request
+         * @param node  DHTNode
+         * @param c  coalesced status update or null
+         * @return boolean  false if the ring is full and the update was
+         *                  dropped
+         */
+        private boolean publish(final Type type, final byte[] nodeId,
+                final InetAddress addr, final int port, final boolean ipv6,
+                final DHTNode node, final Coalesced c) {
+
+            synchronized (this.lock) {
+
+                long sequence = this.tail;
+
+                if (sequence - this.head >= this.ring.length) {
+                    DHTRoutingTableUpdateRing.this.rejected.incrementAndGet();
+                    LOGGER.debug("routing table update ring full, dropping "
+                            + type);
+                    return false;
+                }
+
+                Update update = this.ring[(int) sequence & this.mask];
+                update.set(type, nodeId, addr, port, ipv6, node, c);
+
+                this.tail = sequence + 1;
+
+                if (this.waiting) {
+                    this.waiting = false;
+                    this.lock.notify();
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Applies the next batch of updates to the routing table.
+         * @return int  number of updates applied
+         */
+        private int drain() {
+
+            long start = this.head;
+            long end = Math.min(this.tail, start + MAX_BATCH_SIZE);
+            Date now = new Date();
+
+            for (long sequence = start; sequence < end; sequence++) {
+
+                Update update = this.ring[(int) sequence & this.mask];
+
+                try {
+                    apply(update, now);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("unable to apply " + update.type, e);
+                } finally {
+                    update.clear();
+                }
+            }
+
+            this.head = end;
+
+            purge(now.getTime());
+
+            return (int) (end - start);
+        }
+
+        @Override
+        public void run() {
+
+            while (DHTRoutingTableUpdateRing.this.running) {
+
+                if (drain() == 0) {
+                    awaitUpdates();
+                }
+            }
+        }
+
+        /**
+         * Waits until an update is published or the consumer is stopped.
+         */
+        private void awaitUpdates() {
+
+            synchronized (this.lock) {
+
+                while (DHTRoutingTableUpdateRing.this.running
+                        && this.head == this.tail) {
+
+                    this.waiting = true;
+
+                    try {
+                        this.lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+
+                this.waiting = false;
+            }
+        }
+
+        /**
+         * Starts the consumer thread.
+         * @param name  name of the thread
+         */
+        private void start(final String name) {
+            this.consumer = new Thread(this, name);
+            this.consumer.setDaemon(true);
+            this.consumer.start();
+        }
+
+        /**
+         * Wakes the consumer and waits for it to stop.
+         * @throws InterruptedException  InterruptedException
+         */
+        private void stop() throws InterruptedException {
+
+            synchronized (this.lock) {
+                this.lock.notifyAll();
+            }
+
+            if (this.consumer != null) {
+                this.consumer.join(STOP_TIMEOUT_IN_MILLIS);
+            }
+        }
+
+        /**
+         * @return int  number of updates waiting to be applied
+         */
+        private int size() {
+            return (int) (this.tail - this.head);
+        }
+    }
+
+    /**
+     * Type of routing table update.
+     */
+    private enum Type {
+        /** Node was seen. */
+        STATUS,
+        /** Node was seen, add it if it is missing. */
+        STATUS_ADD,
+        /** Add node. */
+        ADD,
+        /** Remove node. */
+        REMOVE
+    }
+
+    /**
+     * Mutable routing table update event, reused for every turn of the ring.
+     */
+    private static final class Update {
+
+        /** Type of update. */
+        private Type type;
+
+        /** node identifier. */
+        private byte[] nodeId;
+
+        /** InetAddress. */
+        private InetAddress address;
+
+        /** address port. */
+        private int port;
+
+        /** ipv6. */
+        private boolean ipv6;
+
+        /** DHTNode to remove. */
+        private DHTNode node;
+
+        /** Coalesced status update or null. */
+        private Coalesced coalesced;
+
+        /**
+         * Sets the event's values.
+         * @param updateType  type of update
+         * @param id node's identifier.
+         * @param addr  InetAddress
+         * @param addrPort  int
+         * @param ipv6Request whether ipv6 request
+         * @param n  DHTNode
+         * @param c  coalesced status update or null
+         */
+        private void set(final Type updateType, final byte[] id,
+                final InetAddress addr, final int addrPort,
+                final boolean ipv6Request, final DHTNode n,
+                final Coalesced c) {
+            this.type = updateType;
+            this.nodeId = id;
+            this.address = addr;
+            this.port = addrPort;
+            this.ipv6 = ipv6Request;
+            this.node = n;
+            this.coalesced = c;
+        }
+
+        /**
+         * Releases the event's references.
+         */
+        private void clear() {
+            this.type = null;
+            this.nodeId = null;
+            this.address = null;
+            this.node = null;
+            this.coalesced = null;
+        }
+    }
+
+    /**
+     * Status update of a node that later updates within the coalesce window
+     * are collapsed into.
+     */
+    private static final class Coalesced {
+
+        /** Time in millis of the update. */
+        private final long time;
+
+        /** Flag to indicate whether node should be added if missing. */
+        private boolean addNodeIfMissing;
+
+        /** Whether the update has been applied to the routing table. */
+        private boolean applied;
+
+        /**
+         * constructor.
+         * @param addIfMissing Add Node if missing
+         * @param now  time in millis of the update
+         */
+        private Coalesced(final boolean addIfMissing, final long now) {
+            this.addNodeIfMissing = addIfMissing;
+            this.time = now;
+        }
+
+        /**
+         * Collapses a later update into this one.
+         * @param addIfMissing Add Node if missing
+         * @param now  time in millis of the later update
+         * @param window  coalesce window in millis
+         * @return boolean  false if the later update must be published
+         */
+        private synchronized boolean merge(final boolean addIfMissing,
+                final long now, final long window) {
+
+            if (isExpired(now, window)) {
+                return false;
+            }
+
+            if (addIfMissing && !this.addNodeIfMissing) {
+
+                if (this.applied) {
+                    return false;
+                }
+
+                this.addNodeIfMissing = true;
+            }
+
+            return true;
+        }
+
+        /**
+         * Marks the update as applied.
+         * @return boolean  whether node should be added if missing
+         */
+        private synchronized boolean apply() {
+            this.applied = true;
+            return this.addNodeIfMissing;
+        }
+
+        /**
+         * @param now  current time in millis
+         * @param window  coalesce window in millis
+         * @return boolean  whether the coalesce window has passed
+         */
+        private boolean isExpired(final long now, final long window) {
+            return now - this.time >= window;
+        }
+    }
+}
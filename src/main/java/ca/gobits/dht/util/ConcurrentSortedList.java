@@ -24,8 +24,13 @@ import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import ca.gobits.dht.util.EventRecorder.EventType;
+
 /**
  * A Sorted List implementation that is thread safe.
+ *
+ * Time spent waiting for a lock held by another thread is recorded as a
+ * LOCK_WAIT event.
  * @param <E>
  *
  */
@@ -35,6 +40,12 @@ public final class ConcurrentSortedList<E> implements SortedCollection<E>,
     /** serialVersionUID. */
     private static final long serialVersionUID = 1013436370878496184L;
 
+    /** Name of the read lock in events. */
+    private static final String READ_LOCK = "ConcurrentSortedList.read";
+
+    /** Name of the write lock in events. */
+    private static final String WRITE_LOCK = "ConcurrentSortedList.write";
+
     /** Read/Write Locking. */
     private final ReentrantReadWriteLock locking = new ReentrantReadWriteLock();
 
@@ -86,7 +97,7 @@ public final class ConcurrentSortedList<E> implements SortedCollection<E>,
     public boolean add(final E e) {
 
         boolean result = false;
-        this.writeLock.lock();
+        lock(this.writeLock, WRITE_LOCK);
 
         try {
             result = this.list.add(e);
@@ -101,7 +112,7 @@ public final class ConcurrentSortedList<E> implements SortedCollection<E>,
     public boolean addAll(final Collection<? extends E> c) {
 
         boolean result = false;
-        this.readLock.lock();
+        lock(this.readLock, READ_LOCK);
 
         try {
             result = this.list.addAll(c);
@@ -115,7 +126,7 @@ public final class ConcurrentSortedList<E> implements SortedCollection<E>,
     @Override
     public int indexOf(final E o) {
 
-        this.readLock.lock();
+        lock(this.readLock, READ_LOCK);
 
         try {
             return this.list.indexOf(o);
@@ -126,7 +137,7 @@ public final class ConcurrentSortedList<E> implements SortedCollection<E>,
 
     @Override
     public E get(final E e) {
-        this.readLock.lock();
+        lock(this.readLock, READ_LOCK);
 
         try {
             return this.list.get(e);
@@ -137,7 +148,7 @@ public final class ConcurrentSortedList<E> implements SortedCollection<E>,
 
     @Override
     public int size() {
-        this.readLock.lock();
+        lock(this.readLock, READ_LOCK);
 
         try {
             return this.list.size();
@@ -149,7 +160,7 @@ public final class ConcurrentSortedList<E> implements SortedCollection<E>,
 
     @Override
     public Object[] toArray() {
-        this.readLock.lock();
+        lock(this.readLock, READ_LOCK);
 
         try {
             return this.list.toArray();
@@ -161,7 +172,7 @@ public final class ConcurrentSortedList<E> implements SortedCollection<E>,
 
     @Override
     public E get(final int index) {
-        this.readLock.lock();
+        lock(this.readLock, READ_LOCK);
 
         try {
             return this.list.get(index);
@@ -173,7 +184,7 @@ public final class ConcurrentSortedList<E> implements SortedCollection<E>,
 
     @Override
     public List<E> subList(final int fromIndex, final int toIndex) {
-        this.readLock.lock();
+        lock(this.readLock, READ_LOCK);
 
         try {
             return this.list.subList(fromIndex, toIndex);
@@ -185,7 +196,7 @@ public final class ConcurrentSortedList<E> implements SortedCollection<E>,
 
     @Override
     public Iterator<E> iterator() {
-        this.readLock.lock();
+        lock(this.readLock, READ_LOCK);
 
         try {
             return this.list.iterator();
@@ -196,7 +207,7 @@ public final class ConcurrentSortedList<E> implements SortedCollection<E>,
 
     @Override
     public void clear() {
-        this.writeLock.lock();
+        lock(this.writeLock, WRITE_LOCK);
 
         try {
             this.list.clear();
@@ -207,7 +218,7 @@ public final class ConcurrentSortedList<E> implements SortedCollection<E>,
 
     @Override
     public boolean isEmpty() {
-        this.readLock.lock();
+        lock(this.readLock, READ_LOCK);
 
         try {
             return this.list.isEmpty();
@@ -218,7 +229,7 @@ public final class ConcurrentSortedList<E> implements SortedCollection<E>,
 
     @Override
     public boolean remove(final E o) {
-        this.writeLock.lock();
+        lock(this.writeLock, WRITE_LOCK);
 
         try {
             return this.list.remove(o);
@@ -229,7 +240,7 @@ public final class ConcurrentSortedList<E> implements SortedCollection<E>,
 
     @Override
     public boolean removeAll(final Collection<E> c) {
-        this.writeLock.lock();
+        lock(this.writeLock, WRITE_LOCK);
 
         try {
             return this.list.removeAll(c);
@@ -237,4 +248,29 @@ public final class ConcurrentSortedList<E> implements SortedCollection<E>,
             this.writeLock.unlock();
         }
     }
+
+    /**
+     * Acquires a lock, while events are recorded a wait for another thread
+     * is recorded as an event.  tryLock() lets a reader barge ahead of a
+     * waiting writer, so it is only used while events are recorded.
+     * @param lock  lock to acquire
+     * @param name  name of the lock
+     */
+    private static void lock(final Lock lock, final String name) {
+
+        EventRecorder recorder = Events.getRecorder();
+
+        if (recorder == Events.DISABLED) {
+
+            lock.lock();
+
+        } else if (!lock.tryLock()) {
+
+            Object event = recorder.begin(EventType.LOCK_WAIT);
+
+            lock.lock();
+
+            recorder.commitLockWait(event, name);
+        }
+    }
 }
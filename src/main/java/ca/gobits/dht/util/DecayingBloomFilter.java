@@ -0,0 +1,147 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.util;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * Bloom Filter that forgets keys over time.
+ *
+ * Keys are added to the current generation of two Bloom Filters, once a
+ * generation is older than the generation length or holds the expected
+ * number of keys it replaces the previous generation.  So a key is
+ * remembered for between one and two generations while memory and the
+ * false positive rate stay bounded.
+ */
+public final class DecayingBloomFilter {
+
+    /** Expected number of keys in a generation. */
+    private final int expectedInsertions;
+
+    /** False positive probability of a generation. */
+    private final double fpp;
+
+    /** Length of a generation in millis. */
+    private final long generationInMillis;
+
+    /** Keys added in the current generation. */
+    private BloomFilter<byte[]> current;
+
+    /** Keys added in the previous generation. */
+    private BloomFilter<byte[]> previous;
+
+    /** Number of keys added to the current generation. */
+    private int count;
+
+    /** Time in millis the current generation started. */
+    private long generationStart;
+
+    /**
+     * constructor.
+     * @param expected  expected number of keys in a generation
+     * @param falsePositive  false positive probability
+     * @param generation  length of a generation in millis
+     * @param now  current time in millis
+     */
+    public DecayingBloomFilter(final int expected,
+            final double falsePositive, final long generation,
+            final long now) {
+
+        if (expected <= 0 || generation <= 0) {
+            throw new IllegalArgumentException("invalid filter size");
+        }
+
+        this.expectedInsertions = expected;
+        this.fpp = falsePositive;
+        this.generationInMillis = generation;
+        this.current = create();
+        this.previous = create();
+        this.generationStart = now;
+    }
+
+    /**
+     * Adds a key to the filter.
+     * @param key  key
+     * @param now  current time in millis
+     * @return boolean  true if the key was not already in the filter
+     */
+    public synchronized boolean put(final byte[] key, final long now) {
+
+        rotate(now);
+
+        if (this.current.mightContain(key)
+                || this.previous.mightContain(key)) {
+            return false;
+        }
+
+        if (this.count >= this.expectedInsertions) {
+            this.previous = this.current;
+            this.current = create();
+            this.count = 0;
+            this.generationStart = now;
+        }
+
+        this.current.put(key);
+        this.count++;
+        return true;
+    }
+
+    /**
+     * @param key  key
+     * @param now  current time in millis
+     * @return boolean  true if the key might be in the filter
+     */
+    public synchronized boolean mightContain(final byte[] key,
+            final long now) {
+
+        rotate(now);
+        return this.current.mightContain(key)
+                || this.previous.mightContain(key);
+    }
+
+    /**
+     * Starts a new generation if the current one is too old.
+     * @param now  current time in millis
+     */
+    private void rotate(final long now) {
+
+        long age = now - this.generationStart;
+
+        if (age >= this.generationInMillis) {
+
+            if (age >= 2 * this.generationInMillis) {
+                this.previous = create();
+            } else {
+                this.previous = this.current;
+            }
+
+            this.current = create();
+            this.count = 0;
+            this.generationStart = now;
+        }
+    }
+
+    /**
+     * @return BloomFilter<byte[]>
+     */
+    private BloomFilter<byte[]> create() {
+        return BloomFilter.create(Funnels.byteArrayFunnel(),
+                this.expectedInsertions, this.fpp);
+    }
+}
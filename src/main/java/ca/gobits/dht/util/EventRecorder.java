@@ -0,0 +1,94 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.util;
+
+/**
+ * Records timed events of the server for a profiler.
+ *
+ * An event is started with begin() before the work it times and finished
+ * with the commit method of its type once the work is done.  begin()
+ * returns null when the event is not being recorded, and committing null
+ * does nothing, so a disabled recorder costs a call and a null check.
+ */
+public interface EventRecorder {
+
+    /**
+     * Types of event.
+     */
+    enum EventType {
+        /** handling a received packet. */
+        PACKET,
+        /** a pass of a queue. */
+        QUEUE,
+        /** splitting a routing table bucket. */
+        BUCKET_SPLIT,
+        /** waiting for a lock held by another thread. */
+        LOCK_WAIT,
+        /** evicting an InfoHash from the peer store. */
+        PEER_EVICTION
+    }
+
+    /**
+     * Starts an event.
+     * @param type  type of event
+     * @return Object  event or null if it is not recorded
+     */
+    Object begin(EventType type);
+
+    /**
+     * Finishes a PACKET event.
+     * @param event  event or null
+     * @param queryType  type of query or null if unknown
+     * @param bytesIn  length of the received packet
+     * @param bytesOut  length of the reply
+     */
+    void commitPacket(Object event, String queryType, int bytesIn,
+            int bytesOut);
+
+    /**
+     * Finishes a QUEUE event.
+     * @param event  event or null
+     * @param queue  name of the queue
+     * @param items  number of items processed
+     */
+    void commitQueue(Object event, String queue, int items);
+
+    /**
+     * Finishes a BUCKET_SPLIT event.
+     * @param event  event or null
+     * @param ipv6  whether the bucket holds IPv6 nodes
+     * @param lowerNodes  nodes left in the lower half
+     * @param upperNodes  nodes moved to the upper half
+     */
+    void commitBucketSplit(Object event, boolean ipv6, int lowerNodes,
+            int upperNodes);
+
+    /**
+     * Finishes a LOCK_WAIT event.
+     * @param event  event or null
+     * @param lock  name of the lock
+     */
+    void commitLockWait(Object event, String lock);
+
+    /**
+     * Finishes a PEER_EVICTION event.
+     * @param event  event or null
+     * @param peers  number of peers removed with the InfoHash
+     */
+    void commitPeerEviction(Object event, int peers);
+}
@@ -0,0 +1,89 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.util;
+
+/**
+ * Holds the EventRecorder of the server.
+ *
+ * The recorder is global so the routing tables and collections it times
+ * do not need a reference to it.  Until one is set every event is
+ * discarded.
+ */
+public final class Events {
+
+    /** Recorder that discards every event. */
+    public static final EventRecorder DISABLED = new Disabled();
+
+    /** Current recorder. */
+    private static volatile EventRecorder recorder = DISABLED;
+
+    /**
+     * private constructor.
+     */
+    private Events() {
+    }
+
+    /**
+     * @return EventRecorder  current recorder
+     */
+    public static EventRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Sets the recorder.
+     * @param eventRecorder  recorder or null to discard every event
+     */
+    public static void setRecorder(final EventRecorder eventRecorder) {
+        recorder = eventRecorder != null ? eventRecorder : DISABLED;
+    }
+
+    /**
+     * EventRecorder that discards every event.
+     */
+    private static final class Disabled implements EventRecorder {
+
+        @Override
+        public Object begin(final EventType type) {
+            return null;
+        }
+
+        @Override
+        public void commitPacket(final Object event, final String queryType,
+                final int bytesIn, final int bytesOut) {
+        }
+
+        @Override
+        public void commitQueue(final Object event, final String queue,
+                final int items) {
+        }
+
+        @Override
+        public void commitBucketSplit(final Object event, final boolean ipv6,
+                final int lowerNodes, final int upperNodes) {
+        }
+
+        @Override
+        public void commitLockWait(final Object event, final String lock) {
+        }
+
+        @Override
+        public void commitPeerEviction(final Object event, final int peers) {
+        }
+    }
+}
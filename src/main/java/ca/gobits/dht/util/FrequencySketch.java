@@ -0,0 +1,134 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.dht.util;
+
+/**
+ * Count-Min Sketch estimating how often a key has been seen.
+ *
+ * Counters saturate at 15 and are halved once the number of increments
+ * reaches ten times the width of the sketch, so old popularity decays.
+ * Lookups increment the sketch from many threads, so increments and
+ * estimates are synchronized and never interleave with the halving.
+ */
+public final class FrequencySketch {
+
+    /** Number of rows (hash functions). */
+    private static final int DEPTH = 4;
+
+    /** Maximum value of a counter. */
+    private static final int MAX_COUNT = 15;
+
+    /** Increments per counter before all counters are halved. */
+    private static final int SAMPLE_FACTOR = 10;
+
+    /** Maximum width of a row. */
+    private static final int MAX_WIDTH = 1 << 22;
+
+    /** Seeds for each row. */
+    private static final int[] SEEDS = {0x97cb3127, 0xc2b2ae35, 0x85ebca6b,
+        0x27d4eb2f };
+
+    /** Golden ratio multiplier. */
+    private static final int GOLDEN = 0x9e3779b9;
+
+    /** Half word shift. */
+    private static final int HALF_WORD = 16;
+
+    /** Counters, DEPTH rows of width counters. */
+    private final byte[] table;
+
+    /** Width of a row, a power of two. */
+    private final int width;
+
+    /** Number of increments before counters are halved. */
+    private final int sampleSize;
+
+    /** Number of increments since counters were last halved. */
+    private int additions;
+
+    /**
+     * constructor.
+     * @param expectedEntries  expected number of distinct keys
+     */
+    public FrequencySketch(final int expectedEntries) {
+
+        int w = 1;
+        while (w < expectedEntries && w < MAX_WIDTH) {
+            w <<= 1;
+        }
+
+        this.width = w;
+        this.sampleSize = w * SAMPLE_FACTOR;
+        this.table = new byte[DEPTH * w];
+    }
+
+    /**
+     * Increments the frequency of a key.
+     * @param hash  hash of the key
+     */
+    public synchronized void increment(final int hash) {
+
+        for (int row = 0; row < DEPTH; row++) {
+            int index = indexOf(hash, row);
+            if (this.table[index] < MAX_COUNT) {
+                this.table[index]++;
+            }
+        }
+
+        if (++this.additions >= this.sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * @param hash  hash of the key
+     * @return int  estimated frequency of the key
+     */
+    public synchronized int frequency(final int hash) {
+
+        int frequency = MAX_COUNT;
+
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, this.table[indexOf(hash, row)]);
+        }
+
+        return frequency;
+    }
+
+    /**
+     * Halves all counters.
+     */
+    private void reset() {
+
+        this.additions = 0;
+
+        for (int i = 0; i < this.table.length; i++) {
+            this.table[i] = (byte) (this.table[i] >>> 1);
+        }
+    }
+
+    /**
+     * @param hash  hash of the key
+     * @param row  row of the sketch
+     * @return int  position of the counter in the table
+     */
+    private int indexOf(final int hash, final int row) {
+        int h = (hash ^ SEEDS[row]) * GOLDEN;
+        h ^= h >>> HALF_WORD;
+        return row * this.width + (h & (this.width - 1));
+    }
+}
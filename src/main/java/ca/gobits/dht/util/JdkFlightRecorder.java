@@ -0,0 +1,253 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.util;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * EventRecorder that writes events to JDK Flight Recorder.
+ *
+ * The server is built for Java 7, which has no jdk.jfr, so the event types
+ * are defined when the recorder is created with jdk.jfr.EventFactory and
+ * events are created and committed through reflection.  On a JVM without
+ * Flight Recorder create() returns null.  Each begin() asks the cached
+ * jdk.jfr.EventType whether it is enabled, a single reflective call that
+ * does not allocate, and only creates an event while a recording of the
+ * type is running.  Recorded events are shown under the "cthulhu-dht"
+ * category of JDK Mission Control.
+ */
+public final class JdkFlightRecorder implements EventRecorder {
+
+    /** JdkFlightRecorder Logger. */
+    private static final Logger LOGGER = Logger
+            .getLogger(JdkFlightRecorder.class);
+
+    /** Category of all events. */
+    private static final String CATEGORY = "cthulhu-dht";
+
+    /** Prefix of the names of the event types. */
+    private static final String PREFIX = "ca.gobits.dht.";
+
+    /** Arguments of the methods without parameters. */
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /** Factory of each type of event. */
+    private final Object[] factories =
+            new Object[EventType.values().length];
+
+    /** jdk.jfr.EventType of each type of event. */
+    private final Object[] eventTypes =
+            new Object[EventType.values().length];
+
+    /** EventFactory.newEvent(). */
+    private final Method newEvent;
+
+    /** EventType.isEnabled(). */
+    private final Method isEnabled;
+
+    /** Event.begin(). */
+    private final Method begin;
+
+    /** Event.set(int, Object). */
+    private final Method set;
+
+    /** Event.commit(). */
+    private final Method commit;
+
+    /**
+     * constructor.
+     * @throws ReflectiveOperationException  if Flight Recorder is missing
+     */
+    private JdkFlightRecorder() throws ReflectiveOperationException {
+
+        Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+        Class<?> event = Class.forName("jdk.jfr.Event");
+
+        this.newEvent = factory.getMethod("newEvent");
+        this.isEnabled = Class.forName("jdk.jfr.EventType").getMethod(
+                "isEnabled");
+        this.begin = event.getMethod("begin");
+        this.set = event.getMethod("set", int.class, Object.class);
+        this.commit = event.getMethod("commit");
+
+        define(EventType.PACKET, "Packet", "DHT Packet", false,
+                new String[] {"queryType", "bytesIn", "bytesOut" },
+                new Class<?>[] {String.class, int.class, int.class });
+        define(EventType.QUEUE, "Queue", "DHT Queue Pass", false,
+                new String[] {"queue", "items" },
+                new Class<?>[] {String.class, int.class });
+        define(EventType.BUCKET_SPLIT, "BucketSplit", "DHT Bucket Split",
+                false, new String[] {"ipv6", "lowerNodes", "upperNodes" },
+                new Class<?>[] {boolean.class, int.class, int.class });
+        define(EventType.LOCK_WAIT, "LockWait", "DHT Lock Wait", true,
+                new String[] {"lock" }, new Class<?>[] {String.class });
+        define(EventType.PEER_EVICTION, "PeerEviction", "DHT Peer Eviction",
+                false, new String[] {"peers" }, new Class<?>[] {int.class });
+    }
+
+    /**
+     * Creates the recorder.
+     * @return EventRecorder  or null if Flight Recorder is not available
+     */
+    public static EventRecorder create() {
+
+        EventRecorder recorder = null;
+
+        try {
+            recorder = new JdkFlightRecorder();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            LOGGER.warn("JDK Flight Recorder is not available: " + e);
+        }
+
+        return recorder;
+    }
+
+    /**
+     * Defines a type of event.
+     * @param type  type of event
+     * @param name  name of the event type
+     * @param label  label of the event type
+     * @param stackTrace  whether stack traces are recorded
+     * @param fieldNames  names of the fields
+     * @param fieldTypes  types of the fields
+     * @throws ReflectiveOperationException  ReflectiveOperationException
+     */
+    private void define(final EventType type, final String name,
+            final String label, final boolean stackTrace,
+            final String[] fieldNames, final Class<?>[] fieldTypes)
+            throws ReflectiveOperationException {
+
+        Class<?> element = Class.forName("jdk.jfr.AnnotationElement");
+        Constructor<?> annotation = element.getConstructor(Class.class,
+                Object.class);
+
+        List<Object> annotations = Arrays.asList(
+                annotation.newInstance(Class.forName("jdk.jfr.Name"),
+                        PREFIX + name),
+                annotation.newInstance(Class.forName("jdk.jfr.Label"), label),
+                annotation.newInstance(Class.forName("jdk.jfr.Category"),
+                        new String[] {CATEGORY }),
+                annotation.newInstance(Class.forName("jdk.jfr.StackTrace"),
+                        Boolean.valueOf(stackTrace)));
+
+        Constructor<?> descriptor = Class.forName("jdk.jfr.ValueDescriptor")
+                .getConstructor(Class.class, String.class);
+        List<Object> fields = new ArrayList<Object>(fieldNames.length);
+
+        for (int i = 0; i < fieldNames.length; i++) {
+            fields.add(descriptor.newInstance(fieldTypes[i], fieldNames[i]));
+        }
+
+        Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+        Object f = factory.getMethod("create", List.class, List.class)
+                .invoke(null, annotations, fields);
+
+        this.factories[type.ordinal()] = f;
+        this.eventTypes[type.ordinal()] = factory.getMethod("getEventType")
+                .invoke(f);
+    }
+
+    @Override
+    public Object begin(final EventType type) {
+
+        Object event = null;
+
+        try {
+
+            int i = type.ordinal();
+
+            if (((Boolean) this.isEnabled.invoke(this.eventTypes[i], NO_ARGS))
+                    .booleanValue()) {
+                event = this.newEvent.invoke(this.factories[i], NO_ARGS);
+                this.begin.invoke(event, NO_ARGS);
+            }
+
+        } catch (ReflectiveOperationException e) {
+            LOGGER.debug("unable to begin " + type + " event", e);
+        }
+
+        return event;
+    }
+
+    @Override
+    public void commitPacket(final Object event, final String queryType,
+            final int bytesIn, final int bytesOut) {
+        if (event != null) {
+            commit(event, queryType, Integer.valueOf(bytesIn),
+                    Integer.valueOf(bytesOut));
+        }
+    }
+
+    @Override
+    public void commitQueue(final Object event, final String queue,
+            final int items) {
+        if (event != null) {
+            commit(event, queue, Integer.valueOf(items));
+        }
+    }
+
+    @Override
+    public void commitBucketSplit(final Object event, final boolean ipv6,
+            final int lowerNodes, final int upperNodes) {
+        if (event != null) {
+            commit(event, Boolean.valueOf(ipv6), Integer.valueOf(lowerNodes),
+                    Integer.valueOf(upperNodes));
+        }
+    }
+
+    @Override
+    public void commitLockWait(final Object event, final String lock) {
+        if (event != null) {
+            commit(event, lock);
+        }
+    }
+
+    @Override
+    public void commitPeerEviction(final Object event, final int peers) {
+        if (event != null) {
+            commit(event, Integer.valueOf(peers));
+        }
+    }
+
+    /**
+     * Sets the fields of an event and commits it, the fields are boxed so
+     * this is only called for events that are recorded.
+     * @param event  event
+     * @param values  values of the fields in the order they are defined
+     */
+    private void commit(final Object event, final Object... values) {
+
+        try {
+
+            for (int i = 0; i < values.length; i++) {
+                this.set.invoke(event, Integer.valueOf(i), values[i]);
+            }
+
+            this.commit.invoke(event, NO_ARGS);
+
+        } catch (ReflectiveOperationException e) {
+            LOGGER.debug("unable to commit event", e);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of latencies, in the style of HdrHistogram.
+ *
+ * Values below 64 are counted exactly, above that every power of 2 is split
+ * into 32 buckets so any recorded value is reported within about 3% of its
+ * true value. Recording is a few shifts and atomic adds and never
+ * allocates. Values larger than the histogram can track are counted in the
+ * last bucket.
+ */
+public final class LatencyHistogram {
+
+    /** Bits of precision kept for each value. */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /** Number of buckets for each power of 2. */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Largest shift applied to a value. */
+    private static final int MAX_SHIFT = 31;
+
+    /** Largest value that can be tracked. */
+    private static final long MAX_VALUE =
+            (1L << (MAX_SHIFT + SUB_BUCKET_BITS + 1)) - 1;
+
+    /** Number of buckets. */
+    private static final int BUCKETS = SUB_BUCKETS * (MAX_SHIFT + 2);
+
+    /** Number of values recorded in each bucket. */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /** Sum of recorded values. */
+    private final AtomicLong sum = new AtomicLong();
+
+    /** Largest recorded value. */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value, negative values are recorded as 0.
+     * @param value  value
+     */
+    public void record(final long value) {
+
+        long v = Math.min(Math.max(value, 0), MAX_VALUE);
+
+        this.counts.getAndIncrement(index(v));
+        this.sum.getAndAdd(v);
+
+        long current = this.max.get();
+        while (v > current && !this.max.compareAndSet(current, v)) {
+            current = this.max.get();
+        }
+    }
+
+    /**
+     * @return long  number of recorded values
+     */
+    public long getCount() {
+
+        long count = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            count += this.counts.get(i);
+        }
+
+        return count;
+    }
+
+    /**
+     * @return long  sum of recorded values
+     */
+    public long getSum() {
+        return this.sum.get();
+    }
+
+    /**
+     * @return long  largest recorded value
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * @return long  mean of recorded values or 0
+     */
+    public long getMean() {
+        long count = getCount();
+        return count > 0 ? this.sum.get() / count : 0;
+    }
+
+    /**
+     * Finds the value that a fraction of recorded values are at or below.
+     * @param fraction  fraction between 0 and 1
+     * @return long  highest value of the bucket holding the percentile,
+     *               never larger than the largest recorded value
+     */
+    public long getPercentile(final double fraction) {
+
+        long count = getCount();
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        int i = 0;
+
+        for (; i < BUCKETS - 1; i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                break;
+            }
+        }
+
+        return Math.min(highestValue(i), this.max.get());
+    }
+
+    /**
+     * @param value  value between 0 and MAX_VALUE
+     * @return int  bucket of the value
+     */
+    private static int index(final long value) {
+
+        int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = Math.max(0, highestBit - SUB_BUCKET_BITS);
+
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * @param index  bucket
+     * @return long  highest value counted in the bucket
+     */
+    private static long highestValue(final int index) {
+
+        int shift = index < 2 * SUB_BUCKETS ? 0
+                : (index >>> SUB_BUCKET_BITS) - 1;
+        long lowest = (long) (index - (shift << SUB_BUCKET_BITS)) << shift;
+
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,237 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map of long keys to positive int counts.
+ *
+ * Keys and counts are kept in two primitive arrays probed linearly, a
+ * slot is empty when its count is 0, so a key is removed once its count
+ * drops to 0.  Lookups and updates are O(1) and do not allocate unless the
+ * map grows.  Not thread safe.
+ */
+public final class LongIntHashMap {
+
+    /** Default number of slots. */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** Maximum load before the map grows, as a shift of the capacity. */
+    private static final int LOAD_SHIFT = 2;
+
+    /** 64 bit golden ratio multiplier. */
+    private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+    /** Half of a long. */
+    private static final int HALF_LONG = 32;
+
+    /** Keys. */
+    private long[] keys;
+
+    /** Counts, 0 marks an empty slot. */
+    private int[] counts;
+
+    /** Mask to find a slot. */
+    private int mask;
+
+    /** Number of keys. */
+    private int size;
+
+    /**
+     * default constructor.
+     */
+    public LongIntHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * constructor.
+     * @param capacity  initial number of slots, rounded up to a power of two
+     */
+    public LongIntHashMap(final int capacity) {
+
+        int c = DEFAULT_CAPACITY;
+        while (c < capacity) {
+            c <<= 1;
+        }
+
+        allocate(c);
+    }
+
+    /**
+     * @param key  key
+     * @return int  count of key, 0 if missing
+     */
+    public int get(final long key) {
+
+        int slot = slot(key);
+
+        while (this.counts[slot] != 0) {
+
+            if (this.keys[slot] == key) {
+                return this.counts[slot];
+            }
+
+            slot = (slot + 1) & this.mask;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Adds one to the count of a key.
+     * @param key  key
+     * @return int  new count
+     */
+    public int increment(final long key) {
+
+        int slot = slot(key);
+
+        while (this.counts[slot] != 0) {
+
+            if (this.keys[slot] == key) {
+                return ++this.counts[slot];
+            }
+
+            slot = (slot + 1) & this.mask;
+        }
+
+        this.keys[slot] = key;
+        this.counts[slot] = 1;
+        this.size++;
+
+        int length = this.counts.length;
+        if (this.size > length - (length >> LOAD_SHIFT)) {
+            allocate(length << 1);
+        }
+
+        return 1;
+    }
+
+    /**
+     * Subtracts one from the count of a key, the key is removed when its
+     * count reaches 0.
+     * @param key  key
+     * @return int  new count
+     */
+    public int decrement(final long key) {
+
+        int slot = slot(key);
+
+        while (this.counts[slot] != 0) {
+
+            if (this.keys[slot] == key) {
+
+                int count = --this.counts[slot];
+
+                if (count == 0) {
+                    this.size--;
+                    shift(slot);
+                }
+
+                return count;
+            }
+
+            slot = (slot + 1) & this.mask;
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return int  number of keys
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Removes all keys.
+     */
+    public void clear() {
+        Arrays.fill(this.counts, 0);
+        this.size = 0;
+    }
+
+    /**
+     * Closes the gap left by a removed key by moving later keys of the
+     * same probe run back.
+     * @param removed  slot that was emptied
+     */
+    private void shift(final int removed) {
+
+        int gap = removed;
+        int slot = (gap + 1) & this.mask;
+
+        while (this.counts[slot] != 0) {
+
+            int home = slot(this.keys[slot]);
+
+            // move the key back unless its home lies between gap and slot
+            if (((slot - home) & this.mask) >= ((slot - gap) & this.mask)) {
+                this.keys[gap] = this.keys[slot];
+                this.counts[gap] = this.counts[slot];
+                this.counts[slot] = 0;
+                gap = slot;
+            }
+
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    /**
+     * Allocates the slots and adds existing keys back.
+     * @param capacity  number of slots, a power of two
+     */
+    private void allocate(final int capacity) {
+
+        long[] oldKeys = this.keys;
+        int[] oldCounts = this.counts;
+
+        this.keys = new long[capacity];
+        this.counts = new int[capacity];
+        this.mask = capacity - 1;
+
+        if (oldCounts != null) {
+
+            for (int i = 0; i < oldCounts.length; i++) {
+
+                if (oldCounts[i] != 0) {
+
+                    int slot = slot(oldKeys[i]);
+                    while (this.counts[slot] != 0) {
+                        slot = (slot + 1) & this.mask;
+                    }
+
+                    this.keys[slot] = oldKeys[i];
+                    this.counts[slot] = oldCounts[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * @param key  key
+     * @return int  home slot of key
+     */
+    private int slot(final long key) {
+        long h = key * GOLDEN;
+        return (int) (h ^ (h >>> HALF_LONG)) & this.mask;
+    }
+}
@@ -0,0 +1,361 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.util;
+
+import java.util.Arrays;
+
+/**
+ * Path compressed binary trie of address prefixes (CIDR blocks).
+ *
+ * Nodes are kept in parallel primitive arrays, every node holds the bits of
+ * its prefix so chains of single children are collapsed into one node and
+ * a lookup visits at most one node per stored prefix length on the way
+ * down.  Addresses up to 128 bits are held in two longs.
+ *
+ * Prefixes are added while the trie is built, lookups are safe from any
+ * thread once the trie is no longer changed.
+ */
+public final class PrefixTrie {
+
+    /** Number of bits in a long. */
+    private static final int LONG_BITS = 64;
+
+    /** Maximum number of address bits. */
+    private static final int MAX_WIDTH = 128;
+
+    /** Bits in a byte. */
+    private static final int BYTE_BITS = 8;
+
+    /** Mask of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Initial number of nodes. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Marks a missing child. */
+    private static final int NONE = -1;
+
+    /** Number of address bits. */
+    private final int width;
+
+    /** First 64 bits of each node's prefix. */
+    private long[] high;
+
+    /** Last 64 bits of each node's prefix. */
+    private long[] low;
+
+    /** Number of bits in each node's prefix. */
+    private int[] bits;
+
+    /** Child of each node whose next bit is 0. */
+    private int[] zero;
+
+    /** Child of each node whose next bit is 1. */
+    private int[] one;
+
+    /** Whether each node's prefix was added. */
+    private boolean[] terminal;
+
+    /** Number of nodes. */
+    private int size;
+
+    /** Number of prefixes added. */
+    private int prefixes;
+
+    /**
+     * constructor.
+     * @param addressBits  number of address bits, 32 for IPv4 and 128 for
+     *                     IPv6
+     */
+    public PrefixTrie(final int addressBits) {
+
+        if (addressBits <= 0 || addressBits > MAX_WIDTH) {
+            throw new IllegalArgumentException("invalid address width "
+                    + addressBits);
+        }
+
+        this.width = addressBits;
+        this.high = new long[INITIAL_CAPACITY];
+        this.low = new long[INITIAL_CAPACITY];
+        this.bits = new int[INITIAL_CAPACITY];
+        this.zero = new int[INITIAL_CAPACITY];
+        this.one = new int[INITIAL_CAPACITY];
+        this.terminal = new boolean[INITIAL_CAPACITY];
+
+        newNode(0, 0, 0, false);
+    }
+
+    /**
+     * Adds a prefix.
+     * @param address  address, its length must match the trie's width
+     * @param prefixLength  number of leading bits of address in the prefix
+     */
+    public void add(final byte[] address, final int prefixLength) {
+
+        if (prefixLength < 0 || prefixLength > this.width) {
+            throw new IllegalArgumentException("invalid prefix length "
+                    + prefixLength);
+        }
+
+        long h = mask(high(address), prefixLength, 0);
+        long l = mask(low(address), prefixLength, LONG_BITS);
+        int n = 0;
+
+        while (this.bits[n] < prefixLength) {
+
+            int b = bit(h, l, this.bits[n]);
+            int child = b == 0 ? this.zero[n] : this.one[n];
+
+            if (child == NONE) {
+                setChild(n, b, newNode(h, l, prefixLength, true));
+                this.prefixes++;
+                return;
+            }
+
+            int common = Math.min(commonBits(h, l, this.high[child],
+                    this.low[child]), Math.min(this.bits[child],
+                    prefixLength));
+
+            if (common == this.bits[child]) {
+                n = child;
+                continue;
+            }
+
+            // the new prefix leaves the child's path, split it at common
+            int mid = newNode(mask(h, common, 0), mask(l, common, LONG_BITS),
+                    common, common == prefixLength);
+            setChild(n, b, mid);
+            setChild(mid, bit(this.high[child], this.low[child], common),
+                    child);
+
+            if (common < prefixLength) {
+                setChild(mid, bit(h, l, common), newNode(h, l, prefixLength,
+                        true));
+            }
+
+            this.prefixes++;
+            return;
+        }
+
+        if (!this.terminal[n]) {
+            this.terminal[n] = true;
+            this.prefixes++;
+        }
+    }
+
+    /**
+     * Whether an address falls in any of the prefixes.
+     * @param address  address, its length must match the trie's width
+     * @return boolean
+     */
+    public boolean contains(final byte[] address) {
+        return contains(high(address), low(address));
+    }
+
+    /**
+     * Whether an address falls in any of the prefixes.
+     * @param h  first 64 bits of address
+     * @param l  last 64 bits of address
+     * @return boolean
+     */
+    private boolean contains(final long h, final long l) {
+
+        int n = 0;
+
+        while (n != NONE) {
+
+            int b = this.bits[n];
+
+            if (commonBits(h, l, this.high[n], this.low[n]) < b) {
+                return false;
+            }
+
+            if (this.terminal[n]) {
+                return true;
+            }
+
+            if (b >= this.width) {
+                return false;
+            }
+
+            n = bit(h, l, b) == 0 ? this.zero[n] : this.one[n];
+        }
+
+        return false;
+    }
+
+    /**
+     * @return int  number of prefixes added
+     */
+    public int size() {
+        return this.prefixes;
+    }
+
+    /**
+     * @return int  number of address bits
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * First 64 bits of an address.
+     * @param address  address
+     * @return long
+     */
+    private long high(final byte[] address) {
+
+        if (address.length * BYTE_BITS != this.width) {
+            throw new IllegalArgumentException("invalid address length "
+                    + address.length);
+        }
+
+        return toLong(address, 0);
+    }
+
+    /**
+     * Last 64 bits of an address.
+     * @param address  address
+     * @return long
+     */
+    private static long low(final byte[] address) {
+        return toLong(address, LONG_BITS / BYTE_BITS);
+    }
+
+    /**
+     * Reads 8 bytes as a long, missing bytes are 0.
+     * @param bytes  bytes
+     * @param offset  first byte
+     * @return long
+     */
+    private static long toLong(final byte[] bytes, final int offset) {
+
+        long value = 0;
+
+        for (int i = 0; i < LONG_BITS / BYTE_BITS; i++) {
+
+            int index = offset + i;
+            long b = index < bytes.length ? bytes[index] & BYTE_MASK : 0;
+            value = (value << BYTE_BITS) | b;
+        }
+
+        return value;
+    }
+
+    /**
+     * Keeps the prefix bits of one half of an address.
+     * @param value  half of address
+     * @param prefixLength  number of prefix bits of the whole address
+     * @param offset  first bit of value in the address, 0 or 64
+     * @return long
+     */
+    private static long mask(final long value, final int prefixLength,
+            final int offset) {
+
+        int keep = prefixLength - offset;
+        long masked;
+
+        if (keep <= 0) {
+            masked = 0;
+        } else if (keep >= LONG_BITS) {
+            masked = value;
+        } else {
+            masked = value & (-1L << (LONG_BITS - keep));
+        }
+
+        return masked;
+    }
+
+    /**
+     * @param h  first 64 bits
+     * @param l  last 64 bits
+     * @param index  bit, 0 being the highest
+     * @return int  value of bit
+     */
+    private static int bit(final long h, final long l, final int index) {
+
+        long value = index < LONG_BITS ? h >>> (LONG_BITS - 1 - index)
+                : l >>> (MAX_WIDTH - 1 - index);
+
+        return (int) (value & 1);
+    }
+
+    /**
+     * @param h0  first 64 bits of first address
+     * @param l0  last 64 bits of first address
+     * @param h1  first 64 bits of second address
+     * @param l1  last 64 bits of second address
+     * @return int  number of leading bits the addresses share
+     */
+    private static int commonBits(final long h0, final long l0,
+            final long h1, final long l1) {
+
+        long x = h0 ^ h1;
+
+        return x != 0 ? Long.numberOfLeadingZeros(x)
+                : LONG_BITS + Long.numberOfLeadingZeros(l0 ^ l1);
+    }
+
+    /**
+     * @param parent  parent node
+     * @param b  bit the child is on
+     * @param child  child node
+     */
+    private void setChild(final int parent, final int b, final int child) {
+
+        if (b == 0) {
+            this.zero[parent] = child;
+        } else {
+            this.one[parent] = child;
+        }
+    }
+
+    /**
+     * Adds a node.
+     * @param h  first 64 bits of prefix
+     * @param l  last 64 bits of prefix
+     * @param prefixLength  number of prefix bits
+     * @param isTerminal  whether the prefix was added
+     * @return int  index of node
+     */
+    private int newNode(final long h, final long l, final int prefixLength,
+            final boolean isTerminal) {
+
+        if (this.size == this.bits.length) {
+
+            int capacity = this.size << 1;
+            this.high = Arrays.copyOf(this.high, capacity);
+            this.low = Arrays.copyOf(this.low, capacity);
+            this.bits = Arrays.copyOf(this.bits, capacity);
+            this.zero = Arrays.copyOf(this.zero, capacity);
+            this.one = Arrays.copyOf(this.one, capacity);
+            this.terminal = Arrays.copyOf(this.terminal, capacity);
+        }
+
+        int n = this.size++;
+
+        this.high[n] = h;
+        this.low[n] = l;
+        this.bits[n] = prefixLength;
+        this.zero[n] = NONE;
+        this.one[n] = NONE;
+        this.terminal[n] = isTerminal;
+
+        return n;
+    }
+}
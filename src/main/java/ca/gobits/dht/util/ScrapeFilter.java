@@ -0,0 +1,119 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.dht.util;
+
+import ca.gobits.dht.DHTIdentifier;
+
+/**
+ * BEP 33 scrape Bloom filter, 2048 bits with 2 hash functions taken from
+ * the SHA-1 of the peer's IP address.
+ *
+ */
+public final class ScrapeFilter {
+
+    /** Size of a filter in bytes. */
+    public static final int SIZE = 256;
+
+    /** Number of bits in a filter. */
+    private static final int BITS = SIZE * 8;
+
+    /** Number of hash functions. */
+    private static final int HASHES = 2;
+
+    /** Mask of a bit index. */
+    private static final int INDEX_MASK = BITS - 1;
+
+    /** Shift of the first index in packed indexes. */
+    private static final int INDEX_SHIFT = 16;
+
+    /** Bits per byte. */
+    private static final int BITS_PER_BYTE = 8;
+
+    /** Mask of the bit in a byte. */
+    private static final int BIT_MASK = 7;
+
+    /** Mask of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Third byte of the SHA-1. */
+    private static final int THIRD = 2;
+
+    /** Fourth byte of the SHA-1. */
+    private static final int FOURTH = 3;
+
+    /**
+     * private constructor.
+     */
+    private ScrapeFilter() {
+    }
+
+    /**
+     * Calculates both bit indexes of an IP address.
+     * @param ip  IP address in network byte order
+     * @return int  both indexes packed into an int
+     */
+    public static int indexes(final byte[] ip) {
+
+        byte[] hash = DHTIdentifier.sha1(ip);
+
+        int index0 = ((hash[0] & BYTE_MASK)
+                | ((hash[1] & BYTE_MASK) << BITS_PER_BYTE)) & INDEX_MASK;
+        int index1 = ((hash[THIRD] & BYTE_MASK)
+                | ((hash[FOURTH] & BYTE_MASK) << BITS_PER_BYTE)) & INDEX_MASK;
+
+        return (index0 << INDEX_SHIFT) | index1;
+    }
+
+    /**
+     * Sets the bits of packed indexes in a filter.
+     * @param filter  filter of SIZE bytes
+     * @param indexes  packed indexes
+     */
+    public static void add(final byte[] filter, final int indexes) {
+        set(filter, indexes >>> INDEX_SHIFT);
+        set(filter, indexes & INDEX_MASK);
+    }
+
+    /**
+     * Estimates the number of addresses added to a filter.
+     * @param filter  filter of SIZE bytes
+     * @return int
+     */
+    public static int estimate(final byte[] filter) {
+
+        int zeros = 0;
+
+        for (byte b : filter) {
+            zeros += BITS_PER_BYTE - Integer.bitCount(b & BYTE_MASK);
+        }
+
+        zeros = Math.max(1, zeros);
+
+        double estimate = Math.log((double) zeros / BITS)
+                / (HASHES * Math.log(1 - 1.0 / BITS));
+
+        return (int) Math.round(estimate);
+    }
+
+    /**
+     * @param filter  filter
+     * @param index  bit index
+     */
+    private static void set(final byte[] filter, final int index) {
+        filter[index / BITS_PER_BYTE] |= 1 << (index & BIT_MASK);
+    }
+}
@@ -0,0 +1,137 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.dht.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed set of counters that can be incremented from many threads without
+ * contending on a single cache line.
+ *
+ * Every counter has one cell per stripe and a thread only ever adds to the
+ * cell of its own stripe, so recording is a single uncontended atomic add
+ * and never allocates. Reading a counter sums the cells of all stripes.
+ * Stripes are padded from each other by a cache line.
+ */
+public final class StripedCounter {
+
+    /** Number of longs in a cache line. */
+    private static final int LONGS_PER_LINE = 8;
+
+    /** Upper limit of stripes. */
+    private static final int MAX_STRIPES = 64;
+
+    /** Number of counters. */
+    private final int counters;
+
+    /** Distance between the cells of a counter on adjacent stripes. */
+    private final int stride;
+
+    /** Mask to find the stripe of a thread. */
+    private final int mask;
+
+    /** Cells of all counters on all stripes. */
+    private final AtomicLongArray cells;
+
+    /**
+     * constructor.
+     * @param numberOfCounters  number of counters
+     */
+    public StripedCounter(final int numberOfCounters) {
+        this(numberOfCounters,
+                2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * constructor.
+     * @param numberOfCounters  number of counters
+     * @param stripes  number of stripes, rounded up to a power of 2
+     */
+    public StripedCounter(final int numberOfCounters, final int stripes) {
+
+        if (numberOfCounters <= 0 || stripes <= 0) {
+            throw new IllegalArgumentException("invalid striped counter size");
+        }
+
+        int n = Integer.highestOneBit(Math.min(stripes, MAX_STRIPES));
+        if (n < stripes && n < MAX_STRIPES) {
+            n <<= 1;
+        }
+
+        this.counters = numberOfCounters;
+        this.stride = ((numberOfCounters + LONGS_PER_LINE - 1) / LONGS_PER_LINE
+                + 1) * LONGS_PER_LINE;
+        this.mask = n - 1;
+        this.cells = new AtomicLongArray(n * this.stride);
+    }
+
+    /**
+     * Adds one to a counter.
+     * @param counter  counter
+     */
+    public void increment(final int counter) {
+        add(counter, 1);
+    }
+
+    /**
+     * Adds to a counter.
+     * @param counter  counter
+     * @param delta  amount to add
+     */
+    public void add(final int counter, final long delta) {
+        this.cells.getAndAdd(stripe() * this.stride + counter, delta);
+    }
+
+    /**
+     * @param counter  counter
+     * @return long  sum of the counter on all stripes
+     */
+    public long get(final int counter) {
+
+        long sum = 0;
+
+        for (int i = counter; i < this.cells.length(); i += this.stride) {
+            sum += this.cells.get(i);
+        }
+
+        return sum;
+    }
+
+    /**
+     * @return int  number of counters
+     */
+    public int size() {
+        return this.counters;
+    }
+
+    /**
+     * @return int  number of stripes
+     */
+    public int getStripes() {
+        return this.mask + 1;
+    }
+
+    /**
+     * Thread ids are handed out in sequence, so threads created together
+     * land on different stripes.
+     * @return int  stripe of the current thread
+     */
+    private int stripe() {
+        return (int) Thread.currentThread().getId() & this.mask;
+    }
+}
@@ -0,0 +1,395 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.dht.util;
+
+import java.util.Collection;
+
+/**
+ * Hierarchical Timing Wheel.
+ *
+ * Timeouts are kept in doubly linked lists hanging off the slots of a
+ * number of wheels, each wheel covering 64 times the range of the wheel
+ * below it.  Scheduling and cancelling a timeout are O(1), timeouts that are
+ * far in the future are cascaded down to the finer wheels as time advances.
+ *
+ * @param <T> type of payload
+ */
+public final class TimingWheel<T> {
+
+    /** Number of bits used for each wheel. */
+    private static final int SLOT_BITS = 6;
+
+    /** Number of slots on each wheel. */
+    private static final int WHEEL_SIZE = 1 << SLOT_BITS;
+
+    /** Mask to find a slot on a wheel. */
+    private static final int SLOT_MASK = WHEEL_SIZE - 1;
+
+    /** Default number of wheels. */
+    private static final int DEFAULT_LEVELS = 4;
+
+    /** Length of a tick in millis. */
+    private final long tickInMillis;
+
+    /** Number of wheels. */
+    private final int levels;
+
+    /** Head of timeouts for every slot of every wheel. */
+    private final Timeout<T>[] slots;
+
+    /** Next tick to be processed. */
+    private long nextTick;
+
+    /** Number of scheduled timeouts. */
+    private int size;
+
+    /**
+     * constructor.
+     * @param tick  length of a tick in millis
+     */
+    public TimingWheel(final long tick) {
+        this(tick, System.currentTimeMillis());
+    }
+
+    /**
+     * constructor.
+     * @param tick  length of a tick in millis
+     * @param startInMillis  time the wheel starts at
+     */
+    public TimingWheel(final long tick, final long startInMillis) {
+        this(tick, startInMillis, DEFAULT_LEVELS);
+    }
+
+    /**
+     * constructor.
+     * @param tick  length of a tick in millis
+     * @param startInMillis  time the wheel starts at
+     * @param numberOfLevels  number of wheels
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public TimingWheel(final long tick, final long startInMillis,
+            final int numberOfLevels) {
+
+        if (tick <= 0 || numberOfLevels <= 0) {
+            throw new IllegalArgumentException("invalid timing wheel size");
+        }
+
+        this.tickInMillis = tick;
+        this.levels = numberOfLevels;
+        this.slots = new Timeout[numberOfLevels << SLOT_BITS];
+        this.nextTick = startInMillis / tick;
+    }
+
+    /**
+     * Schedules a payload to expire.
+     * @param payload  payload
+     * @param deadline  time in millis the payload expires
+     * @return Timeout<T>
+     */
+    public synchronized Timeout<T> schedule(final T payload,
+            final long deadline) {
+
+        Timeout<T> timeout = new Timeout<T>(payload);
+        add(timeout, deadline);
+        return timeout;
+    }
+
+    /**
+     * Moves a Timeout to a new deadline, the Timeout is scheduled
+     * again if it has already expired or been cancelled.
+     * @param timeout  Timeout
+     * @param deadline  time in millis the payload expires
+     */
+    public synchronized void reschedule(final Timeout<T> timeout,
+            final long deadline) {
+
+        if (timeout.isScheduled()) {
+            unlink(timeout);
+            this.size--;
+        }
+
+        add(timeout, deadline);
+    }
+
+    /**
+     * Cancels a Timeout.
+     * @param timeout  Timeout
+     * @return boolean  whether timeout was scheduled
+     */
+    public synchronized boolean cancel(final Timeout<T> timeout) {
+
+        boolean scheduled = timeout.isScheduled();
+
+        if (scheduled) {
+            unlink(timeout);
+            this.size--;
+        }
+
+        return scheduled;
+    }
+
+    /**
+     * Advances the wheel up to time now.
+     * @param now  current time in millis
+     * @param expired  collection expired payloads are added to
+     * @return int  number of expired payloads
+     */
+    public synchronized int advance(final long now,
+            final Collection<? super T> expired) {
+
+        int count = 0;
+        long nowTick = now / this.tickInMillis;
+
+        while (this.nextTick <= nowTick) {
+
+            if (this.size == 0) {
+                this.nextTick = nowTick + 1;
+                break;
+            }
+
+            long tick = this.nextTick;
+
+            for (int level = this.levels - 1; level > 0; level--) {
+
+                int shift = SLOT_BITS * level;
+                if ((tick & ((1L << shift) - 1)) == 0) {
+                    cascade(slot(level, tick >>> shift), tick);
+                }
+            }
+
+            count += expire(slot(0, tick), tick, expired);
+            this.nextTick++;
+        }
+
+        return count;
+    }
+
+    /**
+     * @return int  number of scheduled timeouts
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * @return long
+     */
+    public long getTickInMillis() {
+        return this.tickInMillis;
+    }
+
+    /**
+     * Adds timeout to the wheel.
+     * @param timeout  Timeout
+     * @param deadline  time in millis the payload expires
+     */
+    private void add(final Timeout<T> timeout, final long deadline) {
+
+        timeout.deadline = deadline;
+        timeout.tick = (deadline + this.tickInMillis - 1) / this.tickInMillis;
+        place(timeout, this.nextTick);
+        this.size++;
+    }
+
+    /**
+     * Places timeout in the finest wheel that covers its tick.
+     * @param timeout  Timeout
+     * @param ref  tick to place the timeout relative to
+     */
+    private void place(final Timeout<T> timeout, final long ref) {
+
+        long target = Math.max(timeout.tick, ref);
+        long range = 1L << (SLOT_BITS * this.levels);
+
+        if (target - ref >= range) {
+            // beyond the last wheel, park it until it is cascaded down
+            target = ref + range - 1;
+        }
+
+        long delta = target - ref;
+        int level = 0;
+        while (delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+
+        link(timeout, slot(level, target >>> (SLOT_BITS * level)));
+    }
+
+    /**
+     * Moves all timeouts in a slot down to finer wheels.
+     * @param slot  slot to cascade
+     * @param tick  current tick
+     */
+    private void cascade(final int slot, final long tick) {
+
+        Timeout<T> timeout = detach(slot);
+
+        while (timeout != null) {
+            Timeout<T> next = timeout.next;
+            timeout.next = null;
+            place(timeout, tick);
+            timeout = next;
+        }
+    }
+
+    /**
+     * Expires all due timeouts in a slot.
+     * @param slot  slot to expire
+     * @param tick  current tick
+     * @param expired  collection expired payloads are added to
+     * @return int  number of expired payloads
+     */
+    private int expire(final int slot, final long tick,
+            final Collection<? super T> expired) {
+
+        int count = 0;
+        Timeout<T> timeout = detach(slot);
+
+        while (timeout != null) {
+
+            Timeout<T> next = timeout.next;
+            timeout.next = null;
+
+            if (timeout.tick <= tick) {
+                timeout.slot = -1;
+                this.size--;
+                expired.add(timeout.payload);
+                count++;
+            } else {
+                place(timeout, tick);
+            }
+
+            timeout = next;
+        }
+
+        return count;
+    }
+
+    /**
+     * @param level  wheel level
+     * @param tick  tick on the level
+     * @return int  position in slots
+     */
+    private int slot(final int level, final long tick) {
+        return (level << SLOT_BITS) | (int) (tick & SLOT_MASK);
+    }
+
+    /**
+     * Adds timeout to the head of a slot.
+     * @param timeout  Timeout
+     * @param slot  slot
+     */
+    private void link(final Timeout<T> timeout, final int slot) {
+
+        Timeout<T> head = this.slots[slot];
+        timeout.prev = null;
+        timeout.next = head;
+
+        if (head != null) {
+            head.prev = timeout;
+        }
+
+        this.slots[slot] = timeout;
+        timeout.slot = slot;
+    }
+
+    /**
+     * Removes timeout from its slot.
+     * @param timeout  Timeout
+     */
+    private void unlink(final Timeout<T> timeout) {
+
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            this.slots[timeout.slot] = timeout.next;
+        }
+
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+    }
+
+    /**
+     * Removes all timeouts from a slot.
+     * @param slot  slot
+     * @return Timeout<T>  head of removed timeouts
+     */
+    private Timeout<T> detach(final int slot) {
+        Timeout<T> head = this.slots[slot];
+        this.slots[slot] = null;
+        return head;
+    }
+
+    /**
+     * Handle for a payload scheduled on a TimingWheel.
+     * @param <T> type of payload
+     */
+    public static final class Timeout<T> {
+
+        /** Payload. */
+        private final T payload;
+
+        /** Time in millis the payload expires. */
+        private long deadline;
+
+        /** Tick the payload expires. */
+        private long tick;
+
+        /** Slot Timeout is in or -1. */
+        private int slot = -1;
+
+        /** Previous Timeout in slot. */
+        private Timeout<T> prev;
+
+        /** Next Timeout in slot. */
+        private Timeout<T> next;
+
+        /**
+         * constructor.
+         * @param payloadObject  payload
+         */
+        private Timeout(final T payloadObject) {
+            this.payload = payloadObject;
+        }
+
+        /**
+         * @return T
+         */
+        public T getPayload() {
+            return this.payload;
+        }
+
+        /**
+         * @return long
+         */
+        public long getDeadline() {
+            return this.deadline;
+        }
+
+        /**
+         * @return boolean  whether Timeout is waiting to expire
+         */
+        public boolean isScheduled() {
+            return this.slot >= 0;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.dht.util;
+
+/**
+ * Token Bucket rate limiter.
+ *
+ * Tokens are added at a fixed rate up to the capacity of the bucket and
+ * taken for every unit sent, so the long term rate never exceeds the fill
+ * rate while short bursts up to the capacity are allowed.  Not thread safe.
+ */
+public final class TokenBucket {
+
+    /** Number of millis in a second. */
+    private static final double MILLIS_PER_SECOND = 1000;
+
+    /** Tokens added per second. */
+    private double rate;
+
+    /** Maximum number of tokens. */
+    private double capacity;
+
+    /** Number of tokens available. */
+    private double tokens;
+
+    /** Time in millis tokens were last added. */
+    private long lastRefill;
+
+    /**
+     * constructor, the bucket starts full.
+     * @param tokensPerSecond  tokens added per second
+     * @param maxTokens  maximum number of tokens
+     * @param now  current time in millis
+     */
+    public TokenBucket(final double tokensPerSecond, final double maxTokens,
+            final long now) {
+        setRate(tokensPerSecond, maxTokens);
+        this.tokens = maxTokens;
+        this.lastRefill = now;
+    }
+
+    /**
+     * Changes the fill rate and capacity.
+     * @param tokensPerSecond  tokens added per second
+     * @param maxTokens  maximum number of tokens
+     */
+    public void setRate(final double tokensPerSecond,
+            final double maxTokens) {
+
+        if (tokensPerSecond <= 0 || maxTokens <= 0) {
+            throw new IllegalArgumentException("invalid token bucket rate");
+        }
+
+        this.rate = tokensPerSecond;
+        this.capacity = maxTokens;
+        this.tokens = Math.min(this.tokens, maxTokens);
+    }
+
+    /**
+     * @param now  current time in millis
+     * @return double  number of tokens available
+     */
+    public double available(final long now) {
+
+        if (now > this.lastRefill) {
+            this.tokens = Math.min(this.capacity, this.tokens
+                    + (now - this.lastRefill) * this.rate / MILLIS_PER_SECOND);
+            this.lastRefill = now;
+        }
+
+        return this.tokens;
+    }
+
+    /**
+     * Takes tokens if enough are available.
+     * @param count  number of tokens
+     * @param now  current time in millis
+     * @return boolean  whether the tokens were taken
+     */
+    public boolean tryTake(final double count, final long now) {
+
+        boolean taken = available(now) >= count;
+
+        if (taken) {
+            this.tokens -= count;
+        }
+
+        return taken;
+    }
+
+    /**
+     * @return double  tokens added per second
+     */
+    public double getRate() {
+        return this.rate;
+    }
+
+    /**
+     * @return double  maximum number of tokens
+     */
+    public double getCapacity() {
+        return this.capacity;
+    }
+}
@@ -17,13 +17,17 @@
 package ca.gobits.test.dht;
 
 import static ca.gobits.dht.util.DHTConversion.toBigInteger;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
 import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
 
 import org.apache.commons.codec.binary.Hex;
 import org.junit.Test;
@@ -150,15 +154,17 @@ public final class DHTIdentifierUnitTest {
                 toBigInteger(max).toString());
 
         // when
-        byte[] result = DHTIdentifier.getRandomNodeId(min, max);
+        for (int i = 0; i < 1000; i++) {
+            byte[] result = DHTIdentifier.getRandomNodeId(min, max);
 
-        // then
-        assertNotNull(result);
-        assertEquals(20, result.length);
+            // then
+            assertNotNull(result);
+            assertEquals(20, result.length);
 
-        BigInteger bi = toBigInteger(result);
-        assertEquals(1, bi.compareTo(toBigInteger(min)));
-        assertEquals(-1, bi.compareTo(toBigInteger(max)));
+            BigInteger bi = toBigInteger(result);
+            assertTrue(bi.compareTo(toBigInteger(min)) >= 0);
+            assertTrue(bi.compareTo(toBigInteger(max)) <= 0);
+        }
     }
 
     /**
@@ -176,4 +182,76 @@ public final class DHTIdentifierUnitTest {
         // then
     }
 
+    /**
+     * Test Min greater than Max.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetRandomNodeId04() {
+        // given
+        byte[] min = new byte[] {1, 0 };
+        byte[] max = new byte[] {0, -1 };
+
+        // when
+        DHTIdentifier.getRandomNodeId(min, max);
+
+        // then
+    }
+
+    /**
+     * Test every NodeId in a range that crosses a byte boundary is
+     * generated about equally often.
+     */
+    @Test
+    public void testGetRandomNodeId05() {
+        // given
+        byte[] min = new byte[] {0, -2 };
+        byte[] max = new byte[] {1, 1 };
+        int[] counts = new int[4];
+        int samples = 4000;
+        Random random = new Random(1);
+
+        // when
+        for (int i = 0; i < samples; i++) {
+            byte[] result = DHTIdentifier.getRandomNodeId(min, max, random);
+            int value = toBigInteger(result).intValue();
+            counts[value - 254]++;
+        }
+
+        // then
+        for (int count : counts) {
+            assertTrue(count > samples / 4 - 200);
+            assertTrue(count < samples / 4 + 200);
+        }
+    }
+
+    /**
+     * Test Min equal to Max.
+     */
+    @Test
+    public void testGetRandomNodeId06() {
+        // given
+        byte[] min = new byte[] {7, -7 };
+
+        // when
+        byte[] result = DHTIdentifier.getRandomNodeId(min, min.clone());
+
+        // then
+        assertArrayEquals(min, result);
+    }
+
+    /**
+     * testGetFastRandomNodeId01().
+     */
+    @Test
+    public void testGetFastRandomNodeId01() {
+        // given
+
+        // when
+        byte[] result = DHTIdentifier.getFastRandomNodeId();
+
+        // then
+        assertEquals(20, result.length);
+        assertFalse(Arrays.equals(result,
+                DHTIdentifier.getFastRandomNodeId()));
+    }
 }
@@ -16,18 +16,27 @@
 
 package ca.gobits.test.dht;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.math.BigInteger;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 
 import org.junit.Test;
 
 import ca.gobits.dht.DHTInfoHash;
+import ca.gobits.dht.DHTInfoHashEvictionPolicy;
+import ca.gobits.dht.DHTInfoHashLRUEvictionPolicy;
 import ca.gobits.dht.DHTInfoHashRoutingTableBasic;
+import ca.gobits.dht.DHTInfoHashTinyLFUEvictionPolicy;
 import ca.gobits.dht.DHTPeer;
 
 /**
@@ -148,4 +157,257 @@ public final class DHTInfoHashRoutingTableBasicUnitTest {
         assertEquals(0, result.getPeerCount());
         assertEquals(0, this.rt.getPeerMax());
     }
+
+    /**
+     * testExpirePeers01() - peer and InfoHash removed after peer expiry.
+     */
+    @Test
+    public void testExpirePeers01() {
+        // given
+        byte[] infoHash = new BigInteger("12341").toByteArray();
+        byte[] address = new byte[] {127, 0, 0, 1 };
+        long now = System.currentTimeMillis();
+        long expiry = this.rt.getPeerExpiryInMinutes() * 60 * 1000;
+
+        this.rt.addPeer(infoHash, address, 1234, now);
+
+        // when
+        int before = this.rt.expirePeers(now + expiry - 1);
+        int after = this.rt.expirePeers(now + expiry + 1000);
+
+        // then
+        assertEquals(0, before);
+        assertEquals(1, after);
+        assertNull(this.rt.findInfoHash(infoHash));
+        assertEquals(0, this.rt.getInfoHashCount());
+    }
+
+    /**
+     * testExpirePeers02() - announcing again moves the peer expiry.
+     */
+    @Test
+    public void testExpirePeers02() {
+        // given
+        byte[] infoHash = new BigInteger("12341").toByteArray();
+        byte[] address = new byte[] {127, 0, 0, 1 };
+        byte[] address2 = new byte[] {127, 0, 0, 2 };
+        long now = System.currentTimeMillis();
+        long expiry = this.rt.getPeerExpiryInMinutes() * 60 * 1000;
+
+        this.rt.addPeer(infoHash, address, 1234, now);
+        this.rt.addPeer(infoHash, address2, 1234, now);
+        this.rt.addPeer(infoHash, address, 1234, now + expiry / 2);
+
+        // when
+        int result = this.rt.expirePeers(now + expiry + 1000);
+
+        // then
+        assertEquals(1, result);
+        DHTInfoHash hash = this.rt.findInfoHash(infoHash);
+        assertEquals(1, hash.getPeerCount());
+        DHTPeer peer = hash.getPeers().iterator().next();
+        assertEquals("127.0.0.1", peer.getAddress().getHostAddress());
+        assertEquals(now + expiry / 2, peer.getAnnounced());
+    }
+
+    /**
+     * testFindPeers03() - hits and misses are counted.
+     */
+    @Test
+    public void testFindPeers03() {
+        // given
+        byte[] infoHash = new BigInteger("12341").toByteArray();
+        this.rt.addPeer(infoHash, new byte[] {127, 0, 0, 1 }, 1234);
+
+        // when
+        this.rt.findPeers(infoHash);
+        this.rt.findPeers(infoHash);
+        this.rt.findPeers(new BigInteger("999").toByteArray());
+
+        // then
+        assertEquals(2, this.rt.getHitCount());
+        assertEquals(1, this.rt.getMissCount());
+    }
+
+    /**
+     * testAddPeer04() - LRU evicts the least recently announced InfoHash
+     * once peer capacity is reached.
+     */
+    @Test
+    public void testAddPeer04() {
+        // given
+        byte[] address = new byte[] {127, 0, 0, 1 };
+        long now = System.currentTimeMillis();
+        this.rt.setEvictionPolicy(new DHTInfoHashLRUEvictionPolicy());
+        this.rt.setPeerCapacity(2);
+
+        this.rt.addPeer(BigInteger.valueOf(1).toByteArray(), address, 1, now);
+        this.rt.addPeer(BigInteger.valueOf(2).toByteArray(), address, 1, now);
+        this.rt.addPeer(BigInteger.valueOf(1).toByteArray(), address, 1, now);
+
+        // when
+        this.rt.addPeer(BigInteger.valueOf(3).toByteArray(), address, 1, now);
+
+        // then
+        assertEquals(2, this.rt.getPeerCount());
+        assertEquals(1, this.rt.getEvictionCount());
+        assertNotNull(this.rt.findInfoHash(BigInteger.valueOf(1)
+                .toByteArray()));
+        assertNull(this.rt.findInfoHash(BigInteger.valueOf(2).toByteArray()));
+        assertNotNull(this.rt.findInfoHash(BigInteger.valueOf(3)
+                .toByteArray()));
+    }
+
+    /**
+     * testAddPeer05() - TinyLFU keeps a popular InfoHash resident during
+     * a flood of announces for random InfoHashes.
+     */
+    @Test
+    public void testAddPeer05() {
+        // given
+        int capacity = 100;
+        byte[] address = new byte[] {127, 0, 0, 1 };
+        byte[] popular = BigInteger.valueOf(-1).toByteArray();
+        long now = System.currentTimeMillis();
+        this.rt.setPeerCapacity(capacity);
+
+        this.rt.addPeer(popular, address, 1, now);
+        for (int i = 0; i < 10; i++) {
+            this.rt.findPeers(popular);
+        }
+
+        // when
+        for (int i = 0; i < capacity * 10; i++) {
+            this.rt.addPeer(BigInteger.valueOf(i).toByteArray(), address, 1,
+                    now);
+        }
+
+        // then
+        assertEquals(capacity, this.rt.getPeerCount());
+        assertEquals(capacity, this.rt.getInfoHashCount());
+        assertNotNull(this.rt.findInfoHash(popular));
+    }
+
+    /**
+     * testSetPeerCapacity01() - TinyLFU policy is rebuilt for the new
+     * capacity and keeps the existing InfoHashes, LRU is kept as is.
+     */
+    @Test
+    public void testSetPeerCapacity01() {
+        // given
+        byte[] address = new byte[] {127, 0, 0, 1 };
+        long now = System.currentTimeMillis();
+        DHTInfoHashEvictionPolicy policy = this.rt.getEvictionPolicy();
+        this.rt.addPeer(BigInteger.valueOf(1).toByteArray(), address, 1, now);
+
+        // when
+        this.rt.setPeerCapacity(1);
+
+        // then
+        assertNotSame(policy, this.rt.getEvictionPolicy());
+        assertTrue(this.rt.getEvictionPolicy()
+                instanceof DHTInfoHashTinyLFUEvictionPolicy);
+        assertNotNull(this.rt.getEvictionPolicy().selectVictim());
+
+        // when
+        policy = new DHTInfoHashLRUEvictionPolicy();
+        this.rt.setEvictionPolicy(policy);
+        this.rt.setPeerCapacity(2);
+
+        // then
+        assertSame(policy, this.rt.getEvictionPolicy());
+        assertEquals(2, this.rt.getPeerCapacity());
+    }
+
+    /**
+     * testExpirePeers03() - expired peers free up peer capacity.
+     */
+    @Test
+    public void testExpirePeers03() {
+        // given
+        byte[] address = new byte[] {127, 0, 0, 1 };
+        long now = System.currentTimeMillis();
+        long expiry = this.rt.getPeerExpiryInMinutes() * 60 * 1000;
+        this.rt.setPeerCapacity(1);
+        this.rt.addPeer(BigInteger.valueOf(1).toByteArray(), address, 1, now);
+
+        // when
+        this.rt.addPeer(BigInteger.valueOf(2).toByteArray(), address, 1,
+                now + expiry + 1000);
+
+        // then
+        assertEquals(1, this.rt.getPeerCount());
+        assertEquals(0, this.rt.getEvictionCount());
+        assertNotNull(this.rt.findInfoHash(BigInteger.valueOf(2)
+                .toByteArray()));
+    }
+
+    /**
+     * testSampleInfoHashes01() - sample of distinct InfoHashes is cached
+     * until the sample interval passes.
+     */
+    @Test
+    public void testSampleInfoHashes01() {
+        // given
+        byte[] address = new byte[] {127, 0, 0, 1 };
+        long now = System.currentTimeMillis();
+        long interval = this.rt.getSampleIntervalInSeconds() * 1000L;
+
+        for (int i = 0; i < 50; i++) {
+            byte[] infoHash = new byte[20];
+            infoHash[0] = (byte) i;
+            this.rt.addPeer(infoHash, address, 1, now);
+        }
+
+        // when
+        byte[] result = this.rt.sampleInfoHashes(now);
+        byte[] cached = this.rt.sampleInfoHashes(now + interval - 1);
+        byte[] refreshed = this.rt.sampleInfoHashes(now + interval);
+
+        // then
+        assertEquals(this.rt.getSampleMax() * 20, result.length);
+        assertSame(result, cached);
+        assertNotSame(result, refreshed);
+
+        Set<Byte> distinct = new HashSet<Byte>();
+        for (int i = 0; i < result.length; i += 20) {
+            distinct.add(Byte.valueOf(result[i]));
+        }
+        assertEquals(this.rt.getSampleMax(), distinct.size());
+    }
+
+    /**
+     * testSampleInfoHashes02() - fewer InfoHashes than the sample size.
+     */
+    @Test
+    public void testSampleInfoHashes02() {
+        // given
+        byte[] infoHash = new byte[20];
+        this.rt.addPeer(infoHash, new byte[] {127, 0, 0, 1 }, 1);
+
+        // when
+        byte[] result = this.rt.sampleInfoHashes();
+
+        // then
+        assertArrayEquals(infoHash, result);
+    }
+
+    /**
+     * testSampleInfoHashes03() - an empty sample is not cached.
+     */
+    @Test
+    public void testSampleInfoHashes03() {
+        // given
+        byte[] infoHash = new byte[20];
+        long now = System.currentTimeMillis();
+
+        // when
+        byte[] empty = this.rt.sampleInfoHashes(now);
+        this.rt.addPeer(infoHash, new byte[] {127, 0, 0, 1 }, 1, now);
+        byte[] result = this.rt.sampleInfoHashes(now + 1);
+
+        // then
+        assertEquals(0, empty.length);
+        assertArrayEquals(infoHash, result);
+    }
 }
@@ -31,6 +31,7 @@ import org.junit.Test;
 
 import ca.gobits.dht.DHTInfoHash;
 import ca.gobits.dht.DHTPeer;
+import ca.gobits.dht.util.ScrapeFilter;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 /**
@@ -241,4 +242,95 @@ public final class DHTInfoHashUnitTest {
         // then
         assertTrue(result.endsWith("[infoHash={123},# of peers=1]"));
     }
+
+    /**
+     * testGetCompactPeers01() - compact peers follow adds and removes.
+     */
+    @Test
+    public void testGetCompactPeers01() {
+        // given
+        DHTInfoHash node = new DHTInfoHash(new byte[] {1 });
+        DHTPeer peer0 = node.addPeer(new byte[] {127, 0, 0, 1 }, 1);
+        node.addPeer(new byte[] {127, 0, 0, 2 }, 2);
+        node.addPeer(new byte[16], 3);
+
+        // when
+        boolean removed = node.removePeer(peer0);
+
+        // then
+        assertTrue(removed);
+        assertEquals(1, node.getCompactPeers4().length);
+        assertTrue(Arrays.equals(new byte[] {127, 0, 0, 2, 0, 2 },
+                node.getCompactPeers4()[0]));
+        assertEquals(1, node.getCompactPeers6().length);
+        assertEquals(18, node.getCompactPeers6()[0].length);
+        assertEquals(2, node.getCompactPeers().size());
+    }
+
+    /**
+     * testGetCompactPeers02() - compact peers rebuilt by setPeers.
+     */
+    @Test
+    public void testGetCompactPeers02() {
+        // given
+        DHTInfoHash node = new DHTInfoHash(new byte[] {1 });
+        Set<DHTPeer> peers = new HashSet<DHTPeer>();
+        peers.add(new DHTPeer(new byte[] {127, 0, 0, 1 }, 1));
+
+        // when
+        node.setPeers(peers);
+
+        // then
+        assertTrue(Arrays.equals(new byte[] {127, 0, 0, 1, 0, 1 },
+                node.getCompactPeers().get(0)));
+        assertEquals(0, node.getCompactPeers6().length);
+    }
+
+    /**
+     * testScrapeFilters01() - filters follow seeds, peers and removals.
+     */
+    @Test
+    public void testScrapeFilters01() {
+        // given
+        DHTInfoHash node = new DHTInfoHash(new byte[] {1 });
+        DHTPeer seed = node.addPeer(new byte[] {127, 0, 0, 1 }, 1, true);
+        node.addPeer(new byte[] {127, 0, 0, 2 }, 1, false);
+        DHTPeer peer = node.addPeer(new byte[] {127, 0, 0, 3 }, 1, false);
+
+        assertEquals(1, ScrapeFilter.estimate(node.getSeedFilter()));
+        assertEquals(2, ScrapeFilter.estimate(node.getPeerFilter()));
+
+        // when
+        node.removePeer(seed);
+        node.updateSeed(peer, true);
+
+        // then
+        assertEquals(1, ScrapeFilter.estimate(node.getSeedFilter()));
+        assertEquals(1, ScrapeFilter.estimate(node.getPeerFilter()));
+    }
+
+    /**
+     * testRemovePeer01() - peers can be read while they are removed.
+     */
+    @Test
+    public void testRemovePeer01() {
+        // given
+        DHTInfoHash node = new DHTInfoHash(new byte[] {1 });
+        node.addPeer(new byte[] {127, 0, 0, 1 }, 1);
+        node.addPeer(new byte[] {127, 0, 0, 2 }, 1);
+        node.addPeer(new byte[] {127, 0, 0, 3 }, 1);
+
+        // when
+        int count = 0;
+
+        for (DHTPeer peer : node.getPeers()) {
+            node.removePeer(peer);
+            count++;
+        }
+
+        // then
+        assertEquals(3, count);
+        assertEquals(0, node.getPeerCount());
+        assertEquals(0, node.getCompactPeers4().length);
+    }
 }
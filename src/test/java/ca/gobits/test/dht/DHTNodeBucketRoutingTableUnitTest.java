@@ -44,6 +44,7 @@ import ca.gobits.dht.DHTBucket;
 import ca.gobits.dht.DHTNode;
 import ca.gobits.dht.DHTNode.State;
 import ca.gobits.dht.DHTNodeBucketRoutingTable;
+import ca.gobits.dht.DHTNodeDiversity;
 import ca.gobits.dht.util.SortedCollection;
 
 /**
@@ -1050,6 +1051,45 @@ public final class DHTNodeBucketRoutingTableUnitTest extends EasyMockSupport {
         assertEquals(0, this.rt.getTotalNodeCount(false));
     }
 
+    /**
+     * testFindNodes01() - find the nodes in each bucket.
+     */
+    @Test
+    public void testFindNodes01() {
+        // given
+        boolean ipv6 = false;
+        List<DHTNode> nodes = addNodes();
+        SortedCollection<DHTBucket> buckets = this.rt.getBuckets(ipv6);
+
+        // when
+        List<DHTNode> result0 = this.rt.findNodes(buckets.get(0), ipv6);
+        List<DHTNode> result1 = this.rt.findNodes(buckets.get(1), ipv6);
+        List<DHTNode> result2 = this.rt.findNodes(buckets.get(2), ipv6);
+        List<DHTNode> result3 = this.rt.findNodes(buckets.get(3), ipv6);
+
+        // then
+        assertEquals(nodes.subList(0, 8), result0);
+        assertEquals(nodes.subList(8, 16), result1);
+        assertEquals(nodes.subList(16, 20), result2);
+        assertTrue(result3.isEmpty());
+    }
+
+    /**
+     * testFindNodes02() - find nodes in an empty routing table.
+     */
+    @Test
+    public void testFindNodes02() {
+        // given
+        boolean ipv6 = false;
+        DHTBucket bucket = this.rt.getBuckets(ipv6).get(0);
+
+        // when
+        List<DHTNode> result = this.rt.findNodes(bucket, ipv6);
+
+        // then
+        assertTrue(result.isEmpty());
+    }
+
     /**
      * testRemoveNode01() - remove node from routing table.
      */
@@ -1106,6 +1146,61 @@ public final class DHTNodeBucketRoutingTableUnitTest extends EasyMockSupport {
         assertEquals(4, buckets.get(2).getNodeCount());
     }
 
+    /**
+     * testAddNode10() - bucket holds one node of an IP address and two of
+     * a subnet.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testAddNode10() throws Exception {
+        // given
+        InetAddress other = InetAddress.getByName("50.71.50.13");
+        InetAddress third = InetAddress.getByName("50.71.50.14");
+        this.rt.setDiversity(new DHTNodeDiversity(0, 0, 1, 2));
+
+        // when
+        this.rt.addNode(fitToSize(new byte[] {1 }, NODE_ID_LENGTH),
+                this.iaddr, this.port, State.GOOD);
+        this.rt.addNode(fitToSize(new byte[] {2 }, NODE_ID_LENGTH),
+                this.iaddr, this.port + 1, State.GOOD);
+        this.rt.addNode(fitToSize(new byte[] {3 }, NODE_ID_LENGTH),
+                other, this.port, State.GOOD);
+        this.rt.addNode(fitToSize(new byte[] {4 }, NODE_ID_LENGTH),
+                third, this.port, State.GOOD);
+
+        // then
+        assertEquals(2, this.rt.getTotalNodeCount(false));
+        assertEquals(2, this.rt.getBuckets(false).get(0).getNodeCount());
+    }
+
+    /**
+     * testAddNode11() - table holds one node of an IP address, removing
+     * the node makes room for another.
+     */
+    @Test
+    public void testAddNode11() {
+        // given
+        DHTNodeDiversity diversity = new DHTNodeDiversity(1, 0, 0, 0);
+        this.rt.setDiversity(diversity);
+        DHTNode node = this.rt.addNode(fitToSize(new byte[] {1 },
+                NODE_ID_LENGTH), this.iaddr, this.port, State.GOOD);
+
+        // when
+        this.rt.addNode(fitToSize(new byte[] {-1 }, NODE_ID_LENGTH),
+                this.iaddr, this.port, State.GOOD);
+        int before = this.rt.getTotalNodeCount(false);
+
+        this.rt.removeNode(node);
+        this.rt.addNode(fitToSize(new byte[] {-1 }, NODE_ID_LENGTH),
+                this.iaddr, this.port, State.GOOD);
+
+        // then
+        assertEquals(1, before);
+        assertEquals(1, this.rt.getTotalNodeCount(false));
+        assertEquals(1, diversity.getIpCount(node));
+        assertNull(this.rt.findExactNode(node.getInfoHash(), false));
+    }
+
     /**
      * Add Nodes to routing table.
      * @return List<DHTNode>
@@ -0,0 +1,142 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.test.dht;
+
+import static ca.gobits.dht.factory.DHTNodeFactory.create;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.gobits.dht.DHTIdentifier;
+import ca.gobits.dht.DHTNode;
+import ca.gobits.dht.DHTNode.State;
+import ca.gobits.dht.DHTNodeDiversity;
+
+/**
+ * DHTNodeDiversity Unit Tests.
+ *
+ */
+public final class DHTNodeDiversityUnitTest {
+
+    /** Empty bucket. */
+    private final List<DHTNode> empty = new ArrayList<DHTNode>();
+
+    /**
+     * @param addr  address
+     * @return DHTNode
+     * @throws Exception  Exception
+     */
+    private static DHTNode node(final String addr) throws Exception {
+        return create(DHTIdentifier.getFastRandomNodeId(),
+                InetAddress.getByName(addr), 6881, State.GOOD);
+    }
+
+    /**
+     * testTryAdd01() - IPv4 /24 subnet limit.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testTryAdd01() throws Exception {
+        // given
+        DHTNodeDiversity diversity = new DHTNodeDiversity(0, 2, 0, 0);
+
+        // when
+        boolean r0 = diversity.tryAdd(node("1.2.3.4"), this.empty);
+        boolean r1 = diversity.tryAdd(node("1.2.3.5"), this.empty);
+        boolean r2 = diversity.tryAdd(node("1.2.3.6"), this.empty);
+        boolean r3 = diversity.tryAdd(node("1.2.4.6"), this.empty);
+
+        // then
+        assertTrue(r0);
+        assertTrue(r1);
+        assertFalse(r2);
+        assertTrue(r3);
+        assertEquals(2, diversity.getSubnetCount(node("1.2.3.0")));
+    }
+
+    /**
+     * testTryAdd02() - IPv6 /64 subnet limit.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testTryAdd02() throws Exception {
+        // given
+        DHTNodeDiversity diversity = new DHTNodeDiversity(0, 1, 0, 0);
+
+        // when
+        boolean r0 = diversity.tryAdd(node("2001:db8:0:1::1"), this.empty);
+        boolean r1 = diversity.tryAdd(node("2001:db8:0:1::2"), this.empty);
+        boolean r2 = diversity.tryAdd(node("2001:db8:0:2::1"), this.empty);
+
+        // then
+        assertTrue(r0);
+        assertFalse(r1);
+        assertTrue(r2);
+    }
+
+    /**
+     * testTryAdd03() - bucket limits look at the bucket's nodes.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testTryAdd03() throws Exception {
+        // given
+        DHTNodeDiversity diversity = new DHTNodeDiversity(0, 0, 1, 2);
+        List<DHTNode> bucket = Arrays.asList(node("1.2.3.4"),
+                node("1.2.3.5"));
+
+        // when
+        boolean r0 = diversity.tryAdd(node("1.2.3.4"), bucket.subList(0, 1));
+        boolean r1 = diversity.tryAdd(node("1.2.3.6"), bucket.subList(0, 1));
+        boolean r2 = diversity.tryAdd(node("1.2.3.6"), bucket);
+
+        // then
+        assertFalse(r0);
+        assertTrue(r1);
+        assertFalse(r2);
+    }
+
+    /**
+     * testRemove01() - removed node is no longer counted.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testRemove01() throws Exception {
+        // given
+        DHTNodeDiversity diversity = new DHTNodeDiversity(1, 0, 0, 0);
+        DHTNode node = node("2001:db8::1");
+        diversity.tryAdd(node, this.empty);
+
+        // when
+        boolean r0 = diversity.tryAdd(node("2001:db8::1"), this.empty);
+        diversity.remove(node);
+        boolean r1 = diversity.tryAdd(node("2001:db8::1"), this.empty);
+
+        // then
+        assertFalse(r0);
+        assertTrue(r1);
+        assertEquals(1, diversity.getIpCount(node));
+    }
+}
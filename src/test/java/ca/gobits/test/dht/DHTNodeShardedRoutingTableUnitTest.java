@@ -0,0 +1,242 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.test.dht;
+
+import static ca.gobits.dht.DHTIdentifier.NODE_ID_LENGTH;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.gobits.dht.DHTBucket;
+import ca.gobits.dht.DHTNode;
+import ca.gobits.dht.DHTNode.State;
+import ca.gobits.dht.DHTNodeBucketRoutingTable;
+import ca.gobits.dht.DHTNodeShardedRoutingTable;
+import ca.gobits.dht.util.SortedCollection;
+
+/**
+ * DHTNodeShardedRoutingTable Unit Tests.
+ *
+ */
+public final class DHTNodeShardedRoutingTableUnitTest {
+
+    /** Host node identifier. */
+    private final byte[] nodeId = id(0x11, 0);
+
+    /** Test Subject instance with 4 shards. */
+    private final DHTNodeShardedRoutingTable rt =
+            new DHTNodeShardedRoutingTable(this.nodeId, 4);
+
+    /** port. */
+    private final int port = 64568;
+
+    /** inet socket address. */
+    private final InetAddress iaddr;
+
+    /**
+     * constructor.
+     * @throws Exception  Exception
+     */
+    public DHTNodeShardedRoutingTableUnitTest() throws Exception {
+        this.iaddr = InetAddress.getByName("50.71.50.12");
+    }
+
+    /**
+     * @param first  first byte of identifier
+     * @param last  last byte of identifier
+     * @return byte[]
+     */
+    private static byte[] id(final int first, final int last) {
+        byte[] id = new byte[NODE_ID_LENGTH];
+        id[0] = (byte) first;
+        id[NODE_ID_LENGTH - 1] = (byte) last;
+        return id;
+    }
+
+    /**
+     * testConstructor01() - every shard covers its own range.
+     */
+    @Test
+    public void testConstructor01() {
+        // given
+        // when
+        SortedCollection<DHTBucket> result = this.rt.getBuckets(false);
+
+        // then
+        assertEquals(4, this.rt.getShardCount());
+        assertEquals(DHTNodeBucketRoutingTable.MAX_NUMBER_OF_NODES,
+                this.rt.getMaxNodeCount());
+        assertEquals(4, result.size());
+        assertEquals(4, this.rt.getBucketCount(false));
+        assertEquals(4, this.rt.getBucketCount(true));
+        assertEquals((byte) 0x00, result.get(0).getMin()[0]);
+        assertEquals((byte) 0x3f, result.get(0).getMax()[0]);
+        assertEquals((byte) 0x40, result.get(1).getMin()[0]);
+        assertEquals((byte) 0xc0, result.get(3).getMin()[0]);
+        assertEquals((byte) 0xff, result.get(3).getMax()[0]);
+    }
+
+    /**
+     * testGetShardBits01() - invalid shard counts.
+     */
+    @Test
+    public void testGetShardBits01() {
+        // given
+        // when
+        // then
+        assertEquals(0, DHTNodeShardedRoutingTable.getShardBits(1));
+        assertEquals(8, DHTNodeShardedRoutingTable.getShardBits(256));
+        assertFalse(DHTNodeShardedRoutingTable.isValidShardCount(0));
+        assertFalse(DHTNodeShardedRoutingTable.isValidShardCount(3));
+        assertFalse(DHTNodeShardedRoutingTable.isValidShardCount(512));
+    }
+
+    /**
+     * testGetShardBits02() - invalid shard count throws exception.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetShardBits02() {
+        // given
+        // when
+        // then
+        DHTNodeShardedRoutingTable.getShardBits(6);
+    }
+
+    /**
+     * testGetShardIndex01() - shard is picked by the leading bits.
+     */
+    @Test
+    public void testGetShardIndex01() {
+        // given
+        // when
+        // then
+        assertEquals(0, DHTNodeShardedRoutingTable.getShardIndex(
+                id(0xff, 0), 0));
+        assertEquals(0, DHTNodeShardedRoutingTable.getShardIndex(
+                id(0x3f, 0), 2));
+        assertEquals(1, DHTNodeShardedRoutingTable.getShardIndex(
+                id(0x40, 0), 2));
+        assertEquals(3, DHTNodeShardedRoutingTable.getShardIndex(
+                id(0xff, 0), 2));
+        assertEquals(255, DHTNodeShardedRoutingTable.getShardIndex(
+                id(0xff, 0), 8));
+    }
+
+    /**
+     * testAddNode01() - nodes are added to and found in their shard.
+     */
+    @Test
+    public void testAddNode01() {
+        // given
+        byte[] id0 = id(0x01, 1);
+        byte[] id1 = id(0x81, 1);
+
+        // when
+        this.rt.addNode(id0, this.iaddr, this.port, State.GOOD);
+        this.rt.addNode(id1, this.iaddr, this.port, State.GOOD);
+
+        // then
+        assertEquals(2, this.rt.getTotalNodeCount(false));
+        assertNotNull(this.rt.findExactNode(id0, false));
+        assertNotNull(this.rt.findExactNode(id1, false));
+        assertNull(this.rt.findExactNode(id(0x41, 1), false));
+        assertEquals((byte) 0x80, this.rt.findBucket(id1, false).getMin()[0]);
+    }
+
+    /**
+     * testRemoveNode01() - node is removed from its shard.
+     */
+    @Test
+    public void testRemoveNode01() {
+        // given
+        byte[] id1 = id(0x81, 1);
+        DHTNode node = this.rt.addNode(id1, this.iaddr, this.port,
+                State.GOOD);
+
+        // when
+        boolean result = this.rt.removeNode(node);
+
+        // then
+        assertTrue(result);
+        assertEquals(0, this.rt.getTotalNodeCount(false));
+    }
+
+    /**
+     * testFindClosestNodes01() - closest nodes are merged across shards
+     * in order of distance.
+     */
+    @Test
+    public void testFindClosestNodes01() {
+        // given
+        this.rt.addNode(id(0x01, 1), this.iaddr, this.port, State.GOOD);
+        this.rt.addNode(id(0x02, 1), this.iaddr, this.port, State.GOOD);
+        this.rt.addNode(id(0x41, 1), this.iaddr, this.port, State.GOOD);
+        this.rt.addNode(id(0xc1, 1), this.iaddr, this.port, State.GOOD);
+
+        // when
+        List<DHTNode> result = this.rt.findClosestNodes(id(0x40, 0), 3,
+                false);
+
+        // then
+        assertEquals(3, result.size());
+        assertArrayEquals(id(0x41, 1), result.get(0).getInfoHash());
+        assertArrayEquals(id(0x01, 1), result.get(1).getInfoHash());
+        assertArrayEquals(id(0x02, 1), result.get(2).getInfoHash());
+    }
+
+    /**
+     * testFindNodes01() - nodes of a bucket are found in its shard.
+     */
+    @Test
+    public void testFindNodes01() {
+        // given
+        byte[] id1 = id(0x81, 1);
+        this.rt.addNode(id1, this.iaddr, this.port, State.GOOD);
+        DHTBucket bucket = this.rt.findBucket(id1, false);
+
+        // when
+        List<DHTNode> result = this.rt.findNodes(bucket, false);
+
+        // then
+        assertEquals(1, result.size());
+        assertArrayEquals(id1, result.get(0).getInfoHash());
+    }
+
+    /**
+     * testClear01() - every shard is cleared.
+     */
+    @Test
+    public void testClear01() {
+        // given
+        this.rt.addNode(id(0x01, 1), this.iaddr, this.port, State.GOOD);
+        this.rt.addNode(id(0xc1, 1), this.iaddr, this.port, State.GOOD);
+
+        // when
+        this.rt.clear();
+
+        // then
+        assertEquals(0, this.rt.getTotalNodeCount(false));
+    }
+}
@@ -0,0 +1,126 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.test.dht;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ca.gobits.dht.DHTPeerSampler;
+
+/**
+ * DHTPeerSampler Unit Tests.
+ *
+ */
+public final class DHTPeerSamplerUnitTest {
+
+    /** Random. */
+    private final Random random = new Random(1);
+
+    /**
+     * testSample01() - all peers fit within the budget.
+     */
+    @Test
+    public void testSample01() {
+        // given
+        byte[][] peers = peers(3, 6);
+        List<byte[]> values = new ArrayList<byte[]>();
+
+        // when
+        int result = DHTPeerSampler.sample(peers, 1000, this.random, values);
+
+        // then
+        assertEquals(3, result);
+        assertEquals(3, values.size());
+    }
+
+    /**
+     * testSample02() - sample stays within the budget without duplicates.
+     */
+    @Test
+    public void testSample02() {
+        // given
+        byte[][] peers = peers(100, 6);
+        List<byte[]> values = new ArrayList<byte[]>();
+
+        // when
+        int result = DHTPeerSampler.sample(peers, 80, this.random, values);
+
+        // then
+        assertEquals(10, result);
+        assertEquals(10, values.size());
+        assertEquals(10, new HashSet<byte[]>(values).size());
+    }
+
+    /**
+     * testSample03() - IPv6 peers cost 21 bytes and budget 0 adds nothing.
+     */
+    @Test
+    public void testSample03() {
+        // given
+        byte[][] peers = peers(10, 18);
+        List<byte[]> values = new ArrayList<byte[]>();
+
+        // when
+        int result = DHTPeerSampler.sample(peers, 42, this.random, values);
+        int none = DHTPeerSampler.sample(peers, 0, this.random, values);
+
+        // then
+        assertEquals(2, result);
+        assertEquals(0, none);
+        assertEquals(2, values.size());
+    }
+
+    /**
+     * testSample04() - every peer is eventually sampled.
+     */
+    @Test
+    public void testSample04() {
+        // given
+        byte[][] peers = peers(20, 6);
+        Set<byte[]> seen = new HashSet<byte[]>();
+
+        // when
+        for (int i = 0; i < 200; i++) {
+            List<byte[]> values = new ArrayList<byte[]>();
+            DHTPeerSampler.sample(peers, 16, this.random, values);
+            seen.addAll(values);
+        }
+
+        // then
+        assertEquals(peers.length, seen.size());
+    }
+
+    /**
+     * @param count  number of peers
+     * @param length  length of a peer
+     * @return byte[][]
+     */
+    private byte[][] peers(final int count, final int length) {
+        byte[][] peers = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            peers[i] = new byte[length];
+        }
+        return peers;
+    }
+}
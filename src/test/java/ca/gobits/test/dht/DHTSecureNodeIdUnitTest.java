@@ -0,0 +1,182 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.test.dht;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import org.apache.commons.codec.binary.Hex;
+import org.junit.Test;
+
+import ca.gobits.dht.DHTIdentifier;
+import ca.gobits.dht.DHTSecureNodeId;
+
+/**
+ * DHTSecureNodeId Unit Tests.
+ *
+ */
+public final class DHTSecureNodeIdUnitTest {
+
+    /** BEP 42 test vector addresses. */
+    private static final String[] ADDRESSES = {"124.31.75.21",
+        "21.75.31.124", "65.23.51.170", "84.124.73.14", "43.213.53.83" };
+
+    /** BEP 42 test vector node identifiers. */
+    private static final String[] NODE_IDS = {
+        "5fbfbff10c5d6a4ec8a88e4c6ab4c28b95eee401",
+        "5a3ce9c14e7a08645677bbd1cfe7d8f956d53256",
+        "a5d43220bc8f112a3d426c84764f8c2a1150e616",
+        "1b0321dd1bb1fe518101ceef99462b947a01ff41",
+        "e56f6cbf5b7c4be0237986d5243b87aa6d51305a" };
+
+    /**
+     * testGetNodeId01() - BEP 42 test vectors.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testGetNodeId01() throws Exception {
+        for (int i = 0; i < ADDRESSES.length; i++) {
+            // given
+            byte[] ip = InetAddress.getByName(ADDRESSES[i]).getAddress();
+            byte[] expected = Hex.decodeHex(NODE_IDS[i].toCharArray());
+
+            // when
+            byte[] result = DHTSecureNodeId.getNodeId(ip, expected);
+
+            // then
+            assertArrayEquals(expected, result);
+        }
+    }
+
+    /**
+     * testGetNodeId02() - IPv6 node identifier is valid.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testGetNodeId02() throws Exception {
+        // given
+        byte[] ip = InetAddress.getByName("2001:db8:85a3::8a2e:370:7334")
+                .getAddress();
+
+        // when
+        byte[] result = DHTSecureNodeId.getNodeId(ip,
+                DHTIdentifier.getRandomNodeId());
+
+        // then
+        assertTrue(DHTSecureNodeId.isValid(result, ip));
+    }
+
+    /**
+     * testGetNodeId03() - random bytes must be a node identifier long.
+     * @throws Exception  Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetNodeId03() throws Exception {
+        // given
+        byte[] ip = InetAddress.getByName("124.31.75.21").getAddress();
+
+        // when
+        DHTSecureNodeId.getNodeId(ip, new byte[2]);
+
+        // then
+    }
+
+    /**
+     * testIsValid01() - BEP 42 test vectors are valid.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testIsValid01() throws Exception {
+        for (int i = 0; i < ADDRESSES.length; i++) {
+            // given
+            byte[] ip = InetAddress.getByName(ADDRESSES[i]).getAddress();
+            byte[] nodeId = Hex.decodeHex(NODE_IDS[i].toCharArray());
+
+            // when
+            boolean result = DHTSecureNodeId.isValid(nodeId, ip);
+
+            // then
+            assertTrue(result);
+        }
+    }
+
+    /**
+     * testIsValid02() - node identifier of another address is invalid.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testIsValid02() throws Exception {
+        // given
+        byte[] ip = InetAddress.getByName("124.31.75.21").getAddress();
+        byte[] nodeId = Hex.decodeHex(NODE_IDS[1].toCharArray());
+
+        // when
+        boolean result = DHTSecureNodeId.isValid(nodeId, ip);
+
+        // then
+        assertFalse(result);
+    }
+
+    /**
+     * testIsValid03() - changing the random byte invalidates the
+     * identifier.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testIsValid03() throws Exception {
+        // given
+        byte[] ip = InetAddress.getByName("124.31.75.21").getAddress();
+        byte[] nodeId = Hex.decodeHex(NODE_IDS[0].toCharArray());
+        nodeId[nodeId.length - 1] = 2;
+
+        // when
+        boolean result = DHTSecureNodeId.isValid(nodeId, ip);
+
+        // then
+        assertFalse(result);
+    }
+
+    /**
+     * testIsExempt01() - local networks are exempt.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testIsExempt01() throws Exception {
+        // given
+        String[] exempt = {"10.1.2.3", "172.16.0.1", "172.31.255.255",
+            "192.168.1.1", "169.254.1.1", "127.0.0.1", "::1", "fe80::1",
+            "fd00::1" };
+        String[] notExempt = {"172.32.0.1", "192.169.0.1", "8.8.8.8",
+            "2001:db8::1" };
+
+        // when
+        // then
+        for (String addr : exempt) {
+            assertTrue(addr, DHTSecureNodeId.isExempt(InetAddress
+                    .getByName(addr).getAddress()));
+        }
+
+        for (String addr : notExempt) {
+            assertFalse(addr, DHTSecureNodeId.isExempt(InetAddress
+                    .getByName(addr).getAddress()));
+        }
+    }
+}
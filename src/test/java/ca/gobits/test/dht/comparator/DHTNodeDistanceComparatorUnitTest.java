@@ -0,0 +1,81 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.test.dht.comparator;
+
+import static ca.gobits.dht.factory.DHTNodeFactory.create;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ca.gobits.dht.DHTNode;
+import ca.gobits.dht.comparator.DHTNodeDistanceComparator;
+
+/**
+ * DHTNodeDistanceComparator Unit Tests.
+ */
+public final class DHTNodeDistanceComparatorUnitTest {
+
+    /**
+     * testCompare01() node closer to the target sorts first.
+     */
+    @Test
+    public void testCompare01() {
+        // given
+        byte[] target = new byte[20];
+        target[0] = (byte) 0x80;
+
+        byte[] id0 = new byte[20];
+        id0[0] = (byte) 0x81;
+        byte[] id1 = new byte[20];
+        id1[0] = (byte) 0x01;
+
+        DHTNode node0 = create(id0, DHTNode.State.UNKNOWN);
+        DHTNode node1 = create(id1, DHTNode.State.UNKNOWN);
+        DHTNodeDistanceComparator comparator =
+                new DHTNodeDistanceComparator(target);
+
+        // when
+        int result = comparator.compare(node0, node1);
+
+        // then
+        assertTrue(result < 0);
+        assertTrue(comparator.compare(node1, node0) > 0);
+    }
+
+    /**
+     * testCompare02() same ID.
+     */
+    @Test
+    public void testCompare02() {
+        // given
+        byte[] target = new byte[20];
+        byte[] id = new byte[20];
+        id[19] = 1;
+
+        DHTNode node0 = create(id, DHTNode.State.UNKNOWN);
+        DHTNode node1 = create(id.clone(), DHTNode.State.UNKNOWN);
+
+        // when
+        int result = new DHTNodeDistanceComparator(target).compare(node0,
+                node1);
+
+        // then
+        assertEquals(0, result);
+    }
+}
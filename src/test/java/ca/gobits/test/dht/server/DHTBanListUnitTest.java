@@ -0,0 +1,212 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.test.dht.server;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+
+import org.easymock.EasyMockRunner;
+import org.easymock.EasyMockSupport;
+import org.easymock.Mock;
+import org.easymock.TestSubject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import ca.gobits.dht.server.DHTBanList;
+import ca.gobits.dht.server.DHTServerConfig;
+
+/**
+ * DHTBanList Unit Tests.
+ *
+ */
+@RunWith(EasyMockRunner.class)
+public final class DHTBanListUnitTest extends EasyMockSupport {
+
+    /** Instance of DHTBanList. */
+    @TestSubject
+    private final DHTBanList banList = new DHTBanList();
+
+    /** Mock DHTServerConfig. */
+    @Mock
+    private DHTServerConfig config;
+
+    /**
+     * @param addr  address literal
+     * @return InetAddress
+     * @throws Exception  Exception
+     */
+    private static InetAddress ip(final String addr) throws Exception {
+        return InetAddress.getByName(addr);
+    }
+
+    /**
+     * testLoad01() - addresses and blocks of both families are banned.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testLoad01() throws Exception {
+        // given
+        String list = "# abusive sources\n192.0.2.0/24\n\n198.51.100.7 # one\n"
+                + "2001:db8::/32\n";
+
+        // when
+        this.banList.load(new StringReader(list));
+
+        // then
+        assertEquals(3, this.banList.size());
+        assertTrue(this.banList.isBanned(ip("192.0.2.99")));
+        assertTrue(this.banList.isBanned(ip("198.51.100.7")));
+        assertTrue(this.banList.isBanned(ip("2001:db8::1")));
+        assertFalse(this.banList.isBanned(ip("198.51.100.8")));
+        assertFalse(this.banList.isBanned(ip("2001:db9::1")));
+        assertFalse(this.banList.isBanned(null));
+        assertEquals(3, this.banList.getHits());
+    }
+
+    /**
+     * testLoad02() - invalid entries and host names are skipped.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testLoad02() throws Exception {
+        // given
+        String list = "localhost\ncafe\nbad.beef\n1.2.3.4/33\n1.2.3.4/x\n"
+                + "5.6.7.8/16\n";
+
+        // when
+        this.banList.load(new StringReader(list));
+
+        // then
+        assertEquals(1, this.banList.size());
+        assertTrue(this.banList.isBanned(ip("5.6.1.1")));
+        assertFalse(this.banList.isBanned(ip("1.2.3.4")));
+    }
+
+    /**
+     * testProcessQueue01() - list is reloaded when the file changes.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testProcessQueue01() throws Exception {
+        // given
+        File file = File.createTempFile("banlist", ".txt");
+        file.deleteOnExit();
+        write(file, "192.0.2.0/24\n");
+
+        expect(this.config.getBanList()).andReturn(file.getAbsolutePath());
+        replayAll();
+
+        this.banList.afterPropertiesSet();
+        assertTrue(this.banList.isBanned(ip("192.0.2.1")));
+
+        // when
+        int r0 = this.banList.processQueue();
+        write(file, "203.0.113.0/24\n");
+        file.setLastModified(file.lastModified() + 2000);
+        int r1 = this.banList.processQueue();
+
+        // then
+        verifyAll();
+        assertEquals(0, r0);
+        assertEquals(1, r1);
+        assertFalse(this.banList.isBanned(ip("192.0.2.1")));
+        assertTrue(this.banList.isBanned(ip("203.0.113.1")));
+    }
+
+    /**
+     * testProcessQueue02() - nothing to reload without a file.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testProcessQueue02() throws Exception {
+        // given
+        expect(this.config.getBanList()).andReturn(null);
+        replayAll();
+        this.banList.afterPropertiesSet();
+
+        // when
+        int result = this.banList.processQueue();
+
+        // then
+        verifyAll();
+        assertEquals(0, result);
+        assertEquals(0, this.banList.size());
+    }
+
+    /**
+     * testProcessQueue03() - list is kept while the file is deleted and
+     * reloaded when it is written again.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testProcessQueue03() throws Exception {
+        // given
+        File file = File.createTempFile("banlist", ".txt");
+        file.deleteOnExit();
+        write(file, "192.0.2.0/24\n");
+
+        expect(this.config.getBanList()).andReturn(file.getAbsolutePath());
+        replayAll();
+
+        this.banList.afterPropertiesSet();
+        long modified = file.lastModified();
+
+        // when
+        assertTrue(file.delete());
+        int r0 = this.banList.processQueue();
+        int r1 = this.banList.processQueue();
+        boolean kept = this.banList.isBanned(ip("192.0.2.1"));
+        write(file, "203.0.113.0/24\n");
+        file.setLastModified(modified + 2000);
+        int r2 = this.banList.processQueue();
+
+        // then
+        verifyAll();
+        assertEquals(0, r0);
+        assertEquals(0, r1);
+        assertEquals(1, r2);
+        assertTrue(kept);
+        assertFalse(this.banList.isBanned(ip("192.0.2.1")));
+        assertTrue(this.banList.isBanned(ip("203.0.113.1")));
+    }
+
+    /**
+     * @param file  file
+     * @param text  text to write
+     * @throws Exception  Exception
+     */
+    private static void write(final File file, final String text)
+            throws Exception {
+
+        OutputStream os = new FileOutputStream(file);
+
+        try {
+            os.write(text.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+}
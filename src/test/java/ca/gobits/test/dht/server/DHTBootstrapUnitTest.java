@@ -0,0 +1,280 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.test.dht.server;
+
+import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.easymock.EasyMockRunner;
+import org.easymock.EasyMockSupport;
+import org.easymock.Mock;
+import org.easymock.TestSubject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import ca.gobits.dht.DHTBucket;
+import ca.gobits.dht.DHTIdentifier;
+import ca.gobits.dht.DHTNodeRoutingTable;
+import ca.gobits.dht.server.DHTBootstrap;
+import ca.gobits.dht.server.DHTServerConfig;
+import ca.gobits.dht.server.queue.DHTFindNodeQueue;
+import ca.gobits.dht.server.queue.DHTLookup;
+import ca.gobits.dht.server.queue.DHTLookupQueue;
+import ca.gobits.dht.util.SortedCollection;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * DHTBootstrap Unit Tests.
+ *
+ */
+@SuppressWarnings("boxing")
+@RunWith(EasyMockRunner.class)
+public final class DHTBootstrapUnitTest extends EasyMockSupport {
+
+    /** DHTBootstrap instance. */
+    @TestSubject
+    private final DHTBootstrap bootstrap = new DHTBootstrap();
+
+    /** Mock DHTServerConfig. */
+    @Mock
+    private DHTServerConfig config;
+
+    /** Mock DHTNodeRoutingTable. */
+    @Mock
+    private DHTNodeRoutingTable routingTable;
+
+    /** Mock DHTFindNodeQueue. */
+    @Mock
+    private DHTFindNodeQueue findNodeQueue;
+
+    /** Mock DHTLookupQueue. */
+    @Mock
+    private DHTLookupQueue lookupQueue;
+
+    /** Mock DatagramSocket. */
+    @Mock
+    private DatagramSocket socket;
+
+    /** Mock ThreadPoolTaskScheduler. */
+    @Mock
+    private ThreadPoolTaskScheduler queueTaskScheduler;
+
+    /** Mock buckets of the routing table. */
+    @Mock
+    private SortedCollection<DHTBucket> buckets;
+
+    /** Node ID. */
+    private final byte[] nodeId = DHTIdentifier.sha1("salt".getBytes());
+
+    /**
+     * testRun01() - bootstrap nodes are asked while the routing table is
+     * empty, but not on every run.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testRun01() throws Exception {
+        // given
+        expectStart();
+        expectTable(0, 1, 2);
+        expect(this.config.getBootstrapNodes()).andReturn(
+                new String[] {"127.0.0.1:7789" });
+        expect(this.config.getNodeId()).andReturn(this.nodeId);
+        this.findNodeQueue.findNodes(eq(InetAddress.getByName("127.0.0.1")),
+                eq(7789), aryEq(this.nodeId));
+
+        // when
+        replayAll();
+        this.bootstrap.start();
+        long now = System.currentTimeMillis();
+        this.bootstrap.run(now);
+        this.bootstrap.run(now + 1);
+
+        // then
+        verifyAll();
+        assertEquals(0, this.bootstrap.getRounds());
+    }
+
+    /**
+     * testRun02() - a round of lookups for the Node ID and every bucket
+     * range runs once the routing table has nodes, the next round waits
+     * for it to finish.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testRun02() throws Exception {
+        // given
+        List<SettableFuture<DHTLookup>> futures =
+                new ArrayList<SettableFuture<DHTLookup>>();
+        byte[] min = new byte[20];
+        byte[] max = new byte[20];
+        max[0] = 0x7f;
+        DHTBucket bucket = new DHTBucket(min, max);
+
+        expectStart();
+        expectTable(10, 2, 3);
+        expect(this.config.getBootstrapNodes()).andReturn(null);
+        expect(this.config.getNodeId()).andReturn(this.nodeId).times(2);
+        expect(this.routingTable.getBuckets(false)).andReturn(this.buckets)
+                .times(2);
+        expect(this.buckets.size()).andReturn(2).times(2);
+        expect(this.buckets.get(0)).andReturn(bucket).times(2);
+        expect(this.buckets.get(1)).andReturn(bucket).times(2);
+
+        for (int i = 0; i < 6; i++) {
+            SettableFuture<DHTLookup> future = SettableFuture.create();
+            futures.add(future);
+            expect(this.lookupQueue.findNode(isA(byte[].class))).andReturn(
+                    future);
+        }
+
+        // when
+        replayAll();
+        this.bootstrap.start();
+        long now = System.currentTimeMillis();
+        this.bootstrap.run(now);
+        assertEquals(1, this.bootstrap.getRounds());
+
+        this.bootstrap.run(now + 1);
+        assertEquals(1, this.bootstrap.getRounds());
+
+        for (SettableFuture<DHTLookup> future : futures) {
+            future.set(null);
+        }
+
+        this.bootstrap.run(now + 2);
+
+        // then
+        verifyAll();
+        assertEquals(2, this.bootstrap.getRounds());
+    }
+
+    /**
+     * testRun03() - bootstrap is ready once the routing table holds
+     * enough nodes.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testRun03() throws Exception {
+        // given
+        this.bootstrap.setTargetNodeCount(100);
+        expectStart();
+        expectTable(100, 1, 1);
+        expect(this.config.getBootstrapNodes()).andReturn(null);
+
+        // when
+        replayAll();
+        ListenableFuture<Long> ready = this.bootstrap.start();
+        this.bootstrap.run(System.currentTimeMillis());
+
+        // then
+        verifyAll();
+        assertTrue(ready.isDone());
+        assertTrue(ready.get().longValue() >= 0);
+    }
+
+    /**
+     * testRun04() - bootstrap is ready once the buckets are mostly full.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testRun04() throws Exception {
+        // given
+        expectStart();
+        expectTable(60, 10, 1);
+        expect(this.config.getBootstrapNodes()).andReturn(null);
+
+        // when
+        replayAll();
+        ListenableFuture<Long> ready = this.bootstrap.start();
+        this.bootstrap.run(System.currentTimeMillis());
+
+        // then
+        verifyAll();
+        assertTrue(ready.isDone());
+    }
+
+    /**
+     * testRun05() - bootstrap gives up after its timeout.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testRun05() throws Exception {
+        // given
+        this.bootstrap.setTimeoutInMillis(1000);
+        expectStart();
+        expectTable(0, 1, 1);
+        expect(this.config.getBootstrapNodes()).andReturn(null);
+
+        // when
+        replayAll();
+        ListenableFuture<Long> ready = this.bootstrap.start();
+        this.bootstrap.run(System.currentTimeMillis() + 1000);
+
+        // then
+        verifyAll();
+        assertTrue(ready.isDone());
+
+        try {
+            ready.get();
+            assertFalse(true);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    /**
+     * Expects the bootstrap to be scheduled.
+     */
+    private void expectStart() {
+        expect(this.queueTaskScheduler.scheduleWithFixedDelay(
+                this.bootstrap, 250)).andReturn(null);
+    }
+
+    /**
+     * Expects the routing table to be checked.
+     * @param count  number of nodes
+     * @param bucketCount  number of buckets
+     * @param times  number of checks
+     * @throws Exception  Exception
+     */
+    private void expectTable(final int count, final int bucketCount,
+            final int times) throws Exception {
+
+        expect(this.socket.getLocalAddress()).andReturn(
+                InetAddress.getByName("127.0.0.1")).times(times);
+        expect(this.routingTable.getTotalNodeCount(false)).andReturn(count)
+                .times(times);
+        expect(this.routingTable.getBucketCount(false)).andReturn(
+                bucketCount).times(times);
+    }
+}
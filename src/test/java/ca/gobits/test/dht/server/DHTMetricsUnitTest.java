@@ -0,0 +1,261 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.test.dht.server;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.easymock.EasyMockRunner;
+import org.easymock.EasyMockSupport;
+import org.easymock.Mock;
+import org.easymock.TestSubject;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import ca.gobits.dht.DHTInfoHashRoutingTable;
+import ca.gobits.dht.DHTNodeRoutingTable;
+import ca.gobits.dht.server.DHTMetrics;
+import ca.gobits.dht.server.DHTMetrics.Drop;
+import ca.gobits.dht.server.DHTMetrics.Traffic;
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
+import ca.gobits.dht.server.DHTServerConfig;
+import ca.gobits.dht.server.queue.DHTPacer;
+import ca.gobits.dht.server.queue.DHTPingQueueImpl;
+import ca.gobits.dht.server.queue.DHTQueueScheduler;
+import ca.gobits.dht.server.queue.DHTQueueTask;
+import ca.gobits.dht.server.queue.DHTTransactionQueue;
+import ca.gobits.dht.server.scheduling.DHTRoutingTableUpdateRing;
+
+/**
+ * DHTMetrics Unit Tests.
+ *
+ */
+@RunWith(EasyMockRunner.class)
+public final class DHTMetricsUnitTest extends EasyMockSupport {
+
+    /** Instance of DHTMetrics. */
+    @TestSubject
+    private final DHTMetrics metrics = new DHTMetrics();
+
+    /** Mock DHTServerConfig. */
+    @Mock
+    private DHTServerConfig config;
+
+    /** Mock DHTNodeRoutingTable. */
+    @Mock
+    private DHTNodeRoutingTable routingTable;
+
+    /** Mock DHTInfoHashRoutingTable. */
+    @Mock
+    private DHTInfoHashRoutingTable infoHashRoutingTable;
+
+    /** Mock DHTRoutingTableUpdateRing. */
+    @Mock
+    private DHTRoutingTableUpdateRing rtUpdateRing;
+
+    /** Mock DHTQueueScheduler. */
+    @Mock
+    private DHTQueueScheduler queueScheduler;
+
+    /** Mock DHTPacer. */
+    @Mock
+    private DHTPacer pacer;
+
+    /** Mock DHTTransactionQueue. */
+    @Mock
+    private DHTTransactionQueue transactionQueue;
+
+    /** Mock ThreadPoolTaskExecutor. */
+    @Mock
+    private ThreadPoolTaskExecutor socketThreadPool;
+
+    /**
+     * after().
+     */
+    @After
+    public void after() {
+        this.metrics.destroy();
+    }
+
+    /**
+     * Expects the gauges to be read.
+     */
+    private void expectGauges() {
+
+        DHTQueueTask task = new DHTQueueTask("ping", new DHTPingQueueImpl(),
+                1, 2);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+        expect(Integer.valueOf(this.routingTable.getTotalNodeCount(false)))
+                .andReturn(Integer.valueOf(7));
+        expect(Integer.valueOf(this.routingTable.getTotalNodeCount(true)))
+                .andReturn(Integer.valueOf(3));
+        expect(Integer.valueOf(this.infoHashRoutingTable.getInfoHashCount()))
+                .andReturn(Integer.valueOf(5));
+        expect(Integer.valueOf(this.infoHashRoutingTable.getPeerCount()))
+                .andReturn(Integer.valueOf(9));
+        expect(this.queueScheduler.getTasks()).andReturn(Arrays.asList(task));
+        expect(Integer.valueOf(this.pacer.size())).andReturn(
+                Integer.valueOf(4));
+        expect(Integer.valueOf(this.transactionQueue.size())).andReturn(
+                Integer.valueOf(6));
+        expect(Integer.valueOf(this.rtUpdateRing.size())).andReturn(
+                Integer.valueOf(8));
+        expect(Long.valueOf(this.rtUpdateRing.getRejected())).andReturn(
+                Long.valueOf(11));
+        expect(Long.valueOf(this.rtUpdateRing.getCollapsed())).andReturn(
+                Long.valueOf(12));
+        expect(Long.valueOf(this.rtUpdateRing.getUnverified())).andReturn(
+                Long.valueOf(13));
+        expect(this.socketThreadPool.getThreadPoolExecutor()).andReturn(
+                executor);
+    }
+
+    /**
+     * testGetMetrics01() - counters, latencies and gauges are reported.
+     */
+    @Test
+    public void testGetMetrics01() {
+        // given
+        this.metrics.packet(Traffic.QUERY_IN, DHTQueryType.PING, 50);
+        this.metrics.packet(Traffic.QUERY_IN, DHTQueryType.PING, 60);
+        this.metrics.packet(Traffic.ERROR_OUT, null, 30);
+        this.metrics.drop(Drop.BANNED);
+        this.metrics.latency(DHTQueryType.PING, 1500000);
+        expectGauges();
+
+        // when
+        replayAll();
+        Map<String, Long> result = this.metrics.getMetrics();
+
+        // then
+        verifyAll();
+        assertEquals(2, value(result, "packets.query_in.ping"));
+        assertEquals(110, value(result, "bytes.query_in.ping"));
+        assertEquals(1, value(result, "packets.error_out.unknown"));
+        assertFalse(result.containsKey("packets.query_in.find_node"));
+        assertEquals(1, value(result, "drops.banned"));
+        assertEquals(0, value(result, "drops.rejected"));
+        assertEquals(1, value(result, "latency.ping.count"));
+        assertEquals(1500, value(result, "latency.ping.max"));
+        assertEquals(1500, value(result, "latency.ping.p99"));
+        assertEquals(7, value(result, "nodes.ipv4"));
+        assertEquals(3, value(result, "nodes.ipv6"));
+        assertEquals(5, value(result, "infohashes"));
+        assertEquals(9, value(result, "peers"));
+        assertEquals(0, value(result, "queue.ping.depth"));
+        assertEquals(2, value(result, "queue.ping.delay"));
+        assertEquals(4, value(result, "queue.pacer.depth"));
+        assertEquals(6, value(result, "queue.transaction.depth"));
+        assertEquals(8, value(result, "queue.routingtable.depth"));
+        assertEquals(11, value(result, "routingtable.rejected"));
+        assertEquals(12, value(result, "routingtable.collapsed"));
+        assertEquals(13, value(result, "routingtable.unverified"));
+        assertEquals(0, value(result, "queue.socket.depth"));
+    }
+
+    /**
+     * testDump01() - every metric is on its own line.
+     */
+    @Test
+    public void testDump01() {
+        // given
+        this.metrics.packet(Traffic.RESPONSE_IN, DHTQueryType.FIND_NODE, 300);
+        expectGauges();
+
+        // when
+        replayAll();
+        String result = this.metrics.dump();
+
+        // then
+        verifyAll();
+        assertTrue(result.contains("packets.response_in.find_node 1\n"));
+        assertTrue(result.contains("bytes.response_in.find_node 300\n"));
+        assertTrue(result.contains("nodes.ipv4 7\n"));
+    }
+
+    /**
+     * testAfterPropertiesSet01() - metrics are registered with JMX.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testAfterPropertiesSet01() throws Exception {
+        // given
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(DHTMetrics.OBJECT_NAME);
+        this.metrics.drop(Drop.PACED);
+        expectGauges();
+
+        // when
+        replayAll();
+        this.metrics.afterPropertiesSet();
+        TabularData result = (TabularData) server.getAttribute(name,
+                "Metrics");
+        this.metrics.destroy();
+
+        // then
+        verifyAll();
+        assertEquals(Long.valueOf(1), result.get(new Object[] {"drops.paced" })
+                .get("value"));
+        assertFalse(server.isRegistered(name));
+    }
+
+    /**
+     * testProcessQueue01() - metrics are not logged when disabled.
+     */
+    @Test
+    public void testProcessQueue01() {
+        // given
+        expect(Integer.valueOf(this.config.getMetricsInSeconds())).andReturn(
+                Integer.valueOf(0));
+
+        // when
+        replayAll();
+        int result = this.metrics.processQueue();
+
+        // then
+        verifyAll();
+        assertEquals(0, result);
+    }
+
+    /**
+     * @param map  metrics
+     * @param name  name of metric
+     * @return long
+     */
+    private static long value(final Map<String, Long> map,
+            final String name) {
+        return map.get(name).longValue();
+    }
+}
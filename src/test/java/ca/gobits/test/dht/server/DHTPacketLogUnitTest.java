@@ -0,0 +1,259 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.test.dht.server;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.WriterAppender;
+import org.easymock.EasyMockRunner;
+import org.easymock.EasyMockSupport;
+import org.easymock.Mock;
+import org.easymock.TestSubject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import ca.gobits.dht.server.DHTPacketLog;
+import ca.gobits.dht.server.DHTPacketLog.Event;
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
+import ca.gobits.dht.server.DHTServerConfig;
+
+/**
+ * DHTPacketLog Unit Tests.
+ *
+ */
+@RunWith(EasyMockRunner.class)
+public final class DHTPacketLogUnitTest extends EasyMockSupport {
+
+    /** Instance of DHTPacketLog. */
+    @TestSubject
+    private final DHTPacketLog packetLog = new DHTPacketLog(4);
+
+    /** Mock DHTServerConfig. */
+    @Mock
+    private DHTServerConfig config;
+
+    /** DHTPacketLog Logger. */
+    private final Logger logger = Logger.getLogger(DHTPacketLog.class);
+
+    /** Output of the log. */
+    private final StringWriter out = new StringWriter();
+
+    /** Appender writing the log to out. */
+    private WriterAppender appender;
+
+    /** Address. */
+    private InetAddress addr;
+
+    /**
+     * before().
+     * @throws Exception  Exception
+     */
+    @Before
+    public void before() throws Exception {
+        this.addr = InetAddress.getByName("50.71.214.139");
+        this.appender = new WriterAppender(new PatternLayout("%m%n"),
+                this.out);
+        this.logger.addAppender(this.appender);
+        this.logger.setLevel(Level.INFO);
+    }
+
+    /**
+     * after().
+     */
+    @After
+    public void after() {
+        this.logger.removeAppender(this.appender);
+        this.logger.setLevel(null);
+    }
+
+    /**
+     * testConstructor01() - capacity must be a power of 2.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor01() {
+        new DHTPacketLog(3);
+    }
+
+    /**
+     * testAfterPropertiesSet01() - sampling is read from the config.
+     */
+    @Test
+    public void testAfterPropertiesSet01() {
+        // given
+        for (Event event : Event.values()) {
+            expect(Integer.valueOf(this.config.getLogSampling(event)))
+                .andReturn(Integer.valueOf(event.ordinal()));
+        }
+
+        replayAll();
+
+        // when
+        this.packetLog.afterPropertiesSet();
+
+        // then
+        verifyAll();
+
+        for (Event event : Event.values()) {
+            assertEquals(event.ordinal(), this.packetLog.getSampling(event));
+        }
+    }
+
+    /**
+     * testLog01() - events are written to the log when the queue
+     * is processed.
+     */
+    @Test
+    public void testLog01() {
+        // given
+        // when
+        boolean result = this.packetLog.log(Event.QUERY_IN, DHTQueryType.PING,
+                this.addr, 6881, 55);
+
+        // then
+        assertTrue(result);
+        assertEquals(1, this.packetLog.size());
+        assertEquals("", this.out.toString());
+
+        // when
+        int count = this.packetLog.processQueue();
+
+        // then
+        assertEquals(1, count);
+        assertEquals(0, this.packetLog.size());
+        assertTrue(this.out.toString().startsWith(
+                "query_in ping 50.71.214.139:6881 55 @"));
+    }
+
+    /**
+     * testLog02() - events are not logged when sampling is 0 or the logger
+     * is not at INFO.
+     */
+    @Test
+    public void testLog02() {
+        // given
+        this.packetLog.setSampling(Event.INVALID_IN, 0);
+
+        // when
+        boolean result0 = this.packetLog.log(Event.INVALID_IN, null,
+                this.addr, 6881, 1);
+        this.logger.setLevel(Level.WARN);
+        boolean result1 = this.packetLog.log(Event.QUERY_IN, null,
+                this.addr, 6881, 1);
+
+        // then
+        assertFalse(result0);
+        assertFalse(result1);
+        assertEquals(0, this.packetLog.size());
+    }
+
+    /**
+     * testLog03() - events are dropped when the ring buffer is full and
+     * slots are reused once written.
+     */
+    @Test
+    public void testLog03() {
+        // given
+        for (int i = 0; i < 4; i++) {
+            assertTrue(this.packetLog.log(Event.DISCOVERY,
+                    DHTQueryType.FIND_NODE, this.addr, 6881, i));
+        }
+
+        // when
+        boolean result = this.packetLog.log(Event.QUERY_OUT, null,
+                this.addr, 6881, 0);
+
+        // then
+        assertFalse(result);
+        assertEquals(1, this.packetLog.getDropped());
+
+        // when
+        assertEquals(4, this.packetLog.processQueue());
+        result = this.packetLog.log(Event.QUERY_OUT, null, this.addr, 1, 0);
+
+        // then
+        assertTrue(result);
+        assertEquals(1, this.packetLog.processQueue());
+        assertTrue(this.out.toString().contains("dropped 1 packet log events"));
+        assertTrue(this.out.toString().contains("query_out - 50.71.214.139:1"));
+    }
+
+    /**
+     * testLog04() - events from concurrent threads are each written once.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testLog04() throws Exception {
+        // given
+        final DHTPacketLog log = new DHTPacketLog(1024);
+        final AtomicInteger accepted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 5000; j++) {
+                        if (log.log(Event.RESPONSE_IN, DHTQueryType.GET_PEERS,
+                                DHTPacketLogUnitTest.this.addr, j, j)) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+
+        // when
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        int written = 0;
+        boolean running = true;
+
+        while (running) {
+
+            running = false;
+            for (Thread thread : threads) {
+                running |= thread.isAlive();
+            }
+
+            written += log.processQueue();
+        }
+
+        written += log.processQueue();
+
+        // then
+        assertEquals(accepted.get(), written);
+        assertEquals(4 * 5000, written + log.getDropped());
+        assertEquals(0, log.size());
+    }
+}
@@ -18,6 +18,7 @@ package ca.gobits.test.dht.server;
 
 import static ca.gobits.test.dht.DHTTestHelper.assertNodesEquals;
 import static java.net.InetAddress.getByName;
+import static org.easymock.EasyMock.anyBoolean;
 import static org.easymock.EasyMock.aryEq;
 import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
@@ -35,7 +36,6 @@ import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -51,20 +51,30 @@ import org.junit.runner.RunWith;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import ca.gobits.dht.DHTIdentifier;
+import ca.gobits.dht.DHTInfoHash;
 import ca.gobits.dht.DHTInfoHashRoutingTable;
 import ca.gobits.dht.DHTNode;
 import ca.gobits.dht.DHTNodeRoutingTable;
-import ca.gobits.dht.DHTPeer;
 import ca.gobits.dht.bencoding.BDecoder;
 import ca.gobits.dht.bencoding.BEncoder;
 import ca.gobits.dht.factory.DHTNodeFactory;
+import ca.gobits.dht.server.DHTMetrics;
+import ca.gobits.dht.server.DHTMetrics.Drop;
+import ca.gobits.dht.server.DHTMetrics.Traffic;
+import ca.gobits.dht.server.DHTPacketLog;
+import ca.gobits.dht.server.DHTParameters;
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
 import ca.gobits.dht.server.DHTProtocolHandler;
 import ca.gobits.dht.server.DHTQueryProtocol;
 import ca.gobits.dht.server.DHTServerConfig;
 import ca.gobits.dht.server.queue.DHTPingQueue;
 import ca.gobits.dht.server.queue.DHTTokenQueue;
-import ca.gobits.dht.server.scheduling.DHTRoutingTableThreadExecutor;
+import ca.gobits.dht.server.queue.DHTTransaction;
+import ca.gobits.dht.server.queue.DHTTransactionListener;
+import ca.gobits.dht.server.queue.DHTTransactionQueue;
+import ca.gobits.dht.server.scheduling.DHTRoutingTableUpdateRing;
 import ca.gobits.dht.util.DHTConversion;
+import ca.gobits.dht.util.ScrapeFilter;
 
 /**
  * DHTProtocolHandler Unit Tests.
@@ -93,13 +103,27 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
     @Mock
     private DHTServerConfig config;
 
+    /** Mock DHTTransactionQueue. */
+    @Mock
+    private DHTTransactionQueue transactionQueue;
+
     /** Mock DHTPingQueue. */
     @Mock
     private DHTPingQueue pingQueue;
 
-    /** Mock DHTRoutingTableThreadExecutor. */
+    /** Mock DHTTransactionListener. */
+    @Mock
+    private DHTTransactionListener listener;
+
+    /** Mock DHTRoutingTableUpdateRing. */
     @Mock
-    private DHTRoutingTableThreadExecutor rtExecutor;
+    private DHTRoutingTableUpdateRing rtUpdateRing;
+
+    /** DHTMetrics. */
+    private final DHTMetrics metrics = new DHTMetrics();
+
+    /** DHTPacketLog. */
+    private final DHTPacketLog packetLog = new DHTPacketLog();
 
     /** InetSocketAddress. */
     private InetAddress iaddr;
@@ -110,6 +134,9 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
     /** Port. */
     private final int port = 64568;
 
+    /** Token returned to get_peers requests. */
+    private final byte[] token = new byte[] {1, 2, 3, 4, 5, 6, 7, 8 };
+
     /** Node Id: mnopqrstuvwxyz123456. */
     private final byte[] nodeId12345 = new byte[] {109, 110, 111, 112, 113, 114,
             115, 116, 117, 118, 119, 120, 121, 122, 49, 50, 51, 52, 53, 54 };
@@ -122,6 +149,9 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
     public void before() throws Exception {
         ReflectionTestUtils.setField(this.handler, "routingTable",
                 this.routingTable);
+        ReflectionTestUtils.setField(this.handler, "metrics", this.metrics);
+        ReflectionTestUtils.setField(this.handler, "packetLog",
+                this.packetLog);
 
         this.iaddr = InetAddress.getByName("50.71.214.139");
         this.iaddr6 = InetAddress
@@ -145,8 +175,10 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
                 this.port);
 
         // when
-        this.rtExecutor.updateNodeStatus(aryEq(id),
-                isA(InetAddress.class), eq(64568), eq(isIPv6), eq(false));
+        expect(Boolean.valueOf(this.rtUpdateRing.updateNodeStatus(
+                aryEq(id), isA(InetAddress.class), eq(64568), eq(isIPv6),
+                eq(false))))
+            .andReturn(Boolean.TRUE);
 
 //        this.nodeStatusQueue.updateExistingNodeToGood(aryEq(id), eq(isIPv6));
 
@@ -164,6 +196,18 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
         assertTrue(result.contains("d2:ip6:2G"));
         assertTrue(result
                 .endsWith("81:rd2:id20:ABCDEFGHIJKLMNOPQRSTe1:t2:aa1:y1:re"));
+
+        assertEquals(1, this.metrics.getPackets(Traffic.QUERY_IN,
+                DHTQueryType.PING));
+        assertEquals(bb.length, this.metrics.getBytes(Traffic.QUERY_IN,
+                DHTQueryType.PING));
+        assertEquals(1, this.packetLog.size());
+        assertEquals(1, this.metrics.getPackets(Traffic.RESPONSE_OUT,
+                DHTQueryType.PING));
+        assertEquals(resultBytes.length, this.metrics.getBytes(
+                Traffic.RESPONSE_OUT, DHTQueryType.PING));
+        assertEquals(1, this.metrics.getLatency(DHTQueryType.PING)
+                .getCount());
     }
 
     /**
@@ -196,8 +240,10 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
             .andReturn(getFindNodes());
 
 //        this.nodeStatusQueue.updateExistingNodeToGood(aryEq(id), eq(isIPv6));
-        this.rtExecutor.updateNodeStatus(aryEq(id),
-                isA(InetAddress.class), eq(this.port), eq(isIPv6), eq(false));
+        expect(Boolean.valueOf(this.rtUpdateRing.updateNodeStatus(
+                aryEq(id), isA(InetAddress.class), eq(this.port), eq(isIPv6),
+                eq(false))))
+            .andReturn(Boolean.TRUE);
 
 
         replayAll();
@@ -268,8 +314,10 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
 
         // when
 //        this.nodeStatusQueue.updateExistingNodeToGood(aryEq(id), eq(isIPv6));
-        this.rtExecutor.updateNodeStatus(aryEq(id),
-                isA(InetAddress.class), eq(this.port), eq(isIPv6), eq(false));
+        expect(Boolean.valueOf(this.rtUpdateRing.updateNodeStatus(
+                aryEq(id), isA(InetAddress.class), eq(this.port), eq(isIPv6),
+                eq(false))))
+            .andReturn(Boolean.TRUE);
 
 
         expect(this.routingTable.findClosestNodes(aryEq(target), eq(isIPv6)))
@@ -329,6 +377,8 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
 
         String result = new String(bytes);
         assertEquals("d1:rd3:20414:Method Unknowne1:t2:aa1:y1:ee", result);
+        assertEquals(1, this.metrics.getDrops(Drop.INVALID));
+        assertEquals(1, this.metrics.getPackets(Traffic.ERROR_OUT, null));
     }
 
     /**
@@ -393,15 +443,21 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
         DatagramPacket packet = new DatagramPacket(bb, bb.length, this.iaddr,
                 this.port);
 
-        DHTPeer peer = new DHTPeer(InetAddress.getByName("240.120.222.12")
-                .getAddress(), 23);
-        Collection<DHTPeer> peers = Arrays.asList(peer);
+        DHTInfoHash peers = new DHTInfoHash(this.nodeId12345);
+        peers.addPeer(InetAddress.getByName("240.120.222.12").getAddress(),
+                23);
 
         // when
-        expect(this.peerRoutingTable.findPeers(aryEq(this.nodeId12345)))
+        expect(this.peerRoutingTable.findInfoHash(aryEq(this.nodeId12345)))
                 .andReturn(peers);
+        expect(Integer.valueOf(this.config.getValues4Bytes())).andReturn(
+                Integer.valueOf(DHTServerConfig.DEFAULT_VALUES4_BYTES));
+        expect(Integer.valueOf(this.config.getValues6Bytes())).andReturn(
+                Integer.valueOf(DHTServerConfig.DEFAULT_VALUES6_BYTES));
         expectUpdateNodeStatus(false);
 
+        expect(this.tokenTable.generateToken(this.iaddr)).andReturn(
+                this.token);
         replayAll();
         byte[] bytes = this.handler.handle(packet);
 
@@ -417,7 +473,7 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
         Map<String, Object> rmap = (Map<String, Object>) map.get("r");
 
         assertEquals(20, ((byte[]) rmap.get("id")).length);
-        assertEquals(10, ((byte[]) rmap.get("token")).length);
+        assertArrayEquals(this.token, (byte[]) rmap.get("token"));
 
         List<byte[]> list = (List<byte[]>) rmap.get("values");
         assertEquals(1, list.size());
@@ -450,12 +506,14 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
 
         // when
         expectUpdateNodeStatus(false);
-        expect(this.peerRoutingTable.findPeers(aryEq(this.nodeId12345)))
+        expect(this.peerRoutingTable.findInfoHash(aryEq(this.nodeId12345)))
                 .andReturn(null);
         expect(
                 this.routingTable.findClosestNodes(aryEq(this.nodeId12345),
                         eq(isIPv6))).andReturn(getFindNodes());
 
+        expect(this.tokenTable.generateToken(this.iaddr)).andReturn(
+                this.token);
         replayAll();
         byte[] bytes = this.handler.handle(packet);
 
@@ -471,7 +529,7 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
         Map<String, Object> rmap = (Map<String, Object>) map.get("r");
 
         assertEquals(20, ((byte[]) rmap.get("id")).length);
-        assertEquals(10, ((byte[]) rmap.get("token")).length);
+        assertArrayEquals(this.token, (byte[]) rmap.get("token"));
 
         assertFalse(rmap.containsKey("nodes6"));
         assertEquals(416, ((byte[]) rmap.get("nodes")).length);
@@ -511,12 +569,14 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
 
         // when
         expectUpdateNodeStatus(true);
-        expect(this.peerRoutingTable.findPeers(aryEq(this.nodeId12345)))
+        expect(this.peerRoutingTable.findInfoHash(aryEq(this.nodeId12345)))
                 .andReturn(null);
         expect(
                 this.routingTable.findClosestNodes(aryEq(this.nodeId12345),
                         eq(isIPv6))).andReturn(getFindNodes6());
 
+        expect(this.tokenTable.generateToken(this.iaddr6)).andReturn(
+                this.token);
         replayAll();
         byte[] bytes = this.handler.handle(packet);
 
@@ -532,7 +592,7 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
         Map<String, Object> rmap = (Map<String, Object>) map.get("r");
 
         assertEquals(20, ((byte[]) rmap.get("id")).length);
-        assertEquals(10, ((byte[]) rmap.get("token")).length);
+        assertArrayEquals(this.token, (byte[]) rmap.get("token"));
 
         assertFalse(rmap.containsKey("nodes"));
         assertEquals(76, ((byte[]) rmap.get("nodes6")).length);
@@ -562,10 +622,10 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
 
         // when
         expectUpdateNodeStatus(false);
-        expect(this.tokenTable.valid(eq(this.iaddr), eq(p), aryEq(secret)))
+        expect(this.tokenTable.valid(eq(this.iaddr), aryEq(secret)))
                 .andReturn(true);
         this.peerRoutingTable.addPeer(aryEq(this.nodeId12345),
-                aryEq(this.iaddr.getAddress()), eq(p));
+                aryEq(this.iaddr.getAddress()), eq(p), eq(false));
 
         replayAll();
         byte[] bytes = this.handler.handle(packet);
@@ -596,10 +656,10 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
 
         // when
         expectUpdateNodeStatus(false);
-        expect(this.tokenTable.valid(eq(this.iaddr), eq(6881), aryEq(secret)))
+        expect(this.tokenTable.valid(eq(this.iaddr), aryEq(secret)))
                 .andReturn(true);
         this.peerRoutingTable.addPeer(aryEq(this.nodeId12345),
-                aryEq(this.iaddr.getAddress()), eq(p));
+                aryEq(this.iaddr.getAddress()), eq(p), eq(false));
 
         replayAll();
         byte[] bytes = this.handler.handle(packet);
@@ -629,12 +689,11 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
 
         // when
         expectUpdateNodeStatus(false);
-        expect(
-                this.tokenTable.valid(eq(this.iaddr), eq(this.port),
-                        aryEq(secret))).andReturn(true);
+        expect(this.tokenTable.valid(eq(this.iaddr), aryEq(secret)))
+                .andReturn(true);
 
         this.peerRoutingTable.addPeer(aryEq(this.nodeId12345),
-                aryEq(this.iaddr.getAddress()), eq(this.port));
+                aryEq(this.iaddr.getAddress()), eq(this.port), eq(false));
 
         replayAll();
         byte[] bytes = this.handler.handle(packet);
@@ -665,9 +724,8 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
 
         // when
         expectUpdateNodeStatus(false);
-        expect(
-                this.tokenTable.valid(eq(this.iaddr), eq(this.port),
-                        aryEq(secret))).andReturn(false);
+        expect(this.tokenTable.valid(eq(this.iaddr), aryEq(secret)))
+                .andReturn(false);
 
         replayAll();
         byte[] bytes = this.handler.handle(packet);
@@ -694,8 +752,18 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
         DatagramPacket packet = new DatagramPacket(bb, bb.length, this.iaddr,
                 this.port);
 
-        this.rtExecutor.updateNodeStatus(aryEq(id),
-                isA(InetAddress.class), eq(64568), eq(false), eq(true));
+        expect(this.transactionQueue.match(isA(byte[].class),
+                isA(InetAddress.class), eq(64568))).andReturn(
+                new DHTTransaction(0, this.iaddr, this.port,
+                        DHTQueryType.FIND_NODE, 0));
+
+        expect(Boolean.valueOf(this.rtUpdateRing.updateNodeStatus(
+                aryEq(id), isA(InetAddress.class), eq(64568), eq(false),
+                eq(true))))
+            .andReturn(Boolean.TRUE);
+
+        expect(this.routingTable.findExactNode(isA(byte[].class),
+                eq(false))).andReturn(null).times(16);
 
         this.pingQueue.pingWithDelay(getByName("37.76.160.28"), 37518);
         this.pingQueue.pingWithDelay(getByName("182.59.176.199"), 11503);
@@ -750,8 +818,18 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
         DatagramPacket packet = new DatagramPacket(bb, bb.length, this.iaddr,
                 this.port);
 
-        this.rtExecutor.updateNodeStatus(aryEq(id),
-                isA(InetAddress.class), eq(64568), eq(false), eq(true));
+        expect(this.transactionQueue.match(isA(byte[].class),
+                isA(InetAddress.class), eq(64568))).andReturn(
+                new DHTTransaction(0, this.iaddr, this.port,
+                        DHTQueryType.FIND_NODE, 0));
+
+        expect(Boolean.valueOf(this.rtUpdateRing.updateNodeStatus(
+                aryEq(id), isA(InetAddress.class), eq(64568), eq(false),
+                eq(true))))
+            .andReturn(Boolean.TRUE);
+
+        expect(this.routingTable.findExactNode(isA(byte[].class),
+                eq(true))).andReturn(null).times(2);
 
         // when
         this.pingQueue.pingWithDelay(InetAddress
@@ -816,6 +894,332 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
                 new String(result));
     }
 
+    /**
+     * testHandle19() - test "get_peers" scrape request returns BEP 33
+     * Bloom filters instead of values.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testHandle19() throws Exception {
+        // given
+        String dat = "d1:ad2:id20:abcdefghij01234567899:info_hash20:"
+                + "mnopqrstuvwxyz1234566:scrapei1ee1:q9:get_peers1:t2:aa"
+                + "1:y1:qe";
+        byte[] bb = dat.getBytes();
+
+        DatagramPacket packet = new DatagramPacket(bb, bb.length, this.iaddr,
+                this.port);
+
+        DHTInfoHash peers = new DHTInfoHash(this.nodeId12345);
+        peers.addPeer(InetAddress.getByName("240.120.222.12").getAddress(),
+                23, true);
+
+        // when
+        expect(this.peerRoutingTable.findInfoHash(aryEq(this.nodeId12345)))
+                .andReturn(peers);
+        expectUpdateNodeStatus(false);
+
+        expect(this.tokenTable.generateToken(this.iaddr)).andReturn(
+                this.token);
+        replayAll();
+        byte[] bytes = this.handler.handle(packet);
+
+        // then
+        verifyAll();
+
+        Map<String, Object> map = (Map<String, Object>) new BDecoder()
+            .decode(bytes);
+        Map<String, Object> rmap = (Map<String, Object>) map.get("r");
+
+        assertNull(rmap.get("values"));
+        assertEquals(256, ((byte[]) rmap.get("BFsd")).length);
+        assertEquals(256, ((byte[]) rmap.get("BFpe")).length);
+        assertEquals(1, ScrapeFilter.estimate((byte[]) rmap.get("BFsd")));
+        assertEquals(0, ScrapeFilter.estimate((byte[]) rmap.get("BFpe")));
+    }
+
+    /**
+     * testHandle20() - "announce_peer" request from a seed.
+     *
+     * @throws Exception Exception
+     */
+    @Test
+    public void testHandle20() throws Exception {
+        // given
+        int p = 6881;
+        byte[] secret = "aoeusnth".getBytes();
+        String dat = "d1:ad2:id20:abcdefghij01234567899:info_hash20:"
+                + "mnopqrstuvwxyz1234564:porti6881e4:seedi1e5:token8:aoeusnth"
+                + "e1:q13:announce_peer1:t2:aa1:y1:qe";
+        byte[] bb = dat.getBytes();
+
+        DatagramPacket packet = new DatagramPacket(bb, bb.length, this.iaddr,
+                this.port);
+
+        // when
+        expectUpdateNodeStatus(false);
+        expect(this.tokenTable.valid(eq(this.iaddr), aryEq(secret)))
+                .andReturn(true);
+        this.peerRoutingTable.addPeer(aryEq(this.nodeId12345),
+                aryEq(this.iaddr.getAddress()), eq(p), eq(true));
+
+        replayAll();
+        byte[] bytes = this.handler.handle(packet);
+
+        // then
+        verifyAll();
+
+        verifyAnnouncePeer(bytes);
+    }
+
+    /**
+     * testHandle21() - test "sample_infohashes" request.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testHandle21() throws Exception {
+        // given
+        boolean isIPv6 = false;
+        byte[] samples = new byte[40];
+        String dat = "d1:ad2:id20:abcdefghij01234567896:target20:"
+                + "mnopqrstuvwxyz123456e1:q17:sample_infohashes1:t2:aa"
+                + "1:y1:qe";
+        byte[] bb = dat.getBytes();
+
+        DatagramPacket packet = new DatagramPacket(bb, bb.length, this.iaddr,
+                this.port);
+
+        // when
+        expectUpdateNodeStatus(false);
+        expect(this.config.getNodeId()).andReturn(this.nodeId12345);
+        expect(Integer.valueOf(this.peerRoutingTable
+                .getSampleIntervalInSeconds())).andReturn(
+                Integer.valueOf(21600));
+        expect(Integer.valueOf(this.peerRoutingTable.getInfoHashCount()))
+                .andReturn(Integer.valueOf(2));
+        expect(this.peerRoutingTable.sampleInfoHashes()).andReturn(samples);
+        expect(
+                this.routingTable.findClosestNodes(aryEq(this.nodeId12345),
+                        eq(isIPv6))).andReturn(getFindNodes());
+
+        replayAll();
+        byte[] bytes = this.handler.handle(packet);
+
+        // then
+        verifyAll();
+
+        Map<String, Object> map = (Map<String, Object>) new BDecoder()
+            .decode(bytes);
+        Map<String, Object> rmap = (Map<String, Object>) map.get("r");
+
+        assertEquals("aa", new String((byte[]) map.get("t")));
+        assertEquals("r", new String((byte[]) map.get("y")));
+        assertArrayEquals(this.nodeId12345, (byte[]) rmap.get("id"));
+        assertEquals(Long.valueOf(21600), rmap.get("interval"));
+        assertEquals(Long.valueOf(2), rmap.get("num"));
+        assertArrayEquals(samples, (byte[]) rmap.get("samples"));
+        assertNotNull(rmap.get("nodes"));
+    }
+
+    /**
+     * testHandle22() - response that does not match an outstanding query
+     * is dropped.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testHandle22() throws Exception {
+        // given
+        byte[] bb = Base64.decodeBase64(getBase64FindNodeResponse());
+
+        DatagramPacket packet = new DatagramPacket(bb, bb.length, this.iaddr,
+                this.port);
+
+        expect(this.transactionQueue.match(isA(byte[].class),
+                isA(InetAddress.class), eq(64568))).andReturn(null);
+
+        // when
+        replayAll();
+        byte[] result = this.handler.handle(packet);
+
+        // then
+        verifyAll();
+
+        assertNull(result);
+        assertEquals(1, this.metrics.getDrops(Drop.UNSOLICITED));
+    }
+
+    /**
+     * testHandle23() - nodes that are already GOOD in the routing table
+     * are not pinged.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testHandle23() throws Exception {
+        // given
+        byte[] id = new byte[] {29, -68, -20, 35, -58, 105, 115, 81, -1, 74,
+                -20, 41, -51, -70, -85, -14, -5, -29, 70, 103 };
+        byte[] bb = Base64.decodeBase64(getBase64FindNodeResponse());
+
+        DatagramPacket packet = new DatagramPacket(bb, bb.length, this.iaddr,
+                this.port);
+
+        DHTNode good = DHTNodeFactory.create(id, DHTNode.State.GOOD);
+
+        expect(this.transactionQueue.match(isA(byte[].class),
+                isA(InetAddress.class), eq(64568))).andReturn(
+                new DHTTransaction(0, this.iaddr, this.port,
+                        DHTQueryType.FIND_NODE, 0));
+
+        expect(this.routingTable.findExactNode(isA(byte[].class),
+                anyBoolean())).andReturn(good).times(16);
+
+        expect(Boolean.valueOf(this.rtUpdateRing.updateNodeStatus(
+                aryEq(id), isA(InetAddress.class), eq(64568), eq(false),
+                eq(true))))
+            .andReturn(Boolean.TRUE);
+
+        // when
+        replayAll();
+        byte[] result = this.handler.handle(packet);
+
+        // then
+        verifyAll();
+
+        assertNull(result);
+    }
+
+    /**
+     * testHandle24() - listener of the matched query is given the response.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testHandle24() throws Exception {
+        // given
+        byte[] id = DHTIdentifier.sha1("salt".getBytes());
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        map.put("t", "aa");
+        map.put("y", "r");
+        Map<Object, Object> r = new HashMap<Object, Object>();
+        r.put("id", id);
+        map.put("r", r);
+
+        byte[] bb = BEncoder.bencoding(map);
+        DatagramPacket packet = new DatagramPacket(bb, bb.length, this.iaddr,
+                this.port);
+
+        DHTTransaction transaction = new DHTTransaction(0, this.iaddr,
+                this.port, DHTQueryType.PING, 0, this.listener);
+
+        expect(this.transactionQueue.match(isA(byte[].class),
+                isA(InetAddress.class), eq(64568))).andReturn(transaction);
+
+        this.listener.responded(eq(transaction), isA(DHTParameters.class));
+
+        expect(Boolean.valueOf(this.rtUpdateRing.updateNodeStatus(
+                aryEq(id), isA(InetAddress.class), eq(64568), eq(false),
+                eq(false))))
+            .andReturn(Boolean.TRUE);
+
+        // when
+        replayAll();
+        byte[] result = this.handler.handle(packet);
+
+        // then
+        verifyAll();
+
+        assertNull(result);
+    }
+
+    /**
+     * testHandle25() - "ping" request is answered when the routing table
+     * ring is full, the node update is counted as dropped.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testHandle25() throws Exception {
+        // given
+        String dat = "d1:ad2:id20:abcdefghij0123456789e1:q4:ping1:t2:aa1:y1:qe";
+        byte[] bb = dat.getBytes();
+        byte[] id = "abcdefghij0123456789".getBytes();
+
+        DatagramPacket packet = new DatagramPacket(bb, bb.length, this.iaddr,
+                this.port);
+
+        expect(Boolean.valueOf(this.rtUpdateRing.updateNodeStatus(
+                aryEq(id), isA(InetAddress.class), eq(64568), eq(false),
+                eq(false))))
+            .andReturn(Boolean.FALSE);
+
+        expect(this.config.getNodeId()).andReturn(
+                "ABCDEFGHIJKLMNOPQRST".getBytes());
+
+        // when
+        replayAll();
+        byte[] resultBytes = this.handler.handle(packet);
+
+        // then
+        verifyAll();
+
+        assertNotNull(resultBytes);
+        assertEquals(1, this.metrics.getDrops(Drop.RING_FULL));
+    }
+
+    /**
+     * testHandle26() - "ping" request without an id is answered, the
+     * routing table is not updated.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testHandle26() throws Exception {
+        // given
+        String dat = "d1:ade1:q4:ping1:t2:aa1:y1:qe";
+        byte[] bb = dat.getBytes();
+
+        DatagramPacket packet = new DatagramPacket(bb, bb.length, this.iaddr,
+                this.port);
+
+        expect(this.config.getNodeId()).andReturn(
+                "ABCDEFGHIJKLMNOPQRST".getBytes());
+
+        // when
+        replayAll();
+        byte[] resultBytes = this.handler.handle(packet);
+
+        // then
+        verifyAll();
+
+        String result = new String(resultBytes);
+        assertTrue(result
+                .endsWith("1:rd2:id20:ABCDEFGHIJKLMNOPQRSTe1:t2:aa1:y1:re"));
+        assertEquals(0, this.metrics.getDrops(Drop.FAILED));
+    }
+
+    /**
+     * testHandle27() - "find_node" request with an empty id and target is
+     * answered with an error, the routing table is not used.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testHandle27() throws Exception {
+        // given
+        String dat = "d1:ad2:id0:6:target0:e1:q9:find_node1:t2:aa1:y1:qe";
+        byte[] bb = dat.getBytes();
+
+        DatagramPacket packet = new DatagramPacket(bb, bb.length, this.iaddr,
+                this.port);
+
+        // when
+        replayAll();
+        byte[] resultBytes = this.handler.handle(packet);
+
+        // then
+        verifyAll();
+
+        String result = new String(resultBytes);
+        assertTrue(result.contains("3:203"));
+        assertEquals(0, this.metrics.getDrops(Drop.FAILED));
+    }
+
     /**
      * Verify AnnouncePeer response.
      * @param bytes  bytes
@@ -954,8 +1358,10 @@ public final class DHTProtocolHandlerUnitTest extends EasyMockSupport {
                 .toByteArray();
 
 //        if (isIPv6) {
-            this.rtExecutor.updateNodeStatus(aryEq(bytes),
-                    isA(InetAddress.class), eq(64568), eq(isIPv6), eq(false));
+            expect(Boolean.valueOf(this.rtUpdateRing.updateNodeStatus(
+                    aryEq(bytes), isA(InetAddress.class), eq(64568), eq(isIPv6),
+                    eq(false))))
+                .andReturn(Boolean.TRUE);
 
 //            this.nodeStatusQueue.updateExistingNodeToGood(aryEq(bytes),
 //                    eq(isIPv6));
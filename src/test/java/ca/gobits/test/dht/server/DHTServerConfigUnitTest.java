@@ -22,11 +22,17 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.net.InetAddress;
+
 import org.apache.commons.codec.binary.Base64;
 import org.apache.log4j.Level;
 import org.junit.Test;
 
+import ca.gobits.dht.DHTSecureNodeId;
+import ca.gobits.dht.server.DHTPacketLog.Event;
 import ca.gobits.dht.server.DHTServerConfig;
+import ca.gobits.dht.server.DHTServerConfig.EvictionPolicy;
+import ca.gobits.dht.server.DHTServerConfig.SecureNodeIdPolicy;
 
 /**
  * DHTServerConfig Unit Test.
@@ -268,4 +274,364 @@ public final class DHTServerConfigUnitTest {
         assertTrue(config.isShowHelp());
         assertNull(result);
     }
+
+    /**
+     * testParse15() - Test get_peers reply byte budgets.
+     */
+    @Test
+    public void testParse15() {
+        // given
+        String[] args = new String[] {"-values4", "80", "-values6", "0"};
+        DHTServerConfig config = new DHTServerConfig();
+
+        // when
+        config.parse(args);
+
+        // then
+        assertFalse(config.isShowHelp());
+        assertEquals(80, config.getValues4Bytes());
+        assertEquals(0, config.getValues6Bytes());
+    }
+
+    /**
+     * testParse16() - Test queued packets and bytes per second.
+     */
+    @Test
+    public void testParse16() {
+        // given
+        String[] args = new String[] {"-pps", "200", "-bps", "20000"};
+        DHTServerConfig config = new DHTServerConfig();
+
+        // when
+        config.parse(args);
+
+        // then
+        assertFalse(config.isShowHelp());
+        assertEquals(200, config.getPacketsPerSecond());
+        assertEquals(20000, config.getBytesPerSecond());
+    }
+
+    /**
+     * testParse17() - Test invalid packets per second.
+     */
+    @Test
+    public void testParse17() {
+        // given
+        String[] args = new String[] {"-pps", "0"};
+        DHTServerConfig config = new DHTServerConfig();
+
+        // when
+        config.parse(args);
+
+        // then
+        assertTrue(config.isShowHelp());
+    }
+
+    /**
+     * testParse18() - set the coalesce window.
+     */
+    @Test
+    public void testParse18() {
+        // given
+        String[] args = new String[] {"-coalesce", "250"};
+        DHTServerConfig config = new DHTServerConfig();
+        assertEquals(DHTServerConfig.DEFAULT_COALESCE_MILLIS,
+                config.getCoalesceMillis());
+
+        // when
+        config.parse(args);
+
+        // then
+        assertFalse(config.isShowHelp());
+        assertEquals(250, config.getCoalesceMillis());
+    }
+
+    /**
+     * testParse19() - invalid coalesce window.
+     */
+    @Test
+    public void testParse19() {
+        // given
+        String[] args = new String[] {"-coalesce", "-1"};
+        DHTServerConfig config = new DHTServerConfig();
+
+        // when
+        config.parse(args);
+
+        // then
+        assertTrue(config.isShowHelp());
+    }
+
+    /**
+     * testParse20() - set the number of routing table shards.
+     */
+    @Test
+    public void testParse20() {
+        // given
+        String[] args = new String[] {"-shards", "16"};
+        DHTServerConfig config = new DHTServerConfig();
+        assertEquals(1, config.getShards());
+
+        // when
+        config.parse(args);
+
+        // then
+        assertFalse(config.isShowHelp());
+        assertEquals(16, config.getShards());
+    }
+
+    /**
+     * testParse21() - number of shards is not a power of two.
+     */
+    @Test
+    public void testParse21() {
+        // given
+        String[] args = new String[] {"-shards", "12"};
+        DHTServerConfig config = new DHTServerConfig();
+
+        // when
+        config.parse(args);
+
+        // then
+        assertTrue(config.isShowHelp());
+    }
+
+    /**
+     * testParse22() - node identifier is made for the external IP.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testParse22() throws Exception {
+        // given
+        String[] args = new String[] {"-ip", "124.31.75.21", "-secureid",
+                "enforce"};
+        DHTServerConfig config = new DHTServerConfig();
+        assertEquals(SecureNodeIdPolicy.PREFER,
+                config.getSecureNodeIdPolicy());
+
+        // when
+        config.parse(args);
+
+        // then
+        assertFalse(config.isShowHelp());
+        assertTrue(DHTSecureNodeId.isValid(config.getNodeId(), InetAddress
+                .getByName("124.31.75.21").getAddress()));
+        assertEquals(SecureNodeIdPolicy.ENFORCE,
+                config.getSecureNodeIdPolicy());
+    }
+
+    /**
+     * testParse23() - invalid secure node identifier policy.
+     */
+    @Test
+    public void testParse23() {
+        // given
+        String[] args = new String[] {"-secureid", "maybe"};
+        DHTServerConfig config = new DHTServerConfig();
+
+        // when
+        config.parse(args);
+
+        // then
+        assertTrue(config.isShowHelp());
+    }
+
+    /**
+     * testParse24() - set the limits on nodes per IP address and subnet.
+     */
+    @Test
+    public void testParse24() {
+        // given
+        String[] args = new String[] {"-ipnodes", "3", "-subnetnodes", "0",
+                "-bucketipnodes", "2", "-bucketsubnetnodes", "4"};
+        DHTServerConfig config = new DHTServerConfig();
+        assertEquals(DHTServerConfig.DEFAULT_NODES_PER_IP,
+                config.getNodesPerIp());
+
+        // when
+        config.parse(args);
+
+        // then
+        assertFalse(config.isShowHelp());
+        assertEquals(3, config.getNodesPerIp());
+        assertEquals(0, config.getNodesPerSubnet());
+        assertEquals(2, config.getNodesPerIpInBucket());
+        assertEquals(4, config.getNodesPerSubnetInBucket());
+    }
+
+    /**
+     * testParse25() - negative limit on nodes per IP address.
+     */
+    @Test
+    public void testParse25() {
+        // given
+        String[] args = new String[] {"-bucketipnodes", "-1"};
+        DHTServerConfig config = new DHTServerConfig();
+
+        // when
+        config.parse(args);
+
+        // then
+        assertTrue(config.isShowHelp());
+    }
+
+    /**
+     * testParse26() - set the ban list file.
+     */
+    @Test
+    public void testParse26() {
+        // given
+        String[] args = new String[] {"-banlist", "banned.txt"};
+        DHTServerConfig config = new DHTServerConfig();
+        assertNull(config.getBanList());
+
+        // when
+        config.parse(args);
+
+        // then
+        assertFalse(config.isShowHelp());
+        assertEquals("banned.txt", config.getBanList());
+    }
+
+    /**
+     * testParse27() - set seconds between logging metrics.
+     */
+    @Test
+    public void testParse27() {
+        // given
+        String[] args = new String[] {"-metrics", "60"};
+        DHTServerConfig config = new DHTServerConfig();
+        assertEquals(0, config.getMetricsInSeconds());
+
+        // when
+        config.parse(args);
+
+        // then
+        assertFalse(config.isShowHelp());
+        assertEquals(60, config.getMetricsInSeconds());
+    }
+
+    /**
+     * testParse28() - negative metrics interval is invalid.
+     */
+    @Test
+    public void testParse28() {
+        // given
+        String[] args = new String[] {"-metrics", "-1"};
+        DHTServerConfig config = new DHTServerConfig();
+
+        // when
+        config.parse(args);
+
+        // then
+        assertTrue(config.isShowHelp());
+    }
+
+    /**
+     * testParse29() - record events with JDK Flight Recorder.
+     */
+    @Test
+    public void testParse29() {
+        // given
+        String[] args = new String[] {"-jfr"};
+        DHTServerConfig config = new DHTServerConfig();
+        assertFalse(config.isFlightRecorder());
+
+        // when
+        config.parse(args);
+
+        // then
+        assertFalse(config.isShowHelp());
+        assertTrue(config.isFlightRecorder());
+    }
+
+    /**
+     * testParse30() - sampling of packet events.
+     */
+    @Test
+    public void testParse30() {
+        // given
+        String[] args = new String[] {"-logsample",
+                "query_in=100, query_out=0"};
+        DHTServerConfig config = new DHTServerConfig();
+        assertEquals(1, config.getLogSampling(Event.QUERY_IN));
+
+        // when
+        config.parse(args);
+
+        // then
+        assertFalse(config.isShowHelp());
+        assertEquals(100, config.getLogSampling(Event.QUERY_IN));
+        assertEquals(0, config.getLogSampling(Event.QUERY_OUT));
+        assertEquals(1, config.getLogSampling(Event.RESPONSE_IN));
+    }
+
+    /**
+     * testParse31() - invalid sampling of packet events shows help.
+     */
+    @Test
+    public void testParse31() {
+        // given
+        DHTServerConfig config = new DHTServerConfig();
+
+        // when
+        config.parse(new String[] {"-logsample", "query_in=-1"});
+
+        // then
+        assertTrue(config.isShowHelp());
+
+        // when
+        config = new DHTServerConfig();
+        config.parse(new String[] {"-logsample", "unknown=1"});
+
+        // then
+        assertTrue(config.isShowHelp());
+    }
+
+    /**
+     * testParse32() - peer capacity, expiry and eviction policy.
+     */
+    @Test
+    public void testParse32() {
+        // given
+        String[] args = new String[] {"-peercapacity", "5000", "-peerttl",
+                "45", "-eviction", "lru"};
+        DHTServerConfig config = new DHTServerConfig();
+        assertEquals(DHTServerConfig.DEFAULT_PEER_CAPACITY,
+                config.getPeerCapacity());
+        assertEquals(DHTServerConfig.DEFAULT_PEER_TTL_IN_MINUTES,
+                config.getPeerTtlInMinutes());
+        assertEquals(EvictionPolicy.TINYLFU, config.getEvictionPolicy());
+
+        // when
+        config.parse(args);
+
+        // then
+        assertFalse(config.isShowHelp());
+        assertEquals(5000, config.getPeerCapacity());
+        assertEquals(45, config.getPeerTtlInMinutes());
+        assertEquals(EvictionPolicy.LRU, config.getEvictionPolicy());
+    }
+
+    /**
+     * testParse33() - peer capacity and expiry must be positive.
+     */
+    @Test
+    public void testParse33() {
+        // given
+        DHTServerConfig config = new DHTServerConfig();
+
+        // when
+        config.parse(new String[] {"-peercapacity", "0"});
+
+        // then
+        assertTrue(config.isShowHelp());
+
+        // when
+        config = new DHTServerConfig();
+        config.parse(new String[] {"-peerttl", "0"});
+
+        // then
+        assertTrue(config.isShowHelp());
+    }
 }
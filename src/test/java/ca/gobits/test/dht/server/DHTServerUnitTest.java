@@ -16,13 +16,13 @@
 
 package ca.gobits.test.dht.server;
 
-import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.isA;
+import static org.junit.Assert.assertEquals;
 
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
-import java.net.InetAddress;
 
 import org.apache.log4j.Level;
 import org.easymock.EasyMockRunner;
@@ -32,14 +32,17 @@ import org.easymock.TestSubject;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import ca.gobits.dht.DHTIdentifier;
+import ca.gobits.dht.server.DHTBanList;
+import ca.gobits.dht.server.DHTBootstrap;
+import ca.gobits.dht.server.DHTMetrics;
 import ca.gobits.dht.server.DHTProtocolHandler;
 import ca.gobits.dht.server.DHTServer;
 import ca.gobits.dht.server.DHTServerConfig;
-import ca.gobits.dht.server.queue.DHTFindNodeQueue;
 
 /**
  * DHTServer UnitTests.
@@ -69,9 +72,16 @@ public final class DHTServerUnitTest extends EasyMockSupport {
     @Mock
     private DHTServerConfig config;
 
-    /** Mock DHTFindNodeQueue. */
+    /** Mock DHTBanList. */
     @Mock
-    private DHTFindNodeQueue findNodeQueue;
+    private DHTBanList banList;
+
+    /** Mock DHTBootstrap. */
+    @Mock
+    private DHTBootstrap bootstrap;
+
+    /** DHTMetrics. */
+    private final DHTMetrics metrics = new DHTMetrics();
 
     /** Node ID. */
     private final byte[] nodeId = DHTIdentifier.sha1("salt".getBytes());
@@ -82,6 +92,7 @@ public final class DHTServerUnitTest extends EasyMockSupport {
     @Before
     public void before() {
         ReflectionTestUtils.setField(this.server, "stop", Boolean.TRUE);
+        ReflectionTestUtils.setField(this.server, "metrics", this.metrics);
     }
 
     /**
@@ -96,9 +107,11 @@ public final class DHTServerUnitTest extends EasyMockSupport {
         // when
         expect(this.config.getNodeId()).andReturn(this.nodeId);
         expect(this.serverSocket.getLocalPort()).andReturn(port);
-        expect(this.config.getBootstrapNodes()).andReturn(null);
+        expect(this.bootstrap.start()).andReturn(null);
         expect(this.config.getLogLevel()).andReturn(Level.INFO);
+        expect(this.config.isFlightRecorder()).andReturn(false);
         this.serverSocket.receive(isA(DatagramPacket.class));
+        expect(this.banList.isBanned(null)).andReturn(false);
         this.socketThreadPool.execute(isA(Runnable.class));
         this.socketThreadPool.shutdown();
         this.serverSocket.close();
@@ -110,27 +123,53 @@ public final class DHTServerUnitTest extends EasyMockSupport {
         verifyAll();
     }
 
-
     /**
-     * testStart02() - with bootstrap nodes.
+     * testStart02() - packets from banned addresses are dropped.
      * @throws Exception  Exception
      */
     @Test
     public void testStart02() throws Exception {
         // given
         int port = 6881;
-        String[] nodes = new String[] {"127.0.0.1:7789"};
 
         // when
-        expect(this.config.getNodeId()).andReturn(this.nodeId).times(2);
+        expect(this.config.getNodeId()).andReturn(this.nodeId);
         expect(this.serverSocket.getLocalPort()).andReturn(port);
-        expect(this.config.getBootstrapNodes()).andReturn(nodes);
-        this.findNodeQueue.findNodesWithDelay(isA(InetAddress.class), eq(7789),
-                eq(this.nodeId));
+        expect(this.bootstrap.start()).andReturn(null);
+        expect(this.config.getLogLevel()).andReturn(Level.INFO);
+        expect(this.config.isFlightRecorder()).andReturn(false);
+        this.serverSocket.receive(isA(DatagramPacket.class));
+        expect(this.banList.isBanned(null)).andReturn(true);
+        this.socketThreadPool.shutdown();
+        this.serverSocket.close();
+
+        replayAll();
+        this.server.start();
+
+        // then
+        verifyAll();
+        assertEquals(1, this.metrics.getDrops(DHTMetrics.Drop.BANNED));
+    }
 
+    /**
+     * testStart03() - packets are dropped when the handler threads are busy.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testStart03() throws Exception {
+        // given
+        int port = 6881;
+
+        // when
+        expect(this.config.getNodeId()).andReturn(this.nodeId);
+        expect(this.serverSocket.getLocalPort()).andReturn(port);
+        expect(this.bootstrap.start()).andReturn(null);
         expect(this.config.getLogLevel()).andReturn(Level.INFO);
+        expect(this.config.isFlightRecorder()).andReturn(false);
         this.serverSocket.receive(isA(DatagramPacket.class));
+        expect(this.banList.isBanned(null)).andReturn(false);
         this.socketThreadPool.execute(isA(Runnable.class));
+        expectLastCall().andThrow(new TaskRejectedException("full"));
         this.socketThreadPool.shutdown();
         this.serverSocket.close();
 
@@ -139,5 +178,6 @@ public final class DHTServerUnitTest extends EasyMockSupport {
 
         // then
         verifyAll();
+        assertEquals(1, this.metrics.getDrops(DHTMetrics.Drop.REJECTED));
     }
 }
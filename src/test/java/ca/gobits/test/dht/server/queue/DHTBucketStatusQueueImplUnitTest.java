@@ -0,0 +1,324 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.test.dht.server.queue;
+
+import static ca.gobits.dht.factory.DHTNodeFactory.create;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.easymock.EasyMockRunner;
+import org.easymock.EasyMockSupport;
+import org.easymock.Mock;
+import org.easymock.TestSubject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import ca.gobits.dht.DHTBucket;
+import ca.gobits.dht.DHTIdentifier;
+import ca.gobits.dht.DHTNode;
+import ca.gobits.dht.DHTNode.State;
+import ca.gobits.dht.DHTNodeRoutingTable;
+import ca.gobits.dht.comparator.DHTBucketComparator;
+import ca.gobits.dht.server.queue.DHTBucketStatusQueueImpl;
+import ca.gobits.dht.server.queue.DHTFindNodeQueue;
+import ca.gobits.dht.server.queue.DHTPingQueue;
+import ca.gobits.dht.server.scheduling.DHTRoutingTableUpdateRing;
+import ca.gobits.dht.util.ConcurrentSortedList;
+import ca.gobits.dht.util.SortedCollection;
+
+/**
+ * DHTBucketStatusQueueImpl Unit Tests.
+ *
+ */
+@RunWith(EasyMockRunner.class)
+public final class DHTBucketStatusQueueImplUnitTest extends EasyMockSupport {
+
+    /** Number of millis in a minute. */
+    private static final long MINUTE = 60 * 1000;
+
+    /** Instance of DHTBucketStatusQueueImpl. */
+    @TestSubject
+    private final DHTBucketStatusQueueImpl bucketStatusQueue =
+            new DHTBucketStatusQueueImpl();
+
+    /** Mock DHTNodeRoutingTable. */
+    @Mock
+    private DHTNodeRoutingTable rt;
+
+    /** Mock DHTFindNodeQueue. */
+    @Mock
+    private DHTFindNodeQueue findNodeQueue;
+
+    /** Mock DHTPingQueue. */
+    @Mock
+    private DHTPingQueue pingQueue;
+
+    /** Mock DHTRoutingTableUpdateRing. */
+    @Mock
+    private DHTRoutingTableUpdateRing rtUpdateRing;
+
+    /** Bucket covering the whole ID space. */
+    private final DHTBucket bucket = new DHTBucket(new byte[20],
+            maxNodeId());
+
+    /** IPv4 buckets. */
+    private final SortedCollection<DHTBucket> buckets =
+            new ConcurrentSortedList<DHTBucket>(
+                    DHTBucketComparator.getInstance(), false);
+
+    /** IPv6 buckets. */
+    private final SortedCollection<DHTBucket> buckets6 =
+            new ConcurrentSortedList<DHTBucket>(
+                    DHTBucketComparator.getInstance(), false);
+
+    /** Current time in millis. */
+    private final long now = System.currentTimeMillis();
+
+    /** Node address. */
+    private InetAddress addr;
+
+    /**
+     * before().
+     * @throws Exception  Exception
+     */
+    @Before
+    public void before() throws Exception {
+        this.addr = InetAddress.getByName("127.0.0.1");
+        this.buckets.add(this.bucket);
+    }
+
+    /**
+     * testProcessQueue01() - recently changed bucket is not refreshed.
+     */
+    @Test
+    public void testProcessQueue01() {
+        // given
+        this.bucket.setLastChanged(new Date(this.now));
+        expectBuckets();
+
+        // when
+        replayAll();
+        int result = this.bucketStatusQueue.processQueue(this.now + MINUTE);
+
+        // then
+        verifyAll();
+        assertEquals(0, result);
+        assertEquals(1, this.bucketStatusQueue.getQueue(false).size());
+        assertEquals(this.now + 15 * MINUTE, this.bucket.getRefresh()
+                .getDeadline());
+    }
+
+    /**
+     * testProcessQueue02() - only the two least recently seen stale nodes
+     * are pinged, the most recently seen node is sent a find_node.
+     */
+    @Test
+    public void testProcessQueue02() {
+        // given
+        DHTNode n0 = node(1, State.GOOD, 40);
+        DHTNode n1 = node(2, State.GOOD, 30);
+        DHTNode n2 = node(3, State.GOOD, 20);
+        DHTNode n3 = node(4, State.GOOD, 1);
+
+        this.bucket.setLastChanged(new Date(this.now - 20 * MINUTE));
+        expectBuckets();
+        expect(this.rt.findNodes(this.bucket, false)).andReturn(
+                new ArrayList<DHTNode>(Arrays.asList(n3, n2, n1, n0)));
+
+        // when
+        this.pingQueue.ping(this.addr, 1);
+        this.pingQueue.ping(this.addr, 2);
+        this.findNodeQueue.findNodes(eq(this.addr), eq(4),
+                isA(byte[].class));
+
+        replayAll();
+        int result = this.bucketStatusQueue.processQueue(this.now);
+
+        // then
+        verifyAll();
+        assertEquals(1, result);
+        assertEquals(State.QUESTIONABLE, n0.getState());
+        assertEquals(State.QUESTIONABLE, n1.getState());
+        assertEquals(State.GOOD, n2.getState());
+        assertEquals(State.GOOD, n3.getState());
+        assertEquals(this.now + MINUTE, this.bucket.getRefresh()
+                .getDeadline());
+    }
+
+    /**
+     * testProcessQueue03() - QUESTIONABLE node is pinged again and UNKNOWN
+     * node is removed.
+     */
+    @Test
+    public void testProcessQueue03() {
+        // given
+        DHTNode n0 = node(1, State.UNKNOWN, 40);
+        DHTNode n1 = node(2, State.QUESTIONABLE, 30);
+
+        this.bucket.setLastChanged(new Date(this.now - 20 * MINUTE));
+        expectBuckets();
+        expect(this.rt.findNodes(this.bucket, false)).andReturn(
+                new ArrayList<DHTNode>(Arrays.asList(n0, n1)));
+
+        // when
+        expect(Boolean.valueOf(this.rtUpdateRing.removeNode(n0)))
+                .andReturn(Boolean.TRUE);
+        this.pingQueue.ping(this.addr, 2);
+        this.findNodeQueue.findNodes(eq(this.addr), eq(2),
+                isA(byte[].class));
+
+        replayAll();
+        int result = this.bucketStatusQueue.processQueue(this.now);
+
+        // then
+        verifyAll();
+        assertEquals(1, result);
+        assertEquals(State.UNKNOWN, n1.getState());
+        assertEquals(this.now + MINUTE, this.bucket.getRefresh()
+                .getDeadline());
+    }
+
+    /**
+     * testProcessQueue04() - empty bucket sends find_node to the closest
+     * node.
+     */
+    @Test
+    public void testProcessQueue04() {
+        // given
+        DHTNode n0 = node(1, State.GOOD, 1);
+
+        this.bucket.setLastChanged(new Date(this.now - 20 * MINUTE));
+        expectBuckets();
+        expect(this.rt.findNodes(this.bucket, false)).andReturn(
+                new ArrayList<DHTNode>());
+        expect(this.rt.findClosestNodes(isA(byte[].class), eq(1), eq(false)))
+                .andReturn(Arrays.asList(n0));
+
+        // when
+        this.findNodeQueue.findNodes(eq(this.addr), eq(1),
+                isA(byte[].class));
+
+        replayAll();
+        int result = this.bucketStatusQueue.processQueue(this.now);
+
+        // then
+        verifyAll();
+        assertEquals(1, result);
+        assertEquals(this.now + 15 * MINUTE, this.bucket.getRefresh()
+                .getDeadline());
+    }
+
+    /**
+     * testProcessQueue05() - bucket that changed while scheduled is moved
+     * to its new deadline.
+     */
+    @Test
+    public void testProcessQueue05() {
+        // given
+        this.bucket.setLastChanged(new Date(this.now - 20 * MINUTE));
+        expectBuckets();
+
+        replayAll();
+        this.bucketStatusQueue.processQueue(this.now - MINUTE);
+        this.bucket.setLastChanged(new Date(this.now - 2 * MINUTE));
+
+        // when
+        int result = this.bucketStatusQueue.processQueue(this.now);
+
+        // then
+        verifyAll();
+        assertEquals(0, result);
+        assertEquals(this.now + 13 * MINUTE, this.bucket.getRefresh()
+                .getDeadline());
+    }
+
+    /**
+     * testUpdateBucketLastChanged01() - bucket is scheduled once.
+     */
+    @Test
+    public void testUpdateBucketLastChanged01() {
+        // given
+        byte[] nodeId = DHTIdentifier.getRandomNodeId();
+
+        // when
+        expect(this.rt.findBucket(nodeId, false)).andReturn(this.bucket)
+                .times(2);
+
+        replayAll();
+        this.bucketStatusQueue.updateBucketLastChanged(nodeId, false);
+        this.bucketStatusQueue.updateBucketLastChanged(nodeId, false);
+
+        // then
+        verifyAll();
+        assertNotNull(this.bucket.getLastChanged());
+        assertNotNull(this.bucket.getRefresh());
+        assertEquals(1, this.bucketStatusQueue.getQueue(false).size());
+        assertEquals(0, this.bucketStatusQueue.getQueue(true).size());
+    }
+
+    /**
+     * Expects the bucket lists to be read.
+     */
+    private void expectBuckets() {
+        expect(Integer.valueOf(this.rt.getBucketCount(false))).andReturn(
+                Integer.valueOf(this.buckets.size())).anyTimes();
+        expect(Integer.valueOf(this.rt.getBucketCount(true))).andReturn(
+                Integer.valueOf(this.buckets6.size())).anyTimes();
+        expect(this.rt.getBuckets(false)).andReturn(this.buckets)
+                .anyTimes();
+        expect(this.rt.getBuckets(true)).andReturn(this.buckets6)
+                .anyTimes();
+        expect(this.rt.findClosestNodes(isA(byte[].class), eq(1), eq(true)))
+                .andReturn(Collections.<DHTNode>emptyList()).anyTimes();
+    }
+
+    /**
+     * Creates a node.
+     * @param port  port of node
+     * @param state  State of node
+     * @param minutes  minutes since node was last seen
+     * @return DHTNode
+     */
+    private DHTNode node(final int port, final State state,
+            final int minutes) {
+        DHTNode node = create(DHTIdentifier.getRandomNodeId(), this.addr,
+                port, state);
+        node.setLastUpdated(new Date(this.now - minutes * MINUTE));
+        return node;
+    }
+
+    /**
+     * @return byte[]  largest node id
+     */
+    private static byte[] maxNodeId() {
+        byte[] bytes = new byte[20];
+        Arrays.fill(bytes, (byte) -1);
+        return bytes;
+    }
+}
@@ -16,16 +16,19 @@
 
 package ca.gobits.test.dht.server.queue;
 
+import static org.easymock.EasyMock.aryEq;
 import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
-import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.BlockingQueue;
+import java.util.List;
 
 import org.apache.commons.codec.binary.Base64;
 import org.easymock.Capture;
@@ -39,10 +42,13 @@ import org.junit.runner.RunWith;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import ca.gobits.dht.DHTIdentifier;
+import ca.gobits.dht.server.DHTPacketLog;
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
 import ca.gobits.dht.server.DHTServerConfig;
 import ca.gobits.dht.server.queue.DHTFindNodeQueueImpl;
-import ca.gobits.dht.server.queue.DHTTokenQueue;
-import ca.gobits.dht.server.queue.DelayObject;
+import ca.gobits.dht.server.queue.DHTPacer;
+import ca.gobits.dht.server.queue.DHTTransactionQueue;
+import ca.gobits.dht.util.TimingWheel;
 
 /**
  * DHTFindNodeQueue Unit Tests.
@@ -60,22 +66,29 @@ public final class DHTFindNodeQueueImplUnitTest extends EasyMockSupport {
     @Mock
     private DHTServerConfig config;
 
-    /** Mock DHTTokenTable. */
+    /** Mock DHTTransactionQueue. */
     @Mock
-    private DHTTokenQueue tokens;
+    private DHTTransactionQueue transactions;
+
+    /** Mock DHTPacer. */
+    @Mock
+    private DHTPacer pacer;
 
     /** Mock DatagramSocket. */
     @Mock
     private DatagramSocket socket;
 
-    /** Capture<DatagramPacket>. */
-    private final Capture<DatagramPacket> cap0 = new Capture<DatagramPacket>();
+    /** Capture<InetAddress>. */
+    private final Capture<InetAddress> cap0 = new Capture<InetAddress>();
+
+    /** Capture<byte[]>. */
+    private final Capture<byte[]> cap1 = new Capture<byte[]>();
 
-    /** Reference to BlockingQueue. */
-    @SuppressWarnings("unchecked")
-    private final BlockingQueue<DelayObject<byte[]>> queue
-        = (BlockingQueue<DelayObject<byte[]>>)
-            ReflectionTestUtils.getField(this.findnodeQueue, "queue");
+    /** Reference to TimingWheel. */
+    private final TimingWheel<byte[]> queue = this.findnodeQueue.getQueue();
+
+    /** DHTPacketLog. */
+    private final DHTPacketLog packetLog = new DHTPacketLog();
 
     /**
      * before().
@@ -83,6 +96,8 @@ public final class DHTFindNodeQueueImplUnitTest extends EasyMockSupport {
     @Before
     public void before() {
         this.findnodeQueue.setDelayInMillis(0);
+        ReflectionTestUtils.setField(this.findnodeQueue, "packetLog",
+                this.packetLog);
     }
 
     /**
@@ -106,11 +121,37 @@ public final class DHTFindNodeQueueImplUnitTest extends EasyMockSupport {
         verifyAll();
 
         assertEquals(1, this.queue.size());
-        DelayObject<byte[]> obj = this.queue.element();
+        List<byte[]> objs = new ArrayList<byte[]>();
+        this.queue.advance(System.currentTimeMillis(), objs);
         assertEquals(
             "[127, 0, 0, 1, 9, 41, -82, -3, 21, -74, 29, -17, 102, 110, -104, "
             + "50, -1, -103, -65, -102, -36, -53, 61, 56, -60, 92]",
-                Arrays.toString(obj.getPayload()));
+                Arrays.toString(objs.get(0)));
+    }
+
+    /**
+     * testFindNodes02() - duplicate find_node to the same destination and
+     * target is ignored.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testFindNodes02() throws Exception {
+        // given
+        byte[] target = DHTIdentifier.sha1("salt123".getBytes());
+        byte[] target2 = DHTIdentifier.sha1("salt456".getBytes());
+        InetAddress addr = InetAddress.getByName("127.0.0.1");
+
+        // when
+        replayAll();
+
+        this.findnodeQueue.findNodesWithDelay(addr, 2345, target);
+        this.findnodeQueue.findNodesWithDelay(addr, 2345, target);
+        this.findnodeQueue.findNodesWithDelay(addr, 2345, target2);
+
+        // then
+        verifyAll();
+
+        assertEquals(2, this.queue.size());
     }
 
     /**
@@ -125,16 +166,20 @@ public final class DHTFindNodeQueueImplUnitTest extends EasyMockSupport {
                 29, -17, 102, 110, -104, 50, -1, -103, -65, -102, -36, -53, 61,
                 56, -60, 92 };
 
-        this.queue.add(new DelayObject<byte[]>(payload, 0));
+        this.queue.schedule(payload, 0);
 
         // when
         expect(this.socket.getLocalAddress()).andReturn(
                 InetAddress.getByName("127.0.0.1"));
 
         expect(this.config.getNodeId()).andReturn(nodeId);
-        expect(this.tokens.getTransactionId()).andReturn("aa");
+        expect(this.transactions.add(isA(InetAddress.class), eq(2345),
+                eq(DHTQueryType.FIND_NODE))).andReturn("aa".getBytes());
 
-        this.socket.send(capture(this.cap0));
+        expect(Boolean.valueOf(this.pacer.send(eq(DHTQueryType.FIND_NODE),
+                capture(this.cap0), eq(2345), aryEq("aa".getBytes()),
+                capture(this.cap1))))
+                .andReturn(Boolean.TRUE);
 
         replayAll();
         this.findnodeQueue.processQueue();
@@ -142,15 +187,13 @@ public final class DHTFindNodeQueueImplUnitTest extends EasyMockSupport {
         // then
         verifyAll();
 
-      DatagramPacket packet = this.cap0.getValue();
-      assertTrue(Arrays.equals(new byte[] {127, 0, 0, 1}, packet
-              .getAddress().getAddress()));
-      assertEquals(2345, packet.getPort());
+      assertTrue(Arrays.equals(new byte[] {127, 0, 0, 1},
+              this.cap0.getValue().getAddress()));
       assertEquals(
               "ZDE6YWQyOmlkMjA6spXRFxNal2PaKC59rnOlyn0+WxE2OnRhcmdldDIwOq79Fb"
               + "Yd72ZumDL/mb+a3Ms9OMRcNDp3YW50bDI6bjRlZTE6cTk6ZmluZF9ub2RlMT"
               + "p0MjphYTE6eTE6cWU=",
-              Base64.encodeBase64String(packet.getData()));
+              Base64.encodeBase64String(this.cap1.getValue()));
     }
 
     /**
@@ -172,10 +215,14 @@ public final class DHTFindNodeQueueImplUnitTest extends EasyMockSupport {
         this.findnodeQueue.findNodesWithDelay(addr, port, target);
 
         expect(this.config.getNodeId()).andReturn(nodeId);
-        expect(this.tokens.getTransactionId()).andReturn("aa");
+        expect(this.transactions.add(isA(InetAddress.class), eq(2345),
+                eq(DHTQueryType.FIND_NODE))).andReturn("aa".getBytes());
         expect(this.socket.getLocalAddress()).andReturn(addr);
 
-        this.socket.send(capture(this.cap0));
+        expect(Boolean.valueOf(this.pacer.send(eq(DHTQueryType.FIND_NODE),
+                capture(this.cap0), eq(2345), aryEq("aa".getBytes()),
+                capture(this.cap1))))
+                .andReturn(Boolean.TRUE);
 
         replayAll();
 
@@ -184,17 +231,14 @@ public final class DHTFindNodeQueueImplUnitTest extends EasyMockSupport {
         // then
         verifyAll();
 
-        DatagramPacket packet = this.cap0.getValue();
-
         assertTrue(Arrays.equals(new byte[] {-128, 91, 45, -99, -36, 40, 0, 0,
-                0, 0, -4, 87, -44, -56, 31, -1 }, packet.getAddress()
-                .getAddress()));
-        assertEquals(2345, packet.getPort());
+                0, 0, -4, 87, -44, -56, 31, -1 },
+                this.cap0.getValue().getAddress()));
         assertEquals(
                 "ZDE6YWQyOmlkMjA6spXRFxNal2PaKC59rnOlyn0+WxE2OnRhcmdldDIwOq79Fb"
                 + "Yd72ZumDL/mb+a3Ms9OMRcNDp3YW50bDI6bjZlZTE6cTk6ZmluZF9ub2RlMT"
                 + "p0MjphYTE6eTE6cWU=",
-                Base64.encodeBase64String(packet.getData()));
+                Base64.encodeBase64String(this.cap1.getValue()));
     }
 
 }
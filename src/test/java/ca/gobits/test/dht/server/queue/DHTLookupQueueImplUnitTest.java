@@ -0,0 +1,338 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.test.dht.server.queue;
+
+import static ca.gobits.dht.factory.DHTNodeFactory.create;
+import static ca.gobits.dht.util.DHTConversion.compactAddress;
+import static ca.gobits.dht.util.DHTConversion.toByteArrayFromDHTNode;
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.easymock.Capture;
+import org.easymock.EasyMockRunner;
+import org.easymock.EasyMockSupport;
+import org.easymock.Mock;
+import org.easymock.TestSubject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ca.gobits.dht.DHTNode;
+import ca.gobits.dht.DHTNodeRoutingTable;
+import ca.gobits.dht.server.DHTPacketLog;
+import ca.gobits.dht.server.DHTParameters;
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
+import ca.gobits.dht.server.DHTServerConfig;
+import ca.gobits.dht.server.queue.DHTLookup;
+import ca.gobits.dht.server.queue.DHTLookupQueueImpl;
+import ca.gobits.dht.server.queue.DHTPacer;
+import ca.gobits.dht.server.queue.DHTTransaction;
+import ca.gobits.dht.server.queue.DHTTransactionListener;
+import ca.gobits.dht.server.queue.DHTTransactionQueue;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * DHTLookupQueueImpl Unit Tests.
+ *
+ */
+@RunWith(EasyMockRunner.class)
+public final class DHTLookupQueueImplUnitTest extends EasyMockSupport {
+
+    /** Instance of DHTLookupQueueImpl. */
+    @TestSubject
+    private final DHTLookupQueueImpl lookupQueue = new DHTLookupQueueImpl();
+
+    /** Mock DHTServerConfig. */
+    @Mock
+    private DHTServerConfig config;
+
+    /** Mock DHTNodeRoutingTable. */
+    @Mock
+    private DHTNodeRoutingTable routingTable;
+
+    /** Mock DHTTransactionQueue. */
+    @Mock
+    private DHTTransactionQueue transactions;
+
+    /** Mock DHTPacer. */
+    @Mock
+    private DHTPacer pacer;
+
+    /** Mock DatagramSocket. */
+    @Mock
+    private DatagramSocket socket;
+
+    /** Capture<DHTTransactionListener>. */
+    private final Capture<DHTTransactionListener> cap0 =
+            new Capture<DHTTransactionListener>();
+
+    /** Target of the lookups. */
+    private final byte[] target = new byte[20];
+
+    /** Local address. */
+    private InetAddress addr;
+
+    /** DHTPacketLog. */
+    private final DHTPacketLog packetLog = new DHTPacketLog();
+
+    /**
+     * before().
+     * @throws Exception  Exception
+     */
+    @Before
+    public void before() throws Exception {
+
+        this.addr = InetAddress.getByName("127.0.0.1");
+        ReflectionTestUtils.setField(this.lookupQueue, "packetLog",
+                this.packetLog);
+    }
+
+    /**
+     * Expects the calls every lookup makes.
+     */
+    private void expectLookup() {
+        expect(this.config.getNodeId()).andReturn(new byte[20]).anyTimes();
+        expect(this.socket.getLocalAddress()).andReturn(this.addr)
+                .anyTimes();
+        expect(this.transactions.add(isA(InetAddress.class), anyInt(),
+                isA(DHTQueryType.class), capture(this.cap0)))
+                .andReturn(new byte[] {0, 1 }).anyTimes();
+        expect(Boolean.valueOf(this.pacer.send(isA(DHTQueryType.class),
+                isA(InetAddress.class), anyInt(), isA(byte[].class),
+                isA(byte[].class))))
+                .andReturn(Boolean.TRUE).anyTimes();
+    }
+
+    /**
+     * testFindNode01() - lookup with an empty routing table completes.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testFindNode01() throws Exception {
+        // given
+        expectLookup();
+        expect(this.routingTable.findClosestNodes(aryEq(this.target),
+                eq(DHTLookup.K), eq(false))).andReturn(
+                Collections.<DHTNode>emptyList());
+
+        // when
+        replayAll();
+        ListenableFuture<DHTLookup> future = this.lookupQueue
+                .findNode(this.target);
+
+        // then
+        verifyAll();
+        assertTrue(future.isDone());
+        assertTrue(future.get().getClosestNodes().isEmpty());
+        assertEquals(0, this.lookupQueue.size());
+    }
+
+    /**
+     * testFindNode02() - lookup follows closer nodes and completes once the
+     * closest nodes have answered or failed.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testFindNode02() throws Exception {
+        // given
+        expectLookup();
+        DHTNode n80 = node(0x80);
+        DHTNode n90 = node(0x90);
+        DHTNode na0 = node(0xA0);
+
+        expect(this.routingTable.findClosestNodes(aryEq(this.target),
+                eq(DHTLookup.K), eq(false))).andReturn(
+                Arrays.asList(n80, n90, na0));
+
+        // when
+        replayAll();
+        ListenableFuture<DHTLookup> future = this.lookupQueue
+                .findNode(this.target);
+        DHTLookup lookup = (DHTLookup) this.cap0.getValue();
+
+        assertEquals(3, lookup.getQueryCount());
+
+        lookup.responded(transaction(n80, lookup),
+                response(Arrays.asList(node(0x10), node(0x20)), null, null));
+        assertEquals(4, lookup.getQueryCount());
+
+        lookup.timedOut(transaction(n90, lookup));
+        assertEquals(5, lookup.getQueryCount());
+
+        lookup.responded(transaction(node(0x10), lookup),
+                response(null, null, null));
+        lookup.responded(transaction(node(0x20), lookup),
+                response(null, null, null));
+        assertFalse(future.isDone());
+
+        lookup.responded(transaction(na0, lookup),
+                response(null, null, null));
+
+        // then
+        verifyAll();
+        assertTrue(future.isDone());
+
+        List<DHTNode> closest = future.get().getClosestNodes();
+        assertEquals(4, closest.size());
+        assertEquals(0x10, closest.get(0).getInfoHash()[0] & 0xff);
+        assertEquals(0x20, closest.get(1).getInfoHash()[0] & 0xff);
+        assertEquals(0x80, closest.get(2).getInfoHash()[0] & 0xff);
+        assertEquals(0xA0, closest.get(3).getInfoHash()[0] & 0xff);
+        assertEquals(0, this.lookupQueue.size());
+    }
+
+    /**
+     * testGetPeers01() - peers and tokens are collected.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testGetPeers01() throws Exception {
+        // given
+        expectLookup();
+        DHTNode n80 = node(0x80);
+        byte[] token = "tok".getBytes();
+        byte[] peer = compactAddress(InetAddress.getByName("1.2.3.4"), 6881);
+
+        expect(this.routingTable.findClosestNodes(aryEq(this.target),
+                eq(DHTLookup.K), eq(false))).andReturn(Arrays.asList(n80));
+
+        // when
+        replayAll();
+        ListenableFuture<DHTLookup> future = this.lookupQueue
+                .getPeers(this.target);
+        DHTLookup lookup = (DHTLookup) this.cap0.getValue();
+
+        lookup.responded(transaction(n80, lookup),
+                response(null, Arrays.asList(peer), token));
+
+        // then
+        verifyAll();
+        assertTrue(future.isDone());
+        assertEquals(DHTQueryType.GET_PEERS, lookup.getQueryType());
+        assertEquals(1, lookup.getPeers().size());
+        assertEquals("1.2.3.4", lookup.getPeers().get(0).getAddress()
+                .getHostAddress());
+        assertEquals(6881, lookup.getPeers().get(0).getPort());
+        assertArrayEquals(token, lookup.getToken(n80));
+    }
+
+    /**
+     * testProcessQueue01() - stalled lookup is finished at its deadline.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testProcessQueue01() throws Exception {
+        // given
+        expectLookup();
+        this.lookupQueue.setDelayInMillis(0);
+
+        expect(this.routingTable.findClosestNodes(aryEq(this.target),
+                eq(DHTLookup.K), eq(false))).andReturn(
+                Arrays.asList(node(0x80)));
+
+        // when
+        replayAll();
+        ListenableFuture<DHTLookup> future = this.lookupQueue
+                .findNode(this.target);
+        assertFalse(future.isDone());
+
+        Thread.sleep(2);
+        int result = this.lookupQueue.processQueue();
+
+        // then
+        verifyAll();
+        assertEquals(1, result);
+        assertTrue(future.isDone());
+        assertTrue(future.get().getClosestNodes().isEmpty());
+    }
+
+    /**
+     * @param first  first byte of the node id
+     * @return DHTNode  node listening on port 1000 + first
+     */
+    private DHTNode node(final int first) {
+        byte[] id = new byte[20];
+        id[0] = (byte) first;
+        id[19] = 1;
+        return create(id, this.addr, 1000 + first, DHTNode.State.UNKNOWN);
+    }
+
+    /**
+     * @param node  node the query was sent to
+     * @param lookup  DHTLookup
+     * @return DHTTransaction
+     */
+    private DHTTransaction transaction(final DHTNode node,
+            final DHTLookup lookup) {
+        return new DHTTransaction(1, node.getAddress(), node.getPort(),
+                lookup.getQueryType(), 0, lookup);
+    }
+
+    /**
+     * @param nodes  nodes of the response or null
+     * @param values  peers of the response or null
+     * @param token  token of the response or null
+     * @return DHTParameters
+     * @throws Exception  Exception
+     */
+    private DHTParameters response(final List<DHTNode> nodes,
+            final List<byte[]> values, final byte[] token) throws Exception {
+
+        Map<String, Object> r = new HashMap<String, Object>();
+        r.put("id", new byte[20]);
+
+        if (nodes != null) {
+            r.put("nodes", toByteArrayFromDHTNode(
+                    new ArrayList<DHTNode>(nodes), false));
+        }
+
+        if (values != null) {
+            r.put("values", values);
+        }
+
+        if (token != null) {
+            r.put("token", token);
+        }
+
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("t", new byte[] {0, 1 });
+        map.put("y", "r".getBytes());
+        map.put("r", r);
+
+        return new DHTParameters(this.addr, map);
+    }
+}
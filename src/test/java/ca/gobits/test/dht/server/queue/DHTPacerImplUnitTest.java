@@ -0,0 +1,295 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.test.dht.server.queue;
+
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMockRunner;
+import org.easymock.EasyMockSupport;
+import org.easymock.Mock;
+import org.easymock.TestSubject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ca.gobits.dht.server.DHTMetrics;
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
+import ca.gobits.dht.server.DHTServerConfig;
+import ca.gobits.dht.server.queue.DHTPacerImpl;
+import ca.gobits.dht.server.queue.DHTTransaction;
+import ca.gobits.dht.server.queue.DHTTransactionQueueImpl;
+
+/**
+ * DHTPacerImpl Unit Tests.
+ *
+ */
+@RunWith(EasyMockRunner.class)
+public final class DHTPacerImplUnitTest extends EasyMockSupport {
+
+    /** Instance of DHTPacerImpl. */
+    @TestSubject
+    private final DHTPacerImpl pacer = new DHTPacerImpl();
+
+    /** Mock DatagramSocket. */
+    @Mock
+    private DatagramSocket socket;
+
+    /** Mock DHTServerConfig. */
+    @Mock
+    private DHTServerConfig config;
+
+    /** DHTMetrics. */
+    private final DHTMetrics metrics = new DHTMetrics();
+
+    /** DHTTransactionQueue. */
+    private final DHTTransactionQueueImpl transactions =
+            new DHTTransactionQueueImpl(0);
+
+    /** Transaction id of queries that are not outstanding. */
+    private final byte[] tid = new byte[] {0, 0 };
+
+    /** Capture<DatagramPacket>. */
+    private final Capture<DatagramPacket> cap0 = new Capture<DatagramPacket>(
+            CaptureType.ALL);
+
+    /**
+     * before().
+     */
+    @Before
+    public void before() {
+        ReflectionTestUtils.setField(this.pacer, "metrics", this.metrics);
+        ReflectionTestUtils.setField(this.pacer, "transactions",
+                this.transactions);
+    }
+
+    /**
+     * Expects the budget to be read from the config.
+     * @param pps  packets per second
+     * @param bps  bytes per second
+     */
+    private void expectBudget(final int pps, final int bps) {
+        expect(Integer.valueOf(this.config.getPacketsPerSecond()))
+                .andReturn(Integer.valueOf(pps)).anyTimes();
+        expect(Integer.valueOf(this.config.getBytesPerSecond()))
+                .andReturn(Integer.valueOf(bps)).anyTimes();
+    }
+
+    /**
+     * testSend01() - query is sent straight away within the budget.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testSend01() throws Exception {
+        // given
+        InetAddress addr = InetAddress.getByName("127.0.0.1");
+        byte[] msg = new byte[] {1, 2, 3 };
+        expectBudget(100, 10000);
+        this.socket.send(capture(this.cap0));
+
+        // when
+        replayAll();
+        boolean result = this.pacer.send(DHTQueryType.PING, addr, 6881,
+                this.tid, msg, 0);
+
+        // then
+        verifyAll();
+        assertTrue(result);
+        assertEquals(0, this.pacer.size());
+        assertEquals(6881, this.cap0.getValue().getPort());
+        assertEquals(1, this.pacer.getSentCount());
+        assertEquals(1, this.metrics.getPackets(
+                DHTMetrics.Traffic.QUERY_OUT, DHTQueryType.PING));
+        assertEquals(3, this.metrics.getBytes(
+                DHTMetrics.Traffic.QUERY_OUT, DHTQueryType.PING));
+    }
+
+    /**
+     * testSend02() - queries to the same destination are spaced out.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testSend02() throws Exception {
+        // given
+        InetAddress addr = InetAddress.getByName("127.0.0.1");
+        byte[] msg = new byte[] {1, 2, 3 };
+        expectBudget(100, 10000);
+        this.socket.send(capture(this.cap0));
+        expectLastCall().times(2);
+
+        // when
+        replayAll();
+        this.pacer.send(DHTQueryType.PING, addr, 6881, this.tid, msg, 0);
+        this.pacer.send(DHTQueryType.FIND_NODE, addr, 6881, this.tid, msg,
+                10);
+        int sent0 = this.pacer.processQueue(500);
+        int sent1 = this.pacer.processQueue(1000);
+
+        // then
+        verifyAll();
+        assertEquals(0, sent0);
+        assertEquals(1, sent1);
+        assertEquals(0, this.pacer.size());
+    }
+
+    /**
+     * testProcessQueue01() - packets per second budget is kept and types
+     * of query take turns.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testProcessQueue01() throws Exception {
+        // given
+        byte[] ping = new byte[] {1 };
+        byte[] findNode = new byte[] {2 };
+        expectBudget(10, 10000);
+        this.socket.send(capture(this.cap0));
+        expectLastCall().times(10);
+
+        replayAll();
+
+        // the first ping uses the burst of one packet
+        for (int i = 0; i < 10; i++) {
+            InetAddress addr = InetAddress.getByName("10.0.0." + (i + 1));
+            this.pacer.send(DHTQueryType.PING, addr, 6881, this.tid, ping, 0);
+            this.pacer.send(DHTQueryType.FIND_NODE, addr, 6882, this.tid,
+                    findNode, 0);
+        }
+
+        // when
+        int sent = this.pacer.processQueue(0);
+        for (int now = 100; now <= 900; now += 100) {
+            sent += this.pacer.processQueue(now);
+        }
+
+        // then
+        verifyAll();
+        assertEquals(9, sent);
+        assertEquals(10, this.pacer.size());
+
+        List<Byte> order = new ArrayList<Byte>();
+        for (DatagramPacket packet : this.cap0.getValues()) {
+            order.add(Byte.valueOf(packet.getData()[0]));
+        }
+        assertEquals("[1, 1, 2, 1, 2, 1, 2, 1, 2, 1]", order.toString());
+    }
+
+    /**
+     * testProcessQueue02() - bytes per second budget is kept.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testProcessQueue02() throws Exception {
+        // given
+        byte[] msg = new byte[1000];
+        expectBudget(1000, 1500);
+        this.socket.send(capture(this.cap0));
+        expectLastCall().times(2);
+
+        replayAll();
+
+        for (int i = 0; i < 3; i++) {
+            InetAddress addr = InetAddress.getByName("10.0.0." + (i + 1));
+            this.pacer.send(DHTQueryType.PING, addr, 6881, this.tid, msg, 0);
+        }
+
+        // when
+        int sent = this.pacer.processQueue(400);
+
+        // then
+        verifyAll();
+        assertEquals(1, sent);
+        assertEquals(1, this.pacer.size());
+    }
+
+    /**
+     * testSend03() - queries are dropped once too many are waiting.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testSend03() throws Exception {
+        // given
+        InetAddress addr = InetAddress.getByName("127.0.0.1");
+        byte[] msg = new byte[] {1 };
+        expectBudget(1, 10000);
+        this.socket.send(capture(this.cap0));
+
+        // when
+        replayAll();
+        boolean result0 = this.pacer.send(DHTQueryType.PING, addr, 1,
+                this.tid, msg, 0);
+        boolean result1 = this.pacer.send(DHTQueryType.PING, addr, 2,
+                this.tid, msg, 0);
+        boolean result2 = this.pacer.send(DHTQueryType.PING, addr, 3,
+                this.tid, msg, 0);
+        boolean result3 = this.pacer.send(DHTQueryType.PING, addr, 4,
+                this.tid, msg, 0);
+
+        // then
+        verifyAll();
+        assertTrue(result0);
+        assertTrue(result1);
+        assertTrue(result2);
+        assertFalse(result3);
+        assertEquals(1, this.pacer.getDroppedCount());
+        assertEquals(1, this.metrics.getDrops(DHTMetrics.Drop.PACED));
+    }
+
+    /**
+     * testSend04() - transaction of a held query is stamped when it is
+     * written to the socket, not when it is queued.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testSend04() throws Exception {
+        // given
+        InetAddress addr = InetAddress.getByName("127.0.0.1");
+        byte[] msg = new byte[] {1 };
+        byte[] id0 = this.transactions.add(addr, 6881, DHTQueryType.PING, 0);
+        byte[] id1 = this.transactions.add(addr, 6881, DHTQueryType.PING, 0);
+        expectBudget(100, 10000);
+        this.socket.send(capture(this.cap0));
+        expectLastCall().times(2);
+
+        // when
+        replayAll();
+        this.pacer.send(DHTQueryType.PING, addr, 6881, id0, msg, 0);
+        this.pacer.send(DHTQueryType.PING, addr, 6881, id1, msg, 0);
+        this.pacer.processQueue(1500);
+
+        // then
+        verifyAll();
+        DHTTransaction t0 = this.transactions.match(id0, addr, 6881, 2000);
+        DHTTransaction t1 = this.transactions.match(id1, addr, 6881, 2000);
+        assertEquals(0, t0.getSent());
+        assertEquals(1500, t1.getSent());
+        assertEquals(1250, this.transactions.getAverageRoundTripInMillis());
+    }
+}
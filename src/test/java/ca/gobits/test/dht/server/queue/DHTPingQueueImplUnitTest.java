@@ -16,16 +16,17 @@
 
 package ca.gobits.test.dht.server.queue;
 
+import static org.easymock.EasyMock.aryEq;
 import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
-import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.util.Arrays;
-import java.util.concurrent.BlockingQueue;
 
 import org.apache.commons.codec.binary.Base64;
 import org.easymock.Capture;
@@ -33,15 +34,19 @@ import org.easymock.EasyMockRunner;
 import org.easymock.EasyMockSupport;
 import org.easymock.Mock;
 import org.easymock.TestSubject;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import ca.gobits.dht.DHTIdentifier;
+import ca.gobits.dht.server.DHTPacketLog;
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
 import ca.gobits.dht.server.DHTServerConfig;
 import ca.gobits.dht.server.queue.DHTPingQueueImpl;
-import ca.gobits.dht.server.queue.DHTTokenQueue;
-import ca.gobits.dht.server.queue.DelayObject;
+import ca.gobits.dht.server.queue.DHTPacer;
+import ca.gobits.dht.server.queue.DHTTransactionQueue;
+import ca.gobits.dht.util.TimingWheel;
 
 /**
  * DHTPingQueue Unit Tests.
@@ -58,22 +63,38 @@ public final class DHTPingQueueImplUnitTest extends EasyMockSupport {
     @Mock
     private DHTServerConfig config;
 
-    /** Mock DHTTokenTable. */
+    /** Mock DHTTransactionQueue. */
     @Mock
-    private DHTTokenQueue tokens;
+    private DHTTransactionQueue transactions;
+
+    /** Mock DHTPacer. */
+    @Mock
+    private DHTPacer pacer;
 
     /** Mock DatagramSocket. */
     @Mock
     private DatagramSocket socket;
 
-    /** Capture<DatagramPacket>. */
-    private final Capture<DatagramPacket> cap0 = new Capture<DatagramPacket>();
+    /** Capture<InetAddress>. */
+    private final Capture<InetAddress> cap0 = new Capture<InetAddress>();
+
+    /** Capture<byte[]>. */
+    private final Capture<byte[]> cap1 = new Capture<byte[]>();
+
+    /** Reference to TimingWheel. */
+    private final TimingWheel<byte[]> queue = this.pingQueue.getQueue();
 
-    /** Reference to BlockingQueue. */
-    @SuppressWarnings("unchecked")
-    private final BlockingQueue<DelayObject<byte[]>> queue
-        = (BlockingQueue<DelayObject<byte[]>>)
-            ReflectionTestUtils.getField(this.pingQueue, "queue");
+    /** DHTPacketLog. */
+    private final DHTPacketLog packetLog = new DHTPacketLog();
+
+    /**
+     * before().
+     */
+    @Before
+    public void before() {
+        ReflectionTestUtils.setField(this.pingQueue, "packetLog",
+                this.packetLog);
+    }
 
     /**
      * testPing01().
@@ -92,6 +113,24 @@ public final class DHTPingQueueImplUnitTest extends EasyMockSupport {
         assertEquals(1, this.pingQueue.size());
     }
 
+    /**
+     * testPing02() - duplicate ping to the same destination is ignored.
+     * @throws Exception   Exception
+     */
+    @Test
+    public void testPing02() throws Exception {
+        // given
+        InetAddress addr = InetAddress.getByName("127.0.0.1");
+
+        // when
+        this.pingQueue.pingWithDelay(addr, 1234);
+        this.pingQueue.pingWithDelay(addr, 1234);
+        this.pingQueue.pingWithDelay(addr, 1235);
+
+        // then
+        assertEquals(2, this.pingQueue.size());
+    }
+
     /**
      * testProcessPingQueue01().
      * @throws Exception  Exception
@@ -105,14 +144,17 @@ public final class DHTPingQueueImplUnitTest extends EasyMockSupport {
         byte[] nodeId = DHTIdentifier.sha1("salt".getBytes());
         byte[] payload = new byte[]{127, 0, 0, 1, 9, 41};
 
-        DelayObject<byte[]> obj = new DelayObject<byte[]>(payload, 0);
-        this.queue.add(obj);
+        this.queue.schedule(payload, 0);
 
         // when
         expect(this.config.getNodeId()).andReturn(nodeId);
-        expect(this.tokens.getTransactionId()).andReturn("aa");
+        expect(this.transactions.add(isA(InetAddress.class), eq(2345),
+                eq(DHTQueryType.PING))).andReturn("aa".getBytes());
 
-        this.socket.send(capture(this.cap0));
+        expect(Boolean.valueOf(this.pacer.send(eq(DHTQueryType.PING),
+                capture(this.cap0), eq(2345), aryEq("aa".getBytes()),
+                capture(this.cap1))))
+                .andReturn(Boolean.TRUE);
 
         replayAll();
 
@@ -121,13 +163,81 @@ public final class DHTPingQueueImplUnitTest extends EasyMockSupport {
         // then
         verifyAll();
 
-        DatagramPacket packet = this.cap0.getValue();
-        assertTrue(Arrays.equals(new byte[] {127, 0, 0, 1}, packet
-                .getAddress().getAddress()));
-        assertEquals(2345, packet.getPort());
+        assertEquals(1, this.packetLog.size());
+        assertTrue(Arrays.equals(new byte[] {127, 0, 0, 1},
+                this.cap0.getValue().getAddress()));
         assertEquals(
                 "ZDE6YWQyOmlkMjA6spXRFxNal2PaKC59rnOlyn0+WxFl"
                 + "MTpxNDpwaW5nMTp0MjphYTE6eTE6cWU=",
-                Base64.encodeBase64String(packet.getData()));
+                Base64.encodeBase64String(this.cap1.getValue()));
+    }
+
+    /**
+     * testProcessQueue02() - transaction is cancelled when the pacer
+     * drops the ping.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testProcessQueue02() throws Exception {
+
+        // given
+        this.pingQueue.setDelayInMillis(0);
+        this.queue.schedule(new byte[]{127, 0, 0, 1, 9, 41}, 0);
+
+        // when
+        expect(this.config.getNodeId()).andReturn(
+                DHTIdentifier.sha1("salt".getBytes()));
+        expect(this.transactions.add(isA(InetAddress.class), eq(2345),
+                eq(DHTQueryType.PING))).andReturn("aa".getBytes());
+        expect(Boolean.valueOf(this.pacer.send(eq(DHTQueryType.PING),
+                isA(InetAddress.class), eq(2345), aryEq("aa".getBytes()),
+                isA(byte[].class)))).andReturn(Boolean.FALSE);
+        expect(Boolean.valueOf(this.transactions.cancel(
+                aryEq("aa".getBytes())))).andReturn(Boolean.TRUE);
+
+        replayAll();
+
+        this.pingQueue.processQueue();
+
+        // then
+        verifyAll();
+        assertEquals(0, this.packetLog.size());
+    }
+
+    /**
+     * testProcessQueue03() - a ping the pacer drops is not a duplicate of
+     * the next ping to the same destination.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testProcessQueue03() throws Exception {
+
+        // given
+        InetAddress addr = InetAddress.getByName("127.0.0.1");
+        this.pingQueue.setDelayInMillis(0);
+        this.pingQueue.pingWithDelay(addr, 2345);
+        Thread.sleep(2);
+
+        expect(this.config.getNodeId()).andReturn(
+                DHTIdentifier.sha1("salt".getBytes()));
+        expect(this.transactions.add(isA(InetAddress.class), eq(2345),
+                eq(DHTQueryType.PING))).andReturn("aa".getBytes());
+        expect(Boolean.valueOf(this.pacer.send(eq(DHTQueryType.PING),
+                isA(InetAddress.class), eq(2345), aryEq("aa".getBytes()),
+                isA(byte[].class)))).andReturn(Boolean.FALSE);
+        expect(Boolean.valueOf(this.transactions.cancel(
+                aryEq("aa".getBytes())))).andReturn(Boolean.TRUE);
+
+        replayAll();
+
+        // when
+        int processed = this.pingQueue.processQueue();
+        this.pingQueue.pingWithDelay(addr, 2345);
+        this.pingQueue.pingWithDelay(addr, 2345);
+
+        // then
+        verifyAll();
+        assertEquals(1, processed);
+        assertEquals(1, this.pingQueue.size());
     }
 }
@@ -16,19 +16,37 @@
 
 package ca.gobits.test.dht.server.queue;
 
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
 import org.easymock.EasyMockRunner;
 import org.easymock.EasyMockSupport;
 import org.easymock.Mock;
 import org.easymock.TestSubject;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ca.gobits.dht.DHTInfoHashRoutingTable;
+import ca.gobits.dht.server.DHTBanList;
+import ca.gobits.dht.server.DHTMetrics;
+import ca.gobits.dht.server.DHTPacketLog;
 import ca.gobits.dht.server.queue.DHTBucketStatusQueue;
 import ca.gobits.dht.server.queue.DHTFindNodeQueue;
-import ca.gobits.dht.server.queue.DHTNodeStatusQueue;
+import ca.gobits.dht.server.queue.DHTLookupQueue;
+import ca.gobits.dht.server.queue.DHTPacer;
 import ca.gobits.dht.server.queue.DHTPingQueue;
 import ca.gobits.dht.server.queue.DHTQueueScheduler;
+import ca.gobits.dht.server.queue.DHTQueueTask;
 import ca.gobits.dht.server.queue.DHTTokenQueue;
+import ca.gobits.dht.server.queue.DHTTransactionQueue;
 
 /**
  * DHTQueueScheduler Unit Tests.
@@ -49,9 +67,9 @@ public class DHTQueueSchedulerUnitTest extends EasyMockSupport {
     @Mock
     private DHTFindNodeQueue findNodeQueue;
 
-    /** Mock DHTNodeStatusQueue. */
+    /** Mock DHTLookupQueue. */
     @Mock
-    private DHTNodeStatusQueue nodeStatusQueue;
+    private DHTLookupQueue lookupQueue;
 
     /** Mock DHTBucketStatusQueue. */
     @Mock
@@ -61,31 +79,116 @@ public class DHTQueueSchedulerUnitTest extends EasyMockSupport {
     @Mock
     private DHTTokenQueue tokenQueue;
 
+    /** Mock DHTTransactionQueue. */
+    @Mock
+    private DHTTransactionQueue transactionQueue;
+
+    /** Mock DHTPacer. */
+    @Mock
+    private DHTPacer pacer;
+
+    /** Mock DHTInfoHashRoutingTable. */
+    @Mock
+    private DHTInfoHashRoutingTable infoHashRoutingTable;
+
+    /** Mock DHTBanList. */
+    @Mock
+    private DHTBanList banList;
+
+    /** Mock DHTMetrics. */
+    @Mock
+    private DHTMetrics metrics;
+
+    /** Mock DHTPacketLog. */
+    @Mock
+    private DHTPacketLog packetLog;
+
+    /** ThreadPoolTaskScheduler the queues run on. */
+    private final ThreadPoolTaskScheduler taskScheduler =
+            new ThreadPoolTaskScheduler();
+
+    /**
+     * before().
+     */
+    @Before
+    public void before() {
+        this.taskScheduler.initialize();
+        ReflectionTestUtils.setField(this.scheduler, "queueTaskScheduler",
+                this.taskScheduler);
+    }
+
     /**
-     * testProcess01().
+     * after().
+     */
+    @After
+    public void after() {
+        this.taskScheduler.shutdown();
+    }
+
+    /**
+     * testConfigureTasks01() - every queue is registered as its own task
+     * with a thread of its own.
      */
     @Test
-    public void testProcess01() {
+    public void testConfigureTasks01() {
         // given
+        ScheduledTaskRegistrar registrar = new ScheduledTaskRegistrar();
 
         // when
-        this.tokenQueue.processQueue();
+        this.scheduler.configureTasks(registrar);
 
-        this.pingQueue.processQueue();
-
-        this.findNodeQueue.processQueue();
+        // then
+        List<DHTQueueTask> tasks = this.scheduler.getTasks();
+        assertEquals(11, tasks.size());
+        assertTrue(registrar.hasTasks());
+        assertEquals("token", tasks.get(0).getName());
+        assertEquals("peerexpiry", tasks.get(7).getName());
+        assertEquals("banlist", tasks.get(8).getName());
+        assertEquals("metrics", tasks.get(9).getName());
+        assertEquals("packetlog", tasks.get(10).getName());
+        assertEquals(tasks.size() + 1, this.taskScheduler
+                .getScheduledThreadPoolExecutor().getCorePoolSize());
+    }
 
-        this.bucketStatusQueue.processQueue();
+    /**
+     * testConfigureTasks02() - running the tasks processes each queue.
+     */
+    @Test
+    public void testConfigureTasks02() {
+        // given
+        this.scheduler.configureTasks(new ScheduledTaskRegistrar());
 
-        this.nodeStatusQueue.processQueue();
+        // when
+        expect(Integer.valueOf(this.tokenQueue.processQueue()))
+            .andReturn(Integer.valueOf(0));
+        expect(Integer.valueOf(this.transactionQueue.processQueue()))
+            .andReturn(Integer.valueOf(0));
+        expect(Integer.valueOf(this.pingQueue.processQueue()))
+            .andReturn(Integer.valueOf(0));
+        expect(Integer.valueOf(this.findNodeQueue.processQueue()))
+            .andReturn(Integer.valueOf(0));
+        expect(Integer.valueOf(this.lookupQueue.processQueue()))
+            .andReturn(Integer.valueOf(0));
+        expect(Integer.valueOf(this.pacer.processQueue()))
+            .andReturn(Integer.valueOf(0));
+        expect(Integer.valueOf(this.bucketStatusQueue.processQueue()))
+            .andReturn(Integer.valueOf(0));
+        expect(Integer.valueOf(this.infoHashRoutingTable.expirePeers()))
+            .andReturn(Integer.valueOf(0));
+        expect(Integer.valueOf(this.banList.processQueue()))
+            .andReturn(Integer.valueOf(0));
+        expect(Integer.valueOf(this.metrics.processQueue()))
+            .andReturn(Integer.valueOf(0));
+        expect(Integer.valueOf(this.packetLog.processQueue()))
+            .andReturn(Integer.valueOf(0));
 
         replayAll();
 
-        this.scheduler.process();
+        for (DHTQueueTask task : this.scheduler.getTasks()) {
+            task.run();
+        }
 
         // then
         verifyAll();
-
     }
-
 }
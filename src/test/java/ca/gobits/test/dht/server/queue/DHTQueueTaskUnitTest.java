@@ -0,0 +1,174 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.test.dht.server.queue;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+import ca.gobits.dht.server.queue.DHTQueue;
+import ca.gobits.dht.server.queue.DHTQueueTask;
+import ca.gobits.dht.util.EventRecorder;
+import ca.gobits.dht.util.EventRecorder.EventType;
+import ca.gobits.dht.util.Events;
+
+/**
+ * DHTQueueTask Unit Tests.
+ *
+ */
+public final class DHTQueueTaskUnitTest {
+
+    /** Number of requests the queue processes each run. */
+    private int processed;
+
+    /** Queue returning processed. */
+    private final DHTQueue queue = new DHTQueue() {
+        @Override
+        public int processQueue() {
+            return DHTQueueTaskUnitTest.this.processed;
+        }
+    };
+
+    /** Instance of DHTQueueTask. */
+    private final DHTQueueTask task = new DHTQueueTask("test", this.queue,
+            50, 1000);
+
+    /**
+     * after().
+     */
+    @After
+    public void after() {
+        Events.setRecorder(null);
+    }
+
+    /**
+     * testRun01() - each pass of the queue is recorded as an event.
+     */
+    @Test
+    public void testRun01() {
+        // given
+        Object event = new Object();
+        EventRecorder recorder = createMock(EventRecorder.class);
+        Events.setRecorder(recorder);
+        this.processed = 3;
+
+        expect(recorder.begin(EventType.QUEUE)).andReturn(event);
+        recorder.commitQueue(event, "test", 3);
+        replay(recorder);
+
+        // when
+        this.task.run();
+
+        // then
+        verify(recorder);
+    }
+
+    /**
+     * testUpdate01() - busy queue runs more often.
+     */
+    @Test
+    public void testUpdate01() {
+        // given
+        long now = System.currentTimeMillis();
+
+        // when
+        for (int i = 1; i <= 10; i++) {
+            this.task.update(200, now + i * 100);
+        }
+
+        // then
+        assertTrue(this.task.getRate() > 1000);
+        assertEquals(50, this.task.getDelayInMillis());
+    }
+
+    /**
+     * testUpdate02() - idle queue backs off to the maximum delay.
+     */
+    @Test
+    public void testUpdate02() {
+        // given
+        long now = System.currentTimeMillis();
+        for (int i = 1; i <= 10; i++) {
+            this.task.update(200, now + i * 100);
+        }
+
+        // when
+        this.task.update(0, now + 1100);
+        long delay0 = this.task.getDelayInMillis();
+        for (int i = 1; i <= 10; i++) {
+            this.task.update(0, now + 1100 + i * 1000);
+        }
+
+        // then
+        assertEquals(100, delay0);
+        assertEquals(1000, this.task.getDelayInMillis());
+    }
+
+    /**
+     * testUpdate03() - delay is sized to a batch at the observed rate.
+     */
+    @Test
+    public void testUpdate03() {
+        // given
+        long now = System.currentTimeMillis();
+
+        // when
+        for (int i = 1; i <= 50; i++) {
+            this.task.update(20, now + i * 1000);
+        }
+
+        // then
+        assertEquals(800, this.task.getDelayInMillis(), 10);
+    }
+
+    /**
+     * testNextExecutionTime01() - next run is delay after last completion.
+     */
+    @Test
+    public void testNextExecutionTime01() {
+        // given
+        this.processed = 0;
+        Date completed = new Date(100000);
+        SimpleTriggerContext context = new SimpleTriggerContext();
+        context.update(completed, completed, completed);
+
+        // when
+        this.task.run();
+        Date result = this.task.nextExecutionTime(context);
+
+        // then
+        assertEquals(1000, this.task.getDelayInMillis());
+        assertEquals(101000, result.getTime());
+    }
+
+    /**
+     * testConstructor01() - invalid delays.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor01() {
+        new DHTQueueTask("test", this.queue, 100, 50);
+    }
+}
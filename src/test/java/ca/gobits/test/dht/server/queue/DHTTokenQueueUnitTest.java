@@ -16,24 +16,18 @@
 
 package ca.gobits.test.dht.server.queue;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertNotEquals;
-import static org.junit.Assert.assertNotNull;
-import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.net.InetAddress;
 import java.util.Arrays;
-import java.util.Calendar;
 
 import org.junit.Test;
-import org.springframework.test.util.ReflectionTestUtils;
 
-import ca.gobits.dht.DHTToken;
 import ca.gobits.dht.server.queue.DHTTokenQueue;
 import ca.gobits.dht.server.queue.DHTTokenQueueImpl;
-import ca.gobits.dht.util.ConcurrentSortedList;
 
 /**
  * DHTTokenQueue Unit Tests.
@@ -42,39 +36,18 @@ import ca.gobits.dht.util.ConcurrentSortedList;
 public final class DHTTokenQueueUnitTest {
 
     /**
-     * testAdd01().
-     * @throws Exception  Exception
-     */
-    @Test
-    public void testAdd01() throws Exception {
-        // given
-        DHTTokenQueue tt = new DHTTokenQueueImpl();
-        String secret = "secret";
-        int port = 64568;
-        InetAddress addr = InetAddress.getByName("50.71.214.139");
-
-        // when
-        tt.add(addr, port, secret.getBytes());
-        DHTToken result = tt.get(addr, port, secret.getBytes());
-
-        // then
-        assertNotNull(result);
-    }
-
-    /**
-     * testValid01() - token not found for address / secret.
+     * testValid01() - token from another token queue is not valid.
      * @throws Exception  Exception
      */
     @Test
     public void testValid01() throws Exception {
         // given
         DHTTokenQueue tt = new DHTTokenQueueImpl();
-        String secret = "secret";
-        int port = 64568;
         InetAddress addr = InetAddress.getByName("50.71.214.139");
+        byte[] token = new DHTTokenQueueImpl().generateToken(addr);
 
         // when
-        boolean result = tt.valid(addr, port, secret.getBytes());
+        boolean result = tt.valid(addr, token);
 
         // then
         assertFalse(result);
@@ -88,337 +61,103 @@ public final class DHTTokenQueueUnitTest {
     public void testValid02() throws Exception {
         // given
         DHTTokenQueue tt = new DHTTokenQueueImpl();
-        String secret = "secret";
-        int port = 64568;
         InetAddress addr = InetAddress.getByName("50.71.214.139");
-
-        tt.add(addr, port, secret.getBytes());
+        byte[] token = tt.generateToken(addr);
 
         // when
-        boolean result = tt.valid(addr, port, secret.getBytes());
+        boolean result = tt.valid(addr, token);
 
         // then
+        assertEquals(8, token.length);
+        assertArrayEquals(token, tt.generateToken(addr));
         assertTrue(result);
     }
 
     /**
-     * testValid03() - token is expired.
+     * testValid03() - token stays valid for one secret rotation, then
+     * expires.
      * @throws Exception  Exception
      */
     @Test
     public void testValid03() throws Exception {
         // given
         DHTTokenQueueImpl tt = new DHTTokenQueueImpl();
-        String secret = "secret";
-        int port = 64568;
         InetAddress addr = InetAddress.getByName("50.71.214.139");
-
-        tt.add(addr, port, secret.getBytes());
-        DHTToken token = tt.get(addr, port, secret.getBytes());
-
-        Calendar c = Calendar.getInstance();
-        c.setTime(token.getAddedDate());
-        c.add(Calendar.MINUTE, -1 * tt.getTokenExpiryInMinutes() - 1);
-
-        ReflectionTestUtils.setField(token, "addedDate", c.getTime());
+        byte[] token = tt.generateToken(addr);
+        long now = System.currentTimeMillis();
 
         // when
-        boolean result = tt.valid(addr, port, secret.getBytes());
+        tt.rotateSecret(now);
+        boolean result0 = tt.valid(addr, token);
+        tt.rotateSecret(now);
+        boolean result1 = tt.valid(addr, token);
 
         // then
-        assertFalse(result);
+        assertTrue(result0);
+        assertFalse(result1);
     }
 
     /**
-     * testValid04() - token is valid, but wrong port.
+     * testValid04() - token is valid, but wrong address.
      * @throws Exception  Exception
      */
     @Test
     public void testValid04() throws Exception {
         // given
         DHTTokenQueue tt = new DHTTokenQueueImpl();
-        String secret = "secret";
-        int port0 = 64568;
         InetAddress addr0 = InetAddress.getByName("50.71.214.139");
-        int port1 = 64569;
-        InetAddress addr1 = InetAddress.getByName("50.71.214.139");
-
-        tt.add(addr0, port0, secret.getBytes());
+        InetAddress addr1 = InetAddress.getByName("50.71.214.140");
+        byte[] token = tt.generateToken(addr0);
 
         // when
-        boolean result = tt.valid(addr1, port1, secret.getBytes());
+        boolean result = tt.valid(addr1, token);
 
         // then
         assertFalse(result);
     }
 
-
     /**
-     * testValid05() - token is valid, but wrong address.
+     * testValid05() - null and wrong length tokens are not valid.
      * @throws Exception  Exception
      */
     @Test
     public void testValid05() throws Exception {
         // given
         DHTTokenQueue tt = new DHTTokenQueueImpl();
-        String secret = "secret";
-        int port = 64568;
-        InetAddress addr0 = InetAddress.getByName("50.71.214.139");
-        InetAddress addr1 = InetAddress.getByName("50.71.214.140");
-
-        tt.add(addr0, port, secret.getBytes());
-
-        // when
-        boolean result = tt.valid(addr1, port, secret.getBytes());
-
-        // then
-        assertFalse(result);
-    }
-
-    /**
-     * testValid06() - sets Token Expiry to negative number and token is expired
-     * right away.
-     * @throws Exception  Exception
-     */
-    @Test
-    public void testValid06() throws Exception {
-        // given
-        DHTTokenQueueImpl tt = new DHTTokenQueueImpl();
-        tt.setTokenExpiryInMinutes(-20);
-
-        String secret = "secret";
-        int port = 64568;
-        InetAddress addr0 = InetAddress.getByName("50.71.214.139");
-
-        tt.add(addr0, port, secret.getBytes());
+        InetAddress addr = InetAddress.getByName("50.71.214.139");
 
         // when
-        boolean result = tt.valid(addr0, port, secret.getBytes());
+        boolean result0 = tt.valid(addr, null);
+        boolean result1 = tt.valid(addr, "aoeusnth1".getBytes());
 
         // then
-        assertFalse(result);
+        assertFalse(result0);
+        assertFalse(result1);
     }
 
     /**
-     * testRemoveExpiredTokens01().
+     * testProcessQueue01() - secret rotates once the rotation interval
+     * has passed.
      * @throws Exception  Exception
      */
-    @SuppressWarnings("unchecked")
     @Test
-    public void testRemoveExpiredTokens01() throws Exception {
+    public void testProcessQueue01() throws Exception {
         // given
         DHTTokenQueueImpl tt = new DHTTokenQueueImpl();
-        ConcurrentSortedList<DHTToken> list = (ConcurrentSortedList<DHTToken>)
-                ReflectionTestUtils.getField(tt, "tokens");
-
-        byte[] addr = InetAddress.getByName("50.71.214.139").getAddress();
-
-        Calendar c = Calendar.getInstance();
-        c.add(Calendar.MINUTE, -1 * tt.getTokenExpiryInMinutes() - 1);
-        DHTToken t0 = new DHTToken(new byte[]{1}, addr, 10);
-        t0.setAddedDate(c.getTime());
-
-        DHTToken t1 = new DHTToken(new byte[]{2}, addr, 10);
-
-        DHTToken t2 = new DHTToken(new byte[]{3}, addr, 10);
-
-        list.addAll(Arrays.asList(t0, t1, t2));
+        InetAddress addr = InetAddress.getByName("50.71.214.139");
+        byte[] token = tt.generateToken(addr);
 
         // when
         tt.processQueue();
-
-        // then
-        assertEquals(2, list.size());
-        assertNull(list.get(t0));
-        assertNotNull(list.get(t1));
-        assertNotNull(list.get(t2));
-    }
-
-    /**
-     * testRemoveExpiredTokens02() no expired tokens.
-     * @throws Exception  Exception
-     */
-    @SuppressWarnings("unchecked")
-    @Test
-    public void testRemoveExpiredTokens02() throws Exception {
-        // given
-        DHTTokenQueueImpl tt = new DHTTokenQueueImpl();
-        ConcurrentSortedList<DHTToken> list = (ConcurrentSortedList<DHTToken>)
-                ReflectionTestUtils.getField(tt, "tokens");
-
-        byte[] addr = InetAddress.getByName("50.71.214.139").getAddress();
-
-        DHTToken t0 = new DHTToken(new byte[]{1}, addr, 10);
-
-        list.addAll(Arrays.asList(t0));
-
-        // when
+        byte[] result0 = tt.generateToken(addr);
+        tt.setSecretRotationInMinutes(0);
         tt.processQueue();
+        byte[] result1 = tt.generateToken(addr);
 
         // then
-        assertEquals(1, list.size());
-        assertNotNull(list.get(t0));
+        assertArrayEquals(token, result0);
+        assertFalse(Arrays.equals(token, result1));
+        assertTrue(tt.valid(addr, token));
     }
 
-    /**
-     * testRemoveExpiredTokens03() no expired tokens.
-     * @throws Exception  Exception
-     */
-    @SuppressWarnings("unchecked")
-    @Test
-    public void testRemoveExpiredTokens03() throws Exception {
-        // given
-        DHTTokenQueueImpl tt = new DHTTokenQueueImpl();
-        ConcurrentSortedList<DHTToken> list = (ConcurrentSortedList<DHTToken>)
-                ReflectionTestUtils.getField(tt, "tokens");
-
-        byte[] addr = InetAddress.getByName("50.71.214.139").getAddress();
-
-        DHTToken t0 = new DHTToken(new byte[]{1}, addr, 10);
-
-        list.addAll(Arrays.asList(t0));
-
-        // when
-        tt.processQueue();
-
-        // then
-        assertEquals(1, list.size());
-        assertNotNull(list.get(t0));
-    }
-
-    /**
-     * testRemoveExpiredTokens04() - test adding / remove tokens at the same
-     * time.
-     *
-     * @throws Exception  Exception
-     */
-    @SuppressWarnings("unchecked")
-    @Test
-    public void testRemoveExpiredTokens04() throws Exception {
-        // given
-        final DHTTokenQueueImpl tt = new DHTTokenQueueImpl();
-        final ConcurrentSortedList<DHTToken> list =
-            (ConcurrentSortedList<DHTToken>)
-                ReflectionTestUtils.getField(tt, "tokens");
-
-        final Calendar expired = Calendar.getInstance();
-        expired.add(Calendar.MINUTE, -1 * tt.getTokenExpiryInMinutes() - 1);
-
-        final int port = 64568;
-        final InetAddress addr = InetAddress.getByName("50.71.214.139");
-
-        // when
-        Thread add = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                for (int i = 0; i < 100; i++) {
-                    tt.add(addr, port, "secret".getBytes());
-                    DHTToken t0 = new DHTToken(new byte[] {(byte) i},
-                            addr.getAddress(), 10);
-                    t0.setAddedDate(expired.getTime());
-                    list.add(t0);
-                }
-            }
-        });
-        add.start();
-
-        Thread remove = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                for (int i = 0; i < 100; i++) {
-                    tt.processQueue();
-                }
-            }
-        });
-        remove.start();
-
-        // then
-        while (add.isAlive() || remove.isAlive()) {
-            Thread.sleep(50);
-        }
-
-        assertFalse(add.isAlive());
-        assertFalse(remove.isAlive());
-
-        assertEquals(1, list.size());
-    }
-
-    /**
-     * testGetTransactionId01() - first time Null LastUpdated Date.
-     */
-    @Test
-    public void testGetTransactionId01() {
-        // given
-        DHTTokenQueue t = new DHTTokenQueueImpl();
-        assertNull(ReflectionTestUtils.getField(t, "transactionId1"));
-        assertNull(ReflectionTestUtils.getField(t, "transactionId2"));
-
-        // when
-        String result = t.getTransactionId();
-
-        // verify
-        assertEquals(2, result.length());
-        assertEquals(result, ReflectionTestUtils.getField(t, "transactionId1"));
-        assertEquals(result, ReflectionTestUtils.getField(t, "transactionId2"));
-    }
-
-    /**
-     * testGetTransactionId02() - Expired Transaction Last Updated.
-     */
-    @Test
-    public void testGetTransactionId02() {
-        // given
-        DHTTokenQueue tt = new DHTTokenQueueImpl();
-        Calendar c = Calendar.getInstance();
-        c.add(Calendar.MINUTE, -16);
-        ReflectionTestUtils.setField(tt, "transactionLastUpdated", c.getTime());
-        String transactionId = tt.getTransactionId();
-
-        // when
-        String result = tt.getTransactionId();
-
-        // verify
-        assertEquals(2, result.length());
-        assertNotEquals(result, transactionId);
-    }
-
-    /**
-     * testGetTransactionId03() - NOT Expired Transaction Last Updated.
-     */
-    @Test
-    public void testGetTransactionId03() {
-        // given
-        DHTTokenQueue tt = new DHTTokenQueueImpl();
-        Calendar c = Calendar.getInstance();
-        c.add(Calendar.MINUTE, -14);
-        ReflectionTestUtils.setField(tt, "transactionLastUpdated", c.getTime());
-        String transactionId = tt.getTransactionId();
-
-        // when
-        String result = tt.getTransactionId();
-
-        // verify
-        assertEquals(2, result.length());
-        assertEquals(result, transactionId);
-    }
-
-    /**
-     * testGetTransactionId04() - different transaction Id tokens both
-     * transaction ids are valid.
-     */
-    @Test
-    public void testGetTransactionId04() {
-        // given
-        DHTTokenQueue tt = new DHTTokenQueueImpl();
-
-        // when
-        ReflectionTestUtils.setField(tt, "transactionId1", "aa");
-        ReflectionTestUtils.setField(tt, "transactionId2", "bb");
-
-        // verify
-        assertTrue(tt.isValidTransactionId("aa"));
-        assertTrue(tt.isValidTransactionId("bb"));
-        assertFalse(tt.isValidTransactionId(null));
-        assertFalse(tt.isValidTransactionId("ab"));
-    }
 }
@@ -0,0 +1,236 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.test.dht.server.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.gobits.dht.server.DHTParameters;
+import ca.gobits.dht.server.DHTParameters.DHTQueryType;
+import ca.gobits.dht.server.queue.DHTTransaction;
+import ca.gobits.dht.server.queue.DHTTransactionListener;
+import ca.gobits.dht.server.queue.DHTTransactionQueueImpl;
+
+/**
+ * DHTTransactionQueue Unit Tests.
+ *
+ */
+public final class DHTTransactionQueueUnitTest {
+
+    /** Instance of DHTTransactionQueueImpl starting at 0. */
+    private final DHTTransactionQueueImpl queue =
+            new DHTTransactionQueueImpl(0);
+
+    /** Address queries are sent to. */
+    private InetAddress addr;
+
+    /**
+     * before.
+     * @throws Exception  Exception
+     */
+    @Before
+    public void before() throws Exception {
+        this.addr = InetAddress.getByName("50.71.214.139");
+    }
+
+    /**
+     * testMatch01() - response from the queried node is matched.
+     */
+    @Test
+    public void testMatch01() {
+        // given
+        byte[] t = this.queue.add(this.addr, 6881, DHTQueryType.PING, 1000);
+
+        // when
+        DHTTransaction result = this.queue.match(t, this.addr, 6881, 1250);
+
+        // then
+        assertNotNull(result);
+        assertEquals(DHTQueryType.PING, result.getQueryType());
+        assertEquals(0, this.queue.size());
+        assertEquals(1, this.queue.getResponseCount());
+        assertEquals(250, this.queue.getAverageRoundTripInMillis());
+        assertNull(this.queue.match(t, this.addr, 6881, 1300));
+        assertEquals(1, this.queue.getUnsolicitedCount());
+    }
+
+    /**
+     * testMatch02() - response from another node or port is unsolicited.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testMatch02() throws Exception {
+        // given
+        InetAddress other = InetAddress.getByName("50.71.214.140");
+        byte[] t = this.queue.add(this.addr, 6881, DHTQueryType.FIND_NODE,
+                1000);
+
+        // when
+        DHTTransaction result0 = this.queue.match(t, other, 6881, 1100);
+        DHTTransaction result1 = this.queue.match(t, this.addr, 6882, 1100);
+        DHTTransaction result2 = this.queue.match(null, this.addr, 6881,
+                1100);
+        DHTTransaction result3 = this.queue.match("aaa".getBytes(),
+                this.addr, 6881, 1100);
+
+        // then
+        assertNull(result0);
+        assertNull(result1);
+        assertNull(result2);
+        assertNull(result3);
+        assertEquals(4, this.queue.getUnsolicitedCount());
+        assertEquals(1, this.queue.size());
+    }
+
+    /**
+     * testSent01() - round trip time and timeout start when the query
+     * is written to the socket.
+     */
+    @Test
+    public void testSent01() {
+        // given
+        byte[] t = this.queue.add(this.addr, 6881, DHTQueryType.PING, 0);
+        long timeout = this.queue.getTimeoutInMillis();
+
+        // when
+        this.queue.sent(t, 2000);
+        this.queue.sent(null, 2000);
+
+        // then
+        assertEquals(0, this.queue.processQueue(timeout + 1000));
+        assertEquals(1, this.queue.size());
+        assertEquals(2000, this.queue.match(t, this.addr, 6881, 2300)
+                .getSent());
+        assertEquals(300, this.queue.getAverageRoundTripInMillis());
+    }
+
+    /**
+     * testCancel01() - cancelled query is removed without a timeout and
+     * without telling its listener.
+     */
+    @Test
+    public void testCancel01() {
+        // given
+        final List<DHTTransaction> timedOut = new ArrayList<DHTTransaction>();
+        byte[] t = this.queue.add(this.addr, 6881, DHTQueryType.FIND_NODE,
+                new DHTTransactionListener() {
+                    @Override
+                    public void responded(final DHTTransaction transaction,
+                            final DHTParameters params) {
+                    }
+
+                    @Override
+                    public void timedOut(final DHTTransaction transaction) {
+                        timedOut.add(transaction);
+                    }
+                }, 0);
+
+        // when
+        boolean result0 = this.queue.cancel(t);
+        boolean result1 = this.queue.cancel(t);
+        this.queue.processQueue(this.queue.getTimeoutInMillis() + 1000);
+
+        // then
+        assertTrue(result0);
+        assertFalse(result1);
+        assertEquals(0, this.queue.size());
+        assertEquals(0, this.queue.getTimeoutCount());
+        assertTrue(timedOut.isEmpty());
+        assertNull(this.queue.match(t, this.addr, 6881, 100));
+    }
+
+    /**
+     * testAdd01() - outstanding queries get different transaction ids.
+     */
+    @Test
+    public void testAdd01() {
+        // given
+        byte[] t0 = this.queue.add(this.addr, 6881, DHTQueryType.PING, 0);
+
+        // when
+        byte[] t1 = this.queue.add(this.addr, 6881, DHTQueryType.PING, 0);
+
+        // then
+        assertEquals(2, t0.length);
+        assertFalse(Arrays.equals(t0, t1));
+        assertEquals(2, this.queue.size());
+        assertSame(DHTQueryType.PING,
+                this.queue.match(t1, this.addr, 6881, 0).getQueryType());
+    }
+
+    /**
+     * testProcessQueue01() - unanswered queries time out.
+     */
+    @Test
+    public void testProcessQueue01() {
+        // given
+        byte[] t = this.queue.add(this.addr, 6881, DHTQueryType.PING, 1000);
+        long timeout = this.queue.getTimeoutInMillis();
+
+        // when
+        this.queue.processQueue(1000 + timeout - 1);
+        assertEquals(1, this.queue.size());
+        this.queue.processQueue(1000 + timeout);
+
+        // then
+        assertEquals(0, this.queue.size());
+        assertEquals(1, this.queue.getTimeoutCount());
+        assertNull(this.queue.match(t, this.addr, 6881, 1000 + timeout));
+    }
+
+    /**
+     * testProcessQueue02() - listener is told the query timed out.
+     */
+    @Test
+    public void testProcessQueue02() {
+        // given
+        final List<DHTTransaction> timedOut = new ArrayList<DHTTransaction>();
+        DHTTransactionListener listener = new DHTTransactionListener() {
+            @Override
+            public void responded(final DHTTransaction transaction,
+                    final DHTParameters params) {
+            }
+
+            @Override
+            public void timedOut(final DHTTransaction transaction) {
+                timedOut.add(transaction);
+            }
+        };
+
+        this.queue.add(this.addr, 6881, DHTQueryType.FIND_NODE, listener, 0);
+
+        // when
+        this.queue.processQueue(this.queue.getTimeoutInMillis());
+
+        // then
+        assertEquals(1, timedOut.size());
+        assertSame(listener, timedOut.get(0).getListener());
+        assertSame(DHTQueryType.FIND_NODE, timedOut.get(0).getQueryType());
+    }
+}
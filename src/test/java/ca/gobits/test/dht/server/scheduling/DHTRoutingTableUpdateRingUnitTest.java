@@ -0,0 +1,598 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.test.dht.server.scheduling;
+
+import static ca.gobits.dht.factory.DHTNodeFactory.create;
+import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import org.easymock.EasyMockRunner;
+import org.easymock.EasyMockSupport;
+import org.easymock.Mock;
+import org.easymock.TestSubject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import ca.gobits.dht.DHTBucket;
+import ca.gobits.dht.DHTIdentifier;
+import ca.gobits.dht.DHTNode;
+import ca.gobits.dht.DHTNode.State;
+import ca.gobits.dht.DHTNodeRoutingTable;
+import ca.gobits.dht.DHTSecureNodeId;
+import ca.gobits.dht.server.DHTBanList;
+import ca.gobits.dht.server.DHTServerConfig;
+import ca.gobits.dht.server.DHTServerConfig.SecureNodeIdPolicy;
+import ca.gobits.dht.server.queue.DHTBucketStatusQueue;
+import ca.gobits.dht.server.scheduling.DHTRoutingTableUpdateRing;
+
+/**
+ * DHTRoutingTableUpdateRing Unit Tests.
+ *
+ */
+@RunWith(EasyMockRunner.class)
+public final class DHTRoutingTableUpdateRingUnitTest extends EasyMockSupport {
+
+    /** Instance of DHTRoutingTableUpdateRing. */
+    @TestSubject
+    private final DHTRoutingTableUpdateRing ring =
+            new DHTRoutingTableUpdateRing(512);
+
+    /** Mock DHTServerConfig. */
+    @Mock
+    private DHTServerConfig config;
+
+    /** Mock DHTNodeRoutingTable. */
+    @Mock
+    private DHTNodeRoutingTable rt;
+
+    /** Mock DHTBanList. */
+    @Mock
+    private DHTBanList banList;
+
+    /** Mock DHTBucketStatusQueue. */
+    @Mock
+    private DHTBucketStatusQueue bucketStatusQueue;
+
+    /** Node identifier. */
+    private final byte[] nodeId = DHTIdentifier.getRandomNodeId();
+
+    /** Node port. */
+    private final int port = 6881;
+
+    /** Node address. */
+    private InetAddress addr;
+
+    /**
+     * before().
+     * @throws Exception  Exception
+     */
+    @Before
+    public void before() throws Exception {
+        this.addr = InetAddress.getByName("127.0.0.1");
+    }
+
+    /**
+     * testConstructor01() - capacity is rounded up to a power of two.
+     */
+    @Test
+    public void testConstructor01() {
+        // given
+        // when
+        DHTRoutingTableUpdateRing result = new DHTRoutingTableUpdateRing(5);
+
+        // then
+        assertEquals(8, result.getCapacity());
+        assertEquals(512, this.ring.getCapacity());
+    }
+
+    /**
+     * testUpdateNodeStatus01() - existing node is set to GOOD.
+     */
+    @Test
+    public void testUpdateNodeStatus01() {
+        // given
+        DHTNode node = create(this.nodeId, this.addr, this.port,
+                State.QUESTIONABLE);
+        node.setLastUpdated(null);
+
+        // when
+        expect(this.rt.findExactNode(this.nodeId, false)).andReturn(node);
+        this.bucketStatusQueue.updateBucketLastChanged(this.nodeId, false);
+
+        replayAll();
+        boolean result = this.ring.updateNodeStatus(this.nodeId, this.addr,
+                this.port, false, true);
+        int count = this.ring.drain();
+
+        // then
+        verifyAll();
+        assertTrue(result);
+        assertEquals(1, count);
+        assertEquals(0, this.ring.size());
+        assertEquals(State.GOOD, node.getState());
+        assertNotNull(node.getLastUpdated());
+    }
+
+    /**
+     * testUpdateNodeStatus02() - missing node is added.
+     */
+    @Test
+    public void testUpdateNodeStatus02() {
+        // given
+        // when
+        expect(this.rt.findExactNode(this.nodeId, true)).andReturn(null);
+        expect(this.rt.addNode(this.nodeId, this.addr, this.port, State.GOOD))
+                .andReturn(null);
+        this.bucketStatusQueue.updateBucketLastChanged(this.nodeId, true);
+
+        expect(Boolean.valueOf(this.banList.isBanned(this.addr))).andReturn(
+                Boolean.FALSE);
+        replayAll();
+        this.ring.updateNodeStatus(this.nodeId, this.addr, this.port, true,
+                true);
+        int result = this.ring.drain();
+
+        // then
+        verifyAll();
+        assertEquals(1, result);
+    }
+
+    /**
+     * testUpdateNodeStatus03() - missing node is not added.
+     */
+    @Test
+    public void testUpdateNodeStatus03() {
+        // given
+        // when
+        expect(this.rt.findExactNode(this.nodeId, false)).andReturn(null);
+
+        replayAll();
+        this.ring.updateNodeStatus(this.nodeId, this.addr, this.port, false,
+                false);
+        int result = this.ring.drain();
+
+        // then
+        verifyAll();
+        assertEquals(1, result);
+    }
+
+    /**
+     * testUpdateNodeStatus04() - repeated updates within the window are
+     * collapsed into one.
+     */
+    @Test
+    public void testUpdateNodeStatus04() {
+        // given
+        long now = System.currentTimeMillis();
+
+        // when
+        expect(this.rt.findExactNode(aryEq(this.nodeId), eq(false)))
+                .andReturn(null);
+
+        replayAll();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(this.ring.updateNodeStatus(this.nodeId.clone(),
+                    this.addr, this.port, false, false, now + i));
+        }
+
+        int result = this.ring.drain();
+
+        // then
+        verifyAll();
+        assertEquals(1, result);
+        assertEquals(2, this.ring.getCollapsed());
+    }
+
+    /**
+     * testUpdateNodeStatus05() - add node if missing wins over a pending
+     * update that does not add.
+     */
+    @Test
+    public void testUpdateNodeStatus05() {
+        // given
+        long now = System.currentTimeMillis();
+
+        // when
+        expect(this.rt.findExactNode(this.nodeId, false)).andReturn(null);
+        expect(this.rt.addNode(this.nodeId, this.addr, this.port, State.GOOD))
+                .andReturn(null);
+        this.bucketStatusQueue.updateBucketLastChanged(this.nodeId, false);
+
+        expect(Boolean.valueOf(this.banList.isBanned(this.addr))).andReturn(
+                Boolean.FALSE);
+        replayAll();
+        this.ring.updateNodeStatus(this.nodeId, this.addr, this.port, false,
+                false, now);
+        this.ring.updateNodeStatus(this.nodeId, this.addr, this.port, false,
+                true, now + 1);
+        int result = this.ring.drain();
+
+        // then
+        verifyAll();
+        assertEquals(1, result);
+        assertEquals(1, this.ring.getCollapsed());
+    }
+
+    /**
+     * testUpdateNodeStatus06() - add node if missing after an applied
+     * update that did not add is published.
+     */
+    @Test
+    public void testUpdateNodeStatus06() {
+        // given
+        long now = System.currentTimeMillis();
+
+        // when
+        expect(this.rt.findExactNode(this.nodeId, false)).andReturn(null)
+                .times(2);
+        expect(this.rt.addNode(this.nodeId, this.addr, this.port, State.GOOD))
+                .andReturn(null);
+        this.bucketStatusQueue.updateBucketLastChanged(this.nodeId, false);
+
+        expect(Boolean.valueOf(this.banList.isBanned(this.addr))).andReturn(
+                Boolean.FALSE);
+        replayAll();
+        this.ring.updateNodeStatus(this.nodeId, this.addr, this.port, false,
+                false, now);
+        int r0 = this.ring.drain();
+        this.ring.updateNodeStatus(this.nodeId, this.addr, this.port, false,
+                true, now + 1);
+        int r1 = this.ring.drain();
+
+        // then
+        verifyAll();
+        assertEquals(1, r0);
+        assertEquals(1, r1);
+        assertEquals(0, this.ring.getCollapsed());
+    }
+
+    /**
+     * testUpdateNodeStatus07() - updates after the window or with
+     * coalescing disabled are published.
+     */
+    @Test
+    public void testUpdateNodeStatus07() {
+        // given
+        long now = System.currentTimeMillis();
+
+        // when
+        expect(this.rt.findExactNode(this.nodeId, true)).andReturn(null)
+                .times(4);
+
+        replayAll();
+        this.ring.updateNodeStatus(this.nodeId, this.addr, this.port, true,
+                false, now);
+        this.ring.updateNodeStatus(this.nodeId, this.addr, this.port, true,
+                false, now + DHTServerConfig.DEFAULT_COALESCE_MILLIS);
+
+        this.ring.setCoalesceWindowInMillis(0);
+        this.ring.updateNodeStatus(this.nodeId, this.addr, this.port, true,
+                false, now);
+        this.ring.updateNodeStatus(this.nodeId, this.addr, this.port, true,
+                false, now);
+
+        int result = this.ring.drain();
+
+        // then
+        verifyAll();
+        assertEquals(4, result);
+        assertEquals(0, this.ring.getCollapsed());
+    }
+
+    /**
+     * testAddNode01() - node is added.
+     */
+    @Test
+    public void testAddNode01() {
+        // given
+        // when
+        expect(this.rt.addNode(this.nodeId, this.addr, this.port, State.GOOD))
+                .andReturn(null);
+        this.bucketStatusQueue.updateBucketLastChanged(this.nodeId, false);
+
+        expect(Boolean.valueOf(this.banList.isBanned(this.addr))).andReturn(
+                Boolean.FALSE);
+        replayAll();
+        boolean result = this.ring.addNode(this.nodeId, this.addr, this.port,
+                false);
+        this.ring.drain();
+
+        // then
+        verifyAll();
+        assertTrue(result);
+    }
+
+    /**
+     * testAddNode02() - node with an identifier that does not match its
+     * address is not added when secure identifiers are enforced.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testAddNode02() throws Exception {
+        // given
+        InetAddress external = InetAddress.getByName("124.31.75.21");
+        this.ring.setSecureNodeIdPolicy(SecureNodeIdPolicy.ENFORCE);
+
+        // when
+        expect(Boolean.valueOf(this.banList.isBanned(external))).andReturn(
+                Boolean.FALSE);
+        replayAll();
+        boolean result = this.ring.addNode(this.nodeId, external, this.port,
+                false);
+        this.ring.drain();
+
+        // then
+        verifyAll();
+        assertTrue(result);
+        assertEquals(1, this.ring.getUnverified());
+    }
+
+    /**
+     * testAddNode03() - node with a secure identifier is added when secure
+     * identifiers are enforced.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testAddNode03() throws Exception {
+        // given
+        InetAddress external = InetAddress.getByName("124.31.75.21");
+        byte[] id = DHTSecureNodeId.getNodeId(external.getAddress(),
+                this.nodeId);
+        this.ring.setSecureNodeIdPolicy(SecureNodeIdPolicy.ENFORCE);
+
+        // when
+        expect(this.rt.addNode(id, external, this.port, State.GOOD))
+                .andReturn(null);
+        this.bucketStatusQueue.updateBucketLastChanged(id, false);
+
+        expect(Boolean.valueOf(this.banList.isBanned(external))).andReturn(
+                Boolean.FALSE);
+        replayAll();
+        this.ring.addNode(id, external, this.port, false);
+        this.ring.drain();
+
+        // then
+        verifyAll();
+        assertEquals(0, this.ring.getUnverified());
+    }
+
+    /**
+     * testAddNode04() - unverified node is added to a bucket that is less
+     * than half full when secure identifiers are preferred.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testAddNode04() throws Exception {
+        // given
+        InetAddress external = InetAddress.getByName("124.31.75.21");
+        DHTBucket bucket = new DHTBucket(new byte[] {0 }, new byte[] {-1 });
+        bucket.setNodeCount(DHTBucket.MAX_NODE_COUNT / 2 - 1);
+        this.ring.setSecureNodeIdPolicy(SecureNodeIdPolicy.PREFER);
+
+        // when
+        expect(this.rt.findBucket(this.nodeId, false)).andReturn(bucket);
+        expect(this.rt.addNode(this.nodeId, external, this.port, State.GOOD))
+                .andReturn(null);
+        this.bucketStatusQueue.updateBucketLastChanged(this.nodeId, false);
+
+        expect(Boolean.valueOf(this.banList.isBanned(external))).andReturn(
+                Boolean.FALSE);
+        replayAll();
+        this.ring.addNode(this.nodeId, external, this.port, false);
+        this.ring.drain();
+
+        // then
+        verifyAll();
+        assertEquals(0, this.ring.getUnverified());
+    }
+
+    /**
+     * testAddNode05() - unverified node is not added to a bucket that is
+     * half full when secure identifiers are preferred.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testAddNode05() throws Exception {
+        // given
+        InetAddress external = InetAddress.getByName("124.31.75.21");
+        DHTBucket bucket = new DHTBucket(new byte[] {0 }, new byte[] {-1 });
+        bucket.setNodeCount(DHTBucket.MAX_NODE_COUNT / 2);
+        this.ring.setSecureNodeIdPolicy(SecureNodeIdPolicy.PREFER);
+
+        // when
+        expect(this.rt.findBucket(this.nodeId, false)).andReturn(bucket);
+
+        expect(Boolean.valueOf(this.banList.isBanned(external))).andReturn(
+                Boolean.FALSE);
+        replayAll();
+        this.ring.addNode(this.nodeId, external, this.port, false);
+        this.ring.drain();
+
+        // then
+        verifyAll();
+        assertEquals(1, this.ring.getUnverified());
+    }
+
+    /**
+     * testRemoveNode01() - node is removed.
+     */
+    @Test
+    public void testRemoveNode01() {
+        // given
+        DHTNode node = create(this.nodeId, this.addr, this.port, State.GOOD);
+
+        // when
+        expect(Boolean.valueOf(this.rt.removeNode(node))).andReturn(
+                Boolean.TRUE);
+
+        replayAll();
+        boolean result = this.ring.removeNode(node);
+        this.ring.drain();
+
+        // then
+        verifyAll();
+        assertTrue(result);
+    }
+
+    /**
+     * testPublish01() - full ring rejects updates until it is drained.
+     */
+    @Test
+    public void testPublish01() {
+        // given
+        DHTNode node = create(this.nodeId, this.addr, this.port, State.GOOD);
+        DHTRoutingTableUpdateRing small = new DHTRoutingTableUpdateRing(2);
+
+        // when
+        boolean r0 = small.removeNode(node);
+        boolean r1 = small.removeNode(node);
+        boolean r2 = small.removeNode(node);
+
+        // then
+        assertTrue(r0);
+        assertTrue(r1);
+        assertFalse(r2);
+        assertEquals(2, small.size());
+        assertEquals(1, small.getRejected());
+    }
+
+    /**
+     * testPublish02() - every shard has its own lane and a full lane does
+     * not reject updates of other shards.
+     */
+    @Test
+    public void testPublish02() {
+        // given
+        byte[] id0 = new byte[DHTIdentifier.NODE_ID_LENGTH];
+        byte[] id1 = new byte[DHTIdentifier.NODE_ID_LENGTH];
+        id1[0] = (byte) 0x80;
+        DHTNode node0 = create(id0, this.addr, this.port, State.GOOD);
+        DHTNode node1 = create(id1, this.addr, this.port, State.GOOD);
+        DHTRoutingTableUpdateRing small = new DHTRoutingTableUpdateRing(2, 2);
+
+        // when
+        boolean r0 = small.removeNode(node0);
+        boolean r1 = small.removeNode(node0);
+        boolean r2 = small.removeNode(node0);
+        boolean r3 = small.removeNode(node1);
+
+        // then
+        assertTrue(r0);
+        assertTrue(r1);
+        assertFalse(r2);
+        assertTrue(r3);
+        assertEquals(2, small.getLaneCount());
+        assertEquals(4, small.getCapacity());
+        assertEquals(3, small.size());
+        assertEquals(1, small.getRejected());
+    }
+
+    /**
+     * testDrain01() - updates are applied in batches.
+     */
+    @Test
+    public void testDrain01() {
+        // given
+        DHTNode node = create(this.nodeId, this.addr, this.port, State.GOOD);
+
+        // when
+        expect(Boolean.valueOf(this.rt.removeNode(node))).andReturn(
+                Boolean.TRUE).times(300);
+
+        replayAll();
+
+        for (int i = 0; i < 300; i++) {
+            assertTrue(this.ring.removeNode(node));
+        }
+
+        int r0 = this.ring.drain();
+        int r1 = this.ring.drain();
+        int r2 = this.ring.drain();
+
+        // then
+        verifyAll();
+        assertEquals(256, r0);
+        assertEquals(44, r1);
+        assertEquals(0, r2);
+    }
+
+    /**
+     * testDrain02() - a failing update does not stop the batch.
+     */
+    @Test
+    public void testDrain02() {
+        // given
+        DHTNode node = create(this.nodeId, this.addr, this.port, State.GOOD);
+
+        // when
+        expect(Boolean.valueOf(this.rt.removeNode(node))).andThrow(
+                new IllegalStateException());
+        expect(Boolean.valueOf(this.rt.removeNode(node))).andReturn(
+                Boolean.TRUE);
+
+        replayAll();
+        this.ring.removeNode(node);
+        this.ring.removeNode(node);
+        int result = this.ring.drain();
+
+        // then
+        verifyAll();
+        assertEquals(2, result);
+    }
+
+    /**
+     * testRun01() - consumer thread applies published updates.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testRun01() throws Exception {
+        // given
+        DHTNode node = create(this.nodeId, this.addr, this.port, State.GOOD);
+        expect(Boolean.valueOf(this.rt.removeNode(node))).andReturn(
+                Boolean.TRUE);
+        expect(Integer.valueOf(this.config.getCoalesceMillis())).andReturn(
+                Integer.valueOf(0));
+        expect(this.config.getSecureNodeIdPolicy()).andReturn(
+                SecureNodeIdPolicy.ENFORCE);
+        replayAll();
+
+        this.ring.afterPropertiesSet();
+
+        // when
+        this.ring.removeNode(node);
+
+        for (int i = 0; i < 100 && this.ring.size() > 0; i++) {
+            Thread.sleep(10);
+        }
+
+        this.ring.destroy();
+
+        // then
+        verifyAll();
+        assertEquals(0, this.ring.size());
+    }
+}
@@ -14,15 +14,5 @@
 // limitations under the License.
 //
 
-package ca.gobits.dht.server.scheduling;
-
-
-/**
- * Interface for DHTRoutingTable tasks.
- *
- */
-public interface DHTRoutingTableExecutor extends Runnable {
-    /*
-     * empty
-     */
-}
+/** DHT Tests package. */
+package ca.gobits.test.dht.server.scheduling;
@@ -16,15 +16,24 @@
 
 package ca.gobits.test.dht.util;
 
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.Test;
 
 import ca.gobits.dht.util.ConcurrentSortedList;
+import ca.gobits.dht.util.EventRecorder;
+import ca.gobits.dht.util.EventRecorder.EventType;
+import ca.gobits.dht.util.Events;
 import ca.gobits.dht.util.SortedCollection;
 
 /**
@@ -76,6 +85,68 @@ public final class ConcurrentSortedListUnitTest extends SortedListAbstractTest {
         assertEquals("z", list.toArray()[3]);
     }
 
+    /**
+     * testLock01() - waiting for a lock held by another thread is recorded.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testLock01() throws Exception {
+        // given
+        final CountDownLatch comparing = new CountDownLatch(1);
+        final ConcurrentSortedList<String> list =
+                new ConcurrentSortedList<String>(new Comparator<String>() {
+                    @Override
+                    public int compare(final String o1, final String o2) {
+                        if (comparing.getCount() > 0) {
+                            comparing.countDown();
+                            sleep();
+                        }
+                        return o1.compareTo(o2);
+                    }
+                }, false);
+
+        Object event = new Object();
+        EventRecorder recorder = createMock(EventRecorder.class);
+        expect(recorder.begin(EventType.LOCK_WAIT)).andReturn(event);
+        recorder.commitLockWait(event, "ConcurrentSortedList.read");
+        replay(recorder);
+
+        list.add("a");
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                list.add("b");
+            }
+        };
+
+        // when
+        Events.setRecorder(recorder);
+
+        try {
+            writer.start();
+            comparing.await();
+            list.size();
+            writer.join();
+        } finally {
+            Events.setRecorder(null);
+        }
+
+        // then
+        verify(recorder);
+        assertEquals(2, list.size());
+    }
+
+    /**
+     * Holds the lock of the writer long enough for the reader to wait.
+     */
+    private static void sleep() {
+        try {
+            Thread.sleep(200);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @Override
     public SortedCollection<String> getInstance(final boolean duplicate) {
         return new ConcurrentSortedList<String>(String.CASE_INSENSITIVE_ORDER,
@@ -0,0 +1,101 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.test.dht.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ca.gobits.dht.util.DecayingBloomFilter;
+
+/**
+ * DecayingBloomFilter Unit Tests.
+ *
+ */
+public final class DecayingBloomFilterUnitTest {
+
+    /** DecayingBloomFilter with 1 second generations starting at 0. */
+    private final DecayingBloomFilter filter = new DecayingBloomFilter(100,
+            0.001, 1000, 0);
+
+    /**
+     * testPut01() - key is only added once.
+     */
+    @Test
+    public void testPut01() {
+        // given
+        byte[] key = "abc".getBytes();
+
+        // when
+        boolean first = this.filter.put(key, 0);
+        boolean second = this.filter.put(key, 10);
+
+        // then
+        assertTrue(first);
+        assertFalse(second);
+        assertTrue(this.filter.mightContain(key, 20));
+        assertFalse(this.filter.mightContain("def".getBytes(), 20));
+    }
+
+    /**
+     * testPut02() - key is remembered for one generation after it
+     * is added and forgotten after two.
+     */
+    @Test
+    public void testPut02() {
+        // given
+        byte[] key = "abc".getBytes();
+        this.filter.put(key, 500);
+
+        // when
+        boolean afterOne = this.filter.mightContain(key, 1500);
+        boolean afterTwo = this.filter.mightContain(key, 2500);
+
+        // then
+        assertTrue(afterOne);
+        assertFalse(afterTwo);
+        assertTrue(this.filter.put(key, 2600));
+    }
+
+    /**
+     * testPut03() - filter rotates once a generation is full.
+     */
+    @Test
+    public void testPut03() {
+        // given
+        byte[] first = new byte[] {0, 0 };
+
+        // when
+        this.filter.put(first, 0);
+        for (int i = 1; i < 250; i++) {
+            this.filter.put(new byte[] {(byte) (i >> 8), (byte) i }, 0);
+        }
+
+        // then
+        assertFalse(this.filter.mightContain(first, 0));
+    }
+
+    /**
+     * testConstructor01() - invalid size.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor01() {
+        new DecayingBloomFilter(0, 0.001, 1000, 0);
+    }
+}
@@ -0,0 +1,144 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.test.dht.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import ca.gobits.dht.util.FrequencySketch;
+
+/**
+ * FrequencySketch Unit Tests.
+ *
+ */
+public final class FrequencySketchUnitTest {
+
+    /** FrequencySketch. */
+    private final FrequencySketch sketch = new FrequencySketch(512);
+
+    /**
+     * testIncrement01() - frequency counts increments.
+     */
+    @Test
+    public void testIncrement01() {
+        // given
+        int hash = "abc".hashCode();
+
+        // when
+        this.sketch.increment(hash);
+        this.sketch.increment(hash);
+        this.sketch.increment(hash);
+
+        // then
+        assertEquals(3, this.sketch.frequency(hash));
+        assertEquals(0, this.sketch.frequency("def".hashCode()));
+    }
+
+    /**
+     * testIncrement02() - frequency saturates at 15.
+     */
+    @Test
+    public void testIncrement02() {
+        // given
+        int hash = 42;
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            this.sketch.increment(hash);
+        }
+
+        // then
+        assertEquals(15, this.sketch.frequency(hash));
+    }
+
+    /**
+     * testIncrement03() - counters are halved after the sample size.
+     */
+    @Test
+    public void testIncrement03() {
+        // given
+        int hash = 42;
+        for (int i = 0; i < 8; i++) {
+            this.sketch.increment(hash);
+        }
+
+        // when
+        for (int i = 8; i < 512 * 10; i++) {
+            this.sketch.increment(1000);
+        }
+
+        // then
+        assertEquals(4, this.sketch.frequency(hash));
+        assertEquals(7, this.sketch.frequency(1000));
+    }
+
+    /**
+     * testIncrement04() - concurrent increments are all counted, so the
+     * counters are halved exactly when the sample size is reached.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testIncrement04() throws Exception {
+        // given
+        final int threads = 4;
+        final FrequencySketch shared = new FrequencySketch(1 << 14);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+
+        for (int i = 0; i < 8; i++) {
+            shared.increment(42);
+        }
+
+        for (int t = 0; t < threads; t++) {
+
+            final int hash = (t + 1) * 1000;
+            final int count = t == 0 ? 40952 : 40960;
+
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < count; i++) {
+                        shared.increment(hash);
+                    }
+                }
+            };
+            workers[t].start();
+        }
+
+        // when
+        start.countDown();
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // then
+        assertEquals(4, shared.frequency(42));
+
+        for (int t = 0; t < threads; t++) {
+            assertEquals(7, shared.frequency((t + 1) * 1000));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.test.dht.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import ca.gobits.dht.util.EventRecorder;
+import ca.gobits.dht.util.EventRecorder.EventType;
+import ca.gobits.dht.util.Events;
+import ca.gobits.dht.util.JdkFlightRecorder;
+
+/**
+ * JdkFlightRecorder Unit Tests.
+ *
+ * Flight Recorder is driven through reflection, as the server is, so the
+ * tests are skipped on a JVM without it.
+ */
+public final class JdkFlightRecorderUnitTest {
+
+    /**
+     * testBegin01() - events are not created without a recording.
+     */
+    @Test
+    public void testBegin01() {
+        // given
+        EventRecorder recorder = JdkFlightRecorder.create();
+        Assume.assumeNotNull(recorder);
+
+        // when
+        Object result = recorder.begin(EventType.PACKET);
+
+        // then
+        assertNull(result);
+    }
+
+    /**
+     * testCommit01() - every type of event is written to a recording.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testCommit01() throws Exception {
+        // given
+        EventRecorder recorder = JdkFlightRecorder.create();
+        Assume.assumeNotNull(recorder);
+
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.getConstructor().newInstance();
+        recordingClass.getMethod("start").invoke(recording);
+
+        // when
+        recorder.commitPacket(recorder.begin(EventType.PACKET), "PING", 50,
+                60);
+        recorder.commitQueue(recorder.begin(EventType.QUEUE), "ping", 3);
+        recorder.commitBucketSplit(recorder.begin(EventType.BUCKET_SPLIT),
+                false, 4, 4);
+        recorder.commitLockWait(recorder.begin(EventType.LOCK_WAIT), "lock");
+        recorder.commitPeerEviction(recorder.begin(EventType.PEER_EVICTION),
+                2);
+
+        // then
+        recordingClass.getMethod("stop").invoke(recording);
+        File file = File.createTempFile("events", ".jfr");
+        file.deleteOnExit();
+        recordingClass.getMethod("dump", Class.forName("java.nio.file.Path"))
+                .invoke(recording, file.toPath());
+        recordingClass.getMethod("close").invoke(recording);
+
+        Set<String> names = eventNames(file);
+        assertTrue(names.contains("ca.gobits.dht.Packet"));
+        assertTrue(names.contains("ca.gobits.dht.Queue"));
+        assertTrue(names.contains("ca.gobits.dht.BucketSplit"));
+        assertTrue(names.contains("ca.gobits.dht.LockWait"));
+        assertTrue(names.contains("ca.gobits.dht.PeerEviction"));
+    }
+
+    /**
+     * testSetRecorder01() - events are discarded without a recorder.
+     */
+    @Test
+    public void testSetRecorder01() {
+        // given
+        Events.setRecorder(null);
+
+        // when
+        EventRecorder result = Events.getRecorder();
+
+        // then
+        assertEquals(Events.DISABLED, result);
+        assertNull(result.begin(EventType.QUEUE));
+    }
+
+    /**
+     * @param file  recording
+     * @return Set<String>  names of the types of the recorded events
+     * @throws Exception  Exception
+     */
+    private static Set<String> eventNames(final File file) throws Exception {
+
+        Class<?> recordingFile = Class.forName(
+                "jdk.jfr.consumer.RecordingFile");
+        List<?> events = (List<?>) recordingFile.getMethod("readAllEvents",
+                Class.forName("java.nio.file.Path")).invoke(null,
+                file.toPath());
+
+        Set<String> names = new HashSet<String>();
+
+        for (Object event : events) {
+            Method getEventType = event.getClass().getMethod("getEventType");
+            Object type = getEventType.invoke(event);
+            names.add((String) type.getClass().getMethod("getName")
+                    .invoke(type));
+        }
+
+        return names;
+    }
+}
@@ -0,0 +1,120 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.test.dht.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.gobits.dht.util.LatencyHistogram;
+
+/**
+ * LatencyHistogram Unit Tests.
+ *
+ */
+public final class LatencyHistogramUnitTest {
+
+    /** Instance of LatencyHistogram. */
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    /**
+     * testRecord01() - small values are exact.
+     */
+    @Test
+    public void testRecord01() {
+        // given
+        for (int i = 1; i <= 50; i++) {
+            this.histogram.record(i);
+        }
+
+        // when
+        // then
+        assertEquals(50, this.histogram.getCount());
+        assertEquals(1275, this.histogram.getSum());
+        assertEquals(50, this.histogram.getMax());
+        assertEquals(25, this.histogram.getMean());
+        assertEquals(25, this.histogram.getPercentile(0.5));
+        assertEquals(50, this.histogram.getPercentile(1));
+        assertEquals(1, this.histogram.getPercentile(0));
+    }
+
+    /**
+     * testRecord02() - percentiles of random values are within 1/32.
+     */
+    @Test
+    public void testRecord02() {
+        // given
+        Random random = new Random(1);
+        long[] values = new long[10000];
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 20);
+            this.histogram.record(values[i]);
+        }
+
+        Arrays.sort(values);
+
+        // when
+        // then
+        double[] fractions = {0.1, 0.5, 0.9, 0.99, 0.999 };
+
+        for (double fraction : fractions) {
+
+            long expected = values[(int) Math.ceil(fraction * values.length)
+                    - 1];
+            long result = this.histogram.getPercentile(fraction);
+
+            assertTrue(result >= expected);
+            assertTrue(result <= expected + expected / 32);
+        }
+    }
+
+    /**
+     * testRecord03() - negative and huge values are clamped.
+     */
+    @Test
+    public void testRecord03() {
+        // given
+        // when
+        this.histogram.record(-5);
+        this.histogram.record(Long.MAX_VALUE);
+
+        // then
+        assertEquals(2, this.histogram.getCount());
+        assertEquals(0, this.histogram.getPercentile(0.5));
+        assertEquals(this.histogram.getMax(),
+                this.histogram.getPercentile(1));
+        assertTrue(this.histogram.getMax() > 0);
+    }
+
+    /**
+     * testGetPercentile01() - empty histogram.
+     */
+    @Test
+    public void testGetPercentile01() {
+        // given
+        // when
+        // then
+        assertEquals(0, this.histogram.getPercentile(0.99));
+        assertEquals(0, this.histogram.getMean());
+    }
+}
@@ -0,0 +1,137 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.test.dht.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.gobits.dht.util.LongIntHashMap;
+
+/**
+ * LongIntHashMap Unit Tests.
+ *
+ */
+public final class LongIntHashMapUnitTest {
+
+    /** Test Subject. */
+    private final LongIntHashMap map = new LongIntHashMap();
+
+    /**
+     * testIncrement01() - counts are kept per key.
+     */
+    @Test
+    public void testIncrement01() {
+        // given
+        // when
+        int r0 = this.map.increment(1);
+        int r1 = this.map.increment(1);
+        int r2 = this.map.increment(0);
+
+        // then
+        assertEquals(1, r0);
+        assertEquals(2, r1);
+        assertEquals(1, r2);
+        assertEquals(2, this.map.get(1));
+        assertEquals(1, this.map.get(0));
+        assertEquals(0, this.map.get(2));
+        assertEquals(2, this.map.size());
+    }
+
+    /**
+     * testDecrement01() - key is removed when its count reaches 0.
+     */
+    @Test
+    public void testDecrement01() {
+        // given
+        this.map.increment(1);
+        this.map.increment(1);
+
+        // when
+        int r0 = this.map.decrement(1);
+        int r1 = this.map.decrement(1);
+        int r2 = this.map.decrement(1);
+
+        // then
+        assertEquals(1, r0);
+        assertEquals(0, r1);
+        assertEquals(0, r2);
+        assertEquals(0, this.map.size());
+    }
+
+    /**
+     * testDecrement02() - random increments and decrements match a
+     * HashMap while the map grows and keys are removed.
+     */
+    @Test
+    public void testDecrement02() {
+        // given
+        Random random = new Random(1);
+        Map<Long, Integer> expected = new HashMap<Long, Integer>();
+
+        // when
+        for (int i = 0; i < 100000; i++) {
+
+            Long key = Long.valueOf(random.nextInt(500) * 0x100000000L);
+            Integer count = expected.get(key);
+            int c = count != null ? count.intValue() : 0;
+
+            if (random.nextBoolean()) {
+                assertEquals(c + 1, this.map.increment(key.longValue()));
+                expected.put(key, Integer.valueOf(c + 1));
+            } else if (c > 0) {
+                assertEquals(c - 1, this.map.decrement(key.longValue()));
+
+                if (c == 1) {
+                    expected.remove(key);
+                } else {
+                    expected.put(key, Integer.valueOf(c - 1));
+                }
+            }
+        }
+
+        // then
+        assertEquals(expected.size(), this.map.size());
+
+        for (Map.Entry<Long, Integer> e : expected.entrySet()) {
+            assertEquals(e.getValue().intValue(),
+                    this.map.get(e.getKey().longValue()));
+        }
+    }
+
+    /**
+     * testClear01() - all keys are removed.
+     */
+    @Test
+    public void testClear01() {
+        // given
+        this.map.increment(1);
+        this.map.increment(2);
+
+        // when
+        this.map.clear();
+
+        // then
+        assertEquals(0, this.map.size());
+        assertEquals(0, this.map.get(1));
+    }
+}
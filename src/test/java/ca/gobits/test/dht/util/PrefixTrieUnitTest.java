@@ -0,0 +1,215 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.test.dht.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.gobits.dht.util.PrefixTrie;
+
+/**
+ * PrefixTrie Unit Tests.
+ *
+ */
+public final class PrefixTrieUnitTest {
+
+    /** IPv4 trie. */
+    private final PrefixTrie trie = new PrefixTrie(32);
+
+    /**
+     * @param addr  address literal
+     * @return byte[]
+     * @throws Exception  Exception
+     */
+    private static byte[] ip(final String addr) throws Exception {
+        return InetAddress.getByName(addr).getAddress();
+    }
+
+    /**
+     * testContains01() - addresses inside a block are found.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testContains01() throws Exception {
+        // given
+        this.trie.add(ip("192.0.2.0"), 24);
+        this.trie.add(ip("198.51.100.7"), 32);
+
+        // when
+        // then
+        assertEquals(2, this.trie.size());
+        assertTrue(this.trie.contains(ip("192.0.2.0")));
+        assertTrue(this.trie.contains(ip("192.0.2.255")));
+        assertFalse(this.trie.contains(ip("192.0.3.0")));
+        assertTrue(this.trie.contains(ip("198.51.100.7")));
+        assertFalse(this.trie.contains(ip("198.51.100.6")));
+    }
+
+    /**
+     * testContains02() - blocks that share a prefix split the path.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testContains02() throws Exception {
+        // given
+        this.trie.add(ip("10.1.2.0"), 24);
+        this.trie.add(ip("10.1.3.0"), 24);
+        this.trie.add(ip("10.0.0.0"), 16);
+
+        // when
+        // then
+        assertTrue(this.trie.contains(ip("10.1.2.9")));
+        assertTrue(this.trie.contains(ip("10.1.3.9")));
+        assertTrue(this.trie.contains(ip("10.0.200.1")));
+        assertFalse(this.trie.contains(ip("10.1.4.1")));
+        assertFalse(this.trie.contains(ip("10.2.0.1")));
+    }
+
+    /**
+     * testContains03() - a shorter block added later covers longer ones.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testContains03() throws Exception {
+        // given
+        this.trie.add(ip("10.1.2.0"), 24);
+        this.trie.add(ip("10.0.0.0"), 8);
+
+        // when
+        // then
+        assertTrue(this.trie.contains(ip("10.200.0.1")));
+        assertTrue(this.trie.contains(ip("10.1.2.3")));
+        assertFalse(this.trie.contains(ip("11.0.0.1")));
+    }
+
+    /**
+     * testContains04() - a 0 length prefix contains every address.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testContains04() throws Exception {
+        // given
+        this.trie.add(ip("1.2.3.4"), 0);
+
+        // when
+        // then
+        assertTrue(this.trie.contains(ip("255.255.255.255")));
+    }
+
+    /**
+     * testContains05() - IPv6 blocks across the 64 bit boundary.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testContains05() throws Exception {
+        // given
+        PrefixTrie trie6 = new PrefixTrie(128);
+        trie6.add(ip("2001:db8::"), 32);
+        trie6.add(ip("2001:db9:0:0:8000::"), 65);
+        trie6.add(ip("2001:dba::1"), 128);
+
+        // when
+        // then
+        assertTrue(trie6.contains(ip("2001:db8:ffff::1")));
+        assertTrue(trie6.contains(ip("2001:db9::ffff:0:0:1")));
+        assertFalse(trie6.contains(ip("2001:db9::7fff:0:0:1")));
+        assertTrue(trie6.contains(ip("2001:dba::1")));
+        assertFalse(trie6.contains(ip("2001:dba::2")));
+    }
+
+    /**
+     * testContains06() - random blocks match a linear scan.
+     */
+    @Test
+    public void testContains06() {
+        // given
+        Random random = new Random(1);
+        List<int[]> blocks = new ArrayList<int[]>();
+
+        for (int i = 0; i < 500; i++) {
+            int len = 8 + random.nextInt(25);
+            int addr = random.nextInt() & (int) (-1L << (32 - len));
+            blocks.add(new int[] {addr, len });
+            this.trie.add(toBytes(addr), len);
+        }
+
+        // when
+        // then
+        for (int i = 0; i < 20000; i++) {
+
+            int addr = i % 2 == 0 ? random.nextInt()
+                    : blocks.get(random.nextInt(blocks.size()))[0]
+                            ^ random.nextInt(256);
+
+            boolean expected = false;
+
+            for (int[] block : blocks) {
+                int mask = (int) (-1L << (32 - block[1]));
+                if ((addr & mask) == block[0]) {
+                    expected = true;
+                    break;
+                }
+            }
+
+            assertEquals(expected, this.trie.contains(toBytes(addr)));
+        }
+    }
+
+    /**
+     * testAdd01() - address must match the width of the trie.
+     * @throws Exception  Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdd01() throws Exception {
+        // given
+        // when
+        this.trie.add(ip("2001:db8::"), 32);
+
+        // then
+    }
+
+    /**
+     * testAdd02() - prefix longer than the address.
+     * @throws Exception  Exception
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdd02() throws Exception {
+        // given
+        // when
+        this.trie.add(ip("1.2.3.4"), 33);
+
+        // then
+    }
+
+    /**
+     * @param addr  IPv4 address
+     * @return byte[]
+     */
+    private static byte[] toBytes(final int addr) {
+        return new byte[] {(byte) (addr >>> 24), (byte) (addr >>> 16),
+            (byte) (addr >>> 8), (byte) addr };
+    }
+}
@@ -0,0 +1,75 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.test.dht.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ca.gobits.dht.util.ScrapeFilter;
+
+/**
+ * ScrapeFilter Unit Tests.
+ *
+ */
+public final class ScrapeFilterUnitTest {
+
+    /**
+     * testIndexes01() - BEP 33 test vector, 192.0.2.0 to 192.0.2.255
+     * added to the filter.
+     */
+    @Test
+    public void testIndexes01() {
+        // given
+        byte[] filter = new byte[ScrapeFilter.SIZE];
+
+        // when
+        for (int i = 0; i < 256; i++) {
+            ScrapeFilter.add(filter, ScrapeFilter.indexes(new byte[] {
+                (byte) 192, 0, 2, (byte) i }));
+        }
+
+        // then
+        int estimate = ScrapeFilter.estimate(filter);
+        assertTrue(Math.abs(256 - estimate) < 20);
+    }
+
+    /**
+     * testEstimate01() - empty filter.
+     */
+    @Test
+    public void testEstimate01() {
+        assertEquals(0, ScrapeFilter.estimate(new byte[ScrapeFilter.SIZE]));
+    }
+
+    /**
+     * testEstimate02() - one address.
+     */
+    @Test
+    public void testEstimate02() {
+        // given
+        byte[] filter = new byte[ScrapeFilter.SIZE];
+
+        // when
+        ScrapeFilter.add(filter, ScrapeFilter.indexes(new byte[] {1, 2, 3,
+            4 }));
+
+        // then
+        assertEquals(1, ScrapeFilter.estimate(filter));
+    }
+}
@@ -0,0 +1,113 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package ca.gobits.test.dht.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ca.gobits.dht.util.StripedCounter;
+
+/**
+ * StripedCounter Unit Tests.
+ *
+ */
+public final class StripedCounterUnitTest {
+
+    /**
+     * testAdd01() - counters are kept apart.
+     */
+    @Test
+    public void testAdd01() {
+        // given
+        StripedCounter counter = new StripedCounter(3, 4);
+
+        // when
+        counter.increment(0);
+        counter.add(1, 10);
+        counter.add(1, 5);
+
+        // then
+        assertEquals(3, counter.size());
+        assertEquals(1, counter.get(0));
+        assertEquals(15, counter.get(1));
+        assertEquals(0, counter.get(2));
+    }
+
+    /**
+     * testAdd02() - increments from many threads are not lost.
+     * @throws Exception  Exception
+     */
+    @Test
+    public void testAdd02() throws Exception {
+        // given
+        final StripedCounter counter = new StripedCounter(2);
+        final int perThread = 10000;
+        Thread[] threads = new Thread[8];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < perThread; j++) {
+                        counter.increment(1);
+                    }
+                }
+            };
+        }
+
+        // when
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // then
+        assertEquals(threads.length * perThread, counter.get(1));
+        assertEquals(0, counter.get(0));
+    }
+
+    /**
+     * testStripes01() - stripes are rounded up to a power of 2.
+     */
+    @Test
+    public void testStripes01() {
+        // given
+        // when
+        StripedCounter counter = new StripedCounter(1, 5);
+
+        // then
+        assertEquals(8, counter.getStripes());
+        assertEquals(64, new StripedCounter(1, 1000).getStripes());
+    }
+
+    /**
+     * testConstructor01() - at least one counter is needed.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor01() {
+        // given
+        // when
+        new StripedCounter(0);
+
+        // then
+    }
+}
@@ -0,0 +1,174 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.test.dht.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.gobits.dht.util.TimingWheel;
+import ca.gobits.dht.util.TimingWheel.Timeout;
+
+/**
+ * TimingWheel Unit Tests.
+ *
+ */
+public final class TimingWheelUnitTest {
+
+    /** TimingWheel with 1 second ticks starting at 0. */
+    private final TimingWheel<String> wheel = new TimingWheel<String>(1000, 0);
+
+    /**
+     * testAdvance01() - timeout expires at deadline, not before.
+     */
+    @Test
+    public void testAdvance01() {
+        // given
+        List<String> expired = new ArrayList<String>();
+        this.wheel.schedule("a", 5000);
+
+        // when
+        int before = this.wheel.advance(4999, expired);
+        int after = this.wheel.advance(5000, expired);
+
+        // then
+        assertEquals(0, before);
+        assertEquals(1, after);
+        assertEquals("a", expired.get(0));
+        assertEquals(0, this.wheel.size());
+    }
+
+    /**
+     * testAdvance02() - timeouts on the higher wheels are cascaded down.
+     */
+    @Test
+    public void testAdvance02() {
+        // given
+        List<String> expired = new ArrayList<String>();
+        long deadline = 30 * 60 * 1000;
+        this.wheel.schedule("a", deadline);
+        this.wheel.schedule("b", deadline + 1000);
+
+        // when
+        this.wheel.advance(deadline - 1, expired);
+        assertTrue(expired.isEmpty());
+        this.wheel.advance(deadline, expired);
+
+        // then
+        assertEquals(1, expired.size());
+        assertEquals("a", expired.get(0));
+        assertEquals(1, this.wheel.size());
+    }
+
+    /**
+     * testAdvance03() - random deadlines never expire early or late.
+     */
+    @Test
+    public void testAdvance03() {
+        // given
+        Random random = new Random(1);
+        TimingWheel<Long> w = new TimingWheel<Long>(1, 0, 2);
+        int count = 5000;
+
+        for (int i = 0; i < count; i++) {
+            long deadline = random.nextInt(100000);
+            w.schedule(Long.valueOf(deadline), deadline);
+        }
+
+        // when
+        int total = 0;
+        List<Long> expired = new ArrayList<Long>();
+
+        for (long now = 0; now < 100000; now += 7) {
+
+            expired.clear();
+            total += w.advance(now, expired);
+
+            // then
+            for (Long deadline : expired) {
+                assertTrue(deadline.longValue() <= now);
+                assertTrue(deadline.longValue() > now - 7);
+            }
+        }
+
+        total += w.advance(100000, expired);
+        assertEquals(count, total);
+    }
+
+    /**
+     * testCancel01() - cancelled timeout does not expire.
+     */
+    @Test
+    public void testCancel01() {
+        // given
+        List<String> expired = new ArrayList<String>();
+        Timeout<String> timeout = this.wheel.schedule("a", 5000);
+
+        // when
+        boolean result = this.wheel.cancel(timeout);
+        this.wheel.advance(10000, expired);
+
+        // then
+        assertTrue(result);
+        assertFalse(timeout.isScheduled());
+        assertFalse(this.wheel.cancel(timeout));
+        assertTrue(expired.isEmpty());
+    }
+
+    /**
+     * testReschedule01() - rescheduled timeout moves to the new deadline.
+     */
+    @Test
+    public void testReschedule01() {
+        // given
+        List<String> expired = new ArrayList<String>();
+        Timeout<String> timeout = this.wheel.schedule("a", 5000);
+
+        // when
+        this.wheel.reschedule(timeout, 90000);
+        this.wheel.advance(89999, expired);
+        assertTrue(expired.isEmpty());
+        this.wheel.advance(90000, expired);
+
+        // then
+        assertEquals(1, expired.size());
+        assertEquals(90000, timeout.getDeadline());
+    }
+
+    /**
+     * testSchedule01() - deadline in the past expires on next advance.
+     */
+    @Test
+    public void testSchedule01() {
+        // given
+        List<String> expired = new ArrayList<String>();
+        this.wheel.advance(60000, expired);
+
+        // when
+        this.wheel.schedule("a", 1000);
+        this.wheel.advance(61000, expired);
+
+        // then
+        assertEquals(1, expired.size());
+    }
+}
@@ -0,0 +1,92 @@
+//
+// Copyright 2014 Mike Friesen
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package ca.gobits.test.dht.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ca.gobits.dht.util.TokenBucket;
+
+/**
+ * TokenBucket Unit Tests.
+ *
+ */
+public final class TokenBucketUnitTest {
+
+    /**
+     * testTryTake01() - bucket starts full and refills at its rate.
+     */
+    @Test
+    public void testTryTake01() {
+        // given
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+
+        // when
+        boolean result0 = bucket.tryTake(5, 0);
+        boolean result1 = bucket.tryTake(1, 50);
+        boolean result2 = bucket.tryTake(1, 100);
+
+        // then
+        assertTrue(result0);
+        assertFalse(result1);
+        assertTrue(result2);
+        assertEquals(0, bucket.available(100), 0.0001);
+    }
+
+    /**
+     * testAvailable01() - tokens never exceed the capacity.
+     */
+    @Test
+    public void testAvailable01() {
+        // given
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+        bucket.tryTake(5, 0);
+
+        // when
+        double result = bucket.available(60000);
+
+        // then
+        assertEquals(5, result, 0.0001);
+    }
+
+    /**
+     * testSetRate01() - lowering the capacity drops extra tokens.
+     */
+    @Test
+    public void testSetRate01() {
+        // given
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+
+        // when
+        bucket.setRate(2, 1);
+
+        // then
+        assertEquals(1, bucket.available(0), 0.0001);
+        assertEquals(2, bucket.getRate(), 0.0001);
+    }
+
+    /**
+     * testSetRate02() - invalid rate.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetRate02() {
+        new TokenBucket(0, 1, 0);
+    }
+}